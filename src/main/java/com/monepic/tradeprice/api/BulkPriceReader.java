@@ -0,0 +1,198 @@
+package com.monepic.tradeprice.api;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.monepic.tradeprice.model.ReferenceDataRegistry;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.model.requests.InvalidRequestException;
+import com.monepic.tradeprice.model.requests.NewPriceRequest;
+import com.monepic.tradeprice.model.requests.NewPriceRequestValidator;
+import com.monepic.tradeprice.service.PartialUpdateException;
+import com.monepic.tradeprice.service.TradePriceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.validation.BeanPropertyBindingResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads many {@link NewPriceRequest}s from a request body, either newline-delimited (NDJSON, or any sequence of JSON objects) or as
+ * a single JSON array, with Jackson's streaming parser, so the body is never held in memory as a whole; and applies them to the
+ * {@link TradePriceService} in batches of {@link #BATCH_SIZE}, in order, with {@link TradePriceService#createOrUpdateAll}.
+ * <p>
+ * Each element is bound and validated on its own, and one which is invalid is reported, by its index and line, and skipped, without
+ * failing the rest; if the service rejects a batch, those of its prices the service hadn't applied are applied one at a time, so only
+ * the prices it rejects are skipped.  Only a body which isn't well-formed JSON stops the reading, at the element where it breaks.
+ * <p>
+ * All the rejected elements are counted, but only the first {@link #MAX_REPORTED_REJECTIONS} are described, so that a large body of
+ * bad prices doesn't make an unbounded response.
+ */
+class BulkPriceReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkPriceReader.class);
+
+    static final int BATCH_SIZE = 1000;
+    static final int MAX_REPORTED_REJECTIONS = 100;
+
+    private final ObjectReader reader;
+    private final NewPriceRequestValidator validator;
+    private final ReferenceDataRegistry registry;
+    private final TradePriceService tradePriceService;
+
+    BulkPriceReader(ObjectMapper mapper, NewPriceRequestValidator validator, ReferenceDataRegistry registry,
+                    TradePriceService tradePriceService) {
+        this.reader = mapper.readerFor(NewPriceRequest.class);
+        this.validator = validator;
+        this.registry = registry;
+        this.tradePriceService = tradePriceService;
+    }
+
+    Result read(InputStream body) throws IOException {
+        Result result = new Result();
+        Batch batch = new Batch();
+        try (MappingIterator<NewPriceRequest> elements = reader.readValues(body)) {
+            for (int index = 0; ; index++) {
+                long line = 0;
+                NewPriceRequest request;
+                try {
+                    if (!elements.hasNextValue()) {
+                        break;
+                    }
+                    line = elements.getParser().getTokenLocation().getLineNr();
+                    request = elements.nextValue();
+                } catch (JsonMappingException e) {
+                    // the iterator skips to the next element
+                    result.reject(new ElementError(index, line, e.getOriginalMessage()));
+                    continue;
+                } catch (JsonProcessingException e) {
+                    result.reject(new ElementError(index, e.getLocation() == null ? line : e.getLocation().getLineNr(),
+                            "malformed JSON, nothing further read: " + e.getOriginalMessage()));
+                    break;
+                }
+                if (!validator.isValid(request)) {
+                    BeanPropertyBindingResult errors = new BeanPropertyBindingResult(request, "newPriceRequest");
+                    validator.validate(request, errors);
+                    result.reject(new ElementError(index, line, errors));
+                    continue;
+                }
+                try {
+                    batch.add(request.toVendorInstrumentPrice(registry), index, line);
+                } catch (InvalidRequestException e) {
+                    result.reject(new ElementError(index, line, e.getMessage()));
+                    continue;
+                }
+                if (batch.prices.size() == BATCH_SIZE) {
+                    apply(batch, result);
+                    batch = new Batch();
+                }
+            }
+        } finally {
+            apply(batch, result);
+        }
+        return result;
+    }
+
+    private void apply(Batch batch, Result result) {
+        if (batch.prices.isEmpty()) {
+            return;
+        }
+        int applied = 0;
+        try {
+            tradePriceService.createOrUpdateAll(batch.prices);
+            result.accepted += batch.prices.size();
+            return;
+        } catch (PartialUpdateException e) {
+            applied = e.getApplied();
+            LOG.debug("Batch rejected after {} prices, applying the rest one at a time", applied, e);
+        } catch (RuntimeException e) {
+            // none of them was applied
+            LOG.debug("Batch rejected, applying its prices one at a time", e);
+        }
+        result.accepted += applied;
+        // apply the rest one at a time, to find the ones which are rejected
+        for (int i = applied; i < batch.prices.size(); i++) {
+            try {
+                tradePriceService.createOrUpdate(batch.prices.get(i));
+                result.accepted++;
+            } catch (RuntimeException e) {
+                result.reject(new ElementError(batch.indexes.get(i), batch.lines.get(i), e.getMessage()));
+            }
+        }
+    }
+
+    private static final class Batch {
+
+        final List<VendorInstrumentPrice> prices = new ArrayList<>(BATCH_SIZE);
+        final List<Integer> indexes = new ArrayList<>(BATCH_SIZE);
+        final List<Long> lines = new ArrayList<>(BATCH_SIZE);
+
+        void add(VendorInstrumentPrice vip, int index, long line) {
+            prices.add(vip);
+            indexes.add(index);
+            lines.add(line);
+        }
+    }
+
+    /**
+     * For returning the outcome of a bulk submission as JSON: the number of prices applied, the number rejected, and why each of the
+     * first {@link #MAX_REPORTED_REJECTIONS} of those was rejected
+     */
+    public static class Result {
+
+        private int accepted;
+        private int rejectedCount;
+        private final List<ElementError> rejected = new ArrayList<>();
+
+        void reject(ElementError error) {
+            if (rejectedCount++ < MAX_REPORTED_REJECTIONS) {
+                rejected.add(error);
+            }
+        }
+
+        public int getAccepted() { return accepted; }
+
+        public int getRejectedCount() { return rejectedCount; }
+
+        @JsonInclude(value = Include.NON_EMPTY)
+        public List<ElementError> getRejected() { return rejected; }
+    }
+
+    /**
+     * For returning the problems with one element of a bulk submission as JSON
+     */
+    public static class ElementError extends RestExceptionHandler.RequestErrors {
+
+        private final int index;
+        private final long line;
+
+        ElementError(int index, long line, BeanPropertyBindingResult errors) {
+            super(errors);
+            this.index = index;
+            this.line = line;
+        }
+
+        ElementError(int index, long line, String error) {
+            super(error);
+            this.index = index;
+            this.line = line;
+        }
+
+        /**
+         * @return the element's position in the body, from 0
+         */
+        public int getIndex() { return index; }
+
+        /**
+         * @return the line of the body the element starts on, from 1
+         */
+        public long getLine() { return line; }
+    }
+}
@@ -0,0 +1,175 @@
+package com.monepic.tradeprice.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.monepic.tradeprice.cache.Page;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.service.TradePriceService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Writes prices to a response as they're iterated, rather than collecting them all and serializing them at once, so that the memory
+ * a response needs doesn't grow with the number of prices, and its first bytes leave straight away.
+ * <p>
+ * Prices are written either as NDJSON (one JSON price per line, as for <code>application/json</code>), or as CSV, with a header line
+ * and the columns of a new price, plus the timestamp; so an export can be read back in as a CSV input file, though the timestamps
+ * aren't restored, as an input file's rows are stamped as they're read.
+ * The first record is flushed as soon as it's written; after that the output is buffered.  The stream of prices is closed once
+ * they've been written (or writing them fails), to release anything held open while they're read.
+ */
+final class PriceStreams {
+
+    static final String NDJSON = "application/x-ndjson", CSV = "text/csv";
+    static final int PAGE_SIZE = 1000;
+
+    private static final String CSV_HEADER = "vendorId,vendorName,vendorDescription,instrumentSymbol,instrumentDescription,bid,ask,timestamp";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final JsonFactory factory;
+    private final ObjectWriter writer;
+
+    PriceStreams(ObjectMapper mapper) {
+        this.factory = mapper.getFactory();
+        this.writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * @param prices supplies the prices once the response is being written
+     */
+    ResponseEntity<StreamingResponseBody> ndjson(Supplier<Stream<VendorInstrumentPrice>> prices) {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator gen = factory.createGenerator(out); Stream<VendorInstrumentPrice> stream = prices.get()) {
+                gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                gen.setRootValueSeparator(null);
+                boolean first = true;
+                for (Iterator<VendorInstrumentPrice> it = stream.iterator(); it.hasNext(); ) {
+                    writer.writeValue(gen, it.next());
+                    gen.writeRaw('\n');
+                    if (first) {
+                        gen.flush();
+                        first = false;
+                    }
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    /**
+     * @param prices supplies the prices once the response is being written
+     */
+    ResponseEntity<StreamingResponseBody> csv(Supplier<Stream<VendorInstrumentPrice>> prices) {
+        StreamingResponseBody body = out -> {
+            Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            csv.write(CSV_HEADER);
+            csv.write("\r\n");
+            csv.flush();
+            try (Stream<VendorInstrumentPrice> stream = prices.get()) {
+                for (Iterator<VendorInstrumentPrice> it = stream.iterator(); it.hasNext(); ) {
+                    writeCsv(csv, it.next());
+                }
+            }
+            csv.flush();
+        };
+        return ResponseEntity.ok().contentType(new MediaType("text", "csv", StandardCharsets.UTF_8)).body(body);
+    }
+
+    private static void writeCsv(Writer csv, VendorInstrumentPrice vip) throws IOException {
+        csv.write(Long.toString(vip.getVendor().getId()));
+        csv.write(',');
+        writeField(csv, vip.getVendor().getName());
+        csv.write(',');
+        writeField(csv, vip.getVendor().getDescription());
+        csv.write(',');
+        writeField(csv, vip.getInstrument().getSymbol());
+        csv.write(',');
+        writeField(csv, vip.getInstrument().getDescription());
+        csv.write(',');
+        csv.write(vip.getBid().toPlainString());
+        csv.write(',');
+        csv.write(vip.getAsk().toPlainString());
+        csv.write(',');
+        csv.write(vip.getTimestamp().toString());
+        csv.write("\r\n");
+    }
+
+    /**
+     * Writes the text as a CSV field, quoted (as RFC 4180) only if it has to be
+     */
+    private static void writeField(Writer csv, String text) throws IOException {
+        if (text == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            csv.write(text);
+            return;
+        }
+        csv.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                csv.write('"');
+            }
+            csv.write(c);
+        }
+        csv.write('"');
+    }
+
+    /**
+     * @return all the service's prices, fetched a page at a time as they're iterated, so that no more than a page is held at once
+     * whatever the service (each price present throughout is returned exactly once, as by {@link TradePriceService#getPage})
+     */
+    static Stream<VendorInstrumentPrice> pages(TradePriceService tradePriceService) {
+        Iterator<VendorInstrumentPrice> pages = new Iterator<>() {
+
+            private Page<VendorInstrumentPrice> page = tradePriceService.getPage(null, PAGE_SIZE);
+            private Iterator<VendorInstrumentPrice> items = page.getItems().iterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!items.hasNext() && page.getNextCursor() != null) {
+                    page = tradePriceService.getPage(page.getNextCursor(), PAGE_SIZE);
+                    items = page.getItems().iterator();
+                }
+                return items.hasNext();
+            }
+
+            @Override
+            public VendorInstrumentPrice next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return items.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    static Stream<VendorInstrumentPrice> stream(Collection<VendorInstrumentPrice> prices) {
+        return prices == null ? Stream.empty() : prices.stream();
+    }
+}
@@ -2,6 +2,7 @@ package com.monepic.tradeprice.api;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.monepic.tradeprice.model.requests.InvalidRequestException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
@@ -16,6 +17,7 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -33,6 +35,16 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(new RequestErrors(ex.getBindingResult()), HttpStatus.BAD_REQUEST);
     }
 
+    /**
+     * e.g. a price with more decimal places than its Instrument's price scale
+     */
+    @ExceptionHandler(InvalidRequestException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public String invalidRequest(InvalidRequestException ex) {
+        log.debug("Rejected request", ex);
+        return ex.getMessage();
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public String everythingElse(Exception ex) {
@@ -79,6 +91,11 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
                     .collect(Collectors.toList());
         }
 
+        public RequestErrors(String error) {
+            this.fieldErrors = Collections.emptyList();
+            this.errors = Collections.singletonList(error);
+        }
+
         @JsonInclude(value = Include.NON_EMPTY)
         public List<SubmissionFieldError> getFieldErrors() { return fieldErrors; }
 
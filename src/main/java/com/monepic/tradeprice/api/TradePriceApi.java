@@ -1,32 +1,137 @@
 package com.monepic.tradeprice.api;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monepic.tradeprice.cache.CacheStats;
+import com.monepic.tradeprice.cache.Page;
+import com.monepic.tradeprice.jms.MonitoredMessagePublisher;
+import com.monepic.tradeprice.jms.PublisherStats;
+import com.monepic.tradeprice.model.Bar;
+import com.monepic.tradeprice.model.Depth;
+import com.monepic.tradeprice.model.ReferenceDataRegistry;
+import com.monepic.tradeprice.model.TopOfBook;
 import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.model.requests.InvalidRequestException;
 import com.monepic.tradeprice.model.requests.NewPriceRequest;
+import com.monepic.tradeprice.model.requests.NewPriceRequestValidator;
+import com.monepic.tradeprice.service.BarAggregator;
 import com.monepic.tradeprice.service.TradePriceService;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collection;
+import java.util.List;
 
 @RestController
 public class TradePriceApi {
 
+    static final int DEFAULT_PAGE_SIZE = 1000, MAX_PAGE_SIZE = 10_000;
+    static final int DEFAULT_HISTORY_SIZE = 100;
+    static final int DEFAULT_BAR_COUNT = 60;
+
     private final TradePriceService tradePriceService;
+    private final ReferenceDataRegistry registry;
+    private final BarAggregator bars;
+    private final MonitoredMessagePublisher publisher;
+    private final NewPriceRequestValidator validator;
+    private final BulkPriceReader bulkPriceReader;
+    private final PriceStreams priceStreams;
 
-    public TradePriceApi(TradePriceService tradePriceService) {
+    public TradePriceApi(TradePriceService tradePriceService, ReferenceDataRegistry registry, BarAggregator bars,
+                         MonitoredMessagePublisher publisher, ObjectMapper mapper, NewPriceRequestValidator validator) {
         this.tradePriceService = tradePriceService;
+        this.registry = registry;
+        this.bars = bars;
+        this.publisher = publisher;
+        this.validator = validator;
+        this.bulkPriceReader = new BulkPriceReader(mapper, validator, registry, tradePriceService);
+        this.priceStreams = new PriceStreams(mapper);
+    }
+
+    /**
+     * Validates new prices with the {@link NewPriceRequestValidator}, rather than by Bean Validation
+     */
+    @InitBinder("newPriceRequest")
+    void initBinder(WebDataBinder binder) {
+        binder.setValidator(validator);
     }
 
     @PostMapping(value = "/price", produces = "application/json", consumes = "application/json")
     public ResponseEntity<?> createPrice(@RequestBody @Valid NewPriceRequest newPriceRequest) {
-        tradePriceService.createOrUpdate(newPriceRequest.toVendorInstrumentPrice());
+        tradePriceService.createOrUpdate(newPriceRequest.toVendorInstrumentPrice(registry));
         return ResponseEntity.accepted().build();
     }
 
+    /**
+     * Submits many prices in one request, as NDJSON (one price per line) or a JSON array, which is read as a stream and applied in
+     * batches.  Each price is validated on its own, and those which are invalid are skipped, and listed in the response, by index and
+     * line (the first {@link BulkPriceReader#MAX_REPORTED_REJECTIONS} of them); the rest are still applied.
+     *
+     * @return 202, with the numbers of prices accepted and rejected, and the reasons for the first rejected; or 400 if there were prices but none was valid
+     */
+    @PostMapping(value = "/prices", produces = "application/json", consumes = {PriceStreams.NDJSON, "application/json"})
+    public ResponseEntity<BulkPriceReader.Result> createPrices(InputStream body) throws IOException {
+        BulkPriceReader.Result result = bulkPriceReader.read(body);
+        boolean noneValid = result.getAccepted() == 0 && result.getRejectedCount() > 0;
+        return ResponseEntity.status(noneValid ? HttpStatus.BAD_REQUEST : HttpStatus.ACCEPTED).body(result);
+    }
+
+    /**
+     * @param since if provided, only the prices timestamped at or after this (ISO-8601) instant are returned
+     */
+    @GetMapping(value = "/price", params = {"!limit", "!cursor"}, produces = "application/json")
+    public Collection<VendorInstrumentPrice> getAll(@RequestParam(required = false) Instant since) {
+        return since == null ? tradePriceService.getAll() : tradePriceService.getUpdatedSince(since);
+    }
+
+    /**
+     * As {@link #getAll(Instant)}, but streamed as NDJSON; all the prices are read a page at a time, so a response of any size needs
+     * no more memory than a page, and those since an instant are all read as of the moment the response starts (where the service keeps
+     * a consistent view), however long it takes to write
+     */
+    @GetMapping(value = "/price", params = {"!limit", "!cursor"}, produces = PriceStreams.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAll(@RequestParam(required = false) Instant since) {
+        return priceStreams.ndjson(() -> since == null ? PriceStreams.pages(tradePriceService)
+                : tradePriceService.streamUpdatedSince(since));
+    }
+
+    /**
+     * As {@link #streamAll(Instant)}, but as CSV
+     */
+    @GetMapping(value = "/price", params = {"!limit", "!cursor"}, produces = PriceStreams.CSV)
+    public ResponseEntity<StreamingResponseBody> streamAllCsv(@RequestParam(required = false) Instant since) {
+        return priceStreams.csv(() -> since == null ? PriceStreams.pages(tradePriceService)
+                : tradePriceService.streamUpdatedSince(since));
+    }
+
+    /**
+     * @param limit  the most prices to return (at most {@link #MAX_PAGE_SIZE})
+     * @param cursor the cursor of the page to return, from the previous page, or null for the first page
+     */
     @GetMapping(value = "/price", produces = "application/json")
-    public Collection<VendorInstrumentPrice> getAll() {
-        return tradePriceService.getAll();
+    public Page<VendorInstrumentPrice> getPage(@RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(required = false) Instant since) {
+        if (since != null) {
+            throw new InvalidRequestException("since can't be combined with limit or cursor");
+        }
+        if (limit <= 0) {
+            throw new InvalidRequestException("limit must be positive");
+        }
+        try {
+            return tradePriceService.getPage(cursor, Math.min(limit, MAX_PAGE_SIZE));
+        } catch (IllegalArgumentException e) {
+            // a malformed cursor
+            throw new InvalidRequestException(e.getMessage());
+        }
     }
 
     @GetMapping(value = "/vendor/{id}/prices", produces = "application/json")
@@ -34,8 +139,101 @@ public class TradePriceApi {
         return tradePriceService.getByVendor(id);
     }
 
+    @GetMapping(value = "/vendor/{id}/prices", produces = PriceStreams.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamByVendor(@PathVariable Long id) {
+        return priceStreams.ndjson(() -> PriceStreams.stream(tradePriceService.getByVendor(id)));
+    }
+
+    @GetMapping(value = "/vendor/{id}/prices", produces = PriceStreams.CSV)
+    public ResponseEntity<StreamingResponseBody> streamByVendorCsv(@PathVariable Long id) {
+        return priceStreams.csv(() -> PriceStreams.stream(tradePriceService.getByVendor(id)));
+    }
+
+    @GetMapping(value = "/vendor/{id}/instrument/{symbol}/price", produces = "application/json")
+    public ResponseEntity<VendorInstrumentPrice> getPrice(@PathVariable Long id, @PathVariable String symbol) {
+        VendorInstrumentPrice vip = tradePriceService.getPrice(id, symbol);
+        return vip == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(vip);
+    }
+
+    /**
+     * @param limit the most prices to return, newest first
+     */
+    @GetMapping(value = "/vendor/{id}/instrument/{symbol}/history", params = "!at", produces = "application/json")
+    public ResponseEntity<List<VendorInstrumentPrice>> getHistory(@PathVariable Long id, @PathVariable String symbol,
+                                                                  @RequestParam(defaultValue = "" + DEFAULT_HISTORY_SIZE) int limit) {
+        if (limit <= 0) {
+            throw new InvalidRequestException("limit must be positive");
+        }
+        List<VendorInstrumentPrice> history = tradePriceService.getHistory(id, symbol, limit);
+        return history == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(history);
+    }
+
+    /**
+     * @param at the (ISO-8601) instant to return the price as of
+     */
+    @GetMapping(value = "/vendor/{id}/instrument/{symbol}/history", params = "at", produces = "application/json")
+    public ResponseEntity<VendorInstrumentPrice> getPriceAt(@PathVariable Long id, @PathVariable String symbol, @RequestParam Instant at) {
+        VendorInstrumentPrice vip = tradePriceService.getPriceAt(id, symbol, at);
+        return vip == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(vip);
+    }
+
     @GetMapping(value = "/instrument/{symbol}/prices", produces = "application/json")
     public Collection<VendorInstrumentPrice> getByInstrument(@PathVariable String symbol) {
         return tradePriceService.getByInstrument(symbol);
     }
+
+    @GetMapping(value = "/instrument/{symbol}/prices", produces = PriceStreams.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamByInstrument(@PathVariable String symbol) {
+        return priceStreams.ndjson(() -> PriceStreams.stream(tradePriceService.getByInstrument(symbol)));
+    }
+
+    @GetMapping(value = "/instrument/{symbol}/prices", produces = PriceStreams.CSV)
+    public ResponseEntity<StreamingResponseBody> streamByInstrumentCsv(@PathVariable String symbol) {
+        return priceStreams.csv(() -> PriceStreams.stream(tradePriceService.getByInstrument(symbol)));
+    }
+
+    @GetMapping(value = "/instrument/{symbol}/best", produces = "application/json")
+    public ResponseEntity<TopOfBook> getBest(@PathVariable String symbol) {
+        TopOfBook top = tradePriceService.getTopOfBook(symbol);
+        return top == null || top.isEmpty() ? ResponseEntity.notFound().build() : ResponseEntity.ok(top);
+    }
+
+    @GetMapping(value = "/instrument/{symbol}/depth", produces = "application/json")
+    public ResponseEntity<Depth> getDepth(@PathVariable String symbol) {
+        Depth depth = tradePriceService.getDepth(symbol);
+        return depth == null || depth.getBids().isEmpty() ? ResponseEntity.notFound().build() : ResponseEntity.ok(depth);
+    }
+
+    /**
+     * @param interval one of the intervals bars are aggregated over, e.g. <code>1m</code>
+     * @param limit    the most bars to return, newest first
+     */
+    @GetMapping(value = "/instrument/{symbol}/bars", produces = "application/json")
+    public ResponseEntity<List<Bar>> getBars(@PathVariable String symbol, @RequestParam String interval,
+                                             @RequestParam(defaultValue = "" + DEFAULT_BAR_COUNT) int limit) {
+        if (limit <= 0) {
+            throw new InvalidRequestException("limit must be positive");
+        }
+        Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(interval);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("interval " + interval + " isn't a duration");
+        }
+        if (!bars.getIntervals().contains(duration)) {
+            throw new InvalidRequestException("bars aren't aggregated at " + interval + ", only at " + bars.getIntervals());
+        }
+        List<Bar> latest = bars.getBars(symbol, duration, limit);
+        return latest == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(latest);
+    }
+
+    @GetMapping(value = "/cache/stats", produces = "application/json")
+    public CacheStats getCacheStats() {
+        return tradePriceService.getCacheStats();
+    }
+
+    @GetMapping(value = "/publisher/stats", produces = "application/json")
+    public PublisherStats getPublisherStats() {
+        return publisher.getStats();
+    }
 }
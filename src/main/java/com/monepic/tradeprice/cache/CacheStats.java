@@ -0,0 +1,44 @@
+package com.monepic.tradeprice.cache;
+
+/**
+ * A point-in-time summary of a cache's size and of the entries it has evicted to stay within its bounds
+ */
+public class CacheStats {
+
+    private final long entries, estimatedBytes, evictions, evictedBytes;
+
+    public CacheStats(long entries, long estimatedBytes, long evictions, long evictedBytes) {
+        this.entries = entries;
+        this.estimatedBytes = estimatedBytes;
+        this.evictions = evictions;
+        this.evictedBytes = evictedBytes;
+    }
+
+    public static CacheStats unbounded(long entries) {
+        return new CacheStats(entries, 0, 0, 0);
+    }
+
+    public long getEntries() { return entries; }
+
+    /**
+     * @return the estimated heap footprint of the entries, or 0 if the cache isn't bounded by size in bytes
+     */
+    public long getEstimatedBytes() { return estimatedBytes; }
+
+    /**
+     * @return the number of entries evicted to keep within the cache's bounds (not counting expired entries)
+     */
+    public long getEvictions() { return evictions; }
+
+    public long getEvictedBytes() { return evictedBytes; }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "entries=" + entries +
+                ", estimatedBytes=" + estimatedBytes +
+                ", evictions=" + evictions +
+                ", evictedBytes=" + evictedBytes +
+                '}';
+    }
+}
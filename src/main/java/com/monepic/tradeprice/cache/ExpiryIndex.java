@@ -0,0 +1,132 @@
+package com.monepic.tradeprice.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * Schedules entries for expiry in timestamp buckets ('ticks') of a fixed <b>resolution</b>, so that expiring is
+ * proportional to the number of entries due, rather than to the size of the cache.
+ * <p>
+ * An entry is due once the whole tick it falls in has elapsed, so it is expired at most one <b>resolution</b> late.
+ * Entries can be cancelled (e.g. when superseded by an update) so they're not kept alive until their expiry time.
+ * Entries are held by identity.
+ *
+ * @param <E> The type of the scheduled entries
+ */
+public class ExpiryIndex<E> {
+
+    private final ConcurrentSkipListMap<Long, Tick> ticks = new ConcurrentSkipListMap<>();
+    private final long resolutionMillis;
+
+    public ExpiryIndex(long resolutionMillis) {
+        if (resolutionMillis <= 0) {
+            throw new IllegalArgumentException("resolutionMillis must be positive");
+        }
+        this.resolutionMillis = resolutionMillis;
+    }
+
+    /**
+     * @param entry
+     * @param expiresAtMillis the epoch millisecond at which the entry expires
+     */
+    public void schedule(E entry, long expiresAtMillis) {
+        Long tick = Math.floorDiv(expiresAtMillis, resolutionMillis);
+        // a tick is closed when drained, in which case a fresh one is created
+        while (!ticks.computeIfAbsent(tick, t -> new Tick()).add(entry)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * @param entry
+     * @param expiresAtMillis the expiry time the entry was scheduled with
+     */
+    public void cancel(E entry, long expiresAtMillis) {
+        Tick tick = ticks.get(Math.floorDiv(expiresAtMillis, resolutionMillis));
+        if (tick != null) {
+            tick.remove(entry);
+        }
+    }
+
+    /**
+     * Removes up to <b>maxEntries</b> due entries, passing each to <b>expirer</b>, oldest ticks first
+     *
+     * @param nowMillis
+     * @param maxEntries
+     * @param expirer
+     * @return the number of entries removed
+     */
+    public int expire(long nowMillis, int maxEntries, Consumer<E> expirer) {
+        long currentTick = Math.floorDiv(nowMillis, resolutionMillis);
+        int expired = 0;
+        while (expired < maxEntries) {
+            Map.Entry<Long, Tick> first = ticks.firstEntry();
+            if (first == null || first.getKey() >= currentTick) {
+                break;
+            }
+            Tick tick = first.getValue();
+            List<E> due = tick.drain(maxEntries - expired);
+            if (tick.closeIfEmpty()) {
+                ticks.remove(first.getKey(), tick);
+            }
+            // called outside the tick's lock, as the expirer is likely to take locks of its own
+            due.forEach(expirer);
+            expired += due.size();
+        }
+        return expired;
+    }
+
+    /**
+     * @return the number of scheduled entries
+     */
+    public int size() {
+        int size = 0;
+        for (Tick tick : ticks.values()) {
+            size += tick.size();
+        }
+        return size;
+    }
+
+    private class Tick {
+
+        private final Set<E> entries = Collections.newSetFromMap(new IdentityHashMap<>());
+        private boolean closed;
+
+        synchronized boolean add(E entry) {
+            if (closed) {
+                return false;
+            }
+            entries.add(entry);
+            return true;
+        }
+
+        synchronized void remove(E entry) {
+            entries.remove(entry);
+        }
+
+        synchronized List<E> drain(int max) {
+            List<E> drained = new ArrayList<>(Math.min(max, entries.size()));
+            for (Iterator<E> it = entries.iterator(); it.hasNext() && drained.size() < max; ) {
+                drained.add(it.next());
+                it.remove();
+            }
+            return drained;
+        }
+
+        synchronized boolean closeIfEmpty() {
+            closed = entries.isEmpty();
+            return closed;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
@@ -1,155 +1,1514 @@
 package com.monepic.tradeprice.cache;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
 
 /**
  * This implementation creates indexes dynamically, based on the <b>keyExtractors</b> provided to the constructor.
  * The indexes can be queried using their <b>ordinal value</b>, corresponding to the same order the <b>keyExtractors</b> were provided.
  * The <b>keyExtractors</b> are simply functions for generating an indexing key from the type <b><T></b> that we're caching.
+ * A key extractor declared as a {@link LongKeyExtractor} gets an index keyed by primitive <b>long</b>s, which can be
+ * queried via {@link #getByIndexOrdinal(int, long)} without boxing the key.
+ * An <b>ordered</b> index (see {@link Builder#orderedIndex(Function)}) keeps its keys sorted in a skip list, and so can also
+ * answer range queries via {@link #getRange(int, Object, Object)}.
+ * An index may also be given a <b>name</b> to query it by, and a <b>composite</b> index (see {@link Builder#compositeIndex(String, Function[])})
+ * is keyed by the combined keys of several extractors, so that a lookup on all of them is a single bucket read.
+ * Lookups on several indexes at once can be combined with {@link #query()}, which reads only the smallest of the matching buckets.
  * <p>
  * When an cache item is added, replaced or evicted, the indexes are updated sequentially (i.e. not atomically) and is eventually consistent.
  *
+ * Each index bucket publishes an immutable snapshot of its contents, which is replaced (copy-on-write) whenever the bucket changes.
+ * A query simply returns the current snapshot as a read-only {@link Set}, so reads neither copy nor sort, at the cost of a copy of the
+ * bucket on each write to it.
+ *
  * If an item is updated, the new version is indexed before the old version is removed.  This means that during an update, the 'old' and 'new'
  * versions of the item may appear simultaneously under two different index keys, however they will never both appear under the same index key,
- * as the 'old' value will be filtered out on querying.
+ * as the 'new' value replaces the 'old' one in place when they share a bucket.
  * If all the index keys are derived only from properties which comprise the object identity (things in equals/hashCode) then the item will not
  * ever appear in the same index under multiple keys.
  *
- * The cache is thread-safe in operation, with the above proviso.  For strong consistency guarantees, this implementation is not the appropriate choice
+ * The cache is thread-safe in operation, with the above proviso.  For strong consistency guarantees, use the multi-version mode.
+ * <p>
+ * Every key is given a position when it's first added, which its later versions keep, and {@link #getPage(String, int)} traverses
+ * the keys in position order.  So a paged traversal can resume from a cursor (the last position it returned), without holding
+ * anything open between pages, and without being disturbed by updates.
+ * <p>
+ * {@link #addItems(Collection)} adds a batch of items with a single copy of each bucket they fall in, and
+ * {@link #load(Collection)} fills an empty cache in bulk, grouping the items by key and building each index's buckets in one go
+ * (the indexes in parallel), which avoids the copy of a bucket per item which adding them one at a time would cost.
+ * <p>
+ * A <b>multi-version</b> cache (see {@link #multiVersion(Function[])}) serializes its writers, and each <b>addItem</b>/<b>evict</b> commits
+ * under a new global version number.  Superseded and evicted versions are kept (and filtered out of query results by version) until no
+ * reader can still see them.  Every query is then answered as of a single committed version, and {@link #snapshot()} opens a point-in-time
+ * view across <b>getAll</b> and every index, without blocking writers.
+ * <p>
+ * If built with an <b>expiry</b> function (see {@link Builder#expiry(ToLongFunction)}), each item is also scheduled in an {@link ExpiryIndex},
+ * and {@link #expire(long, int)} removes the items which are due, in time proportional to the number removed.
+ * <p>
+ * A cache built with a <b>maximum</b> number of entries and/or (estimated) bytes (see {@link Builder#maximumEntries(long)} and
+ * {@link Builder#maximumBytes(long, ToLongFunction)}) evicts items as they're added, to stay within its bounds, choosing its victims
+ * with a {@link SegmentedLru} policy.  An evicted item is removed from every index just as an expired one is.
  *
  * @param <T> The type of object we're caching
  */
 public class InMemoryIndexedCache<T> implements IndexedCache<T> {
 
-    private static final AtomicLong ID_GEN = new AtomicLong();
+    private static final Object[] EMPTY = {};
+    private static final long LIVE = Long.MAX_VALUE;
     private static final int INDEX_INITIAL_CAPACITY = 1 << 8;
-    private static final int SET_INITIAL_CAPACITY = 1 << 8;
     private static final int ALL_ITEMS_CAPACITY = 1 << 11;
+    private static final long EXPIRY_RESOLUTION_MILLIS = 1000;
+    // a rough estimate of the heap used to hold an item, excluding the item itself and its index slots
+    private static final long ENTRY_OVERHEAD_BYTES = 128, INDEX_SLOT_BYTES = 16;
 
     private final ConcurrentHashMap<T, ValueHolder> allItems = new ConcurrentHashMap<>(ALL_ITEMS_CAPACITY);
     private final List<Index> indices = new ArrayList<>();
+    private final Map<String, Integer> indexOrdinals = new HashMap<>();
+    private final Collection<T> allItemsView = new AllItems(LIVE);
+    // each key's position in a paged traversal, which is kept across updates
+    private final ConcurrentSkipListMap<Long, T> positions = new ConcurrentSkipListMap<>();
+    private final AtomicLong lastPosition = new AtomicLong();
+    private final boolean multiVersion;
+    private final ToLongFunction<T> expiry;
+    private final ExpiryIndex<ValueHolder> expiryIndex = new ExpiryIndex<>(EXPIRY_RESOLUTION_MILLIS);
+    private final SegmentedLru<ValueHolder> evictionPolicy;
+    private final ToLongFunction<T> sizeEstimator;
+    private final Consumer<T> evictionListener;
+
+    // multi-version state - writers are serialized on writeLock
+    private final Object writeLock = new Object();
+    private final ConcurrentSkipListMap<Long, Integer> readers = new ConcurrentSkipListMap<>();
+    private final Deque<ValueHolder> superseded = new ArrayDeque<>();
+    private volatile long committedVersion, reclaimHorizon;
+    private volatile int tombstones;
 
     @SafeVarargs
+    @SuppressWarnings("varargs") // the array is only read, by builder(), so nothing can be stored in it
     public InMemoryIndexedCache(Function<T, Object>... keyExtractors) {
+        this(builder(keyExtractors));
+    }
+
+    /**
+     * @param keyExtractors
+     * @return a multi-version cache, indexed by the given <b>keyExtractors</b>
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs") // as for the constructor
+    public static <T> InMemoryIndexedCache<T> multiVersion(Function<T, Object>... keyExtractors) {
+        return builder(keyExtractors).multiVersion(true).build();
+    }
 
-        if (keyExtractors == null || keyExtractors.length == 0) {
+    /**
+     * @return a builder for a cache with no indexes defined yet
+     */
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    private static <T> Builder<T> builder(Function<T, Object>[] keyExtractors) {
+        if (keyExtractors == null) {
             throw new IllegalArgumentException("keyExtractors cannot be null/empty");
         }
-
+        Builder<T> builder = builder();
         for (Function<T, Object> keyExtractor : keyExtractors) {
-            indices.add(new Index(keyExtractor));
+            builder.index(keyExtractor);
         }
+        return builder;
+    }
+
+    private InMemoryIndexedCache(Builder<T> builder) {
+
+        if (builder.keyExtractors.isEmpty()) {
+            throw new IllegalArgumentException("keyExtractors cannot be null/empty");
+        }
+
+        for (IndexSpec<T> spec : builder.keyExtractors) {
+            if (spec.name != null) {
+                indexOrdinals.put(spec.name, indices.size());
+            }
+            indices.add(spec.ordered ? new OrderedIndex(spec.keyExtractor)
+                    : spec.keyExtractor instanceof ToLongFunction ? new LongIndex(asLongKeyExtractor(spec.keyExtractor))
+                    : new HashIndex(spec.keyExtractor));
+        }
+        this.multiVersion = builder.multiVersion;
+        this.expiry = builder.expiry;
+        this.sizeEstimator = builder.sizeEstimator;
+        this.evictionListener = builder.evictionListener;
+        this.evictionPolicy = builder.maxEntries == 0 && builder.maxBytes == 0 ? null
+                : new SegmentedLru<>(builder.maxEntries, builder.maxBytes);
+    }
+
+    /**
+     * The cast is safe, as a key extractor which is also a {@link ToLongFunction} (a {@link LongKeyExtractor}) was given to the
+     * builder as a function of <b>T</b>, so it's applied to the same items either way
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> ToLongFunction<T> asLongKeyExtractor(Function<T, Object> keyExtractor) {
+        return (ToLongFunction<T>) keyExtractor;
     }
 
     @Override
     public void addItem(T item) {
+        addItem(item, buckets(item));
+    }
 
-        List<Set<ValueHolder>> indexValues = new LinkedList<>();
+    private void addItem(T item, List<Bucket> buckets) {
 
-        for (Index idx : indices) {
-            // indexValues needs to be a List - if it was a Set, the empty sets returned
-            // by getOrCreateByItem would be considered equal
-            indexValues.add(idx.getOrCreateByItem(item));
+        if (multiVersion) {
+            addVersion(item, buckets);
+            return;
         }
 
-        ValueHolder valueHolder = new ValueHolder(item, indexValues);
-
-        ValueHolder previous = allItems.put(item, valueHolder);
+        ValueHolder valueHolder = new ValueHolder(item, buckets, 0);
 
-        for (Set<ValueHolder> idxValue : indexValues) {
-            idxValue.add(valueHolder);
+        ValueHolder previous;
+        List<ValueHolder> victims = Collections.emptyList();
+        if (evictionPolicy == null) {
+            previous = publish(valueHolder);
+        } else {
+            // the policy tracks the same versions as the map, so it has to see the writes in the same order
+            synchronized (evictionPolicy) {
+                previous = publish(valueHolder);
+                evictionPolicy.admit(valueHolder, sizeOf(item), previous);
+                victims = evictionPolicy.evict();
+            }
         }
-        // If an update ends up re-inserting the same item
-        // into an index, we choose to remove the old one afterwards
-        // to ensure the item is always present.  The 'old' duplicate is
-        // filtered out if queried during this update
+        schedule(valueHolder, previous);
+
+        index(valueHolder, previous);
+        // If an update re-inserts the same item into a bucket, the new
+        // value has already replaced the old one there.  Any other
+        // buckets the old value was in are cleared afterwards, to ensure
+        // the item is always present
         if (previous != null) {
             previous.evict(); // un-index old value
         }
+        unindexIfDisplaced(valueHolder);
+        // a victim which has been updated meanwhile is left to its updater
+        for (ValueHolder victim : victims) {
+            if (remove(victim)) {
+                evictionListener.accept(victim.item);
+            }
+        }
+    }
+
+    /**
+     * Puts the items in the map one by one, then groups them by bucket in each index, so that each bucket is copied once for the batch,
+     * replacing the items' previous versions in place and appending the new ones, rather than once per item.
+     * A bounded cache adds them one at a time, as each may evict another; a multi-version cache adds them under one lock, and commits
+     * them as one version.  Every item's buckets are looked up first, so an item whose keys can't be extracted fails the batch before
+     * any of it is added
+     */
+    @Override
+    public void addItems(Collection<T> items) {
+        if (evictionPolicy != null) {
+            List<List<Bucket>> buckets = buckets(items);
+            int next = 0;
+            for (T item : items) {
+                addItem(item, buckets.get(next++));
+            }
+            return;
+        }
+        // of several equal items, only the last is added
+        Map<T, T> latest = new LinkedHashMap<>();
+        for (T item : items) {
+            latest.put(item, item);
+        }
+        List<List<Bucket>> buckets = buckets(latest.values());
+        int next = 0;
+        if (multiVersion) {
+            synchronized (writeLock) {
+                long version = committedVersion + 1;
+                for (T item : latest.values()) {
+                    putVersion(item, buckets.get(next++), version);
+                }
+                commit(version);
+            }
+            return;
+        }
+        List<ValueHolder> added = new ArrayList<>(latest.size());
+        // each new version, to the version it displaced from the map
+        Map<ValueHolder, ValueHolder> replaced = new HashMap<>();
+        for (T item : latest.values()) {
+            ValueHolder valueHolder = new ValueHolder(item, buckets.get(next++), 0);
+            ValueHolder previous = publish(valueHolder);
+            schedule(valueHolder, previous);
+            added.add(valueHolder);
+            if (previous != null) {
+                replaced.put(valueHolder, previous);
+            }
+        }
+        for (int i = 0; i < indices.size(); i++) {
+            Map<Bucket, List<ValueHolder>> groups = new HashMap<>();
+            for (ValueHolder valueHolder : added) {
+                groups.computeIfAbsent(valueHolder.buckets.get(i), b -> new ArrayList<>()).add(valueHolder);
+            }
+            for (Map.Entry<Bucket, List<ValueHolder>> group : groups.entrySet()) {
+                if (!group.getKey().addAll(group.getValue(), replaced)) {
+                    // the bucket was retired since it was looked up
+                    for (ValueHolder valueHolder : group.getValue()) {
+                        index(valueHolder, i, replaced.get(valueHolder));
+                    }
+                }
+            }
+        }
+        // as for addItem, the old versions are un-indexed once the new ones are in place
+        for (ValueHolder previous : replaced.values()) {
+            previous.evict();
+        }
+        for (ValueHolder valueHolder : added) {
+            unindexIfDisplaced(valueHolder);
+        }
+    }
+
+    /**
+     * A concurrent writer (or remover) of the same item may have displaced <b>valueHolder</b> from the map, and un-indexed it, before it
+     * was indexed; so once it's indexed, it's un-indexed again unless it's still the current version.  Otherwise the stale version would
+     * stay in the indexes alongside the current one
+     */
+    private void unindexIfDisplaced(ValueHolder valueHolder) {
+        if (allItems.get(valueHolder.item) != valueHolder) {
+            valueHolder.evict();
+        }
+    }
+
+    /**
+     * Groups the items by key in each index (the indexes in parallel) and fills each bucket once, rather than copying
+     * a bucket for each item added to it.  A bounded cache is loaded an item at a time, as each item may evict another
+     */
+    @Override
+    public void load(Collection<T> items) {
+        if (!allItems.isEmpty()) {
+            throw new IllegalStateException("only an empty cache can be loaded");
+        }
+        if (evictionPolicy != null) {
+            items.forEach(this::addItem);
+            return;
+        }
+        synchronized (writeLock) {
+            // a multi-version cache commits the whole load as one version
+            long version = multiVersion ? committedVersion + 1 : 0;
+            List<ValueHolder> loaded = new ArrayList<>(items.size());
+            for (T item : items) {
+                ValueHolder valueHolder = new ValueHolder(item, new ArrayList<>(Collections.nCopies(indices.size(), null)), version);
+                ValueHolder previous = allItems.put(item, valueHolder);
+                valueHolder.position = previous == null ? newPosition(item) : previous.position;
+                loaded.add(valueHolder);
+            }
+            // of several equal items, only the last is left in the map
+            loaded.removeIf(vh -> allItems.get(vh.item) != vh);
+            for (ValueHolder valueHolder : loaded) {
+                schedule(valueHolder, null);
+            }
+            IntStream.range(0, indices.size()).parallel().forEach(i -> indices.get(i).load(i, loaded));
+            if (multiVersion) {
+                commit(version);
+            }
+        }
+    }
+
+    /**
+     * Puts <b>valueHolder</b> in the map, in the position of the version it replaces (or a new position)
+     *
+     * @return the replaced version, or null
+     */
+    private ValueHolder publish(ValueHolder valueHolder) {
+        Object[] previous = {null};
+        allItems.compute(valueHolder.item, (item, current) -> {
+            previous[0] = current;
+            valueHolder.position = current == null ? newPosition(item) : current.position;
+            return valueHolder;
+        });
+        @SuppressWarnings("unchecked")
+        ValueHolder replaced = (ValueHolder) previous[0];
+        return replaced;
+    }
+
+    private long newPosition(T item) {
+        long position = lastPosition.incrementAndGet();
+        positions.put(position, item);
+        return position;
+    }
+
+    private long sizeOf(T item) {
+        return sizeEstimator == null ? 0 : ENTRY_OVERHEAD_BYTES + INDEX_SLOT_BYTES * indices.size() + sizeEstimator.applyAsLong(item);
+    }
+
+    private void addVersion(T item, List<Bucket> buckets) {
+        List<ValueHolder> victims = Collections.emptyList();
+        synchronized (writeLock) {
+            long version = committedVersion + 1;
+            ValueHolder valueHolder = putVersion(item, buckets, version);
+            ValueHolder previous = valueHolder.previous;
+            if (evictionPolicy != null) {
+                // the victims are evicted in the same version as the item is added
+                evictionPolicy.admit(valueHolder, sizeOf(item), previous);
+                victims = evictionPolicy.evict();
+                for (ValueHolder victim : victims) {
+                    tombstone(victim, version);
+                }
+            }
+            commit(version);
+        }
+        for (ValueHolder victim : victims) {
+            evictionListener.accept(victim.item);
+        }
+    }
+
+    // called holding the writeLock
+    private ValueHolder putVersion(T item, List<Bucket> buckets, long version) {
+        ValueHolder valueHolder = new ValueHolder(item, buckets, version);
+        ValueHolder previous = allItems.get(item);
+        valueHolder.previous = previous; // linked before publishing, so older readers can still find the old version
+        valueHolder.position = previous == null ? newPosition(item) : previous.position;
+
+        allItems.put(item, valueHolder);
+        schedule(valueHolder, previous);
+        index(valueHolder, null);
+
+        if (previous != null) {
+            previous.successor = valueHolder;
+            if (previous.died == LIVE) {
+                previous.died = version;
+                superseded.addLast(previous);
+            } else {
+                tombstones--; // replacing an evicted (but not yet reclaimed) version
+            }
+        }
+        return valueHolder;
+    }
+
+    private void schedule(ValueHolder valueHolder, ValueHolder previous) {
+        if (expiry == null) {
+            return;
+        }
+        if (previous != null) {
+            expiryIndex.cancel(previous, previous.expiresAt);
+        }
+        valueHolder.expiresAt = expiry.applyAsLong(valueHolder.item);
+        expiryIndex.schedule(valueHolder, valueHolder.expiresAt);
+    }
+
+    /**
+     * @param replaces the version <b>valueHolder</b> displaced from the map, if any, which it takes the place of in a bucket it's in
+     */
+    private void index(ValueHolder valueHolder, ValueHolder replaces) {
+        for (int i = 0; i < indices.size(); i++) {
+            index(valueHolder, i, replaces);
+        }
+    }
+
+    private void index(ValueHolder valueHolder, int ordinal, ValueHolder replaces) {
+        Bucket bucket = valueHolder.buckets.get(ordinal);
+        // the bucket may have been emptied and retired since it was looked up, so look up its replacement
+        while (!bucket.add(valueHolder, replaces)) {
+            bucket = indices.get(ordinal).getOrCreateByItem(valueHolder.item);
+            valueHolder.buckets.set(ordinal, bucket);
+        }
+    }
+
+    private List<Bucket> buckets(T item) {
+        List<Bucket> buckets = new ArrayList<>(indices.size());
+        for (Index idx : indices) {
+            buckets.add(idx.getOrCreateByItem(item));
+        }
+        return buckets;
+    }
+
+    private List<List<Bucket>> buckets(Collection<T> items) {
+        List<List<Bucket>> buckets = new ArrayList<>(items.size());
+        for (T item : items) {
+            buckets.add(buckets(item));
+        }
+        return buckets;
     }
 
     @Override
     public Collection<T> getByIndexOrdinal(int indexOrdinal, Object key) {
+        return read(index(indexOrdinal).bucket(key));
+    }
+
+    @Override
+    public Collection<T> getByIndexOrdinal(int indexOrdinal, long key) {
+        return read(index(indexOrdinal).bucket(key));
+    }
+
+    private Index index(int indexOrdinal) {
         if (indexOrdinal < 0 || indexOrdinal >= indices.size()) {
             throw new IllegalArgumentException("bad index ordinal");
         }
-        return indices.get(indexOrdinal).get(key);
+        return indices.get(indexOrdinal);
+    }
+
+    @Override
+    public int indexOrdinal(String indexName) {
+        Integer ordinal = indexOrdinals.get(indexName);
+        if (ordinal == null) {
+            throw new IllegalArgumentException("no index named " + indexName);
+        }
+        return ordinal;
+    }
+
+    @Override
+    public Query<T> query() {
+        return new IndexQuery(LIVE);
+    }
+
+    @Override
+    public Collection<T> getRange(int indexOrdinal, Object from, Object to) {
+        Index index = index(indexOrdinal);
+        if (!multiVersion) {
+            return new Concatenation(index.range(from, to), LIVE);
+        }
+        while (true) {
+            long version = committedVersion;
+            Concatenation range = new Concatenation(index.range(from, to), version);
+            if (reclaimHorizon <= version) {
+                return range;
+            }
+        }
+    }
+
+    /**
+     * Reads the bucket as of the latest committed version.
+     * A multi-version read doesn't register itself; instead it retries if versions it may need were reclaimed meanwhile
+     */
+    private Set<T> read(Bucket bucket) {
+        if (bucket == null) {
+            return Collections.emptySet();
+        }
+        if (!multiVersion) {
+            return bucket.members;
+        }
+        while (true) {
+            long version = committedVersion;
+            Members members = bucket.members;
+            if (reclaimHorizon <= version) {
+                return members.asOf(version);
+            }
+        }
     }
 
+    /**
+     * @return a read-only, weakly consistent view of the cache entries
+     */
     @Override
     public Collection<T> getAll() {
-        return allItems.values()
-                .stream()
-                .map(ValueHolder::getItem)
-                .collect(Collectors.toSet());
+        return allItemsView;
+    }
+
+    @Override
+    public Page<T> getPage(String cursor, int limit) {
+        Page.checkLimit(limit);
+        long from = Page.position(cursor);
+        if (!multiVersion) {
+            return page(from, limit, LIVE);
+        }
+        // unlike a single bucket read, a page is read an item at a time, too long to retry if versions are reclaimed meanwhile
+        long version = pin();
+        try {
+            return page(from, limit, version);
+        } finally {
+            release(version);
+        }
+    }
+
+    private Page<T> page(long from, int limit, long asOf) {
+        List<T> items = new ArrayList<>(Math.min(limit, ALL_ITEMS_CAPACITY));
+        Iterator<Map.Entry<Long, T>> it = positions.tailMap(from, false).entrySet().iterator();
+        long last = from;
+        while (items.size() < limit && it.hasNext()) {
+            Map.Entry<Long, T> entry = it.next();
+            last = entry.getKey();
+            ValueHolder vh = allItems.get(entry.getValue());
+            if (vh != null && asOf != LIVE) {
+                vh = vh.asOf(asOf);
+            }
+            // a key which has been removed and re-added since is returned at its new position
+            if (vh != null && vh.position == last) {
+                items.add(vh.item);
+            }
+        }
+        return new Page<>(items, it.hasNext() ? Page.cursor(last) : null);
     }
 
     @Override
     public Collection<T> evict(Predicate<T> evictionPredicate) {
-        Predicate<ValueHolder> predicateWrapper = vh -> evictionPredicate.test(vh.getItem());
-
-        Collection<T> removedItems = new LinkedList<>();
-        allItems.values().stream()
-                .filter(predicateWrapper)
-                .forEach(v -> {
-                    v.evict(); // remove from the indices
-                    allItems.remove(v.getItem(), v); // use the long-form remove(k,v) to avoid removing items that have been concurrently updated
-                    removedItems.add(v.getItem());
-                });
+
+        if (multiVersion) {
+            return evictVersions(allItems.values(), vh -> evictionPredicate.test(vh.item));
+        }
+
+        Collection<T> removedItems = new ArrayList<>();
+        for (ValueHolder vh : allItems.values()) {
+            if (evictionPredicate.test(vh.item) && remove(vh)) {
+                removedItems.add(vh.item);
+            }
+        }
         return removedItems;
     }
 
-    private class ValueHolder implements Comparable<ValueHolder> {
+    /**
+     * Does nothing if the cache was built without an expiry function
+     */
+    @Override
+    public Collection<T> expire(long nowMillis, int maxItems) {
+        if (expiry == null) {
+            return Collections.emptyList();
+        }
+        List<ValueHolder> due = new ArrayList<>();
+        expiryIndex.expire(nowMillis, maxItems, due::add);
+
+        if (multiVersion) {
+            return evictVersions(due, vh -> true);
+        }
+        Collection<T> removedItems = new ArrayList<>(due.size());
+        for (ValueHolder vh : due) {
+            if (remove(vh)) {
+                removedItems.add(vh.item);
+            }
+        }
+        return removedItems;
+    }
+
+    // use the long-form remove(k,v) to avoid removing items that have been concurrently updated
+    private boolean remove(ValueHolder vh) {
+        if (allItems.remove(vh.item, vh)) {
+            positions.remove(vh.position, vh.item);
+            vh.evict(); // remove from the indices
+            if (expiry != null) {
+                expiryIndex.cancel(vh, vh.expiresAt);
+            }
+            if (evictionPolicy != null) {
+                evictionPolicy.remove(vh);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private Collection<T> evictVersions(Iterable<ValueHolder> candidates, Predicate<ValueHolder> evictionPredicate) {
+        synchronized (writeLock) {
+            long version = committedVersion + 1;
+            Collection<T> removedItems = new ArrayList<>();
+            for (ValueHolder vh : candidates) {
+                if (vh.died == LIVE && evictionPredicate.test(vh)) {
+                    tombstone(vh, version);
+                    if (evictionPolicy != null) {
+                        evictionPolicy.remove(vh);
+                    }
+                    removedItems.add(vh.item);
+                }
+            }
+            if (!removedItems.isEmpty()) {
+                commit(version);
+            }
+            return removedItems;
+        }
+    }
+
+    // called holding the writeLock
+    private void tombstone(ValueHolder vh, long version) {
+        vh.died = version; // left in place as a tombstone until reclaimed
+        superseded.addLast(vh);
+        tombstones++;
+        if (expiry != null) {
+            expiryIndex.cancel(vh, vh.expiresAt);
+        }
+    }
+
+    @Override
+    public CacheStats stats() {
+        return evictionPolicy == null ? CacheStats.unbounded(getAll().size()) : evictionPolicy.stats();
+    }
+
+    @Override
+    public ReadView<T> snapshot() {
+        if (!multiVersion) {
+            throw new UnsupportedOperationException("snapshots need a multi-version cache");
+        }
+        return new VersionedReadView(pin());
+    }
+
+    /**
+     * Registers a reader of the latest committed version, so that the versions it can see aren't reclaimed until it's released
+     *
+     * @return the version
+     */
+    private long pin() {
+        while (true) {
+            long version = committedVersion;
+            readers.merge(version, 1, Integer::sum);
+            // a writer publishes its reclaimHorizon before checking the registered readers, so either
+            // it sees this reader, or this reader sees the horizon and retries at a newer version
+            if (reclaimHorizon <= version) {
+                return version;
+            }
+            release(version);
+        }
+    }
+
+    private void release(long version) {
+        readers.computeIfPresent(version, (v, count) -> count == 1 ? null : count - 1);
+    }
+
+    // called holding the writeLock
+    private void commit(long version) {
+        committedVersion = version;
+        if (superseded.isEmpty()) {
+            return;
+        }
+        long horizon = version;
+        reclaimHorizon = horizon;
+        Map.Entry<Long, Integer> oldestReader = readers.firstEntry();
+        if (oldestReader != null) {
+            horizon = Math.min(horizon, oldestReader.getKey());
+        }
+        // versions which died at or before the horizon are invisible to every reader
+        while (!superseded.isEmpty() && superseded.peekFirst().died <= horizon) {
+            ValueHolder vh = superseded.pollFirst();
+            vh.evict();
+            if (allItems.remove(vh.item, vh)) {
+                positions.remove(vh.position, vh.item);
+                tombstones--;
+            } else if (vh.successor != null) {
+                vh.successor.previous = null;
+            }
+        }
+    }
+
+    private class ValueHolder {
 
-        final long id;
         final T item;
-        final Iterable<Set<ValueHolder>> indices;
+        final List<Bucket> buckets;
+        final long born;
+        volatile long died = LIVE;
+        long expiresAt;
+        long position;
+        // multi-version only - the chain of older versions of the item, and the next newer version
+        volatile ValueHolder previous;
+        ValueHolder successor;
 
-        ValueHolder(T item, Iterable<Set<ValueHolder>> indices) {
-            this.id = ID_GEN.getAndIncrement();
+        ValueHolder(T item, List<Bucket> buckets, long born) {
             this.item = item;
-            this.indices = indices;
+            this.buckets = buckets;
+            this.born = born;
         }
 
         public T getItem() { return item; }
 
         public void evict() {
-            for (Set<ValueHolder> set : indices) {
-                set.remove(this);
+            for (Bucket bucket : buckets) {
+                bucket.remove(this);
+            }
+        }
+
+        boolean visibleAt(long version) {
+            return born <= version && version < died;
+        }
+
+        /**
+         * @return the version of this item visible at <b>version</b>, or null if there isn't one
+         */
+        ValueHolder asOf(long version) {
+            for (ValueHolder vh = this; vh != null; vh = vh.previous) {
+                if (vh.born <= version) {
+                    return version < vh.died ? vh : null;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The items indexed under one key.  Writers are serialized, and each write publishes new {@link Members}.
+     * A bucket of an index which discards empty buckets is retired once empty, and can't be added to thereafter
+     */
+    private class Bucket {
+
+        private final Index index;
+        private final Object key;
+        private volatile Members members = new Members(EMPTY);
+        private boolean retired;
+
+        Bucket(Index index, Object key) {
+            this.index = index;
+            this.key = key;
+        }
+
+        /**
+         * Adds <b>valueHolder</b>, in the place of <b>replaces</b> if that's in the bucket.  Only the very version the writer displaced
+         * from the map is replaced, not any equal item: a concurrent writer of the same item may have put its own version in the
+         * bucket already, which has to stay until that writer removes it
+         *
+         * @return false if the bucket has been retired
+         */
+        synchronized boolean add(ValueHolder valueHolder, ValueHolder replaces) {
+            if (retired) {
+                return false;
+            }
+            Object[] holders = members.holders;
+            // a multi-version cache keeps both versions, as older readers may still need the old one
+            for (int i = 0; !multiVersion && replaces != null && i < holders.length; i++) {
+                if (holders[i] == replaces) {
+                    Object[] replaced = holders.clone();
+                    replaced[i] = valueHolder;
+                    members = new Members(replaced);
+                    return true;
+                }
+            }
+            Object[] added = Arrays.copyOf(holders, holders.length + 1);
+            added[holders.length] = valueHolder;
+            members = new Members(added);
+            return true;
+        }
+
+        /**
+         * Adds items which aren't in the bucket already, with a single copy
+         *
+         * @return false if the bucket has been retired
+         */
+        synchronized boolean addAll(List<ValueHolder> valueHolders) {
+            return addAll(valueHolders, Collections.emptyMap());
+        }
+
+        /**
+         * As {@link #addAll(List)}, but each item takes the place of the version it <b>replaces</b> (maps it to) if that's in the bucket,
+         * as by {@link #add(ValueHolder, ValueHolder)}
+         */
+        synchronized boolean addAll(List<ValueHolder> valueHolders, Map<ValueHolder, ValueHolder> replaces) {
+            if (retired) {
+                return false;
+            }
+            Object[] holders = members.holders;
+            Object[] added = Arrays.copyOf(holders, holders.length + valueHolders.size());
+            Set<ValueHolder> placed = Collections.emptySet();
+            if (!multiVersion && !replaces.isEmpty() && holders.length > 0) {
+                Map<Object, ValueHolder> byReplaced = new HashMap<>();
+                for (ValueHolder valueHolder : valueHolders) {
+                    ValueHolder replaced = replaces.get(valueHolder);
+                    if (replaced != null) {
+                        byReplaced.put(replaced, valueHolder);
+                    }
+                }
+                placed = new HashSet<>();
+                for (int i = 0; i < holders.length && !byReplaced.isEmpty(); i++) {
+                    ValueHolder replacement = byReplaced.remove(holders[i]);
+                    if (replacement != null) {
+                        added[i] = replacement;
+                        placed.add(replacement);
+                    }
+                }
+            }
+            int size = holders.length;
+            for (ValueHolder valueHolder : valueHolders) {
+                if (!placed.contains(valueHolder)) {
+                    added[size++] = valueHolder;
+                }
+            }
+            members = new Members(size == added.length ? added : Arrays.copyOf(added, size));
+            return true;
+        }
+
+        synchronized void remove(ValueHolder valueHolder) {
+            Object[] holders = members.holders;
+            for (int i = 0; i < holders.length; i++) {
+                if (holders[i] == valueHolder) {
+                    Object[] removed = new Object[holders.length - 1];
+                    System.arraycopy(holders, 0, removed, 0, i);
+                    System.arraycopy(holders, i + 1, removed, i, removed.length - i);
+                    members = new Members(removed);
+                    if (removed.length == 0 && index.discardsEmptyBuckets()) {
+                        retired = true;
+                        index.discard(this);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * An immutable, read-only view of a bucket's contents at some point in time
+     */
+    private class Members extends AbstractSet<T> {
+
+        final Object[] holders;
+
+        Members(Object[] holders) {
+            this.holders = holders;
+        }
+
+        Set<T> asOf(long version) {
+            return new VersionedMembers(holders, version);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<>() {
+                int next;
+
+                @Override
+                public boolean hasNext() { return next < holders.length; }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public T next() {
+                    if (next >= holders.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return ((ValueHolder) holders[next++]).item;
+                }
+            };
+        }
+
+        @Override
+        public int size() { return holders.length; }
+    }
+
+    /**
+     * The members of a bucket which are visible at a given version.  As the holders array is immutable, this stays valid indefinitely
+     */
+    private class VersionedMembers extends AbstractSet<T> {
+
+        final Object[] holders;
+        final long version;
+        int size = -1;
+
+        VersionedMembers(Object[] holders, long version) {
+            this.holders = holders;
+            this.version = version;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<>() {
+                int next = advance(0);
+
+                @Override
+                public boolean hasNext() { return next < holders.length; }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public T next() {
+                    if (next >= holders.length) {
+                        throw new NoSuchElementException();
+                    }
+                    T item = ((ValueHolder) holders[next]).item;
+                    next = advance(next + 1);
+                    return item;
+                }
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        private int advance(int from) {
+            while (from < holders.length && !((ValueHolder) holders[from]).visibleAt(version)) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        public int size() {
+            if (size < 0) {
+                int count = 0;
+                for (int i = advance(0); i < holders.length; i = advance(i + 1)) {
+                    count++;
+                }
+                size = count;
+            }
+            return size;
+        }
+    }
+
+    /**
+     * The items of several buckets, in bucket order
+     */
+    private class Concatenation extends AbstractCollection<T> {
+
+        final List<Set<T>> parts = new ArrayList<>();
+
+        /**
+         * @param version the version to read the buckets at, or {@link #LIVE} to take their current members
+         */
+        Concatenation(Collection<Bucket> buckets, long version) {
+            for (Bucket bucket : buckets) {
+                Members members = bucket.members;
+                parts.add(version == LIVE ? members : members.asOf(version));
+            }
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return parts.stream().flatMap(Set::stream).iterator();
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Set<T> part : parts) {
+                size += part.size();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * The cache entries visible at <b>version</b>, or the latest committed entries for {@link #LIVE}
+     */
+    private class AllItems extends AbstractCollection<T> {
+
+        final long version;
+
+        AllItems(long version) {
+            this.version = version;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            Iterator<ValueHolder> it = allItems.values().iterator();
+            if (!multiVersion) {
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() { return it.hasNext(); }
+
+                    @Override
+                    public T next() { return it.next().getItem(); }
+                };
+            }
+            long asOf = version == LIVE ? committedVersion : version;
+            return new Iterator<>() {
+                T next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && it.hasNext()) {
+                        ValueHolder vh = it.next().asOf(asOf);
+                        next = vh == null ? null : vh.item;
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    T item = next;
+                    next = null;
+                    return item;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            if (version == LIVE) {
+                return Math.max(0, allItems.size() - tombstones);
+            }
+            int count = 0;
+            for (Iterator<T> it = iterator(); it.hasNext(); it.next()) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private class VersionedReadView implements ReadView<T> {
+
+        final long version;
+        final Collection<T> all;
+        boolean closed;
+
+        VersionedReadView(long version) {
+            this.version = version;
+            this.all = new AllItems(version);
+        }
+
+        @Override
+        public long version() { return version; }
+
+        @Override
+        public Collection<T> getAll() { return all; }
+
+        @Override
+        public Collection<T> getByIndexOrdinal(int indexOrdinal, Object key) {
+            return asOf(index(indexOrdinal).bucket(key));
+        }
+
+        @Override
+        public Collection<T> getByIndexOrdinal(int indexOrdinal, long key) {
+            return asOf(index(indexOrdinal).bucket(key));
+        }
+
+        @Override
+        public Collection<T> getRange(int indexOrdinal, Object from, Object to) {
+            return new Concatenation(index(indexOrdinal).range(from, to), version);
+        }
+
+        @Override
+        public Query<T> query() {
+            return new IndexQuery(version);
+        }
+
+        private Set<T> asOf(Bucket bucket) {
+            return bucket == null ? Collections.emptySet() : bucket.members.asOf(version);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(version);
+            }
+        }
+    }
+
+    /**
+     * A conjunction of index lookups.  Each item of the smallest bucket is checked against the other keys by extracting
+     * its own keys, rather than by probing the other buckets, so the cost is proportional to the smallest bucket alone
+     */
+    private class IndexQuery implements Query<T> {
+
+        final long version;
+        final List<Index> indexes = new ArrayList<>(2);
+        final List<Object> keys = new ArrayList<>(2);
+
+        /**
+         * @param version the version to answer at, or {@link #LIVE} for the latest committed version
+         */
+        IndexQuery(long version) {
+            this.version = version;
+        }
+
+        @Override
+        public Query<T> where(int indexOrdinal, Object key) {
+            indexes.add(index(indexOrdinal));
+            keys.add(key);
+            return this;
+        }
+
+        @Override
+        public Query<T> where(int indexOrdinal, long key) {
+            return where(indexOrdinal, (Object) key);
+        }
+
+        @Override
+        public Query<T> where(String indexName, Object key) {
+            return where(indexOrdinal(indexName), key);
+        }
+
+        @Override
+        public Query<T> where(String indexName, long key) {
+            return where(indexOrdinal(indexName), (Object) key);
+        }
+
+        @Override
+        public Collection<T> execute() {
+            if (indexes.isEmpty()) {
+                return version == LIVE ? getAll() : new AllItems(version);
+            }
+            Bucket smallest = null;
+            int smallestTerm = -1;
+            for (int i = 0; i < indexes.size(); i++) {
+                Bucket bucket = indexes.get(i).bucket(keys.get(i));
+                if (bucket == null) {
+                    return Collections.emptySet();
+                }
+                if (smallest == null || bucket.members.holders.length < smallest.members.holders.length) {
+                    smallest = bucket;
+                    smallestTerm = i;
+                }
+            }
+            if (version != LIVE || !multiVersion) {
+                return select(smallest.members, smallestTerm, version);
+            }
+            while (true) {
+                long committed = committedVersion;
+                Members members = smallest.members;
+                if (reclaimHorizon <= committed) {
+                    return select(members, smallestTerm, committed);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Collection<T> select(Members members, int smallestTerm, long asOf) {
+            List<T> selected = new ArrayList<>();
+            for (Object holder : members.holders) {
+                ValueHolder vh = (ValueHolder) holder;
+                if (asOf != LIVE && !vh.visibleAt(asOf)) {
+                    continue;
+                }
+                if (matchesAll(vh.item, smallestTerm)) {
+                    selected.add(vh.item);
+                }
+            }
+            return Collections.unmodifiableList(selected);
+        }
+
+        private boolean matchesAll(T item, int except) {
+            for (int i = 0; i < indexes.size(); i++) {
+                if (i != except && !indexes.get(i).matches(item, keys.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private abstract class Index {
+
+        abstract Bucket bucket(Object key);
+
+        Bucket bucket(long key) {
+            return bucket((Object) key);
+        }
+
+        /**
+         * @return whether <b>item</b> would be indexed under <b>key</b>
+         */
+        abstract boolean matches(T item, Object key);
+
+        abstract Bucket getOrCreateByItem(T item);
+
+        /**
+         * @return the key <b>item</b> is indexed under
+         */
+        abstract Object key(T item);
+
+        /**
+         * Indexes <b>loaded</b> (which are new to the cache) a bucket at a time, as index <b>ordinal</b>
+         */
+        void load(int ordinal, List<ValueHolder> loaded) {
+            Map<Object, List<ValueHolder>> groups = new HashMap<>();
+            for (ValueHolder valueHolder : loaded) {
+                groups.computeIfAbsent(key(valueHolder.item), k -> new ArrayList<>()).add(valueHolder);
             }
+            for (List<ValueHolder> group : groups.values()) {
+                Bucket bucket = getOrCreateByItem(group.get(0).item);
+                while (!bucket.addAll(group)) {
+                    bucket = getOrCreateByItem(group.get(0).item);
+                }
+                for (ValueHolder valueHolder : group) {
+                    valueHolder.buckets.set(ordinal, bucket);
+                }
+            }
+        }
+
+        Collection<Bucket> range(Object from, Object to) {
+            throw new IllegalArgumentException("not an ordered index");
+        }
+
+        boolean discardsEmptyBuckets() {
+            return false;
+        }
+
+        void discard(Bucket bucket) {}
+    }
+
+    private class HashIndex extends Index {
+
+        final ConcurrentHashMap<Object, Bucket> idx = new ConcurrentHashMap<>(INDEX_INITIAL_CAPACITY);
+        final Function<T, Object> keyExtractor;
+
+        private HashIndex(Function<T, Object> keyExtractor) {
+            this.keyExtractor = keyExtractor;
+        }
+
+        @Override
+        Bucket bucket(Object key) {
+            return key == null ? null : idx.get(key);
+        }
+
+        @Override
+        Bucket getOrCreateByItem(T item) {
+            Object key = keyExtractor.apply(item);
+            return idx.computeIfAbsent(key, k -> new Bucket(this, k));
+        }
+
+        @Override
+        Object key(T item) {
+            return keyExtractor.apply(item);
         }
 
         @Override
-        public int compareTo(ValueHolder that) {
-            return Long.compare(that.id, id);
+        boolean matches(T item, Object key) {
+            // as no bucket is found for a null key, no item matches it
+            return key != null && key.equals(keyExtractor.apply(item));
         }
     }
 
-    private class Index {
+    private class LongIndex extends Index {
 
-        final ConcurrentHashMap<Object, Set<ValueHolder>> idx = new ConcurrentHashMap<>(INDEX_INITIAL_CAPACITY);
+        final LongKeyedConcurrentMap<Bucket> idx = new LongKeyedConcurrentMap<>(INDEX_INITIAL_CAPACITY);
+        final ToLongFunction<T> keyExtractor;
+
+        private LongIndex(ToLongFunction<T> keyExtractor) {
+            this.keyExtractor = keyExtractor;
+        }
+
+        @Override
+        Bucket bucket(Object key) {
+            return isLong(key) ? bucket(toLong(key)) : null;
+        }
+
+        @Override
+        Bucket bucket(long key) {
+            return idx.get(key);
+        }
+
+        @Override
+        Bucket getOrCreateByItem(T item) {
+            long key = keyExtractor.applyAsLong(item);
+            return idx.computeIfAbsent(key, k -> new Bucket(this, k));
+        }
+
+        @Override
+        Object key(T item) {
+            return keyExtractor.applyAsLong(item);
+        }
+
+        @Override
+        boolean matches(T item, Object key) {
+            return isLong(key) && toLong(key) == keyExtractor.applyAsLong(item);
+        }
+    }
+
+    /**
+     * @return whether <b>key</b> is a number with a whole value in the range of a <b>long</b>, e.g. an Integer, or a BigDecimal of 7.0,
+     * so a long index can be queried with whichever boxed type its caller has at hand
+     */
+    private static boolean isLong(Object key) {
+        if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            return true;
+        }
+        if (key instanceof BigInteger) {
+            return ((BigInteger) key).bitLength() < Long.SIZE;
+        }
+        if (key instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) key;
+            // a non-zero decimal with more than 19 digits before the point can't be a long, whatever its scale
+            return decimal.signum() == 0 || decimal.precision() - decimal.scale() <= 19
+                    && decimal.stripTrailingZeros().scale() <= 0 && isLong(decimal.toBigInteger());
+        }
+        if (key instanceof Double || key instanceof Float) {
+            double d = ((Number) key).doubleValue();
+            return d == Math.rint(d) && d >= Long.MIN_VALUE && d < 0x1p63;
+        }
+        return false;
+    }
+
+    // only for a key which isLong
+    private static long toLong(Object key) {
+        return ((Number) key).longValue();
+    }
+
+    /**
+     * An index whose keys are kept in their natural order.
+     * As the keys are expected to change often (e.g. timestamps), empty buckets are discarded
+     */
+    private class OrderedIndex extends Index {
+
+        final ConcurrentSkipListMap<Object, Bucket> idx = new ConcurrentSkipListMap<>();
         final Function<T, Object> keyExtractor;
 
-        private Index(Function<T, Object> keyExtractor) {
+        private OrderedIndex(Function<T, Object> keyExtractor) {
             this.keyExtractor = keyExtractor;
         }
 
-        Set<T> get(Object key) {
-            return idx.getOrDefault(key, Collections.emptySet())
-                    .stream()
-                    .sorted() // necessary to filter duplicates during updates
-                    .map(ValueHolder::getItem)
-                    .collect(Collectors.toSet());
+        @Override
+        Bucket bucket(Object key) {
+            return key == null ? null : idx.get(key);
         }
 
-        Set<ValueHolder> getOrCreateByItem(T item) {
+        @Override
+        Bucket getOrCreateByItem(T item) {
             Object key = keyExtractor.apply(item);
-            return idx.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet(SET_INITIAL_CAPACITY));
+            return idx.computeIfAbsent(key, k -> new Bucket(this, k));
+        }
+
+        @Override
+        Object key(T item) {
+            return keyExtractor.apply(item);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        boolean matches(T item, Object key) {
+            return ((Comparable<Object>) key).compareTo(keyExtractor.apply(item)) == 0;
+        }
+
+        @Override
+        Collection<Bucket> range(Object from, Object to) {
+            if (from == null) {
+                return to == null ? idx.values() : idx.headMap(to, false).values();
+            }
+            return to == null ? idx.tailMap(from, true).values() : idx.subMap(from, true, to, false).values();
+        }
+
+        @Override
+        boolean discardsEmptyBuckets() {
+            return true;
+        }
+
+        @Override
+        void discard(Bucket bucket) {
+            idx.remove(bucket.key, bucket);
+        }
+    }
+
+    private static class IndexSpec<T> {
+
+        final String name;
+        final Function<T, Object> keyExtractor;
+        final boolean ordered;
+
+        IndexSpec(String name, Function<T, Object> keyExtractor, boolean ordered) {
+            this.name = name;
+            this.keyExtractor = Objects.requireNonNull(keyExtractor);
+            this.ordered = ordered;
+        }
+    }
+
+    /**
+     * Builds an {@link InMemoryIndexedCache}.  Indexes are given ordinals in the order they're added, and may also be named
+     *
+     * @param <T> The type of object we're caching
+     */
+    public static class Builder<T> {
+
+        private final List<IndexSpec<T>> keyExtractors = new ArrayList<>();
+        private boolean multiVersion;
+        private ToLongFunction<T> expiry;
+        private long maxEntries, maxBytes;
+        private ToLongFunction<T> sizeEstimator;
+        private Consumer<T> evictionListener = item -> {};
+
+        private Builder() {}
+
+        /**
+         * @param keyExtractor generates the index key for an item.  A {@link LongKeyExtractor} gets a primitive-keyed index
+         */
+        public Builder<T> index(Function<T, Object> keyExtractor) {
+            return index(null, keyExtractor);
+        }
+
+        /**
+         * @param name         to query the index by
+         * @param keyExtractor generates the index key for an item.  A {@link LongKeyExtractor} gets a primitive-keyed index
+         */
+        public Builder<T> index(String name, Function<T, Object> keyExtractor) {
+            return add(new IndexSpec<>(name, keyExtractor, false));
+        }
+
+        /**
+         * @param keyExtractor generates the index key for an item.  The keys must be mutually {@link Comparable}
+         */
+        public Builder<T> orderedIndex(Function<T, ? extends Comparable<?>> keyExtractor) {
+            return orderedIndex(null, keyExtractor);
+        }
+
+        /**
+         * @param name         to query the index by
+         * @param keyExtractor generates the index key for an item.  The keys must be mutually {@link Comparable}
+         */
+        @SuppressWarnings("unchecked")
+        public Builder<T> orderedIndex(String name, Function<T, ? extends Comparable<?>> keyExtractor) {
+            return add(new IndexSpec<>(name, (Function<T, Object>) (Function<T, ?>) keyExtractor, true));
+        }
+
+        /**
+         * Adds an index keyed by the combination of several keys, which is looked up with {@link IndexedCache#compositeKey(Object...)}
+         *
+         * @param name       to query the index by
+         * @param components generate each part of the index key for an item
+         */
+        @SafeVarargs
+        public final Builder<T> compositeIndex(String name, Function<T, ?>... components) {
+            if (components.length == 0) {
+                throw new IllegalArgumentException("a composite index needs at least one component");
+            }
+            List<Function<T, ?>> parts = new ArrayList<>(components.length);
+            for (Function<T, ?> component : components) {
+                parts.add(component);
+            }
+            return add(new IndexSpec<>(name, item -> {
+                Object[] key = new Object[parts.size()];
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = parts.get(i).apply(item);
+                }
+                return List.of(key);
+            }, false));
+        }
+
+        private Builder<T> add(IndexSpec<T> spec) {
+            for (IndexSpec<T> existing : keyExtractors) {
+                if (spec.name != null && spec.name.equals(existing.name)) {
+                    throw new IllegalArgumentException("duplicate index name " + spec.name);
+                }
+            }
+            keyExtractors.add(spec);
+            return this;
+        }
+
+        public Builder<T> multiVersion(boolean multiVersion) {
+            this.multiVersion = multiVersion;
+            return this;
+        }
+
+        /**
+         * @param expiry gives the epoch millisecond at which an item expires
+         */
+        public Builder<T> expiry(ToLongFunction<T> expiry) {
+            this.expiry = expiry;
+            return this;
+        }
+
+        /**
+         * @param maxEntries the most items to keep, or 0 for no limit
+         */
+        public Builder<T> maximumEntries(long maxEntries) {
+            if (maxEntries < 0) {
+                throw new IllegalArgumentException("maxEntries cannot be negative");
+            }
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * @param maxBytes      the most (estimated) heap to use, or 0 for no limit
+         * @param sizeEstimator estimates the heap used by an item, to which the cache adds its own overhead per item
+         */
+        public Builder<T> maximumBytes(long maxBytes, ToLongFunction<T> sizeEstimator) {
+            if (maxBytes < 0) {
+                throw new IllegalArgumentException("maxBytes cannot be negative");
+            }
+            this.maxBytes = maxBytes;
+            this.sizeEstimator = Objects.requireNonNull(sizeEstimator);
+            return this;
+        }
+
+        /**
+         * @param evictionListener is passed each item evicted to keep the cache within its bounds (but not expired or explicitly evicted items)
+         */
+        public Builder<T> evictionListener(Consumer<T> evictionListener) {
+            this.evictionListener = Objects.requireNonNull(evictionListener);
+            return this;
+        }
+
+        public InMemoryIndexedCache<T> build() {
+            return new InMemoryIndexedCache<>(this);
         }
     }
 }
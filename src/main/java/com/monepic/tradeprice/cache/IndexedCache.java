@@ -1,7 +1,10 @@
 package com.monepic.tradeprice.cache;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 
 public interface IndexedCache<T> {
 
@@ -12,6 +15,25 @@ public interface IndexedCache<T> {
      */
     void addItem(T item);
 
+    /**
+     * Adds many items at once, as if by {@link #addItem(Object)} in order (so of several equal items, the last is kept), but grouping
+     * the index updates by key, so that each index bucket the items fall in is updated once for them all rather than once per item.
+     * If any item can't be indexed (e.g. a key extractor throws), none of them is added
+     *
+     * @param items the items to add, in the order they'd be added one at a time
+     */
+    void addItems(Collection<T> items);
+
+    /**
+     * Fills an empty cache with many items at once (e.g. when restoring it from a snapshot), building each index
+     * in bulk rather than an item at a time.  Of several equal items, the last is kept.
+     * Mustn't be called concurrently with any other write
+     *
+     * @param items
+     * @throws IllegalStateException if the cache isn't empty
+     */
+    void load(Collection<T> items);
+
     /**
      * @param indexOrdinal
      * @param key
@@ -19,11 +41,71 @@ public interface IndexedCache<T> {
      */
     Collection<T> getByIndexOrdinal(int indexOrdinal, Object key);
 
+    /**
+     * As {@link #getByIndexOrdinal(int, Object)}, but without boxing the key when the index was created
+     * from a {@link LongKeyExtractor}
+     *
+     * @param indexOrdinal
+     * @param key
+     * @return the items matching <b>key</b> for the index identified by <b>indexOrdinal</b>
+     */
+    Collection<T> getByIndexOrdinal(int indexOrdinal, long key);
+
+    /**
+     * @param indexName
+     * @return the ordinal of the index with the given name
+     * @throws IllegalArgumentException if there's no index with that name
+     */
+    int indexOrdinal(String indexName);
+
+    /**
+     * @param indexName
+     * @param key
+     * @return the items matching <b>key</b> for the named index
+     */
+    default Collection<T> getByIndex(String indexName, Object key) {
+        return getByIndexOrdinal(indexOrdinal(indexName), key);
+    }
+
+    /**
+     * @param indexName
+     * @param key
+     * @return the items matching <b>key</b> for the named index
+     */
+    default Collection<T> getByIndex(String indexName, long key) {
+        return getByIndexOrdinal(indexOrdinal(indexName), key);
+    }
+
+    /**
+     * @param indexOrdinal identifies an ordered index
+     * @param from         the lowest key to include, or null for no lower bound
+     * @param to           the key to stop before, or null for no upper bound
+     * @return the items with keys in the range [<b>from</b>, <b>to</b>), in key order
+     * @throws IllegalArgumentException if the index isn't ordered
+     */
+    Collection<T> getRange(int indexOrdinal, Object from, Object to);
+
+    /**
+     * @return a new query, for the items matching a key in each of several indexes
+     */
+    Query<T> query();
+
     /**
      * @return all the cache entries
      */
     Collection<T> getAll();
 
+    /**
+     * Traverses the cache a page at a time.  Each item keeps its place in the traversal when it's updated, so a traversal
+     * returns every item which is cached throughout it exactly once.  Items added or removed meanwhile may or may not be returned
+     *
+     * @param cursor the {@link Page#getNextCursor()} of the previous page, or null to start from the beginning
+     * @param limit  the most items to return
+     * @return the next page of items
+     * @throws IllegalArgumentException if <b>cursor</b> is malformed, or <b>limit</b> isn't positive
+     */
+    Page<T> getPage(String cursor, int limit);
+
     /**
      * remove all items from the cache and all indexes, where the item matches the evictionPredicate
      *
@@ -31,4 +113,119 @@ public interface IndexedCache<T> {
      * @return the removed items
      */
     Collection<T> evict(Predicate<T> evictionPredicate);
+
+    /**
+     * remove items whose expiry time has passed, from the cache and all indexes
+     *
+     * @param nowMillis the current epoch millisecond
+     * @param maxItems  the most items to remove in one call, to keep each call short
+     * @return the removed items
+     */
+    Collection<T> expire(long nowMillis, int maxItems);
+
+    /**
+     * @return the cache's current size, and what it has evicted to stay within its bounds
+     */
+    CacheStats stats();
+
+    /**
+     * Opens a point-in-time view across all the cache entries and every index.
+     * The view holds back the reclamation of old versions, so it must be closed once its results have been consumed.
+     *
+     * @return a consistent view of the cache as of the latest committed version
+     * @throws UnsupportedOperationException if the cache doesn't keep multiple versions
+     */
+    ReadView<T> snapshot();
+
+    /**
+     * A consistent, read-only view of an {@link IndexedCache} as of a single committed version
+     *
+     * @param <T> The type of object we're caching
+     */
+    interface ReadView<T> extends AutoCloseable {
+
+        /**
+         * @return the committed version this view reads at
+         */
+        long version();
+
+        /**
+         * @return all the cache entries at this version
+         */
+        Collection<T> getAll();
+
+        /**
+         * @param indexOrdinal
+         * @param key
+         * @return the items matching <b>key</b> at this version, for the index identified by <b>indexOrdinal</b>
+         */
+        Collection<T> getByIndexOrdinal(int indexOrdinal, Object key);
+
+        /**
+         * @param indexOrdinal
+         * @param key
+         * @return the items matching <b>key</b> at this version, for the index identified by <b>indexOrdinal</b>
+         */
+        Collection<T> getByIndexOrdinal(int indexOrdinal, long key);
+
+        /**
+         * @param indexOrdinal identifies an ordered index
+         * @param from         the lowest key to include, or null for no lower bound
+         * @param to           the key to stop before, or null for no upper bound
+         * @return the items at this version with keys in the range [<b>from</b>, <b>to</b>), in key order
+         */
+        Collection<T> getRange(int indexOrdinal, Object from, Object to);
+
+        /**
+         * @return a new query, answered at this version
+         */
+        Query<T> query();
+
+        @Override
+        void close();
+    }
+
+    /**
+     * A conjunction of index lookups, i.e. the items matching every one of the given keys.
+     * The query is planned when executed: it starts from the smallest of the matching buckets,
+     * and checks each of its items against the other keys, so never reads more than the smallest bucket
+     *
+     * @param <T> The type of object we're caching
+     */
+    interface Query<T> {
+
+        Query<T> where(int indexOrdinal, Object key);
+
+        Query<T> where(int indexOrdinal, long key);
+
+        Query<T> where(String indexName, Object key);
+
+        Query<T> where(String indexName, long key);
+
+        /**
+         * @return the items matching every key (or all the items, if no keys were given)
+         */
+        Collection<T> execute();
+    }
+
+    /**
+     * @param parts the keys of each component of a composite index, in the order the components were declared
+     * @return the key to look up a composite index with
+     */
+    static List<Object> compositeKey(Object... parts) {
+        return List.of(parts);
+    }
+
+    /**
+     * A key extractor producing a primitive <b>long</b> key.
+     * Declaring a key extractor with this type lets the cache back its index with a primitive-keyed map.
+     *
+     * @param <T> The type of object we're caching
+     */
+    @FunctionalInterface
+    interface LongKeyExtractor<T> extends Function<T, Object>, ToLongFunction<T> {
+
+        @Override
+        default Object apply(T item) { return applyAsLong(item); }
+    }
 }
@@ -0,0 +1,174 @@
+package com.monepic.tradeprice.cache;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+/**
+ * An open-addressing (linear probing) hash map keyed by primitive <b>long</b>s, so a lookup neither boxes the key
+ * nor allocates.
+ * <p>
+ * Reads are lock-free.  Writes are serialized, and when the table needs to grow it is rehashed into a new table
+ * which is then published in one volatile write, so a reader always probes a complete table.
+ * <p>
+ * The cache indexes never remove a mapping, as a bucket is created the first time its key is seen and then lives for the life
+ * of the cache.  A mapping which is removed (with {@link #remove(long, Object)}) leaves a tombstone, so that probes carry on past
+ * it; a tombstone's entry is reused by a later write, and tombstones are dropped when the table is rehashed.
+ *
+ * @param <V> The type of the mapped values
+ */
+public class LongKeyedConcurrentMap<V> {
+
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final Object TOMBSTONE = new Object();
+
+    private volatile Table<V> table;
+    private volatile int size;
+
+    public LongKeyedConcurrentMap(int initialCapacity) {
+        this.table = new Table<>(tableSizeFor(initialCapacity));
+    }
+
+    /**
+     * @param key
+     * @return the value mapped to <b>key</b>, or null if there isn't one
+     */
+    public V get(long key) {
+        return table.get(key);
+    }
+
+    /**
+     * Behaves like {@link java.util.Map#computeIfAbsent}, the mapping function is called at most once per key
+     *
+     * @param key
+     * @param mappingFunction
+     * @return the current (existing or computed) value mapped to <b>key</b>
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        V value = table.get(key);
+        if (value != null) {
+            return value;
+        }
+        synchronized (this) {
+            Table<V> t = table;
+            value = t.get(key);
+            if (value == null) {
+                value = mappingFunction.apply(key);
+                if (value == null) {
+                    throw new NullPointerException("mappingFunction returned null");
+                }
+                if (t.used + 1 > t.threshold) {
+                    t = t.resize(size + 1 > t.threshold);
+                }
+                t.put(key, value);
+                table = t;
+                size = size + 1;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Removes the mapping of <b>key</b> if it's to (a value equal to) <b>value</b>
+     *
+     * @param key
+     * @param value
+     * @return whether the mapping was removed
+     */
+    public synchronized boolean remove(long key, V value) {
+        if (table.remove(key, value)) {
+            size = size - 1;
+            return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int needed = (int) Math.min(MAX_CAPACITY, Math.max(2, (long) (capacity / LOAD_FACTOR)));
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    private static final class Table<V> {
+
+        final long[] keys;
+        // a non-null value marks an occupied slot, and its volatile write publishes the key written just before it
+        final AtomicReferenceArray<Object> values;
+        final int mask, threshold;
+        int used; // the occupied slots, including tombstones
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+            this.threshold = capacity == MAX_CAPACITY ? Integer.MAX_VALUE : (int) (capacity * LOAD_FACTOR);
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key) {
+            for (int i = slot(key); ; i = (i + 1) & mask) {
+                Object value = values.get(i);
+                if (value == null) {
+                    return null;
+                }
+                if (value != TOMBSTONE && keys[i] == key) {
+                    return (V) value;
+                }
+            }
+        }
+
+        // only called by the (single) writer, for a key that isn't present, with room to spare
+        void put(long key, V value) {
+            int i = slot(key);
+            Object current;
+            while ((current = values.get(i)) != null && current != TOMBSTONE) {
+                i = (i + 1) & mask;
+            }
+            if (current == null) {
+                used++;
+            }
+            keys[i] = key;
+            values.set(i, value);
+        }
+
+        // only called by the (single) writer
+        boolean remove(long key, V value) {
+            for (int i = slot(key); ; i = (i + 1) & mask) {
+                Object current = values.get(i);
+                if (current == null) {
+                    return false;
+                }
+                if (current != TOMBSTONE && keys[i] == key) {
+                    if (!current.equals(value)) {
+                        return false;
+                    }
+                    values.set(i, TOMBSTONE);
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @param grow whether to double the capacity, rather than just drop the tombstones
+         */
+        @SuppressWarnings("unchecked")
+        Table<V> resize(boolean grow) {
+            Table<V> rehashed = new Table<>(grow ? keys.length << 1 : keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                Object value = values.get(i);
+                if (value != null && value != TOMBSTONE) {
+                    rehashed.put(keys[i], (V) value);
+                }
+            }
+            return rehashed;
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L; // fibonacci hashing, to spread sequential ids
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
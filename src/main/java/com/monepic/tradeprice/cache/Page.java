@@ -0,0 +1,61 @@
+package com.monepic.tradeprice.cache;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a traversal, and the cursor to resume the traversal from (or null if it's finished).
+ * Cursors are opaque to callers; each cache encodes its own position in them
+ *
+ * @param <T> The type of object we're caching
+ */
+public final class Page<T> {
+
+    private final List<T> items;
+    private final String nextCursor;
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() { return items; }
+
+    public String getNextCursor() { return nextCursor; }
+
+    /**
+     * @return a cursor for the given position
+     */
+    public static String cursor(long position) {
+        return Long.toString(position, Character.MAX_RADIX);
+    }
+
+    /**
+     * @param cursor a cursor from {@link #cursor(long)}, or null to start from the beginning
+     * @return the position in <b>cursor</b>, or 0 if it's null
+     * @throws IllegalArgumentException if <b>cursor</b> is malformed
+     */
+    public static long position(String cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            long position = Long.parseLong(cursor, Character.MAX_RADIX);
+            if (position < 0) {
+                throw new IllegalArgumentException("bad cursor: " + cursor);
+            }
+            return position;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad cursor: " + cursor);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if <b>limit</b> isn't positive
+     */
+    public static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.monepic.tradeprice.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A segmented LRU eviction policy, bounding a cache by number of entries and/or by total (estimated) weight.
+ * <p>
+ * A new entry is admitted to the <b>probationary</b> segment.  An entry which replaces one that is still tracked (i.e. an update
+ * of a key already in the cache) is promoted to the <b>protected</b> segment, which holds up to 80% of the capacity and demotes
+ * its least recently used entries back to probation when full.  Victims are taken from the cold end of probation first, so a
+ * burst of one-off keys only displaces other one-off keys, rather than flushing the keys which are regularly updated.
+ * <p>
+ * Entries are tracked by identity, so that a superseded or concurrently removed version of an item is never mistaken for the
+ * current one.  The policy only keeps the books - the cache removes the entries returned by {@link #evict()}.
+ *
+ * @param <E> The type of the tracked entries
+ */
+public class SegmentedLru<E> {
+
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final long maxEntries, maxWeight, maxProtectedEntries, maxProtectedWeight;
+    private final Map<E, Node<E>> nodes = new IdentityHashMap<>();
+    private final Segment<E> probation = new Segment<>(), protectedSegment = new Segment<>();
+    private long evictions, evictedWeight;
+
+    /**
+     * @param maxEntries the most entries to keep, or 0 for no limit
+     * @param maxWeight  the most total weight to keep, or 0 for no limit
+     */
+    public SegmentedLru(long maxEntries, long maxWeight) {
+        if (maxEntries < 0 || maxWeight < 0) {
+            throw new IllegalArgumentException("limits cannot be negative");
+        }
+        this.maxEntries = maxEntries == 0 ? Long.MAX_VALUE : maxEntries;
+        this.maxWeight = maxWeight == 0 ? Long.MAX_VALUE : maxWeight;
+        this.maxProtectedEntries = (long) (this.maxEntries * PROTECTED_SHARE);
+        this.maxProtectedWeight = (long) (this.maxWeight * PROTECTED_SHARE);
+    }
+
+    /**
+     * Starts tracking <b>entry</b>, in place of <b>previous</b> if given
+     *
+     * @param entry
+     * @param weight
+     * @param previous the version of the same item which <b>entry</b> replaces, or null
+     */
+    public synchronized void admit(E entry, long weight, E previous) {
+        Node<E> replaced = previous == null ? null : nodes.remove(previous);
+        Node<E> node = new Node<>(entry, weight);
+        nodes.put(entry, node);
+        if (replaced == null) {
+            probation.addFirst(node);
+            return;
+        }
+        replaced.segment.unlink(replaced);
+        protectedSegment.addFirst(node);
+        while (protectedSegment.size > maxProtectedEntries || protectedSegment.weight > maxProtectedWeight) {
+            Node<E> demoted = protectedSegment.tail;
+            protectedSegment.unlink(demoted);
+            probation.addFirst(demoted);
+        }
+    }
+
+    /**
+     * Stops tracking <b>entry</b>, e.g. when it has expired
+     *
+     * @param entry
+     * @return whether <b>entry</b> was tracked
+     */
+    public synchronized boolean remove(E entry) {
+        Node<E> node = nodes.remove(entry);
+        if (node == null) {
+            return false;
+        }
+        node.segment.unlink(node);
+        return true;
+    }
+
+    /**
+     * Stops tracking entries until the limits are met again
+     *
+     * @return the victims, coldest first, which the caller should remove from the cache
+     */
+    public synchronized List<E> evict() {
+        if (!overLimit()) {
+            return Collections.emptyList();
+        }
+        List<E> victims = new ArrayList<>();
+        do {
+            Node<E> victim = probation.tail != null ? probation.tail : protectedSegment.tail;
+            victim.segment.unlink(victim);
+            nodes.remove(victim.entry);
+            evictions++;
+            evictedWeight += victim.weight;
+            victims.add(victim.entry);
+        } while (overLimit());
+        return victims;
+    }
+
+    private boolean overLimit() {
+        return size() > maxEntries || weight() > maxWeight;
+    }
+
+    public synchronized long size() {
+        return probation.size + protectedSegment.size;
+    }
+
+    public synchronized long weight() {
+        return probation.weight + protectedSegment.weight;
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(size(), weight(), evictions, evictedWeight);
+    }
+
+    private static final class Node<E> {
+
+        final E entry;
+        final long weight;
+        Segment<E> segment;
+        Node<E> prev, next;
+
+        Node(E entry, long weight) {
+            this.entry = entry;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * An intrusive doubly linked list, most recently admitted first
+     */
+    private static final class Segment<E> {
+
+        Node<E> head, tail;
+        long size, weight;
+
+        void addFirst(Node<E> node) {
+            node.segment = this;
+            node.prev = null;
+            node.next = head;
+            if (head == null) {
+                tail = node;
+            } else {
+                head.prev = node;
+            }
+            head = node;
+            size++;
+            weight += node.weight;
+        }
+
+        void unlink(Node<E> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = node.next = null;
+            node.segment = null;
+            size--;
+            weight -= node.weight;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.monepic.tradeprice.config;
+
+import com.monepic.tradeprice.service.BarAggregator;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The intervals each Instrument's open/high/low/close bars are aggregated over, and how many finished bars are kept per interval, e.g.
+ * <pre>
+ * price.bars.intervals=1s,1m,5m
+ * price.bars.history=60
+ * </pre>
+ * No <b>intervals</b> disables the bars.
+ */
+@ConfigurationProperties("price.bars")
+public class BarProperties {
+
+    private List<Duration> intervals = BarAggregator.DEFAULT_INTERVALS;
+    private int history = BarAggregator.DEFAULT_HISTORY;
+
+    public List<Duration> getIntervals() { return intervals; }
+
+    public void setIntervals(List<Duration> intervals) { this.intervals = intervals; }
+
+    public int getHistory() { return history; }
+
+    public void setHistory(int history) { this.history = history; }
+}
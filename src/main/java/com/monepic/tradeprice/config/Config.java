@@ -1,38 +1,152 @@
 package com.monepic.tradeprice.config;
 
+import com.monepic.tradeprice.jms.MessagePublisher;
+import com.monepic.tradeprice.journal.PriceJournal;
+import com.monepic.tradeprice.journal.PriceSnapshot;
+import com.monepic.tradeprice.model.ReferenceDataRegistry;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.model.requests.NewPriceRequestValidator;
+import com.monepic.tradeprice.service.BarAggregatingTradePriceServiceWrapper;
+import com.monepic.tradeprice.service.BarAggregator;
+import com.monepic.tradeprice.service.CacheLimits;
 import com.monepic.tradeprice.service.InMemoryFilteringTradePriceService;
 import com.monepic.tradeprice.service.InMemoryIndexedCacheTradePriceService;
 import com.monepic.tradeprice.service.JMSPublishingTradePriceServiceWrapper;
+import com.monepic.tradeprice.service.JournalingTradePriceServiceWrapper;
+import com.monepic.tradeprice.service.OffHeapColumnarTradePriceService;
+import com.monepic.tradeprice.service.RetentionPolicy;
+import com.monepic.tradeprice.service.TickHistory;
 import com.monepic.tradeprice.service.TradePriceService;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
-import org.springframework.jms.core.JmsTemplate;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 @Configuration
 @EnableScheduling
+@EnableConfigurationProperties({RetentionProperties.class, PriceScaleProperties.class, JournalProperties.class, BarProperties.class})
 public class Config {
 
     @Value("${price.evict.days:30}")
     private int daysToKeep;
 
+    @Value("${price.cache.multi-version:false}")
+    private boolean multiVersion;
+
+    @Value("${price.cache.max-entries:0}")
+    private long maxEntries;
+
+    @Value("${price.cache.max-bytes:0}")
+    private DataSize maxBytes;
+
+    @Value("${price.history.depth:" + TickHistory.DEFAULT_DEPTH + "}")
+    private int historyDepth;
+
+    @Bean
+    ReferenceDataRegistry referenceDataRegistry(PriceScaleProperties priceScale) {
+        return new ReferenceDataRegistry(priceScale.getDefaultScale(), priceScale.getInstrument());
+    }
+
+    @Bean
+    NewPriceRequestValidator newPriceRequestValidator() {
+        return new NewPriceRequestValidator();
+    }
+
+    @Bean
+    CacheLimits cacheLimits() {
+        return new CacheLimits(maxEntries, maxBytes.toBytes());
+    }
+
+    @Bean
+    RetentionPolicy retentionPolicy(RetentionProperties retention) {
+        return new RetentionPolicy(Duration.ofDays(daysToKeep), retention.getVendor(), retention.getInstrument());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "price.journal", name = "enabled", havingValue = "true")
+    PriceJournal priceJournal(JournalProperties journal) throws IOException {
+        int segmentSize;
+        try {
+            segmentSize = Math.toIntExact(journal.getSegmentSize().toBytes());
+        } catch (ArithmeticException e) {
+            // a segment is mapped into memory whole, so has to fit a ByteBuffer
+            throw new IllegalArgumentException("price.journal.segment-size must be less than 2GB, was " + journal.getSegmentSize());
+        }
+        return new PriceJournal(Path.of(journal.getDirectory()), segmentSize, journal.getFsync(), journal.getFsyncInterval());
+    }
+
+    @Bean
+    BarAggregator barAggregator(MessagePublisher publisher, BarProperties bars) {
+        return new BarAggregator(bars.getIntervals(), bars.getHistory(), bar -> publisher.publish("bar-out", null, bar));
+    }
+
     @Bean("tradePriceService")
-    @Profile("!filteredCache")
-    TradePriceService imIcTradePriceService(@Qualifier("pubSubJmsTemplate") JmsTemplate jms) {
+    @Profile("!filteredCache & !offHeapCache")
+    TradePriceService imIcTradePriceService(MessagePublisher publisher, RetentionPolicy retentionPolicy, CacheLimits limits,
+                                            ObjectProvider<PriceJournal> journal, JournalProperties journalProperties,
+                                            ReferenceDataRegistry registry, BarAggregator bars) throws IOException {
         return new JMSPublishingTradePriceServiceWrapper(
-                new InMemoryIndexedCacheTradePriceService(daysToKeep), jms, "new-price-out"
+                new BarAggregatingTradePriceServiceWrapper(
+                        journaled(new InMemoryIndexedCacheTradePriceService(retentionPolicy, multiVersion, limits, historyDepth), journal.getIfAvailable(), journalProperties, registry), bars),
+                publisher, "new-price-out", "price-expired-out", "best-price-out"
         );
     }
 
     @Bean("tradePriceService")
     @Profile("filteredCache")
-    TradePriceService imfTradePriceService(@Qualifier("pubSubJmsTemplate") JmsTemplate jms) {
+    TradePriceService imfTradePriceService(MessagePublisher publisher, RetentionPolicy retentionPolicy, CacheLimits limits,
+                                           ObjectProvider<PriceJournal> journal, JournalProperties journalProperties,
+                                           ReferenceDataRegistry registry, BarAggregator bars) throws IOException {
         return new JMSPublishingTradePriceServiceWrapper(
-                new InMemoryFilteringTradePriceService(daysToKeep), jms, "new-price-out"
+                new BarAggregatingTradePriceServiceWrapper(
+                        journaled(new InMemoryFilteringTradePriceService(retentionPolicy, limits, historyDepth), journal.getIfAvailable(), journalProperties, registry), bars),
+                publisher, "new-price-out", "price-expired-out", "best-price-out"
         );
     }
-}
 
+    @Bean("tradePriceService")
+    @Profile("offHeapCache")
+    TradePriceService ohcTradePriceService(MessagePublisher publisher, RetentionPolicy retentionPolicy, CacheLimits limits,
+                                           ObjectProvider<PriceJournal> journal, JournalProperties journalProperties,
+                                           ReferenceDataRegistry registry, BarAggregator bars) throws IOException {
+        return new JMSPublishingTradePriceServiceWrapper(
+                new BarAggregatingTradePriceServiceWrapper(
+                        journaled(new OffHeapColumnarTradePriceService(retentionPolicy, limits, historyDepth), journal.getIfAvailable(), journalProperties, registry), bars),
+                publisher, "new-price-out", "price-expired-out", "best-price-out"
+        );
+    }
+
+    /**
+     * Restores <b>service</b> from the latest snapshot and the journal since, if there's a journal, and journals its updates from now on
+     */
+    private static TradePriceService journaled(TradePriceService service, PriceJournal journal, JournalProperties properties,
+                                               ReferenceDataRegistry registry) throws IOException {
+        if (journal == null) {
+            return service;
+        }
+        int threads = properties.getReplayThreads();
+        PriceSnapshot snapshot = PriceSnapshot.readLatest(journal.getDirectory(), threads);
+        Queue<VendorInstrumentPrice> restored = new ConcurrentLinkedQueue<>();
+        journal.replay(snapshot == null ? List.of() : snapshot.getPrices(), snapshot == null ? 0 : snapshot.getCheckpoint(),
+                vip -> restored.add(registry.canonicalize(vip)), threads);
+        service.load(restored);
+
+        JournalingTradePriceServiceWrapper journaling = new JournalingTradePriceServiceWrapper(service, journal);
+        if (!properties.getSnapshotInterval().isZero()) {
+            journaling.scheduleSnapshots(properties.getSnapshotInterval());
+        }
+        return journaling;
+    }
+}
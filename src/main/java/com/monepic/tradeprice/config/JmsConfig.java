@@ -1,16 +1,27 @@
 package com.monepic.tradeprice.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monepic.tradeprice.jms.AsyncJmsPublisher;
+import com.monepic.tradeprice.jms.BinaryPriceCodec;
+import com.monepic.tradeprice.jms.BinaryPriceMessageConverter;
+import com.monepic.tradeprice.jms.PriceMessageConverter;
+import com.monepic.tradeprice.model.PriceJsonModule;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.context.properties.PropertyMapper;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jms.core.JmsTemplate;
-import org.springframework.jms.support.converter.MappingJackson2MessageConverter;
 import org.springframework.jms.support.converter.MessageConverter;
-import org.springframework.jms.support.converter.MessageType;
 
 import javax.jms.ConnectionFactory;
+import java.util.HashMap;
+import java.util.Map;
 
 @Configuration
+@EnableConfigurationProperties(PublisherProperties.class)
 public class JmsConfig {
 
     @Bean
@@ -23,10 +34,37 @@ public class JmsConfig {
     }
 
     @Bean
-    public MessageConverter jmsMessageConverter() {
-        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
-        converter.setTargetType(MessageType.TEXT);
+    public AsyncJmsPublisher jmsPublisher(@Qualifier("pubSubJmsTemplate") JmsTemplate jms, PublisherProperties publisher,
+                                          ObjectProvider<ObjectMapper> objectMapper) {
+        Map<String, MessageConverter> converters = new HashMap<>();
+        if (!publisher.getBinaryDestinations().isEmpty()) {
+            BinaryPriceMessageConverter binary = new BinaryPriceMessageConverter(publisher.isDeflateBatches());
+            objectMapper.ifAvailable(binary::setObjectMapper);
+            binary.setTypeIdPropertyName("_type");
+            publisher.getBinaryDestinations().forEach(destination -> converters.put(destination, binary));
+        }
+        return new AsyncJmsPublisher(jms, converters, publisher.getQueueCapacity(), publisher.getBatchSize(), publisher.isConflate(),
+                publisher.isPersistent());
+    }
+
+    /**
+     * Uses the application's ObjectMapper, if there is one, so that messages are written as the REST responses are, and each price's
+     * JSON (see {@link PriceJsonModule}) is shared by both.  Prices received in the binary format are read too, up to
+     * <b>maxInflatedBytes</b> per deflated batch.
+     */
+    @Bean
+    public MessageConverter jmsMessageConverter(ObjectProvider<ObjectMapper> objectMapper,
+                                                @Value("${price.jms.input.max-inflated-bytes:" + BinaryPriceCodec.DEFAULT_MAX_INFLATED_BYTES + "}")
+                                                        int maxInflatedBytes) {
+        PriceMessageConverter converter = new PriceMessageConverter();
+        converter.setMaxInflatedBytes(maxInflatedBytes);
+        objectMapper.ifAvailable(converter::setObjectMapper);
         converter.setTypeIdPropertyName("_type");
         return converter;
     }
+
+    @Bean
+    public PriceJsonModule priceJsonModule() {
+        return new PriceJsonModule();
+    }
 }
@@ -0,0 +1,59 @@
+package com.monepic.tradeprice.config;
+
+import com.monepic.tradeprice.journal.FsyncPolicy;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * The write-ahead journal of price updates, and the snapshots it's truncated after, which are restored on startup, e.g.
+ * <pre>
+ * price.journal.enabled=true
+ * price.journal.directory=./journal
+ * price.journal.segment-size=64MB
+ * price.journal.fsync=interval
+ * price.journal.fsync-interval=100ms
+ * price.journal.snapshot-interval=5m
+ * </pre>
+ * A <b>snapshot-interval</b> of zero disables snapshots.
+ */
+@ConfigurationProperties("price.journal")
+public class JournalProperties {
+
+    private boolean enabled;
+    private String directory = "./journal";
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+    private FsyncPolicy fsync = FsyncPolicy.INTERVAL;
+    private Duration fsyncInterval = Duration.ofMillis(100);
+    private int replayThreads = Runtime.getRuntime().availableProcessors();
+    private Duration snapshotInterval = Duration.ofMinutes(5);
+
+    public boolean isEnabled() { return enabled; }
+
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public String getDirectory() { return directory; }
+
+    public void setDirectory(String directory) { this.directory = directory; }
+
+    public DataSize getSegmentSize() { return segmentSize; }
+
+    public void setSegmentSize(DataSize segmentSize) { this.segmentSize = segmentSize; }
+
+    public FsyncPolicy getFsync() { return fsync; }
+
+    public void setFsync(FsyncPolicy fsync) { this.fsync = fsync; }
+
+    public Duration getFsyncInterval() { return fsyncInterval; }
+
+    public void setFsyncInterval(Duration fsyncInterval) { this.fsyncInterval = fsyncInterval; }
+
+    public int getReplayThreads() { return replayThreads; }
+
+    public void setReplayThreads(int replayThreads) { this.replayThreads = replayThreads; }
+
+    public Duration getSnapshotInterval() { return snapshotInterval; }
+
+    public void setSnapshotInterval(Duration snapshotInterval) { this.snapshotInterval = snapshotInterval; }
+}
@@ -0,0 +1,29 @@
+package com.monepic.tradeprice.config;
+
+import com.monepic.tradeprice.model.Instrument;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The number of decimal places prices are held to, by default and per Instrument (by symbol), e.g.
+ * <pre>
+ * price.scale.default-scale=6
+ * price.scale.instrument.VOD=4
+ * </pre>
+ */
+@ConfigurationProperties("price.scale")
+public class PriceScaleProperties {
+
+    private int defaultScale = Instrument.DEFAULT_PRICE_SCALE;
+    private Map<String, Integer> instrument = new HashMap<>();
+
+    public int getDefaultScale() { return defaultScale; }
+
+    public void setDefaultScale(int defaultScale) { this.defaultScale = defaultScale; }
+
+    public Map<String, Integer> getInstrument() { return instrument; }
+
+    public void setInstrument(Map<String, Integer> instrument) { this.instrument = instrument; }
+}
@@ -0,0 +1,54 @@
+package com.monepic.tradeprice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Set;
+
+/**
+ * How the prices, expiries, tops of book and bars are published over JMS, e.g.
+ * <pre>
+ * price.jms.queue-capacity=65536
+ * price.jms.batch-size=256
+ * price.jms.conflate=true
+ * price.jms.persistent=false
+ * price.jms.binary-destinations=new-price-out,price-expired-out
+ * price.jms.deflate-batches=true
+ * </pre>
+ * With <b>conflate</b>, only the latest queued price of each Vendor/Instrument (and top of book of each Instrument) is sent
+ * when the broker lags.  Prices, and batches of them, are sent to the <b>binary-destinations</b> in a compact binary format rather than
+ * as JSON, the batches deflated if <b>deflate-batches</b>.
+ */
+@ConfigurationProperties("price.jms")
+public class PublisherProperties {
+
+    private int queueCapacity = 1 << 16;
+    private int batchSize = 256;
+    private boolean conflate;
+    private boolean persistent = true;
+    private Set<String> binaryDestinations = Set.of();
+    private boolean deflateBatches = true;
+
+    public int getQueueCapacity() { return queueCapacity; }
+
+    public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+
+    public int getBatchSize() { return batchSize; }
+
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+    public boolean isConflate() { return conflate; }
+
+    public void setConflate(boolean conflate) { this.conflate = conflate; }
+
+    public boolean isPersistent() { return persistent; }
+
+    public void setPersistent(boolean persistent) { this.persistent = persistent; }
+
+    public Set<String> getBinaryDestinations() { return binaryDestinations; }
+
+    public void setBinaryDestinations(Set<String> binaryDestinations) { this.binaryDestinations = binaryDestinations; }
+
+    public boolean isDeflateBatches() { return deflateBatches; }
+
+    public void setDeflateBatches(boolean deflateBatches) { this.deflateBatches = deflateBatches; }
+}
@@ -0,0 +1,29 @@
+package com.monepic.tradeprice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per Vendor (by id) and per Instrument (by symbol) overrides of the default price retention period, e.g.
+ * <pre>
+ * price.retention.vendor.1=7d
+ * price.retention.instrument.VOD=12h
+ * </pre>
+ */
+@ConfigurationProperties("price.retention")
+public class RetentionProperties {
+
+    private Map<Long, Duration> vendor = new HashMap<>();
+    private Map<String, Duration> instrument = new HashMap<>();
+
+    public Map<Long, Duration> getVendor() { return vendor; }
+
+    public void setVendor(Map<Long, Duration> vendor) { this.vendor = vendor; }
+
+    public Map<String, Duration> getInstrument() { return instrument; }
+
+    public void setInstrument(Map<String, Duration> instrument) { this.instrument = instrument; }
+}
@@ -0,0 +1,28 @@
+package com.monepic.tradeprice.integration;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stamps new prices with the server's time as they arrive, each strictly later than the one stamped before it (by a nanosecond, if the
+ * clock hasn't moved on since, or has gone back), so that prices stamped in the order they're applied have timestamps in that order
+ * too, and no two have the same one.  Thread safe.
+ */
+final class ArrivalClock {
+
+    private static final AtomicReference<Instant> LAST = new AtomicReference<>(Instant.EPOCH);
+
+    private ArrivalClock() {}
+
+    static Instant next() {
+        Instant now = Instant.now();
+        return LAST.accumulateAndGet(now, (last, next) -> next.isAfter(last) ? next : last.plusNanos(1));
+    }
+
+    /**
+     * Makes sure every timestamp from now on is later than <b>stamped</b>, which was derived from one of this clock's
+     */
+    static void advancePast(Instant stamped) {
+        LAST.accumulateAndGet(stamped, (last, next) -> next.isAfter(last) ? next : last);
+    }
+}
@@ -0,0 +1,160 @@
+package com.monepic.tradeprice.integration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jms.support.JmsUtils;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Consumes a queue in batches, on <b>consumers</b> threads, each with its own session.  A batch is closed after <b>batchSize</b>
+ * messages, or <b>batchTime</b> after its first message, whichever is sooner; it's then passed to the handler, and acknowledged
+ * as a whole (by committing the transacted session, or by client acknowledgement) once the handler returns.  If the handler throws,
+ * the batch is rolled back (or recovered) to be redelivered.
+ * <p>
+ * The messages of a batch are in the order they were received.  With more than one consumer, the broker shares the messages between
+ * them, so the order of related messages is only kept if the producers group them (e.g. by ActiveMQ's <code>JMSXGroupID</code>,
+ * which sends every message of a group to the same consumer).
+ */
+public class BatchingJmsConsumer implements SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingJmsConsumer.class);
+    private static final long POLL_MILLIS = 500, RECONNECT_MILLIS = 1000;
+
+    public enum Acknowledge {TRANSACTED, CLIENT}
+
+    private final ConnectionFactory connectionFactory;
+    private final String queue;
+    private final int consumers, batchSize;
+    private final long batchMillis;
+    private final Acknowledge acknowledge;
+    private final Consumer<List<Message>> handler;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    public BatchingJmsConsumer(ConnectionFactory connectionFactory, String queue, int consumers, int batchSize, Duration batchTime,
+                               Acknowledge acknowledge, Consumer<List<Message>> handler) {
+        if (consumers <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("consumers and batchSize must be positive");
+        }
+        this.connectionFactory = connectionFactory;
+        this.queue = queue;
+        this.consumers = consumers;
+        this.batchSize = batchSize;
+        this.batchMillis = Math.max(1, batchTime.toMillis());
+        this.acknowledge = acknowledge;
+        this.handler = handler;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < consumers; i++) {
+            Thread thread = new Thread(this::run, queue + "-consumer-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        for (Thread thread : threads) {
+            try {
+                thread.join(POLL_MILLIS * 4);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        threads.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        while (running) {
+            Connection connection = null;
+            Session session = null;
+            try {
+                connection = connectionFactory.createConnection();
+                session = acknowledge == Acknowledge.TRANSACTED
+                        ? connection.createSession(true, Session.SESSION_TRANSACTED)
+                        : connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+                MessageConsumer consumer = session.createConsumer(session.createQueue(queue));
+                connection.start();
+                consumeBatches(session, consumer);
+            } catch (JMSException | RuntimeException e) {
+                LOG.warn("Failed consuming {}, reconnecting", queue, e);
+                sleep();
+            } finally {
+                JmsUtils.closeSession(session);
+                JmsUtils.closeConnection(connection);
+            }
+        }
+    }
+
+    private void consumeBatches(Session session, MessageConsumer consumer) throws JMSException {
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running) {
+            Message first = consumer.receive(POLL_MILLIS);
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            long deadline = System.currentTimeMillis() + batchMillis;
+            while (batch.size() < batchSize) {
+                long remaining = deadline - System.currentTimeMillis();
+                Message next = remaining <= 0 ? consumer.receiveNoWait() : consumer.receive(remaining);
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+            }
+            try {
+                handler.accept(batch);
+            } catch (RuntimeException e) {
+                LOG.error("Failed handling a batch of {} messages from {}, which will be redelivered", batch.size(), queue, e);
+                if (acknowledge == Acknowledge.TRANSACTED) {
+                    session.rollback();
+                } else {
+                    session.recover();
+                }
+                batch.clear();
+                continue;
+            }
+            if (acknowledge == Acknowledge.TRANSACTED) {
+                session.commit();
+            } else {
+                // acknowledges every message the session has received
+                batch.get(batch.size() - 1).acknowledge();
+            }
+            batch.clear();
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(RECONNECT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
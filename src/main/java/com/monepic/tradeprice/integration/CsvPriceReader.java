@@ -0,0 +1,261 @@
+package com.monepic.tradeprice.integration;
+
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.ReferenceDataRegistry;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.model.requests.NewPriceRequestValidator;
+import com.monepic.tradeprice.utils.MappedCsvReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Reads a CSV file of new prices straight into {@link VendorInstrumentPrice}s, in batches.
+ * <p>
+ * The file's first line names its columns, as the properties of a {@link com.monepic.tradeprice.model.requests.NewPriceRequest}
+ * (<code>vendorId,vendorName,vendorDescription,instrumentSymbol,instrumentDescription,bid,ask</code>, in any order), and they're
+ * looked up once per file.  Each row's Vendor and Instrument are looked up in a small cache of those already seen in the file, so that
+ * only a row with new reference data creates any Strings, or goes to the {@link ReferenceDataRegistry}; and each row's price is
+ * checked by the {@link NewPriceRequestValidator}, by the same rules as a NewPriceRequest, before any new reference data is registered.
+ * <p>
+ * A row which is malformed or invalid is passed to the error handler, with its line number, and skipped.
+ * <p>
+ * Each row is timestamped with the time the file started being read (see {@link ArrivalClock}) plus its line number in nanoseconds, so
+ * the rows' timestamps are distinct and in the order of the file, however the file is split to be read.
+ * <p>
+ * A large file can be read in chunks, parsed in parallel, and still be handed on in order.
+ */
+public class CsvPriceReader {
+
+    private static final int CACHE_SIZE = 1 << 10;
+
+    private final ReferenceDataRegistry registry;
+    private final NewPriceRequestValidator validator;
+    private final int batchSize;
+
+    public CsvPriceReader(ReferenceDataRegistry registry, int batchSize) {
+        this(registry, new NewPriceRequestValidator(), batchSize);
+    }
+
+    public CsvPriceReader(ReferenceDataRegistry registry, NewPriceRequestValidator validator, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.registry = registry;
+        this.validator = validator;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param batches passed each batch of prices, in the order they're in the file; a batch isn't used again once passed
+     * @param errors  passed the line number and the problem with each row that's skipped
+     * @throws IllegalArgumentException if the file has no header, or is missing a required column
+     */
+    public void read(Path file, Consumer<List<VendorInstrumentPrice>> batches, BiConsumer<Long, RuntimeException> errors)
+            throws IOException {
+        Instant start = ArrivalClock.next();
+        try (MappedCsvReader csv = new MappedCsvReader(file)) {
+            ArrivalClock.advancePast(line(start, readRecords(csv, readHeader(file, csv), start, batches, errors)));
+        }
+    }
+
+    /**
+     * As {@link #read(Path, Consumer, BiConsumer)}, but splits the file at record boundaries into chunks of about <b>chunkBytes</b>,
+     * which are parsed in parallel on <b>pool</b>.  The batches and errors are still passed on in the order of the file, one chunk at a
+     * time, on the calling thread, while the next chunks are parsed; at most two chunks per thread of the pool are parsed ahead.
+     */
+    public void read(Path file, ForkJoinPool pool, long chunkBytes, Consumer<List<VendorInstrumentPrice>> batches,
+                     BiConsumer<Long, RuntimeException> errors) throws IOException {
+        Instant start = ArrivalClock.next();
+        Columns columns;
+        List<MappedCsvReader.Range> ranges;
+        try (MappedCsvReader csv = new MappedCsvReader(file)) {
+            columns = readHeader(file, csv);
+            ranges = csv.split(chunkBytes);
+        }
+        int lookAhead = pool.getParallelism() * 2, next = 0;
+        Deque<ForkJoinTask<Chunk>> parsing = new ArrayDeque<>(lookAhead);
+        try {
+            while (!parsing.isEmpty() || next < ranges.size()) {
+                while (next < ranges.size() && parsing.size() < lookAhead) {
+                    MappedCsvReader.Range range = ranges.get(next++);
+                    parsing.add(pool.submit(() -> parse(file, range, columns, start)));
+                }
+                Chunk chunk = parsing.poll().join();
+                chunk.errors.forEach(error -> errors.accept(error.line, error.exception));
+                chunk.batches.forEach(batches);
+                ArrivalClock.advancePast(line(start, chunk.lastLine));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            parsing.forEach(task -> task.cancel(false));
+        }
+    }
+
+    private Chunk parse(Path file, MappedCsvReader.Range range, Columns columns, Instant start) {
+        Chunk chunk = new Chunk();
+        try (MappedCsvReader csv = new MappedCsvReader(file, range)) {
+            chunk.lastLine = readRecords(csv, columns, start, chunk.batches::add, (line, e) -> chunk.errors.add(new RowError(line, e)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return chunk;
+    }
+
+    private static Columns readHeader(Path file, MappedCsvReader csv) throws IOException {
+        if (!csv.next()) {
+            throw new IllegalArgumentException(file + " has no header");
+        }
+        return new Columns(csv);
+    }
+
+    /**
+     * @return the timestamp of the row on <b>line</b> of a file which started being read at <b>start</b>
+     */
+    private static Instant line(Instant start, long line) {
+        return start.plusNanos(line);
+    }
+
+    /**
+     * @return the last line read
+     */
+    private long readRecords(MappedCsvReader csv, Columns columns, Instant start, Consumer<List<VendorInstrumentPrice>> batches,
+                             BiConsumer<Long, RuntimeException> errors) throws IOException {
+        Vendor[] vendors = new Vendor[CACHE_SIZE];
+        Instrument[] instruments = new Instrument[CACHE_SIZE];
+        List<VendorInstrumentPrice> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                if (!csv.next()) {
+                    break;
+                }
+            } catch (IllegalArgumentException e) {
+                errors.accept(csv.getLine(), e);
+                continue;
+            }
+            try {
+                batch.add(toPrice(csv, columns, vendors, instruments, line(start, csv.getLine())));
+            } catch (RuntimeException e) {
+                errors.accept(csv.getLine(), e);
+                continue;
+            }
+            if (batch.size() == batchSize) {
+                batches.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.accept(batch);
+        }
+        return csv.getLine();
+    }
+
+    private VendorInstrumentPrice toPrice(MappedCsvReader csv, Columns columns, Vendor[] vendors, Instrument[] instruments,
+                                          Instant timestamp) {
+        if (csv.size() != columns.count) {
+            throw new IllegalArgumentException("expected " + columns.count + " fields, found " + csv.size());
+        }
+        // reference data not seen before is only registered once the price is known to be valid
+        int vendorSlot = -1;
+        Vendor vendor = null;
+        if (!csv.isEmpty(columns.vendorId)) {
+            long vendorId = csv.getLong(columns.vendorId);
+            vendorSlot = Long.hashCode(vendorId) & (CACHE_SIZE - 1);
+            vendor = vendors[vendorSlot];
+            if (vendor == null || vendor.getId() != vendorId || !csv.matches(columns.vendorName, vendor.getName())
+                    || !csv.matches(columns.vendorDescription, vendor.getDescription())) {
+                vendor = null;
+            }
+        }
+        boolean newVendor = vendor == null;
+        if (newVendor) {
+            vendor = new Vendor(vendorSlot < 0 ? null : csv.getLong(columns.vendorId), csv.getString(columns.vendorName),
+                    csv.getString(columns.vendorDescription));
+        }
+        int instrumentSlot = csv.hash(columns.instrumentSymbol) & (CACHE_SIZE - 1);
+        Instrument instrument = instruments[instrumentSlot];
+        boolean newInstrument = instrument == null || !csv.matches(columns.instrumentSymbol, instrument.getSymbol())
+                || !csv.matches(columns.instrumentDescription, instrument.getDescription());
+        if (newInstrument) {
+            String symbol = csv.getString(columns.instrumentSymbol);
+            instrument = new Instrument(symbol, csv.getString(columns.instrumentDescription), registry.priceScale(symbol));
+        }
+        int scale = instrument.getPriceScale();
+        VendorInstrumentPrice vip = new VendorInstrumentPrice(vendor, instrument, csv.getFixedPoint(columns.bid, scale),
+                csv.getFixedPoint(columns.ask, scale), scale, timestamp);
+        String problems = validator.describe(vip);
+        if (problems != null) {
+            throw new IllegalArgumentException(problems);
+        }
+        if (newVendor) {
+            vendors[vendorSlot] = vendor = registry.vendor(vendor.getId(), vendor.getName(), vendor.getDescription());
+        }
+        if (newInstrument) {
+            instruments[instrumentSlot] = instrument = registry.instrument(instrument.getSymbol(), instrument.getDescription());
+        }
+        return newVendor || newInstrument ? vip.withReferenceData(vendor, instrument) : vip;
+    }
+
+    private static final class Chunk {
+
+        final List<List<VendorInstrumentPrice>> batches = new ArrayList<>();
+        final List<RowError> errors = new ArrayList<>();
+        long lastLine;
+    }
+
+    private static final class RowError {
+
+        final long line;
+        final RuntimeException exception;
+
+        RowError(long line, RuntimeException exception) {
+            this.line = line;
+            this.exception = exception;
+        }
+    }
+
+    private static final class Columns {
+
+        final int count, vendorId, vendorName, vendorDescription, instrumentSymbol, instrumentDescription, bid, ask;
+
+        Columns(MappedCsvReader header) {
+            count = header.size();
+            vendorId = required(header, "vendorId");
+            vendorName = required(header, "vendorName");
+            vendorDescription = required(header, "vendorDescription");
+            instrumentSymbol = required(header, "instrumentSymbol");
+            instrumentDescription = required(header, "instrumentDescription");
+            bid = required(header, "bid");
+            ask = required(header, "ask");
+        }
+
+        private static int required(MappedCsvReader header, String name) {
+            int index = indexOf(header, name);
+            if (index < 0) {
+                throw new IllegalArgumentException("no '" + name + "' column");
+            }
+            return index;
+        }
+
+        private static int indexOf(MappedCsvReader header, String name) {
+            for (int i = 0; i < header.size(); i++) {
+                if (header.getString(i).trim().equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
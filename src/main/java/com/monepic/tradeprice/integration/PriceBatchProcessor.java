@@ -0,0 +1,209 @@
+package com.monepic.tradeprice.integration;
+
+import com.monepic.tradeprice.model.ReferenceDataRegistry;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.model.requests.NewPriceRequest;
+import com.monepic.tradeprice.model.requests.NewPriceRequestValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.MessageRejectedException;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.transformer.MessageTransformationException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandlingException;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ErrorMessage;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Hands a batch of JMS messages of new prices to the {@link com.monepic.tradeprice.service.TradePriceService}, in parallel, while
+ * keeping the order of the prices of each Vendor and Instrument.
+ * <p>
+ * The messages are converted, validated and made into {@link VendorInstrumentPrice}s in parallel, on the applier's pool, and the
+ * prices are then applied by the {@link ShardedPriceApplier}, in the order they were received for each Vendor and Instrument.
+ * <p>
+ * A message which can't be converted or is invalid is sent to the <b>errorChannel</b>, and doesn't fail the rest of the batch; as is
+ * each element of a batch of prices (in the binary format) which isn't a valid price.
+ * <p>
+ * New price requests are stamped with the server's time as they're received, one after another in the batch's order (see
+ * {@link ArrivalClock}), rather than with the time their producer says it sent them.
+ * <p>
+ * The ids of the latest {@link #RECENT_MESSAGES} messages whose prices were all applied are remembered, so a message redelivered
+ * because its batch's acknowledgement failed isn't applied twice.  A batch which fails while it's being applied is applied again in
+ * full when it's redelivered.
+ */
+public class PriceBatchProcessor implements Consumer<List<Message>> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PriceBatchProcessor.class);
+    static final int RECENT_MESSAGES = 1 << 16;
+
+    private final ShardedPriceApplier applier;
+    private final NewPriceRequestValidator validator;
+    private final ReferenceDataRegistry registry;
+    private final MessageConverter converter;
+    private final MessageChannel errorChannel;
+    private final Set<String> applied = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > RECENT_MESSAGES;
+        }
+    });
+
+    public PriceBatchProcessor(ShardedPriceApplier applier, NewPriceRequestValidator validator, ReferenceDataRegistry registry,
+                               MessageConverter converter, MessageChannel errorChannel) {
+        this.applier = applier;
+        this.validator = validator;
+        this.registry = registry;
+        this.converter = converter;
+        this.errorChannel = errorChannel;
+    }
+
+    @Override
+    public void accept(List<Message> batch) {
+        int size = batch.size();
+        String[] ids = new String[size];
+        Instant[] stamps = new Instant[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = id(batch.get(i));
+            stamps[i] = ArrivalClock.next();
+        }
+        boolean[] skipped = alreadyApplied(batch, ids);
+        Object[] prices = new Object[size];
+        applier.getPool().submit(() -> IntStream.range(0, size).parallel()
+                .filter(i -> !skipped[i])
+                .forEach(i -> prices[i] = toPrices(batch.get(i), stamps[i]))).join();
+
+        List<VendorInstrumentPrice> received = new ArrayList<>(size);
+        for (Object price : prices) {
+            if (price instanceof VendorInstrumentPrice) {
+                received.add((VendorInstrumentPrice) price);
+            } else if (price != null) {
+                for (Object element : (List<?>) price) {
+                    received.add((VendorInstrumentPrice) element);
+                }
+            }
+        }
+        applier.apply(received);
+        synchronized (applied) {
+            for (String id : ids) {
+                if (id != null) {
+                    applied.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return which messages of the batch are redeliveries of messages whose prices were already applied
+     */
+    private boolean[] alreadyApplied(List<Message> batch, String[] ids) {
+        boolean[] skipped = new boolean[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != null && redelivered(batch.get(i))) {
+                synchronized (applied) {
+                    skipped[i] = applied.contains(ids[i]);
+                }
+                if (skipped[i]) {
+                    LOG.debug("Message {} was redelivered, but its prices were already applied", ids[i]);
+                }
+            }
+        }
+        return skipped;
+    }
+
+    private static String id(Message message) {
+        try {
+            return message.getJMSMessageID();
+        } catch (JMSException e) {
+            return null;
+        }
+    }
+
+    private static boolean redelivered(Message message) {
+        try {
+            return message.getJMSRedelivered();
+        } catch (JMSException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the {@link VendorInstrumentPrice}, or List of them, in <b>message</b>, or null if it's rejected
+     */
+    private Object toPrices(Message message, Instant received) {
+        Object payload;
+        try {
+            payload = converter.fromMessage(message);
+        } catch (JMSException | RuntimeException e) {
+            error(new MessageTransformationException(MessageBuilder.withPayload(message).build(), "failed to convert a new price", e));
+            return null;
+        }
+        try {
+            if (payload instanceof NewPriceRequest) {
+                NewPriceRequest npr = (NewPriceRequest) payload;
+                npr.setTimestamp(received);
+                if (!validator.isValid(npr)) {
+                    error(new MessageRejectedException(MessageBuilder.withPayload(npr).build(), validator.describe(npr)));
+                    return null;
+                }
+                return npr.toVendorInstrumentPrice(registry);
+            }
+            if (payload instanceof VendorInstrumentPrice) {
+                VendorInstrumentPrice vip = (VendorInstrumentPrice) payload;
+                String problems = validator.describe(vip);
+                if (problems != null) {
+                    error(new MessageRejectedException(MessageBuilder.withPayload(vip).build(), problems));
+                    return null;
+                }
+                return registry.canonicalize(vip);
+            }
+            if (payload instanceof List) {
+                return validPrices((List<?>) payload, validator, registry, this::error);
+            }
+            error(new MessageRejectedException(MessageBuilder.withPayload(payload).build(), "not a new price"));
+        } catch (RuntimeException e) {
+            error(new MessageHandlingException(MessageBuilder.withPayload(payload).build(), e));
+        }
+        return null;
+    }
+
+    /**
+     * @return the elements of a batch received already typed which are valid prices, canonicalized; each other element is passed to
+     * <b>rejected</b>, without failing the rest
+     */
+    static List<VendorInstrumentPrice> validPrices(List<?> elements, NewPriceRequestValidator validator, ReferenceDataRegistry registry,
+                                                   Consumer<MessagingException> rejected) {
+        List<VendorInstrumentPrice> prices = new ArrayList<>(elements.size());
+        for (Object element : elements) {
+            if (!(element instanceof VendorInstrumentPrice)) {
+                rejected.accept(new MessageRejectedException(MessageBuilder.withPayload(String.valueOf(element)).build(),
+                        "not a new price, in a batch of prices"));
+                continue;
+            }
+            VendorInstrumentPrice vip = (VendorInstrumentPrice) element;
+            String problems = validator.describe(vip);
+            if (problems != null) {
+                rejected.accept(new MessageRejectedException(MessageBuilder.withPayload(vip).build(), problems));
+                continue;
+            }
+            prices.add(registry.canonicalize(vip));
+        }
+        return prices;
+    }
+
+    private void error(MessagingException e) {
+        errorChannel.send(new ErrorMessage(e));
+    }
+}
@@ -0,0 +1,98 @@
+package com.monepic.tradeprice.integration;
+
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.service.PartialUpdateException;
+import com.monepic.tradeprice.service.TradePriceService;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandlingException;
+import org.springframework.messaging.support.ErrorMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Applies batches of prices to the {@link TradePriceService} in parallel, while keeping the order of the prices of each Vendor and
+ * Instrument.
+ * <p>
+ * A batch is split into <b>threads</b> shards by Vendor and Instrument, keeping the batch's order within each shard, and the shards
+ * are applied in parallel on a fork-join pool.  As all the prices of a Vendor and Instrument are in the same shard, they're applied one
+ * at a time, in order; and as {@link #apply} returns once the whole batch is applied, successive batches are applied in order too.
+ * <p>
+ * Each shard is applied with {@link TradePriceService#createOrUpdateAll}; if the service rejects it, those of the shard's prices it
+ * hadn't applied are applied one at a time, and a price the service rejects is sent to the <b>errorChannel</b>, without failing the
+ * rest of the batch.
+ * The pool is shared with the callers for other work on the batches, such as converting or parsing them.
+ */
+public class ShardedPriceApplier implements AutoCloseable {
+
+    private final TradePriceService tps;
+    private final MessageChannel errorChannel;
+    private final int shards;
+    private final ForkJoinPool pool;
+
+    public ShardedPriceApplier(TradePriceService tps, MessageChannel errorChannel, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.tps = tps;
+        this.errorChannel = errorChannel;
+        this.shards = threads;
+        this.pool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("price-apply-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Applies <b>prices</b>, returning once they're all applied (or rejected)
+     */
+    public void apply(List<VendorInstrumentPrice> prices) {
+        if (prices.size() < 2 || shards == 1) {
+            applyAll(prices);
+            return;
+        }
+        List<List<VendorInstrumentPrice>> sharded = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            sharded.add(new ArrayList<>(prices.size() / shards + 1));
+        }
+        for (VendorInstrumentPrice vip : prices) {
+            int hash = Long.hashCode(vip.getVendor().getId()) * 31 + vip.getInstrument().getSymbol().hashCode();
+            sharded.get(Math.floorMod(hash ^ (hash >>> 16), shards)).add(vip);
+        }
+        pool.submit(() -> sharded.parallelStream().forEach(this::applyAll)).join();
+    }
+
+    private void applyAll(List<VendorInstrumentPrice> shard) {
+        int applied = 0;
+        try {
+            tps.createOrUpdateAll(shard);
+            return;
+        } catch (PartialUpdateException e) {
+            applied = e.getApplied();
+        } catch (RuntimeException e) {
+            // none of them was applied
+        }
+        // apply the rest one at a time, to find the ones which are rejected
+        for (VendorInstrumentPrice vip : shard.subList(applied, shard.size())) {
+            try {
+                tps.createOrUpdate(vip);
+            } catch (RuntimeException e) {
+                errorChannel.send(new ErrorMessage(new MessageHandlingException(MessageBuilder.withPayload(vip).build(), e)));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -1,8 +1,10 @@
 package com.monepic.tradeprice.integration;
 
+import com.monepic.tradeprice.model.ReferenceDataRegistry;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
 import com.monepic.tradeprice.model.requests.NewPriceRequest;
+import com.monepic.tradeprice.model.requests.NewPriceRequestValidator;
 import com.monepic.tradeprice.service.TradePriceService;
-import com.monepic.tradeprice.utils.TotallyNaiveCsvTokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,6 +12,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.integration.MessageRejectedException;
 import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.channel.PublishSubscribeChannel;
 import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.dsl.IntegrationFlows;
@@ -18,23 +21,18 @@ import org.springframework.integration.file.dsl.Files;
 import org.springframework.integration.file.filters.AcceptOnceFileListFilter;
 import org.springframework.integration.file.filters.ChainFileListFilter;
 import org.springframework.integration.file.filters.SimplePatternFileListFilter;
-import org.springframework.integration.handler.LoggingHandler;
-import org.springframework.integration.jms.dsl.Jms;
-import org.springframework.integration.transformer.AbstractTransformer;
-import org.springframework.integration.transformer.MapToObjectTransformer;
+import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.transformer.MessageTransformationException;
-import org.springframework.integration.transformer.Transformer;
 import org.springframework.jms.support.converter.MessageConverter;
-import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ErrorMessage;
 
 import javax.jms.ConnectionFactory;
-import javax.validation.ConstraintViolation;
-import javax.validation.Validator;
 import java.io.File;
-import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.util.Set;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
 
 @Configuration
 public class VendorInputFlows {
@@ -44,59 +42,120 @@ public class VendorInputFlows {
     @Value("${inbound.directory:./filesIn}")
     private String inboundDirectory;
 
+    @Value("${inbound.batch-size:1000}")
+    private int csvBatchSize;
+
+    @Value("${inbound.chunk-bytes:4194304}")
+    private long csvChunkBytes;
+
+    @Value("${price.jms.input.consumers:1}")
+    private int jmsInputConsumers;
+
+    @Value("${price.jms.input.batch-size:256}")
+    private int jmsInputBatchSize;
+
+    @Value("${price.jms.input.batch-time-ms:20}")
+    private long jmsInputBatchMillis;
+
+    @Value("${price.jms.input.acknowledge:TRANSACTED}")
+    private BatchingJmsConsumer.Acknowledge jmsInputAcknowledge;
+
     /**
-     * This flow looks for CSV files in <b>inboundDirectory</b>, then tokenizes the results
-     * and converts them to {@link NewPriceRequest} objects, and sends them to the
-     * tradePriceServiceActivator
+     * the threads input is parsed, and prices are handed to the TradePriceService, on; or 0 for one per processor
+     */
+    @Value("${price.input.threads:0}")
+    private int inputThreads;
+
+    /**
+     * This flow looks for CSV files in <b>inboundDirectory</b>, parses each straight into batches of
+     * {@link VendorInstrumentPrice}s, in chunks in parallel, and sends the batches, in order, to the tradePriceServiceActivator.
+     * Rows which can't be read are sent to the errorChannel, with their file and line
      */
     @Bean
-    public IntegrationFlow csvInputFlow() {
+    public IntegrationFlow csvInputFlow(ReferenceDataRegistry registry, NewPriceRequestValidator validator, ShardedPriceApplier applier) {
+        CsvPriceReader reader = new CsvPriceReader(registry, validator, csvBatchSize);
         return IntegrationFlows
                 .from(Files.inboundAdapter(new File(inboundDirectory))
                         .filter(new ChainFileListFilter<File>()
                                 .addFilter(new AcceptOnceFileListFilter<>())
                                 .addFilter(new SimplePatternFileListFilter("*.csv"))
                         ), e -> e.poller(Pollers.fixedDelay(1000)))
-                .split(Files.splitter()
-                        .charset(StandardCharsets.UTF_8)
-                        .firstLineAsHeader("fileHeader")
-                        .applySequence(true))
-                .transform(csvToMapTransformer())
-                .transform(new MapToObjectTransformer(NewPriceRequest.class))
-                .transform(setTimestampFromHeaderEnricher())
-                .log(LoggingHandler.Level.DEBUG)
-                .channel(c -> c.direct("newPriceRequestChannel"))
+                .handle(File.class, (file, headers) -> {
+                    readCsv(reader, applier, file);
+                    return null;
+                })
                 .get();
     }
 
+    private void readCsv(CsvPriceReader reader, ShardedPriceApplier applier, File file) {
+        try {
+            reader.read(file.toPath(), applier.getPool(), csvChunkBytes,
+                    batch -> newPriceRequestChannel().send(MessageBuilder.withPayload(batch).build()),
+                    (line, e) -> errorChannel().send(new ErrorMessage(new MessageTransformationException(
+                            MessageBuilder.withPayload(file.getName() + " line " + line).build(), e.getMessage(), e))));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Bean
-    public IntegrationFlow jmsInputFlow(ConnectionFactory connectionFactory, MessageConverter messageConverter) {
-        return IntegrationFlows.from(
-                Jms.messageDrivenChannelAdapter(connectionFactory)
-                        .jmsMessageConverter(messageConverter)
-                        .destination("new-price-in")
-        ).log()
-                .transform(setTimestampFromHeaderEnricher())
-                .channel("newPriceRequestChannel")
-                .get();
+    public DirectChannel newPriceRequestChannel() {
+        return new DirectChannel();
+    }
+
+    /**
+     * Consumes new prices from the <b>new-price-in</b> queue in batches, each acknowledged once all its prices have been handed to the
+     * TradePriceService, in parallel but in order for each Vendor and Instrument.
+     * More than one consumer only keeps that order if the vendors group their messages by Vendor and Instrument (as JMSXGroupID).
+     */
+    @Bean
+    public BatchingJmsConsumer jmsInput(ConnectionFactory connectionFactory, PriceBatchProcessor priceBatchProcessor) {
+        return new BatchingJmsConsumer(connectionFactory, "new-price-in", jmsInputConsumers, jmsInputBatchSize,
+                Duration.ofMillis(jmsInputBatchMillis), jmsInputAcknowledge, priceBatchProcessor);
+    }
+
+    @Bean
+    public PriceBatchProcessor priceBatchProcessor(ShardedPriceApplier applier, NewPriceRequestValidator validator,
+                                                   ReferenceDataRegistry registry, MessageConverter messageConverter) {
+        return new PriceBatchProcessor(applier, validator, registry, messageConverter, errorChannel());
+    }
+
+    @Bean
+    public ShardedPriceApplier shardedPriceApplier(TradePriceService tps) {
+        return new ShardedPriceApplier(tps, errorChannel(), inputThreads > 0 ? inputThreads : Runtime.getRuntime().availableProcessors());
     }
 
     /**
      * Service Activator to connect the incoming message flows to our TradePriceService.
-     * Invalid new prices are rejected by the validator.
+     * Invalid new prices are rejected by the {@link NewPriceRequestValidator}.
+     * Prices (and batches of them) received in the binary format, or read from CSV files, are already typed, so are validated by the
+     * same rules and only need their Vendor and Instrument registering; a batch is applied in parallel, in order for each Vendor and
+     * Instrument, and its invalid elements are sent to the errorChannel.
      */
     @Bean
     @ServiceActivator(inputChannel = "newPriceRequestChannel")
-    public MessageHandler tradePriceServiceActivator(TradePriceService tps, Validator validator) {
+    public MessageHandler tradePriceServiceActivator(TradePriceService tps, NewPriceRequestValidator validator,
+                                                     ReferenceDataRegistry registry, ShardedPriceApplier applier) {
         return (msg) -> {
             Object payload = msg.getPayload();
             if (payload instanceof NewPriceRequest) {
                 NewPriceRequest npr = (NewPriceRequest) payload;
-                Set<ConstraintViolation<NewPriceRequest>> errs = validator.validate(npr);
-                if (!errs.isEmpty()) {
-                    throw new MessageRejectedException(msg, errs.toString());
+                if (!validator.isValid(npr)) {
+                    throw new MessageRejectedException(msg, validator.describe(npr));
+                }
+                tps.createOrUpdate(npr.toVendorInstrumentPrice(registry));
+            } else if (payload instanceof VendorInstrumentPrice) {
+                VendorInstrumentPrice vip = (VendorInstrumentPrice) payload;
+                String problems = validator.describe(vip);
+                if (problems != null) {
+                    throw new MessageRejectedException(msg, problems);
                 }
-                tps.createOrUpdate(npr.toVendorInstrumentPrice());
+                tps.createOrUpdate(registry.canonicalize(vip));
+            } else if (payload instanceof List) {
+                applier.apply(PriceBatchProcessor.validPrices((List<?>) payload, validator, registry,
+                        e -> errorChannel().send(new ErrorMessage(e))));
+            } else {
+                throw new MessageRejectedException(msg, "not a new price");
             }
         };
     }
@@ -114,39 +173,4 @@ public class VendorInputFlows {
     public MessageHandler errHandler() {
         return msg -> LOG.error("{}", msg);
     }
-
-    /**
-     * turn a row of the incoming CSV file into a map
-     */
-    private Transformer csvToMapTransformer() {
-        return new AbstractTransformer() {
-            @Override
-            public Object doTransform(Message msg) {
-                Object header = msg.getHeaders().get("fileHeader");
-                if (header == null) {
-                    throw new MessageTransformationException(msg, "no 'fileHeader' header found");
-                }
-                return new TotallyNaiveCsvTokenizer(
-                        header.toString())
-                        .tokenize(msg.getPayload().toString());
-            }
-        };
-    }
-
-    /**
-     * use the message timestamp, if none was provided in the incoming file data
-     */
-    private Transformer setTimestampFromHeaderEnricher() {
-        return new AbstractTransformer() {
-            @Override
-            public Object doTransform(Message msg) {
-                Object payload = msg.getPayload();
-                Long timestamp = msg.getHeaders().getTimestamp();
-                if (payload instanceof NewPriceRequest && timestamp != null) {
-                    ((NewPriceRequest) payload).setTimestamp(Instant.ofEpochMilli(timestamp));
-                }
-                return payload;
-            }
-        };
-    }
 }
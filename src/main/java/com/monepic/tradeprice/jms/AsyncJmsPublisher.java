@@ -0,0 +1,331 @@
+package com.monepic.tradeprice.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.destination.DestinationResolver;
+
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes messages from a bounded queue on a dedicated sender thread, so that callers don't wait for the broker.
+ * <p>
+ * The sender drains up to <b>batchSize</b> messages at a time and sends them all on one session, with one producer per destination
+ * (the connection factory caches both across batches).  A caller blocks while the queue is full, so a broker that can't keep up
+ * eventually slows the callers down, rather than the queue growing without bound.
+ * <p>
+ * If conflation is enabled, a message published with a conflation key replaces any message with the same key and destination that's
+ * still queued, keeping its place in the queue, so only the latest state of each key is sent when the broker lags.
+ * Messages without a key are never conflated.
+ * <p>
+ * Non-persistent delivery lets the broker (ActiveMQ, by default) accept the messages without writing them to disk first, and without
+ * the producer waiting for each one to be acknowledged.
+ * <p>
+ * If a batch fails, the messages it hadn't sent are retried, in order, up to {@link #MAX_ATTEMPTS} times in all, backing off from
+ * {@link #RETRY_MILLIS} and doubling; meanwhile the queue fills, and slows the callers down.  Messages still unsent after the last
+ * attempt are dropped, logged and counted as failed, so that a broker which is down for good doesn't stop the callers for good: the
+ * prices sent are each the latest state of their key, so a dropped one is superseded by the next for the same key.
+ * <p>
+ * Once {@link #close()} starts, publishing is rejected, and every message already accepted is sent (or dropped, as above) before the
+ * sender stops.
+ */
+public class AsyncJmsPublisher implements MonitoredMessagePublisher, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncJmsPublisher.class);
+    private static final long POLL_MILLIS = 100;
+    static final int MAX_ATTEMPTS = 3;
+    static final long RETRY_MILLIS = 100;
+
+    private final JmsTemplate jms;
+    private final Map<String, MessageConverter> converters;
+    private final int capacity, batchSize, deliveryMode;
+    private final boolean conflate;
+    private final BlockingQueue<Entry> queue;
+    private final ConcurrentHashMap<Slot, Entry> pending = new ConcurrentHashMap<>();
+    private final LongAdder published = new LongAdder(), conflated = new LongAdder(), sent = new LongAdder(),
+            batches = new LongAdder(), failed = new LongAdder();
+    private final Thread sender;
+    // callers between checking the publisher's open and queueing their message, which the sender waits for once it's closed
+    private final AtomicInteger publishing = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * @param capacity   the most messages queued to be sent
+     * @param batchSize  the most messages sent together
+     * @param conflate   whether a queued message is replaced by a later one with the same conflation key
+     * @param persistent whether the messages are sent with persistent delivery
+     */
+    public AsyncJmsPublisher(JmsTemplate jms, int capacity, int batchSize, boolean conflate, boolean persistent) {
+        this(jms, Map.of(), capacity, batchSize, conflate, persistent);
+    }
+
+    /**
+     * @param converters the converters of the destinations whose messages aren't converted by <b>jms</b>'s converter
+     */
+    public AsyncJmsPublisher(JmsTemplate jms, Map<String, MessageConverter> converters, int capacity, int batchSize, boolean conflate,
+                             boolean persistent) {
+        this(jms, converters, capacity, batchSize, conflate, persistent, true);
+    }
+
+    AsyncJmsPublisher(JmsTemplate jms, Map<String, MessageConverter> converters, int capacity, int batchSize, boolean conflate,
+                      boolean persistent, boolean start) {
+        if (capacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("capacity and batchSize must be positive");
+        }
+        this.jms = jms;
+        this.converters = Map.copyOf(converters);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.conflate = conflate;
+        this.deliveryMode = persistent ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        sender = new Thread(this::run, "jms-publisher");
+        sender.setDaemon(true);
+        if (start) {
+            start();
+        }
+    }
+
+    void start() {
+        sender.start();
+    }
+
+    /**
+     * Queues <b>message</b> to be sent, waiting for space in the queue if need be
+     *
+     * @throws IllegalStateException if the publisher is closed
+     */
+    @Override
+    public void publish(String destination, Object conflationKey, Object message) {
+        publishing.incrementAndGet();
+        try {
+            if (closed) {
+                throw new IllegalStateException("the publisher is closed");
+            }
+            queue(destination, conflationKey, message);
+        } finally {
+            publishing.decrementAndGet();
+        }
+    }
+
+    private void queue(String destination, Object conflationKey, Object message) {
+        published.increment();
+        if (!conflate || conflationKey == null) {
+            enqueue(new Entry(destination, null, message));
+            return;
+        }
+        Entry[] created = {null};
+        pending.compute(new Slot(destination, conflationKey), (slot, queued) -> {
+            if (queued != null) {
+                queued.message = message;
+                conflated.increment();
+                return queued;
+            }
+            return created[0] = new Entry(destination, slot, message);
+        });
+        if (created[0] != null) {
+            enqueue(created[0]);
+        }
+    }
+
+    private void enqueue(Entry entry) {
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting to publish to " + entry.destination, e);
+        }
+    }
+
+    @Override
+    public PublisherStats getStats() {
+        return new PublisherStats(queue.size(), capacity, published.sum(), conflated.sum(), sent.sum(), batches.sum(), failed.sum());
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        // the callers publishing are checked before the queue, as they queue before they're done
+        while (!closed || publishing.get() > 0 || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                send(batch);
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected failure publishing {} messages", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(List<Entry> batch) throws InterruptedException {
+        // taken up front, so a later message for the same key is queued afresh, even if this batch fails
+        List<Object> messages = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            messages.add(entry.take(pending));
+        }
+        batches.increment();
+        int from = 0;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                from = send(batch, messages, from);
+                return;
+            } catch (SendException e) {
+                from = e.sent;
+                if (attempt == MAX_ATTEMPTS) {
+                    failed.add(batch.size() - from);
+                    LOG.error("Dropped {} of a batch of {} messages after {} attempts", batch.size() - from, batch.size(), attempt,
+                            e.getCause());
+                    return;
+                }
+                LOG.warn("Failed to send {} of a batch of {} messages, retrying", batch.size() - from, batch.size(), e.getCause());
+                Thread.sleep(RETRY_MILLIS << (attempt - 1));
+            }
+        }
+    }
+
+    /**
+     * Sends the messages of the batch from index <b>from</b>
+     *
+     * @return the index of the batch's end
+     * @throws SendException with the index of the first message not sent, if sending fails
+     */
+    private int send(List<Entry> batch, List<Object> messages, int from) throws SendException {
+        int[] count = {from};
+        try {
+            jms.execute((Session session) -> {
+                DestinationResolver resolver = jms.getDestinationResolver();
+                Map<String, MessageProducer> producers = new HashMap<>();
+                try {
+                    for (int i = from; i < batch.size(); i++) {
+                        String destination = batch.get(i).destination;
+                        MessageProducer producer = producers.get(destination);
+                        if (producer == null) {
+                            producer = session.createProducer(resolver.resolveDestinationName(session, destination, jms.isPubSubDomain()));
+                            producers.put(destination, producer);
+                        }
+                        MessageConverter converter = converters.getOrDefault(destination, jms.getMessageConverter());
+                        producer.send(converter.toMessage(messages.get(i), session), deliveryMode, Message.DEFAULT_PRIORITY,
+                                Message.DEFAULT_TIME_TO_LIVE);
+                        count[0]++;
+                    }
+                } finally {
+                    producers.values().forEach(JmsUtils::closeMessageProducer);
+                }
+                return null;
+            }, false);
+            return count[0];
+        } catch (JmsException e) {
+            throw new SendException(count[0], e);
+        } finally {
+            sent.add(count[0] - from);
+        }
+    }
+
+    /**
+     * Stops accepting messages, and waits (a while) for those already accepted to be sent
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            if (sender.isAlive()) {
+                sender.join(TimeUnit.SECONDS.toMillis(10));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            LOG.warn("Closed with {} messages unsent", queue.size());
+        }
+    }
+
+    private static final class SendException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        final int sent;
+
+        SendException(int sent, JmsException cause) {
+            super(cause);
+            this.sent = sent;
+        }
+    }
+
+    /**
+     * A destination and conflation key
+     */
+    private static final class Slot {
+
+        final String destination;
+        final Object key;
+
+        Slot(String destination, Object key) {
+            this.destination = destination;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Slot)) {
+                return false;
+            }
+            Slot that = (Slot) obj;
+            return destination.equals(that.destination) && key.equals(that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(destination, key);
+        }
+    }
+
+    private static final class Entry {
+
+        final String destination;
+        final Slot slot;
+        volatile Object message;
+
+        Entry(String destination, Slot slot, Object message) {
+            this.destination = destination;
+            this.slot = slot;
+            this.message = message;
+        }
+
+        /**
+         * @return the latest message, after which it can no longer be replaced
+         */
+        Object take(ConcurrentHashMap<Slot, Entry> pending) {
+            if (slot != null) {
+                pending.remove(slot, this);
+            }
+            return message;
+        }
+    }
+}
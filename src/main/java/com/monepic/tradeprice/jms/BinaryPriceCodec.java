@@ -0,0 +1,262 @@
+package com.monepic.tradeprice.jms;
+
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.utils.FixedPoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The binary wire format of prices, and of batches of prices, sent over JMS.
+ * <p>
+ * A message is a header (a magic number, the format version, the message type and flags) followed by the price, or by the count of
+ * prices in the batch and then the prices.  A price is its Vendor's id, name and description, its Instrument's symbol and description
+ * (each string as a 2-byte length, or -1 for null, and its UTF-8 bytes), the price scale, the unscaled bid and ask, and the timestamp
+ * as epoch seconds and nanos, all big-endian.
+ * <p>
+ * A batch may be deflated, as a batch repeats the same few Vendors and Instruments; the header's flags then say so, and the deflated
+ * body follows its uncompressed length.  A deflated batch is only read if its length is at most a maximum (by default
+ * {@link #DEFAULT_MAX_INFLATED_BYTES}), and it inflates to exactly that length.
+ */
+public final class BinaryPriceCodec {
+
+    static final int MAGIC = 0x54504D31; // "TPM1"
+    static final byte VERSION = 1;
+    static final byte PRICE = 1, BATCH = 2;
+    static final byte DEFLATED = 1;
+    private static final int HEADER_BYTES = 7;
+
+    /**
+     * Batches smaller than this aren't worth deflating
+     */
+    static final int DEFLATE_THRESHOLD = 512;
+
+    public static final int DEFAULT_MAX_INFLATED_BYTES = 16 << 20;
+
+    private BinaryPriceCodec() {}
+
+    public static byte[] encode(VendorInstrumentPrice vip) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeHeader(out, PRICE, (byte) 0);
+            writePrice(out, vip);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param deflate whether to deflate the batch, if it's big enough to be worth it
+     */
+    public static byte[] encode(Collection<VendorInstrumentPrice> batch, boolean deflate) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64 + batch.size() * 96);
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            out.writeInt(batch.size());
+            for (VendorInstrumentPrice vip : batch) {
+                writePrice(out, vip);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        boolean deflated = deflate && body.size() >= DEFLATE_THRESHOLD;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES + 4 + (deflated ? body.size() / 2 : body.size()));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeHeader(out, BATCH, deflated ? DEFLATED : 0);
+            if (deflated) {
+                out.writeInt(body.size());
+                deflate(body.toByteArray(), out);
+            } else {
+                body.writeTo(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the {@link VendorInstrumentPrice}, or the List of them, in <b>bytes</b>
+     * @throws IllegalArgumentException if <b>bytes</b> aren't a price or batch of prices in this format
+     */
+    public static Object decode(byte[] bytes) {
+        return decode(bytes, DEFAULT_MAX_INFLATED_BYTES);
+    }
+
+    /**
+     * As {@link #decode(byte[])}
+     *
+     * @param maxInflatedBytes the longest a deflated batch may be once it's inflated
+     * @throws IllegalArgumentException also if a deflated batch inflates to more than <b>maxInflatedBytes</b>
+     */
+    public static Object decode(byte[] bytes, int maxInflatedBytes) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            if (in.getInt() != MAGIC) {
+                throw new IllegalArgumentException("not a binary price message");
+            }
+            byte version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("unsupported binary price format version " + version);
+            }
+            byte type = in.get();
+            byte flags = in.get();
+            if (type == PRICE) {
+                return readPrice(in);
+            }
+            if (type != BATCH) {
+                throw new IllegalArgumentException("unknown binary price message type " + type);
+            }
+            if ((flags & DEFLATED) != 0) {
+                in = ByteBuffer.wrap(inflate(in, in.getInt(), maxInflatedBytes));
+            }
+            int count = in.getInt();
+            if (count < 0 || count > in.remaining()) {
+                throw new IllegalArgumentException("corrupt batch of " + count + " prices");
+            }
+            List<VendorInstrumentPrice> batch = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                batch.add(readPrice(in));
+            }
+            return batch;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated binary price message", e);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("invalid price timestamp", e);
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, byte type, byte flags) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(type);
+        out.writeByte(flags);
+    }
+
+    private static void writePrice(DataOutputStream out, VendorInstrumentPrice vip) throws IOException {
+        Vendor vendor = vip.getVendor();
+        Instrument instrument = vip.getInstrument();
+        out.writeLong(vendor.getId());
+        writeString(out, vendor.getName());
+        writeString(out, vendor.getDescription());
+        writeString(out, instrument.getSymbol());
+        writeString(out, instrument.getDescription());
+        out.writeByte(vip.getPriceScale());
+        out.writeLong(vip.getScaledBid());
+        out.writeLong(vip.getScaledAsk());
+        out.writeLong(vip.getTimestamp().getEpochSecond());
+        out.writeInt(vip.getTimestamp().getNano());
+    }
+
+    private static VendorInstrumentPrice readPrice(ByteBuffer in) {
+        long vendorId = in.getLong();
+        String vendorName = required(readString(in), "vendor name");
+        String vendorDescription = readString(in);
+        String symbol = required(readString(in), "instrument symbol");
+        String instrumentDescription = readString(in);
+        int scale = in.get();
+        if (scale < 0 || scale > FixedPoint.MAX_SCALE) {
+            throw new IllegalArgumentException("invalid price scale " + scale);
+        }
+        long bid = in.getLong(), ask = in.getLong();
+        Instant timestamp = Instant.ofEpochSecond(in.getLong(), in.getInt());
+        return new VendorInstrumentPrice(new Vendor(vendorId, vendorName, vendorDescription),
+                new Instrument(symbol, instrumentDescription, scale), bid, ask, scale, timestamp);
+    }
+
+    private static String required(String value, String name) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(name + " must not be blank");
+        }
+        return value;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("string too long to encode: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void deflate(byte[] body, DataOutputStream out) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(256, body.length / 4)];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(ByteBuffer in, int length, int maxLength) {
+        if (length < 0) {
+            throw new IllegalArgumentException("corrupt deflated batch length " + length);
+        }
+        if (length > maxLength) {
+            throw new IllegalArgumentException("deflated batch of " + length + " bytes is over the maximum of " + maxLength);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(in.array(), in.arrayOffset() + in.position(), in.remaining());
+            byte[] body = new byte[length];
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int n = inflater.inflate(body, inflated, length - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != length) {
+                throw new IllegalArgumentException("corrupt deflated batch");
+            }
+            // the body must end where its length says, not go on inflating
+            if (!inflater.finished() && inflater.inflate(new byte[1]) > 0) {
+                throw new IllegalArgumentException("deflated batch inflates to more than its length of " + length + " bytes");
+            }
+            return body;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("corrupt deflated batch", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.monepic.tradeprice.jms;
+
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import org.springframework.jms.support.converter.MessageConversionException;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sends each {@link VendorInstrumentPrice}, and each batch (List) of them, in the {@link BinaryPriceCodec binary format} rather than as
+ * JSON, optionally deflating the batches.  Anything else is still sent as JSON, and either format is read.
+ */
+public class BinaryPriceMessageConverter extends PriceMessageConverter {
+
+    private final boolean deflateBatches;
+
+    public BinaryPriceMessageConverter(boolean deflateBatches) {
+        this.deflateBatches = deflateBatches;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+        if (object instanceof VendorInstrumentPrice) {
+            return bytesMessage(BinaryPriceCodec.encode((VendorInstrumentPrice) object), session);
+        }
+        if (isBatch(object)) {
+            return bytesMessage(BinaryPriceCodec.encode((Collection<VendorInstrumentPrice>) object, deflateBatches), session);
+        }
+        return super.toMessage(object, session);
+    }
+
+    private static boolean isBatch(Object object) {
+        if (!(object instanceof List) || ((List<?>) object).isEmpty()) {
+            return false;
+        }
+        for (Object element : (List<?>) object) {
+            if (!(element instanceof VendorInstrumentPrice)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BytesMessage bytesMessage(byte[] bytes, Session session) throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(bytes);
+        message.setStringProperty(FORMAT_PROPERTY, BINARY_FORMAT);
+        return message;
+    }
+}
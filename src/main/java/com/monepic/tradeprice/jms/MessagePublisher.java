@@ -0,0 +1,23 @@
+package com.monepic.tradeprice.jms;
+
+import org.springframework.jms.core.JmsTemplate;
+
+/**
+ * Sends messages to named destinations
+ */
+@FunctionalInterface
+public interface MessagePublisher {
+
+    /**
+     * @param conflationKey identifies what <b>message</b> is the latest state of (e.g. a Vendor/Instrument's price), so that a publisher
+     *                      may send only the latest message per key and destination; or null if the message mustn't be dropped
+     */
+    void publish(String destination, Object conflationKey, Object message);
+
+    /**
+     * @return a publisher which sends each message synchronously, on the caller's thread
+     */
+    static MessagePublisher of(JmsTemplate jms) {
+        return (destination, conflationKey, message) -> jms.convertAndSend(destination, message);
+    }
+}
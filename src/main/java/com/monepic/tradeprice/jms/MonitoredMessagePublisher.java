@@ -0,0 +1,9 @@
+package com.monepic.tradeprice.jms;
+
+/**
+ * A {@link MessagePublisher} which keeps count of the messages it's been given and sent
+ */
+public interface MonitoredMessagePublisher extends MessagePublisher {
+
+    PublisherStats getStats();
+}
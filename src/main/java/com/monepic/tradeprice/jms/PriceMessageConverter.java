@@ -0,0 +1,63 @@
+package com.monepic.tradeprice.jms;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.monepic.tradeprice.model.PriceJsonModule;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import org.springframework.jms.support.converter.MappingJackson2MessageConverter;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageType;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.io.IOException;
+
+/**
+ * Converts messages to and from JSON text, sending each {@link VendorInstrumentPrice} as the JSON kept on it by {@link PriceJsonModule}
+ * (if the ObjectMapper has the module), rather than serializing it for every message.
+ * <p>
+ * It also reads prices (and batches of them) sent in the {@link BinaryPriceCodec binary format}, which are marked by the
+ * {@link #FORMAT_PROPERTY}, so a destination can receive either format.  See {@link BinaryPriceMessageConverter} to send them.
+ */
+public class PriceMessageConverter extends MappingJackson2MessageConverter {
+
+    public static final String FORMAT_PROPERTY = "_format", BINARY_FORMAT = "price-binary";
+
+    private int maxInflatedBytes = BinaryPriceCodec.DEFAULT_MAX_INFLATED_BYTES;
+
+    public PriceMessageConverter() {
+        setTargetType(MessageType.TEXT);
+    }
+
+    /**
+     * @param maxInflatedBytes the longest a deflated batch of prices may be once it's inflated; a longer one is rejected
+     */
+    public void setMaxInflatedBytes(int maxInflatedBytes) {
+        this.maxInflatedBytes = maxInflatedBytes;
+    }
+
+    @Override
+    protected TextMessage mapToTextMessage(Object object, Session session, ObjectWriter objectWriter) throws JMSException, IOException {
+        if (object instanceof VendorInstrumentPrice) {
+            return session.createTextMessage(PriceJsonModule.toJson((VendorInstrumentPrice) object, objectWriter));
+        }
+        return super.mapToTextMessage(object, session, objectWriter);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+        if (message instanceof BytesMessage && BINARY_FORMAT.equals(message.getStringProperty(FORMAT_PROPERTY))) {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            byte[] bytes = new byte[(int) bytesMessage.getBodyLength()];
+            bytesMessage.readBytes(bytes);
+            try {
+                return BinaryPriceCodec.decode(bytes, maxInflatedBytes);
+            } catch (IllegalArgumentException e) {
+                throw new MessageConversionException("Could not read binary price message: " + e.getMessage(), e);
+            }
+        }
+        return super.fromMessage(message);
+    }
+}
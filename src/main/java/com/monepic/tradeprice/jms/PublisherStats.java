@@ -0,0 +1,58 @@
+package com.monepic.tradeprice.jms;
+
+/**
+ * A point-in-time summary of an {@link AsyncJmsPublisher}'s queue and of the messages it has sent, conflated and failed to send
+ */
+public class PublisherStats {
+
+    private final int queued, capacity;
+    private final long published, conflated, sent, batches, failed;
+
+    public PublisherStats(int queued, int capacity, long published, long conflated, long sent, long batches, long failed) {
+        this.queued = queued;
+        this.capacity = capacity;
+        this.published = published;
+        this.conflated = conflated;
+        this.sent = sent;
+        this.batches = batches;
+        this.failed = failed;
+    }
+
+    /**
+     * @return the number of messages waiting to be sent
+     */
+    public int getQueued() { return queued; }
+
+    public int getCapacity() { return capacity; }
+
+    public long getPublished() { return published; }
+
+    /**
+     * @return the number of published messages which were replaced by a later one before they were sent
+     */
+    public long getConflated() { return conflated; }
+
+    public long getSent() { return sent; }
+
+    public long getBatches() { return batches; }
+
+    public long getFailed() { return failed; }
+
+    /**
+     * @return the fraction of the published messages which were conflated away
+     */
+    public double getConflationRatio() { return published == 0 ? 0 : (double) conflated / published; }
+
+    @Override
+    public String toString() {
+        return "PublisherStats{" +
+                "queued=" + queued +
+                ", capacity=" + capacity +
+                ", published=" + published +
+                ", conflated=" + conflated +
+                ", sent=" + sent +
+                ", batches=" + batches +
+                ", failed=" + failed +
+                '}';
+    }
+}
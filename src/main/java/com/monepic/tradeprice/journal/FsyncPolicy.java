@@ -0,0 +1,24 @@
+package com.monepic.tradeprice.journal;
+
+/**
+ * When the {@link PriceJournal} forces its writes to disk.
+ * Whatever the policy, a write is in the (memory-mapped) page cache as soon as it's appended, so survives the process crashing;
+ * the policy only decides how much may be lost if the machine itself fails
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Leave it to the operating system to write back the mapped pages
+     */
+    NEVER,
+
+    /**
+     * Force the journal to disk at a fixed interval, committing every write since the last interval as a group
+     */
+    INTERVAL,
+
+    /**
+     * Don't return from an append until it's on disk.  Appenders waiting at the same time share a single fsync
+     */
+    ALWAYS
+}
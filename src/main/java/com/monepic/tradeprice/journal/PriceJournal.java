@@ -0,0 +1,670 @@
+package com.monepic.tradeprice.journal;
+
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only journal of price updates and removals, so the cache can be rebuilt after a restart.
+ * <p>
+ * The journal is a series of fixed-size segment files, each written through a memory-mapped buffer, so an append is a copy of a
+ * few dozen bytes into the page cache.  Each record is framed by its length and a CRC of its body, and a zero length marks the end
+ * of the records in a segment.  Vendors and Instruments are written once per segment, as dictionary records, and the price records
+ * refer to them by number, so every segment can be read on its own.
+ * <p>
+ * When appends are forced to disk is decided by the {@link FsyncPolicy}.  Under {@link FsyncPolicy#ALWAYS}, appenders which are
+ * waiting at the same time share one fsync (group commit).
+ * <p>
+ * {@link #replay(Consumer, int)} reads back the segments which existed when the journal was opened.  The records are read in order,
+ * and dealt out by key to several threads, each of which keeps only the latest price of each of its keys; the survivors are then
+ * passed on in parallel.  So replay does no more work in the cache than there are distinct prices, however many updates were journaled.
+ * The latest price is the one with the newest timestamp, rather than the last journaled: concurrent writers of a Vendor/Instrument
+ * can reach the journal in the opposite order to the one they updated the cache in.
+ * A new journal never appends to the segments it replays, but starts a new one.
+ * <p>
+ * A {@link PriceSnapshot} is taken after a {@link #checkpoint()}, which starts a new segment, and only the segments from the checkpoint on
+ * need be replayed over it.  The earlier segments can then be removed with {@link #truncate(long)}.
+ */
+public class PriceJournal implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PriceJournal.class);
+
+    static final String SEGMENT_PREFIX = "journal-", SEGMENT_SUFFIX = ".log";
+    private static final int MIN_SEGMENT_SIZE = 1 << 12;
+    private static final int FRAME_BYTES = 8; // the body length, and the CRC of the body
+    private static final byte VENDOR = 1, INSTRUMENT = 2, PRICE = 3, REMOVAL = 4;
+    private static final int PRICE_BYTES = 1 + 4 + 4 + 8 + 8 + 4 + 8 + 4;
+    private static final int REMOVAL_BYTES = 1 + 4 + 4 + 8 + 4;
+    private static final int REPLAY_BATCH_SIZE = 1 << 10;
+    private static final List<Object> END_OF_REPLAY = Collections.emptyList();
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final List<Path> replayableSegments;
+    private final ScheduledExecutorService flusher;
+
+    // the writer's state, guarded by this
+    private long segmentIndex;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    // the previous segment, until it's been forced to disk (by the next sync), so that rolling needn't wait for it
+    private MappedByteBuffer unforced;
+    private ByteBuffer checksummed;
+    private final Map<Vendor, Integer> vendorRefs = new HashMap<>();
+    private final Map<Instrument, Integer> instrumentRefs = new HashMap<>();
+    private final CRC32C crc = new CRC32C();
+    private boolean closed;
+
+    private final Object syncLock = new Object();
+    private volatile long syncedPosition;
+
+    /**
+     * @param directory     where the segment files are kept
+     * @param segmentSize   the size of each segment file, in bytes
+     * @param fsyncPolicy   when appends are forced to disk
+     * @param fsyncInterval how often appends are forced to disk, under {@link FsyncPolicy#INTERVAL}
+     */
+    public PriceJournal(Path directory, int segmentSize, FsyncPolicy fsyncPolicy, Duration fsyncInterval) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be at least " + MIN_SEGMENT_SIZE);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.replayableSegments = segments(directory);
+        this.segmentIndex = replayableSegments.isEmpty() ? 0 : indexOf(replayableSegments.get(replayableSegments.size() - 1)) + 1;
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            long intervalMillis = Math.max(1, fsyncInterval.toMillis());
+            flusher = Executors.newSingleThreadScheduledExecutor(daemon("price-journal-fsync"));
+            flusher.scheduleWithFixedDelay(this::sync, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * @return the directory of the segment files
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Journals a new or updated price
+     */
+    public void append(VendorInstrumentPrice vip) {
+        long position;
+        synchronized (this) {
+            reserve(PRICE_BYTES, vip.getVendor(), vip.getInstrument());
+            int vendorRef = vendorRef(vip.getVendor()), instrumentRef = instrumentRef(vip.getInstrument());
+            int start = begin();
+            segment.put(PRICE)
+                    .putInt(vendorRef)
+                    .putInt(instrumentRef)
+                    .putLong(vip.getScaledBid())
+                    .putLong(vip.getScaledAsk())
+                    .putInt(vip.getPriceScale())
+                    .putLong(vip.getTimestamp().getEpochSecond())
+                    .putInt(vip.getTimestamp().getNano());
+            position = seal(start);
+        }
+        awaitSync(position);
+    }
+
+    /**
+     * Journals the removal of a price (e.g. on expiry).  On replay, the removal only applies if the price hasn't been updated since
+     */
+    public void remove(VendorInstrumentPrice vip) {
+        long position;
+        synchronized (this) {
+            reserve(REMOVAL_BYTES, vip.getVendor(), vip.getInstrument());
+            int vendorRef = vendorRef(vip.getVendor()), instrumentRef = instrumentRef(vip.getInstrument());
+            int start = begin();
+            segment.put(REMOVAL)
+                    .putInt(vendorRef)
+                    .putInt(instrumentRef)
+                    .putLong(vip.getTimestamp().getEpochSecond())
+                    .putInt(vip.getTimestamp().getNano());
+            position = seal(start);
+        }
+        awaitSync(position);
+    }
+
+    /**
+     * Makes room in the current segment for a record of <b>bodyBytes</b>, and the dictionary records it needs, rolling to a new segment
+     * if need be
+     */
+    private void reserve(int bodyBytes, Vendor vendor, Instrument instrument) {
+        if (closed) {
+            throw new IllegalStateException("the journal is closed");
+        }
+        if (segment == null || segment.remaining() < required(bodyBytes, vendor, instrument)) {
+            roll();
+            if (segment.remaining() < required(bodyBytes, vendor, instrument)) {
+                throw new IllegalArgumentException("record is too large for a journal segment");
+            }
+        }
+    }
+
+    /**
+     * Skips the frame of a new record, which is written by {@link #seal(int)} once the body has been
+     *
+     * @return the start of the record's frame
+     */
+    private int begin() {
+        int start = segment.position();
+        segment.position(start + FRAME_BYTES);
+        return start;
+    }
+
+    // an upper bound, as the exact size of an encoded string isn't known until it's encoded
+    private int required(int bodyBytes, Vendor vendor, Instrument instrument) {
+        int bytes = FRAME_BYTES + bodyBytes;
+        if (!vendorRefs.containsKey(vendor)) {
+            bytes += FRAME_BYTES + 1 + 4 + 8 + maxEncodedLength(vendor.getName()) + maxEncodedLength(vendor.getDescription());
+        }
+        if (!instrumentRefs.containsKey(instrument)) {
+            bytes += FRAME_BYTES + 1 + 4 + 4 + maxEncodedLength(instrument.getSymbol()) + maxEncodedLength(instrument.getDescription());
+        }
+        return bytes;
+    }
+
+    private int vendorRef(Vendor vendor) {
+        Integer ref = vendorRefs.get(vendor);
+        if (ref == null) {
+            ref = vendorRefs.size();
+            int start = begin();
+            segment.put(VENDOR).putInt(ref).putLong(vendor.getId());
+            putString(vendor.getName());
+            putString(vendor.getDescription());
+            seal(start);
+            vendorRefs.put(vendor, ref);
+        }
+        return ref;
+    }
+
+    private int instrumentRef(Instrument instrument) {
+        Integer ref = instrumentRefs.get(instrument);
+        if (ref == null) {
+            ref = instrumentRefs.size();
+            int start = begin();
+            segment.put(INSTRUMENT).putInt(ref).putInt(instrument.getPriceScale());
+            putString(instrument.getSymbol());
+            putString(instrument.getDescription());
+            seal(start);
+            instrumentRefs.put(instrument, ref);
+        }
+        return ref;
+    }
+
+    private static int maxEncodedLength(String s) {
+        return 2 + (s == null ? 0 : 3 * s.length());
+    }
+
+    private void putString(String s) {
+        if (s == null) {
+            segment.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("string is too long to journal");
+        }
+        segment.putShort((short) bytes.length).put(bytes);
+    }
+
+    /**
+     * Writes the frame of the record starting at <b>start</b>, whose body has just been written.
+     * The length is written last, so a reader never sees a record before its body
+     *
+     * @return the journal position after the record
+     */
+    private long seal(int start) {
+        int end = segment.position();
+        checksummed.limit(end).position(start + FRAME_BYTES);
+        crc.reset();
+        crc.update(checksummed);
+        segment.putInt(start + 4, (int) crc.getValue());
+        segment.putInt(start, end - start - FRAME_BYTES);
+        return position();
+    }
+
+    /**
+     * Starts the next segment.  The previous segment is left to be forced to disk by the next {@link #sync(long)}, outside this
+     * journal's lock, which forces it before the current segment; so a sync still makes every earlier record durable.  Only if
+     * the segment before that hasn't been synced yet either (i.e. segments are filling faster than they're synced) is it forced here
+     */
+    private void roll() {
+        try {
+            if (segment != null) {
+                if (fsyncPolicy != FsyncPolicy.NEVER) {
+                    if (unforced != null) {
+                        unforced.force();
+                    }
+                    unforced = segment;
+                }
+                // the mapping stays valid once the channel is closed
+                channel.close();
+                segmentIndex++;
+            }
+            Path path = directory.resolve(segmentName(segmentIndex));
+            channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            checksummed = segment.duplicate();
+            vendorRefs.clear();
+            instrumentRefs.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // called holding this
+    private long position() {
+        return segmentIndex * segmentSize + (segment == null ? 0 : segment.position());
+    }
+
+    private void awaitSync(long position) {
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            sync(position);
+        }
+    }
+
+    /**
+     * Forces everything appended so far to disk
+     */
+    public void sync() {
+        long position;
+        synchronized (this) {
+            position = position();
+        }
+        sync(position);
+    }
+
+    private void sync(long position) {
+        if (syncedPosition >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            // another appender's fsync may have covered this position while waiting
+            if (syncedPosition >= position) {
+                return;
+            }
+            MappedByteBuffer previous, toForce;
+            long target;
+            synchronized (this) {
+                previous = unforced;
+                toForce = segment;
+                target = position();
+            }
+            if (previous != null) {
+                previous.force();
+                synchronized (this) {
+                    if (unforced == previous) {
+                        unforced = null;
+                    }
+                }
+            }
+            if (toForce != null) {
+                toForce.force();
+            }
+            syncedPosition = target;
+        }
+    }
+
+    /**
+     * Starts a new segment (unless nothing has been appended to the current one), so that every record appended from now on
+     * is in that segment or a later one.  The previous segment is then forced to disk (unless fsync is disabled), without holding up
+     * appends to the new one
+     *
+     * @return the index of the segment
+     */
+    public long checkpoint() {
+        long checkpoint, position;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("the journal is closed");
+            }
+            if (segment != null && segment.position() > 0) {
+                roll();
+            }
+            checkpoint = segmentIndex;
+            position = position();
+        }
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            sync(position);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Deletes the segments before <b>segmentIndex</b>, e.g. once they're covered by a snapshot.  The current segment is never deleted
+     *
+     * @return the number of segments deleted
+     */
+    public int truncate(long segmentIndex) throws IOException {
+        long before;
+        synchronized (this) {
+            before = Math.min(segmentIndex, this.segmentIndex);
+        }
+        int deleted = 0;
+        for (Path path : segments(directory)) {
+            if (indexOf(path) < before && Files.deleteIfExists(path)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (unforced != null) {
+                unforced.force();
+                unforced = null;
+            }
+            if (segment != null) {
+                segment.force();
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Reads back the segments which existed when this journal was opened, and passes the latest surviving price of each
+     * Vendor/Instrument (by timestamp, the later journaled of two with the same one) to <b>target</b>.  A record which is torn or
+     * corrupt ends the replay of its segment.
+     *
+     * @param target  is passed the surviving prices, from several threads at once
+     * @param threads the number of threads to replay on
+     * @return the number of prices passed to <b>target</b>
+     */
+    public long replay(Consumer<VendorInstrumentPrice> target, int threads) throws IOException {
+        return replay(Collections.emptyList(), 0, target, threads);
+    }
+
+    /**
+     * As {@link #replay(Consumer, int)}, but replays only the segments from <b>fromSegment</b> on, over <b>base</b> prices
+     * (e.g. a snapshot taken at that checkpoint)
+     *
+     * @param base        the prices as of the start of <b>fromSegment</b>
+     * @param fromSegment the index of the first segment to replay
+     * @param target      is passed the surviving prices, from several threads at once
+     * @param threads     the number of threads to replay on
+     * @return the number of prices passed to <b>target</b>
+     */
+    public long replay(Collection<VendorInstrumentPrice> base, long fromSegment, Consumer<VendorInstrumentPrice> target,
+                       int threads) throws IOException {
+        int shardCount = Math.max(1, threads);
+        ExecutorService pool = Executors.newFixedThreadPool(shardCount, daemon("price-journal-replay"));
+        try {
+            List<ReplayShard> shards = new ArrayList<>(shardCount);
+            List<Future<Long>> replayed = new ArrayList<>(shardCount);
+            for (int i = 0; i < shardCount; i++) {
+                ReplayShard shard = new ReplayShard();
+                shards.add(shard);
+                replayed.add(pool.submit(() -> shard.replay(target)));
+            }
+            for (VendorInstrumentPrice vip : base) {
+                dispatch(vip, shards);
+            }
+            long records = 0;
+            int segments = 0;
+            for (Path path : replayableSegments) {
+                if (indexOf(path) >= fromSegment) {
+                    records += read(path, shards);
+                    segments++;
+                }
+            }
+            long prices = 0;
+            for (int i = 0; i < shardCount; i++) {
+                shards.get(i).finish();
+            }
+            for (Future<Long> count : replayed) {
+                prices += count.get();
+            }
+            LOG.info("Replayed {} journal records from {} segments over {} prices as {} prices", records, segments, base.size(), prices);
+            return prices;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted replaying the journal", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to replay the journal", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads the records of one segment, and deals them out to the shards by key
+     *
+     * @return the number of price and removal records read
+     */
+    private long read(Path path, List<ReplayShard> shards) throws IOException, InterruptedException {
+        ByteBuffer buffer;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+        CRC32C check = new CRC32C();
+        Vendor[] vendors = new Vendor[16];
+        Instrument[] instruments = new Instrument[16];
+        long records = 0;
+        while (buffer.remaining() >= FRAME_BYTES) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || length > buffer.remaining()) {
+                LOG.warn("Torn record at {} of journal segment {}", start, path);
+                break;
+            }
+            int end = start + FRAME_BYTES + length;
+            check.reset();
+            check.update(buffer.duplicate().limit(end));
+            if ((int) check.getValue() != checksum) {
+                LOG.warn("Corrupt record at {} of journal segment {}", start, path);
+                break;
+            }
+            byte type = buffer.get();
+            switch (type) {
+                case VENDOR: {
+                    int ref = buffer.getInt();
+                    long id = buffer.getLong();
+                    vendors = grow(vendors, ref);
+                    vendors[ref] = new Vendor(id, getString(buffer), getString(buffer));
+                    break;
+                }
+                case INSTRUMENT: {
+                    int ref = buffer.getInt();
+                    int priceScale = buffer.getInt();
+                    instruments = grow(instruments, ref);
+                    instruments[ref] = new Instrument(getString(buffer), getString(buffer), priceScale);
+                    break;
+                }
+                case PRICE: {
+                    Vendor vendor = vendors[buffer.getInt()];
+                    Instrument instrument = instruments[buffer.getInt()];
+                    long bid = buffer.getLong(), ask = buffer.getLong();
+                    int priceScale = buffer.getInt();
+                    Instant timestamp = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+                    dispatch(new VendorInstrumentPrice(vendor, instrument, bid, ask, priceScale, timestamp), shards);
+                    records++;
+                    break;
+                }
+                case REMOVAL: {
+                    Vendor vendor = vendors[buffer.getInt()];
+                    Instrument instrument = instruments[buffer.getInt()];
+                    Instant timestamp = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+                    dispatch(new Removal(new VendorInstrumentPrice(vendor, instrument, 0, 0, 0, timestamp)), shards);
+                    records++;
+                    break;
+                }
+                default:
+                    LOG.warn("Unknown record type {} at {} of journal segment {}", type, start, path);
+            }
+            buffer.position(end);
+        }
+        return records;
+    }
+
+    private static void dispatch(Object record, List<ReplayShard> shards) throws InterruptedException {
+        VendorInstrumentPrice vip = record instanceof Removal ? ((Removal) record).vip : (VendorInstrumentPrice) record;
+        int hash = vip.hashCode() * 0x9E3779B9;
+        shards.get(Math.floorMod(hash ^ (hash >>> 16), shards.size())).add(record);
+    }
+
+    private static <E> E[] grow(E[] refs, int ref) {
+        return ref < refs.length ? refs : Arrays.copyOf(refs, Math.max(ref + 1, refs.length * 2));
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Removal {
+
+        final VendorInstrumentPrice vip;
+
+        Removal(VendorInstrumentPrice vip) {
+            this.vip = vip;
+        }
+    }
+
+    /**
+     * The keys dealt to one replay thread.  Records are handed over in batches, in the order they were journaled
+     */
+    private static final class ReplayShard {
+
+        final BlockingQueue<List<Object>> batches = new ArrayBlockingQueue<>(16);
+        final Map<VendorInstrumentPrice, VendorInstrumentPrice> latest = new HashMap<>();
+        // keys whose latest price was removed; it's kept in latest so an older price journaled after the removal can't revive it
+        final Set<VendorInstrumentPrice> removed = new HashSet<>();
+        List<Object> pending = new ArrayList<>(REPLAY_BATCH_SIZE);
+
+        // called by the reading thread
+        void add(Object record) throws InterruptedException {
+            pending.add(record);
+            if (pending.size() == REPLAY_BATCH_SIZE) {
+                batches.put(pending);
+                pending = new ArrayList<>(REPLAY_BATCH_SIZE);
+            }
+        }
+
+        // called by the reading thread
+        void finish() throws InterruptedException {
+            if (!pending.isEmpty()) {
+                batches.put(pending);
+            }
+            batches.put(END_OF_REPLAY);
+        }
+
+        long replay(Consumer<VendorInstrumentPrice> target) throws InterruptedException {
+            for (List<Object> batch = batches.take(); batch != END_OF_REPLAY; batch = batches.take()) {
+                for (Object record : batch) {
+                    if (record instanceof Removal) {
+                        VendorInstrumentPrice vip = ((Removal) record).vip, current = latest.get(vip);
+                        if (current != null && current.getTimestamp().equals(vip.getTimestamp())) {
+                            removed.add(vip);
+                        }
+                    } else {
+                        VendorInstrumentPrice vip = (VendorInstrumentPrice) record, current = latest.get(vip);
+                        if (current == null || !vip.getTimestamp().isBefore(current.getTimestamp())) {
+                            latest.put(vip, vip);
+                            removed.remove(vip);
+                        }
+                    }
+                }
+            }
+            long prices = 0;
+            for (VendorInstrumentPrice vip : latest.values()) {
+                if (!removed.contains(vip)) {
+                    target.accept(vip);
+                    prices++;
+                }
+            }
+            return prices;
+        }
+    }
+
+    static String segmentName(long index) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    private static long indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * @return the segment files in <b>directory</b>, oldest first
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> {
+                String name = f.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)
+                        && name.length() == SEGMENT_PREFIX.length() + 20 + SEGMENT_SUFFIX.length();
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,328 @@
+package com.monepic.tradeprice.journal;
+
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * A copy of every cached price as of a {@link PriceJournal#checkpoint()}, from which the cache can be restored on startup
+ * without replaying the whole journal.
+ * <p>
+ * A snapshot is a single file: a header, a dictionary of the Vendors and Instruments, and then the prices as fixed-size records
+ * (referring to the dictionary by number, with fixed-point bids and asks), in chunks of {@value #CHUNK_PRICES} which are each
+ * followed by their CRC.  As every chunk but the last is the same size, the chunks are read, checked and decoded on several threads at once.
+ * A snapshot is written to a temporary file and then renamed, so a snapshot file is always complete, if not necessarily intact.
+ */
+public final class PriceSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PriceSnapshot.class);
+
+    static final String SNAPSHOT_PREFIX = "snapshot-", SNAPSHOT_SUFFIX = ".bin";
+    private static final int MAGIC = 0x54505331; // "TPS1"
+    private static final int FORMAT_VERSION = 1;
+    // magic, format version, checkpoint, price count, dictionary length, dictionary CRC
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4;
+    private static final int PRICE_BYTES = 4 + 4 + 8 + 8 + 4 + 8 + 4;
+    static final int CHUNK_PRICES = 1 << 14;
+    private static final int CHUNK_BYTES = CHUNK_PRICES * PRICE_BYTES + 4;
+
+    private final long checkpoint;
+    private final List<VendorInstrumentPrice> prices;
+
+    private PriceSnapshot(long checkpoint, List<VendorInstrumentPrice> prices) {
+        this.checkpoint = checkpoint;
+        this.prices = prices;
+    }
+
+    /**
+     * @return the index of the first journal segment which isn't covered by this snapshot
+     */
+    public long getCheckpoint() { return checkpoint; }
+
+    public List<VendorInstrumentPrice> getPrices() { return prices; }
+
+    /**
+     * Writes a snapshot of <b>prices</b>, which are only iterated once (so may be a consistent view of a cache which is still being written to)
+     *
+     * @param directory  where to write the snapshot
+     * @param checkpoint the journal checkpoint the prices were read after
+     * @param prices     the prices to write
+     * @return the snapshot file
+     */
+    public static Path write(Path directory, long checkpoint, Collection<VendorInstrumentPrice> prices) throws IOException {
+        List<VendorInstrumentPrice> copy = new ArrayList<>(prices);
+        Map<Vendor, Integer> vendorRefs = new HashMap<>();
+        Map<Instrument, Integer> instrumentRefs = new HashMap<>();
+        ByteArrayOutputStream dictionaryBytes = new ByteArrayOutputStream();
+        DataOutputStream dictionary = new DataOutputStream(dictionaryBytes);
+        List<Vendor> vendors = new ArrayList<>();
+        List<Instrument> instruments = new ArrayList<>();
+        int[] refs = new int[copy.size() * 2];
+        for (int i = 0; i < copy.size(); i++) {
+            VendorInstrumentPrice vip = copy.get(i);
+            refs[2 * i] = vendorRefs.computeIfAbsent(vip.getVendor(), v -> { vendors.add(v); return vendors.size() - 1; });
+            refs[2 * i + 1] = instrumentRefs.computeIfAbsent(vip.getInstrument(), in -> { instruments.add(in); return instruments.size() - 1; });
+        }
+        dictionary.writeInt(vendors.size());
+        for (Vendor vendor : vendors) {
+            dictionary.writeLong(vendor.getId());
+            writeString(dictionary, vendor.getName());
+            writeString(dictionary, vendor.getDescription());
+        }
+        dictionary.writeInt(instruments.size());
+        for (Instrument instrument : instruments) {
+            dictionary.writeInt(instrument.getPriceScale());
+            writeString(dictionary, instrument.getSymbol());
+            writeString(dictionary, instrument.getDescription());
+        }
+        byte[] dictionaryArray = dictionaryBytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(dictionaryArray);
+
+        Files.createDirectories(directory);
+        Path file = directory.resolve(snapshotName(checkpoint));
+        Path temporary = directory.resolve(snapshotName(checkpoint) + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(CHUNK_BYTES, HEADER_BYTES + dictionaryArray.length));
+            buffer.putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putLong(checkpoint)
+                    .putLong(copy.size())
+                    .putInt(dictionaryArray.length)
+                    .putInt((int) crc.getValue())
+                    .put(dictionaryArray);
+            writeFully(out, buffer.flip());
+            for (int chunk = 0; chunk * CHUNK_PRICES < copy.size(); chunk++) {
+                buffer.clear();
+                int end = Math.min(copy.size(), (chunk + 1) * CHUNK_PRICES);
+                for (int i = chunk * CHUNK_PRICES; i < end; i++) {
+                    VendorInstrumentPrice vip = copy.get(i);
+                    buffer.putInt(refs[2 * i])
+                            .putInt(refs[2 * i + 1])
+                            .putLong(vip.getScaledBid())
+                            .putLong(vip.getScaledAsk())
+                            .putInt(vip.getPriceScale())
+                            .putLong(vip.getTimestamp().getEpochSecond())
+                            .putInt(vip.getTimestamp().getNano());
+                }
+                crc.reset();
+                crc.update(buffer.duplicate().flip());
+                buffer.putInt((int) crc.getValue());
+                writeFully(out, buffer.flip());
+            }
+            out.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        LOG.info("Wrote a snapshot of {} prices at journal checkpoint {}", copy.size(), checkpoint);
+        return file;
+    }
+
+    /**
+     * Reads the latest intact snapshot in <b>directory</b>.  A snapshot which can't be read is skipped, in favour of the one before
+     *
+     * @param threads the number of threads to decode the prices on
+     * @return the snapshot, or null if there isn't one
+     */
+    public static PriceSnapshot readLatest(Path directory, int threads) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        List<Path> snapshots = snapshots(directory);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            try {
+                return read(snapshots.get(i), threads);
+            } catch (IOException e) {
+                LOG.warn("Skipping unreadable snapshot {}", snapshots.get(i), e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Deletes all but the latest <b>count</b> snapshots in <b>directory</b>, so the journal needn't be kept beyond the earliest of them
+     *
+     * @return the checkpoint of the earliest snapshot kept, i.e. the first journal segment still needed
+     */
+    public static long retainLatest(Path directory, int count) throws IOException {
+        List<Path> snapshots = snapshots(directory);
+        int kept = Math.min(Math.max(1, count), snapshots.size());
+        for (Path old : snapshots.subList(0, snapshots.size() - kept)) {
+            Files.deleteIfExists(old);
+        }
+        return snapshots.isEmpty() ? 0 : checkpointOf(snapshots.get(snapshots.size() - kept));
+    }
+
+    static PriceSnapshot read(Path file, int threads) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(in, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+                throw new IOException("not a price snapshot");
+            }
+            long checkpoint = header.getLong();
+            long count = header.getLong();
+            int dictionaryLength = header.getInt();
+            int dictionaryCrc = header.getInt();
+            long chunks = (count + CHUNK_PRICES - 1) / CHUNK_PRICES;
+            long pricesOffset = HEADER_BYTES + (long) dictionaryLength;
+            if (count < 0 || count > Integer.MAX_VALUE - 8 || dictionaryLength < 0
+                    || in.size() != pricesOffset + count * PRICE_BYTES + chunks * 4) {
+                throw new IOException("truncated snapshot");
+            }
+
+            ByteBuffer dictionary = readFully(in, HEADER_BYTES, dictionaryLength);
+            CRC32C crc = new CRC32C();
+            crc.update(dictionary.duplicate());
+            if ((int) crc.getValue() != dictionaryCrc) {
+                throw new IOException("corrupt snapshot dictionary");
+            }
+            Vendor[] vendors = new Vendor[dictionary.getInt()];
+            for (int i = 0; i < vendors.length; i++) {
+                long id = dictionary.getLong();
+                vendors[i] = new Vendor(id, readString(dictionary), readString(dictionary));
+            }
+            Instrument[] instruments = new Instrument[dictionary.getInt()];
+            for (int i = 0; i < instruments.length; i++) {
+                int priceScale = dictionary.getInt();
+                instruments[i] = new Instrument(readString(dictionary), readString(dictionary), priceScale);
+            }
+
+            VendorInstrumentPrice[] prices = new VendorInstrumentPrice[(int) count];
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), PriceJournal.daemon("price-snapshot-read"));
+            try {
+                List<Future<?>> decoded = new ArrayList<>();
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    int first = chunk * CHUNK_PRICES;
+                    int length = Math.min(CHUNK_PRICES, prices.length - first);
+                    long offset = pricesOffset + (long) chunk * CHUNK_BYTES;
+                    decoded.add(pool.submit(() -> {
+                        decode(in.map(FileChannel.MapMode.READ_ONLY, offset, length * PRICE_BYTES + 4), vendors, instruments, prices, first, length);
+                        return null;
+                    }));
+                }
+                for (Future<?> chunk : decoded) {
+                    chunk.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted reading the snapshot", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+            LOG.info("Read a snapshot of {} prices at journal checkpoint {}", prices.length, checkpoint);
+            return new PriceSnapshot(checkpoint, Collections.unmodifiableList(Arrays.asList(prices)));
+        }
+    }
+
+    private static void decode(ByteBuffer chunk, Vendor[] vendors, Instrument[] instruments, VendorInstrumentPrice[] prices,
+                               int first, int length) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(chunk.duplicate().limit(length * PRICE_BYTES));
+        if ((int) crc.getValue() != chunk.getInt(length * PRICE_BYTES)) {
+            throw new IOException("corrupt snapshot chunk at price " + first);
+        }
+        try {
+            for (int i = first; i < first + length; i++) {
+                Vendor vendor = vendors[chunk.getInt()];
+                Instrument instrument = instruments[chunk.getInt()];
+                long bid = chunk.getLong(), ask = chunk.getLong();
+                int priceScale = chunk.getInt();
+                Instant timestamp = Instant.ofEpochSecond(chunk.getLong(), chunk.getInt());
+                prices[i] = new VendorInstrumentPrice(vendor, instrument, bid, ask, priceScale, timestamp);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("bad dictionary reference in snapshot chunk at price " + first, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("string is too long to snapshot");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel in, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("truncated snapshot");
+            }
+        }
+        return buffer.flip();
+    }
+
+    static String snapshotName(long checkpoint) {
+        return String.format("%s%020d%s", SNAPSHOT_PREFIX, checkpoint, SNAPSHOT_SUFFIX);
+    }
+
+    private static long checkpointOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    /**
+     * @return the snapshot files in <b>directory</b>, oldest first
+     */
+    static List<Path> snapshots(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> {
+                String name = f.getFileName().toString();
+                return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX)
+                        && name.length() == SNAPSHOT_PREFIX.length() + 20 + SNAPSHOT_SUFFIX.length();
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+}
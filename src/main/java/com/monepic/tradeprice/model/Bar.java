@@ -0,0 +1,94 @@
+package com.monepic.tradeprice.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.monepic.tradeprice.utils.FixedPoint;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * The open, high, low and close of the bid, ask and mid of an Instrument over one interval (e.g. a minute), across every Vendor's prices
+ * timestamped in [<b>start</b>, <b>end</b>)
+ */
+public final class Bar {
+
+    private final String symbol;
+    private final Instant start;
+    private final Duration interval;
+    private final int ticks;
+    private final Ohlc bid, ask, mid;
+
+    public Bar(String symbol, Instant start, Duration interval, int ticks, Ohlc bid, Ohlc ask, Ohlc mid) {
+        this.symbol = symbol;
+        this.start = start;
+        this.interval = interval;
+        this.ticks = ticks;
+        this.bid = bid;
+        this.ask = ask;
+        this.mid = mid;
+    }
+
+    public String getSymbol() { return symbol; }
+
+    public Instant getStart() { return start; }
+
+    public Instant getEnd() { return start.plus(interval); }
+
+    @JsonIgnore
+    public Duration getInterval() { return interval; }
+
+    /**
+     * @return the number of prices in the bar
+     */
+    public int getTicks() { return ticks; }
+
+    public Ohlc getBid() { return bid; }
+
+    public Ohlc getAsk() { return ask; }
+
+    public Ohlc getMid() { return mid; }
+
+    @Override
+    public String toString() {
+        return "Bar{" +
+                "symbol='" + symbol + '\'' +
+                ", start=" + start +
+                ", interval=" + interval +
+                ", ticks=" + ticks +
+                ", bid=" + bid +
+                ", ask=" + ask +
+                ", mid=" + mid +
+                '}';
+    }
+
+    public static final class Ohlc {
+
+        private final BigDecimal open, high, low, close;
+
+        public Ohlc(BigDecimal open, BigDecimal high, BigDecimal low, BigDecimal close) {
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+        }
+
+        public static Ohlc of(long open, long high, long low, long close, int scale) {
+            return new Ohlc(FixedPoint.toBigDecimal(open, scale), FixedPoint.toBigDecimal(high, scale),
+                    FixedPoint.toBigDecimal(low, scale), FixedPoint.toBigDecimal(close, scale));
+        }
+
+        public BigDecimal getOpen() { return open; }
+
+        public BigDecimal getHigh() { return high; }
+
+        public BigDecimal getLow() { return low; }
+
+        public BigDecimal getClose() { return close; }
+
+        @Override
+        public String toString() {
+            return "[" + open + ", " + high + ", " + low + ", " + close + ']';
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.monepic.tradeprice.model;
+
+import com.monepic.tradeprice.utils.FixedPoint;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Every Vendor's price for an Instrument, as two ladders: the bids best (highest) first, and the asks best (lowest) first
+ */
+public final class Depth {
+
+    private final String symbol;
+    private final long sequence;
+    private final List<Level> bids, asks;
+
+    public Depth(String symbol, long sequence, List<Level> bids, List<Level> asks) {
+        this.symbol = symbol;
+        this.sequence = sequence;
+        this.bids = List.copyOf(bids);
+        this.asks = List.copyOf(asks);
+    }
+
+    public String getSymbol() { return symbol; }
+
+    /**
+     * @return the top of book sequence this depth was taken at
+     */
+    public long getSequence() { return sequence; }
+
+    public List<Level> getBids() { return bids; }
+
+    public List<Level> getAsks() { return asks; }
+
+    /**
+     * One Vendor's price, on one side of the book
+     */
+    public static final class Level {
+
+        private final long vendorId;
+        private final long price;
+        private final int priceScale;
+        private final Instant timestamp;
+
+        public Level(long vendorId, long price, int priceScale, Instant timestamp) {
+            this.vendorId = vendorId;
+            this.price = price;
+            this.priceScale = priceScale;
+            this.timestamp = timestamp;
+        }
+
+        public long getVendorId() { return vendorId; }
+
+        public BigDecimal getPrice() { return FixedPoint.toBigDecimal(price, priceScale); }
+
+        public Instant getTimestamp() { return timestamp; }
+    }
+}
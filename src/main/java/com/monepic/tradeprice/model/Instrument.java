@@ -1,16 +1,29 @@
 package com.monepic.tradeprice.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.Objects;
 
 public class Instrument {
 
+    /**
+     * The number of decimal places prices are held to, unless configured otherwise for the Instrument
+     */
+    public static final int DEFAULT_PRICE_SCALE = 8;
+
     private String symbol, description;
+    private int priceScale = DEFAULT_PRICE_SCALE;
 
     public Instrument() {}
 
     public Instrument(String symbol, String description) {
+        this(symbol, description, DEFAULT_PRICE_SCALE);
+    }
+
+    public Instrument(String symbol, String description, int priceScale) {
         this.symbol = symbol;
         this.description = description;
+        this.priceScale = priceScale;
     }
 
     public String getSymbol() { return symbol; }
@@ -21,6 +34,14 @@ public class Instrument {
 
     public void setDescription(String description) { this.description = description; }
 
+    /**
+     * @return the number of decimal places this Instrument's prices are held to
+     */
+    @JsonIgnore
+    public int getPriceScale() { return priceScale; }
+
+    public void setPriceScale(int priceScale) { this.priceScale = priceScale; }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
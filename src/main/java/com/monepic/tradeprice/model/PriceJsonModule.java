@@ -0,0 +1,99 @@
+package com.monepic.tradeprice.model;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Serializes each {@link VendorInstrumentPrice} to JSON once, the first time it's written, and keeps the JSON on the (immutable) price,
+ * so that every later response or message including the price copies the JSON rather than serializing it again.
+ * An updated price is a new instance, so never has stale JSON.
+ * <p>
+ * The JSON is written compactly however the ObjectMapper is configured to indent, but otherwise by the ObjectMapper's own factory, so
+ * with its generator features (e.g. escaping non-ASCII characters).  The module must only be registered with one ObjectMapper (or with
+ * ObjectMappers which write prices alike), as the first to write a price fixes its JSON.
+ */
+public class PriceJsonModule extends SimpleModule {
+
+    private static final long serialVersionUID = 1L;
+
+    private JsonFactory factory;
+
+    public PriceJsonModule() {
+        super("PriceJsonModule");
+        setSerializerModifier(new BeanSerializerModifier() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription description, JsonSerializer<?> serializer) {
+                return description.getBeanClass() == VendorInstrumentPrice.class
+                        ? new CachingSerializer((JsonSerializer<VendorInstrumentPrice>) serializer, factory)
+                        : serializer;
+            }
+        });
+    }
+
+    @Override
+    public void setupModule(SetupContext context) {
+        super.setupModule(context);
+        factory = context.<ObjectCodec>getOwner().getFactory();
+    }
+
+    /**
+     * @param writer a writer of an ObjectMapper this module is registered with
+     * @return <b>vip</b> as JSON
+     */
+    public static String toJson(VendorInstrumentPrice vip, ObjectWriter writer) throws IOException {
+        SerializableString json = vip.json;
+        return json != null ? json.getValue() : writer.writeValueAsString(vip);
+    }
+
+    private static final class CachingSerializer extends StdSerializer<VendorInstrumentPrice> implements ResolvableSerializer {
+
+        private static final long serialVersionUID = 1L;
+
+        private final JsonSerializer<VendorInstrumentPrice> delegate;
+        private final JsonFactory factory;
+
+        CachingSerializer(JsonSerializer<VendorInstrumentPrice> delegate, JsonFactory factory) {
+            super(VendorInstrumentPrice.class);
+            this.delegate = delegate;
+            this.factory = factory;
+        }
+
+        @Override
+        public void resolve(SerializerProvider provider) throws JsonMappingException {
+            if (delegate instanceof ResolvableSerializer) {
+                ((ResolvableSerializer) delegate).resolve(provider);
+            }
+        }
+
+        @Override
+        public void serialize(VendorInstrumentPrice vip, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            SerializableString json = vip.json;
+            if (json == null) {
+                StringWriter out = new StringWriter(256);
+                try (JsonGenerator compact = factory.createGenerator(out)) {
+                    delegate.serialize(vip, compact, provider);
+                }
+                // racing writers produce the same JSON, so whichever is kept doesn't matter
+                vip.json = json = new SerializedString(out.toString());
+            }
+            gen.writeRawValue(json);
+        }
+    }
+}
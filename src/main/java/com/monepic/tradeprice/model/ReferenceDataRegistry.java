@@ -0,0 +1,94 @@
+package com.monepic.tradeprice.model;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonicalizes the {@link Vendor} and {@link Instrument} reference data, keyed by Vendor id and Instrument symbol, so that
+ * every price for the same Vendor (or Instrument) shares one instance - and so one copy of its strings - and compares by identity.
+ * <p>
+ * Looking up unchanged reference data doesn't allocate.  If a Vendor or Instrument arrives with a changed name or description,
+ * it replaces the registered instance from then on.  Registered instances are shared, so must not be modified.
+ * <p>
+ * The registry also assigns each Instrument its price scale.
+ */
+public class ReferenceDataRegistry {
+
+    private final ConcurrentHashMap<Long, Vendor> vendors = new ConcurrentHashMap<>(1 << 8);
+    private final ConcurrentHashMap<String, Instrument> instruments = new ConcurrentHashMap<>(1 << 8);
+    private final int defaultPriceScale;
+    private final Map<String, Integer> priceScales;
+
+    public ReferenceDataRegistry() {
+        this(Instrument.DEFAULT_PRICE_SCALE, Map.of());
+    }
+
+    /**
+     * @param defaultPriceScale the number of decimal places prices are held to
+     * @param priceScales       overrides of <b>defaultPriceScale</b> by Instrument symbol
+     */
+    public ReferenceDataRegistry(int defaultPriceScale, Map<String, Integer> priceScales) {
+        this.defaultPriceScale = defaultPriceScale;
+        this.priceScales = Map.copyOf(priceScales);
+    }
+
+    /**
+     * @return the registered Vendor with these details, registering one if need be
+     */
+    public Vendor vendor(Long id, String name, String description) {
+        if (id == null) {
+            return new Vendor(null, name, description);
+        }
+        Vendor vendor = vendors.get(id);
+        if (vendor != null && matches(vendor, name, description)) {
+            return vendor;
+        }
+        return vendors.compute(id, (k, current) ->
+                current != null && matches(current, name, description) ? current : new Vendor(id, name, description));
+    }
+
+    /**
+     * @return the registered Instrument with these details, registering one if need be
+     */
+    public Instrument instrument(String symbol, String description) {
+        if (symbol == null) {
+            return new Instrument(null, description, defaultPriceScale);
+        }
+        Instrument instrument = instruments.get(symbol);
+        if (instrument != null && Objects.equals(instrument.getDescription(), description)) {
+            return instrument;
+        }
+        return instruments.compute(symbol, (k, current) ->
+                current != null && Objects.equals(current.getDescription(), description) ? current
+                        : new Instrument(symbol, description, priceScale(symbol)));
+    }
+
+    /**
+     * @return the price scale an Instrument with <b>symbol</b> is (or would be) registered with, without registering it
+     */
+    public int priceScale(String symbol) {
+        return symbol == null ? defaultPriceScale : priceScales.getOrDefault(symbol, defaultPriceScale);
+    }
+
+    /**
+     * @return <b>vip</b>, with its Vendor and Instrument replaced by the registered instances
+     */
+    public VendorInstrumentPrice canonicalize(VendorInstrumentPrice vip) {
+        Vendor v = vip.getVendor();
+        Instrument i = vip.getInstrument();
+        return vip.withReferenceData(vendor(v.getId(), v.getName(), v.getDescription()), instrument(i.getSymbol(), i.getDescription()));
+    }
+
+    public int vendorCount() {
+        return vendors.size();
+    }
+
+    public int instrumentCount() {
+        return instruments.size();
+    }
+
+    private static boolean matches(Vendor vendor, String name, String description) {
+        return Objects.equals(vendor.getName(), name) && Objects.equals(vendor.getDescription(), description);
+    }
+}
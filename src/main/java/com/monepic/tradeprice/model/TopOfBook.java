@@ -0,0 +1,76 @@
+package com.monepic.tradeprice.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.monepic.tradeprice.utils.FixedPoint;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * The best (highest) bid and best (lowest) ask offered by any Vendor for an Instrument.
+ * The <b>sequence</b> increases each time the top of the Instrument's book changes, so consumers can discard stale updates
+ */
+public final class TopOfBook {
+
+    private final String symbol;
+    private final long sequence;
+    private final Long bidVendorId, askVendorId;
+    private final long bid, ask;
+    private final int priceScale;
+
+    /**
+     * @param bidVendorId the Vendor offering the best bid, or null if there are no prices
+     * @param askVendorId the Vendor offering the best ask, or null if there are no prices
+     */
+    public TopOfBook(String symbol, long sequence, Long bidVendorId, long bid, Long askVendorId, long ask, int priceScale) {
+        this.symbol = symbol;
+        this.sequence = sequence;
+        this.bidVendorId = bidVendorId;
+        this.bid = bid;
+        this.askVendorId = askVendorId;
+        this.ask = ask;
+        this.priceScale = priceScale;
+    }
+
+    public static TopOfBook empty(String symbol, long sequence) {
+        return new TopOfBook(symbol, sequence, null, 0, null, 0, 0);
+    }
+
+    public String getSymbol() { return symbol; }
+
+    public long getSequence() { return sequence; }
+
+    public Long getBidVendorId() { return bidVendorId; }
+
+    public BigDecimal getBid() { return bidVendorId == null ? null : FixedPoint.toBigDecimal(bid, priceScale); }
+
+    public Long getAskVendorId() { return askVendorId; }
+
+    public BigDecimal getAsk() { return askVendorId == null ? null : FixedPoint.toBigDecimal(ask, priceScale); }
+
+    @JsonIgnore
+    public boolean isEmpty() { return bidVendorId == null; }
+
+    /**
+     * @return whether <b>that</b> has the same best prices from the same Vendors, regardless of sequence
+     */
+    public boolean samePricesAs(TopOfBook that) {
+        return that != null
+                && Objects.equals(bidVendorId, that.bidVendorId)
+                && Objects.equals(askVendorId, that.askVendorId)
+                && (isEmpty() || FixedPoint.compare(bid, priceScale, that.bid, that.priceScale) == 0
+                && FixedPoint.compare(ask, priceScale, that.ask, that.priceScale) == 0);
+    }
+
+    @Override
+    public String toString() {
+        return "TopOfBook{" +
+                "symbol='" + symbol + '\'' +
+                ", sequence=" + sequence +
+                ", bidVendorId=" + bidVendorId +
+                ", bid=" + getBid() +
+                ", askVendorId=" + askVendorId +
+                ", ask=" + getAsk() +
+                '}';
+    }
+}
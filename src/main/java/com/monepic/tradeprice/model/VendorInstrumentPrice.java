@@ -1,50 +1,102 @@
 package com.monepic.tradeprice.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.SerializableString;
+import com.monepic.tradeprice.utils.FixedPoint;
+
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.Objects;
 
-public class VendorInstrumentPrice {
-
-    private Vendor vendor;
-    private Instrument instrument;
-    private BigDecimal bid, ask;
-    private Instant timestamp;
-
-    public VendorInstrumentPrice() {}
+/**
+ * An immutable price.  The bid and ask are held as fixed-point longs, at the price scale of the Instrument
+ * (see {@link Instrument#getPriceScale()}), and are only converted to {@link BigDecimal}s for JSON.
+ * As instances never change, they can be safely shared between threads without locking.
+ */
+public final class VendorInstrumentPrice {
+
+    private final Vendor vendor;
+    private final Instrument instrument;
+    private final long bid, ask;
+    private final int priceScale;
+    private final Instant timestamp;
+    // this price as JSON, written by PriceJsonModule the first time it's needed
+    transient volatile SerializableString json;
 
     public VendorInstrumentPrice(Vendor vendor, Instrument instrument, BigDecimal bid, BigDecimal ask) {
         this(vendor, instrument, bid, ask, Instant.now());
     }
 
-    public VendorInstrumentPrice(Vendor vendor, Instrument instrument, BigDecimal bid, BigDecimal ask, Instant timestamp) {
+    @JsonCreator
+    public VendorInstrumentPrice(@JsonProperty("vendor") Vendor vendor,
+                                 @JsonProperty("instrument") Instrument instrument,
+                                 @JsonProperty("bid") BigDecimal bid,
+                                 @JsonProperty("ask") BigDecimal ask,
+                                 @JsonProperty("timestamp") Instant timestamp) {
+        this(vendor, instrument,
+                FixedPoint.of(bid, instrument.getPriceScale()), FixedPoint.of(ask, instrument.getPriceScale()),
+                instrument.getPriceScale(), timestamp);
+    }
+
+    /**
+     * @param bid        the unscaled bid
+     * @param ask        the unscaled ask
+     * @param priceScale the number of decimal places of <b>bid</b> and <b>ask</b>
+     */
+    public VendorInstrumentPrice(Vendor vendor, Instrument instrument, long bid, long ask, int priceScale, Instant timestamp) {
         this.vendor = vendor;
         this.instrument = instrument;
         this.bid = bid;
         this.ask = ask;
+        this.priceScale = priceScale;
         this.timestamp = timestamp;
     }
 
     public Vendor getVendor() { return vendor; }
 
-    public void setVendor(Vendor vendor) { this.vendor = vendor; }
-
     public Instrument getInstrument() { return instrument; }
 
-    public void setInstrument(Instrument instrument) { this.instrument = instrument; }
+    public BigDecimal getBid() { return FixedPoint.toBigDecimal(bid, priceScale); }
 
-    public BigDecimal getBid() { return bid; }
+    public BigDecimal getAsk() { return FixedPoint.toBigDecimal(ask, priceScale); }
 
-    public void setBid(BigDecimal bid) { this.bid = bid; }
+    public Instant getTimestamp() { return timestamp; }
 
-    public BigDecimal getAsk() { return ask; }
+    /**
+     * @return the bid, unscaled
+     */
+    @JsonIgnore
+    public long getScaledBid() { return bid; }
 
-    public void setAsk(BigDecimal ask) { this.ask = ask; }
+    /**
+     * @return the ask, unscaled
+     */
+    @JsonIgnore
+    public long getScaledAsk() { return ask; }
 
-    public Instant getTimestamp() { return timestamp; }
+    @JsonIgnore
+    public int getPriceScale() { return priceScale; }
+
+    public VendorInstrumentPrice withTimestamp(Instant timestamp) {
+        return new VendorInstrumentPrice(vendor, instrument, bid, ask, priceScale, timestamp);
+    }
 
-    public void setTimestamp(Instant timestamp) { this.timestamp = timestamp; }
+    /**
+     * @return this price for the given <b>vendor</b> and <b>instrument</b>, rescaled to the Instrument's price scale if need be
+     */
+    public VendorInstrumentPrice withReferenceData(Vendor vendor, Instrument instrument) {
+        int scale = instrument.getPriceScale();
+        return new VendorInstrumentPrice(vendor, instrument,
+                FixedPoint.rescale(bid, priceScale, scale), FixedPoint.rescale(ask, priceScale, scale), scale, timestamp);
+    }
 
+    /**
+     * Prices are equal if they're for the same Vendor id and Instrument symbol, as those are what every cache keys them by; so a price
+     * whose Vendor's or Instrument's description has changed (with a new instance from the registry) replaces the earlier one, rather
+     * than sitting alongside it
+     */
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -54,13 +106,19 @@ public class VendorInstrumentPrice {
             return false;
         }
         VendorInstrumentPrice that = (VendorInstrumentPrice) obj;
-        return Objects.equals(vendor, that.vendor)
-                && Objects.equals(instrument, that.instrument);
+        return Objects.equals(vendor == null ? null : vendor.getId(), that.vendor == null ? null : that.vendor.getId())
+                && Objects.equals(instrument == null ? null : instrument.getSymbol(),
+                that.instrument == null ? null : that.instrument.getSymbol());
     }
 
+    /**
+     * Only hashes the keys of the Vendor and Instrument, as {@link #equals} compares them, rather than all their fields, as this is
+     * called on every cache write
+     */
     @Override
     public int hashCode() {
-        return Objects.hash(vendor, instrument);
+        return 31 * Objects.hashCode(vendor == null ? null : vendor.getId())
+                + Objects.hashCode(instrument == null ? null : instrument.getSymbol());
     }
 
     @Override
@@ -68,11 +126,9 @@ public class VendorInstrumentPrice {
         return "VendorInstrumentPrice{" +
                 "vendor=" + vendor +
                 ", instrument=" + instrument +
-                ", bid=" + bid +
-                ", ask=" + ask +
+                ", bid=" + getBid() +
+                ", ask=" + getAsk() +
                 ", timestamp=" + timestamp +
                 '}';
     }
 }
-
-
@@ -0,0 +1,14 @@
+package com.monepic.tradeprice.model.requests;
+
+/**
+ * Thrown for a request which is invalid, e.g. a price which can't be held at its Instrument's price scale, or a query parameter out
+ * of range; as opposed to a failure of the server's own, so the REST API answers it with a 400 and its message
+ */
+public class InvalidRequestException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
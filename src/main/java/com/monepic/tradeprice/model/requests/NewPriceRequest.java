@@ -1,14 +1,21 @@
 package com.monepic.tradeprice.model.requests;
 
 import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.ReferenceDataRegistry;
 import com.monepic.tradeprice.model.Vendor;
 import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.utils.FixedPoint;
 
+import javax.validation.constraints.Digits;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import java.math.BigDecimal;
 import java.time.Instant;
 
+/**
+ * A new price, as submitted over HTTP or JMS.  The constraints are declared here, but checked by the {@link NewPriceRequestValidator},
+ * which has to be kept in step with them
+ */
 public class NewPriceRequest {
 
     public NewPriceRequest() {}
@@ -33,7 +40,10 @@ public class NewPriceRequest {
     @NotBlank
     private String instrumentSymbol, instrumentDescription;
 
+    // whether a price can be held exactly at its Instrument's price scale is only known once the Instrument is
     @NotNull
+    @Digits(integer = NewPriceRequestValidator.MAX_DIGITS, fraction = NewPriceRequestValidator.MAX_DIGITS,
+            message = NewPriceRequestValidator.OUT_OF_RANGE)
     private BigDecimal bid, ask;
 
     private Instant timestamp;
@@ -87,6 +97,32 @@ public class NewPriceRequest {
     public VendorInstrumentPrice toVendorInstrumentPrice() {
         Vendor v = new Vendor(vendorId, vendorName, vendorDescription);
         Instrument i = new Instrument(instrumentSymbol, instrumentDescription);
-        return new VendorInstrumentPrice(v, i, bid, ask, timestamp == null ? Instant.now() : timestamp);
+        return toVendorInstrumentPrice(v, i);
+    }
+
+    /**
+     * As {@link #toVendorInstrumentPrice()}, but using the Vendor and Instrument instances held by the <b>registry</b>
+     */
+    public VendorInstrumentPrice toVendorInstrumentPrice(ReferenceDataRegistry registry) {
+        Vendor v = registry.vendor(vendorId, vendorName, vendorDescription);
+        Instrument i = registry.instrument(instrumentSymbol, instrumentDescription);
+        return toVendorInstrumentPrice(v, i);
+    }
+
+    /**
+     * @throws InvalidRequestException if the bid or ask can't be held exactly at the Instrument's price scale
+     */
+    private VendorInstrumentPrice toVendorInstrumentPrice(Vendor v, Instrument i) {
+        int scale = i.getPriceScale();
+        return new VendorInstrumentPrice(v, i, fixedPoint("bid", bid, scale), fixedPoint("ask", ask, scale), scale,
+                timestamp == null ? Instant.now() : timestamp);
+    }
+
+    private static long fixedPoint(String name, BigDecimal value, int scale) {
+        try {
+            return FixedPoint.of(value, scale);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException(name + " " + e.getMessage());
+        }
     }
 }
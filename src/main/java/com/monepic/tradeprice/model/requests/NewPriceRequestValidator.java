@@ -0,0 +1,187 @@
+package com.monepic.tradeprice.model.requests;
+
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Validates {@link NewPriceRequest}s against the constraints their Bean Validation annotations declare, and also that the bid isn't
+ * above the ask, by checking each field in plain code rather than traversing the reflective constraint metadata; so a valid request
+ * is checked without creating any objects.  Only an invalid one is checked again, to describe everything that's wrong with it, with
+ * the same messages as the annotations.
+ * <p>
+ * As a Spring {@link Validator}, it backs <code>@Valid</code> on the REST API, and it checks each new price from JMS and files.
+ * Prices received already typed, as {@link VendorInstrumentPrice}s (e.g. in the binary format), are checked by the same rules with
+ * {@link #describe(VendorInstrumentPrice)}.  Thread safe.
+ */
+public class NewPriceRequestValidator implements Validator {
+
+    /**
+     * The most digits a price may have before, and after, the decimal point; whether it can be held exactly at its Instrument's price
+     * scale is checked when it's converted, by {@link NewPriceRequest#toVendorInstrumentPrice}
+     */
+    static final int MAX_DIGITS = 18;
+    // the least unscaled value with more than MAX_DIGITS whole digits, at scale 0 (at any larger scale, no long has)
+    private static final long OUT_OF_RANGE_UNSCALED = 1_000_000_000_000_000_000L;
+    static final String NOT_NULL = "must not be null", NOT_BLANK = "must not be blank",
+            OUT_OF_RANGE = "must have at most " + MAX_DIGITS + " digits before and after the decimal point",
+            CROSSED = "must not be above the ask";
+
+    @Override
+    public boolean supports(Class<?> clazz) {
+        return NewPriceRequest.class.isAssignableFrom(clazz);
+    }
+
+    /**
+     * @return whether the request is valid, without describing why not
+     */
+    public boolean isValid(NewPriceRequest request) {
+        return request.getVendorId() != null
+                && !isBlank(request.getVendorName()) && !isBlank(request.getVendorDescription())
+                && !isBlank(request.getInstrumentSymbol()) && !isBlank(request.getInstrumentDescription())
+                && isPrice(request.getBid()) && isPrice(request.getAsk())
+                && request.getBid().compareTo(request.getAsk()) <= 0;
+    }
+
+    @Override
+    public void validate(Object target, Errors errors) {
+        NewPriceRequest request = (NewPriceRequest) target;
+        if (isValid(request)) {
+            return;
+        }
+        if (request.getVendorId() == null) {
+            errors.rejectValue("vendorId", "NotNull", NOT_NULL);
+        }
+        notBlank(request.getVendorName(), "vendorName", errors);
+        notBlank(request.getVendorDescription(), "vendorDescription", errors);
+        notBlank(request.getInstrumentSymbol(), "instrumentSymbol", errors);
+        notBlank(request.getInstrumentDescription(), "instrumentDescription", errors);
+        boolean prices = price(request.getBid(), "bid", errors) & price(request.getAsk(), "ask", errors);
+        if (prices && request.getBid().compareTo(request.getAsk()) > 0) {
+            errors.rejectValue("bid", "Crossed", CROSSED);
+        }
+    }
+
+    /**
+     * @return null if the request is valid, otherwise a description of its problems, e.g. to reject a message with
+     */
+    public String describe(NewPriceRequest request) {
+        if (isValid(request)) {
+            return null;
+        }
+        Errors errors = new BeanPropertyBindingResult(request, "newPriceRequest");
+        validate(request, errors);
+        return errors.getFieldErrors().stream()
+                .map(e -> e.getField() + " " + e.getDefaultMessage() + " (was " + e.getRejectedValue() + ")")
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * @return null if the price is valid, by the same rules as a new price request (and with a timestamp), otherwise a description
+     * of its problems
+     */
+    public String describe(VendorInstrumentPrice vip) {
+        Vendor vendor = vip.getVendor();
+        Instrument instrument = vip.getInstrument();
+        if (vendor != null && vendor.getId() != null && !isBlank(vendor.getName()) && !isBlank(vendor.getDescription())
+                && instrument != null && !isBlank(instrument.getSymbol()) && !isBlank(instrument.getDescription())
+                && isPrice(vip.getScaledBid(), vip.getPriceScale()) && isPrice(vip.getScaledAsk(), vip.getPriceScale())
+                && vip.getScaledBid() <= vip.getScaledAsk() && vip.getTimestamp() != null) {
+            return null;
+        }
+        List<String> problems = new ArrayList<>();
+        if (vendor == null) {
+            problems.add("vendor " + NOT_NULL);
+        } else {
+            if (vendor.getId() == null) {
+                problems.add("vendor.id " + NOT_NULL);
+            }
+            notBlank(vendor.getName(), "vendor.name", problems);
+            notBlank(vendor.getDescription(), "vendor.description", problems);
+        }
+        if (instrument == null) {
+            problems.add("instrument " + NOT_NULL);
+        } else {
+            notBlank(instrument.getSymbol(), "instrument.symbol", problems);
+            notBlank(instrument.getDescription(), "instrument.description", problems);
+        }
+        boolean bid = isPrice(vip.getScaledBid(), vip.getPriceScale()), ask = isPrice(vip.getScaledAsk(), vip.getPriceScale());
+        if (!bid) {
+            problems.add("bid " + OUT_OF_RANGE + " (was " + vip.getBid() + ")");
+        }
+        if (!ask) {
+            problems.add("ask " + OUT_OF_RANGE + " (was " + vip.getAsk() + ")");
+        }
+        if (bid && ask && vip.getScaledBid() > vip.getScaledAsk()) {
+            problems.add("bid " + CROSSED + " (was " + vip.getBid() + ")");
+        }
+        if (vip.getTimestamp() == null) {
+            problems.add("timestamp " + NOT_NULL);
+        }
+        return String.join(", ", problems);
+    }
+
+    private static void notBlank(String value, String field, List<String> problems) {
+        if (isBlank(value)) {
+            problems.add(field + " " + NOT_BLANK + " (was " + value + ")");
+        }
+    }
+
+    private static boolean notBlank(String value, String field, Errors errors) {
+        if (isBlank(value)) {
+            errors.rejectValue(field, "NotBlank", NOT_BLANK);
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean price(BigDecimal value, String field, Errors errors) {
+        if (value == null) {
+            errors.rejectValue(field, "NotNull", NOT_NULL);
+            return false;
+        }
+        if (!isPrice(value)) {
+            errors.rejectValue(field, "Digits", OUT_OF_RANGE);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * As {@link javax.validation.constraints.Digits}, which counts trailing zeros after the decimal point
+     */
+    private static boolean isPrice(BigDecimal value) {
+        return value != null && value.precision() - value.scale() <= MAX_DIGITS && value.scale() <= MAX_DIGITS;
+    }
+
+    /**
+     * As {@link #isPrice(BigDecimal)}, for the unscaled value of a price at its Instrument's scale (which is at most
+     * {@link NewPriceRequestValidator#MAX_DIGITS})
+     */
+    private static boolean isPrice(long unscaled, int scale) {
+        return scale > 0 || (unscaled > -OUT_OF_RANGE_UNSCALED && unscaled < OUT_OF_RANGE_UNSCALED);
+    }
+
+    /**
+     * As {@link javax.validation.constraints.NotBlank}, which trims the value
+     */
+    private static boolean isBlank(String value) {
+        if (value == null) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,139 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.cache.CacheStats;
+import com.monepic.tradeprice.cache.Page;
+import com.monepic.tradeprice.model.Depth;
+import com.monepic.tradeprice.model.TopOfBook;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Feeds every price unexceptionally accepted by its delegate into a {@link BarAggregator}.  As the price is already stored by then,
+ * a price the aggregator can't take (e.g. one which can't be held at its bars' scale) is logged and left out of the bars, rather than
+ * failing the write
+ */
+public class BarAggregatingTradePriceServiceWrapper implements TradePriceService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BarAggregatingTradePriceServiceWrapper.class);
+
+    private final TradePriceService delegate;
+    private final BarAggregator bars;
+
+    public BarAggregatingTradePriceServiceWrapper(TradePriceService delegate, BarAggregator bars) {
+        this.delegate = delegate;
+        this.bars = bars;
+    }
+
+    @Override
+    public void createOrUpdate(VendorInstrumentPrice vip) {
+        delegate.createOrUpdate(vip);
+        aggregate(vip);
+    }
+
+    @Override
+    public void createOrUpdateAll(Collection<VendorInstrumentPrice> prices) {
+        try {
+            delegate.createOrUpdateAll(prices);
+        } catch (PartialUpdateException e) {
+            e.applied(prices).forEach(this::aggregate);
+            throw e;
+        }
+        prices.forEach(this::aggregate);
+    }
+
+    private void aggregate(VendorInstrumentPrice vip) {
+        try {
+            bars.accept(vip);
+        } catch (RuntimeException e) {
+            LOG.warn("Left a price out of the bars: {}", vip, e);
+        }
+    }
+
+    @Override
+    public void load(Collection<VendorInstrumentPrice> prices) {
+        // restored prices are only each Vendor/Instrument's latest, so bars start again from live prices
+        delegate.load(prices);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getByVendor(Long vendorId) {
+        return delegate.getByVendor(vendorId);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getByInstrument(String instrumentSymbol) {
+        return delegate.getByInstrument(instrumentSymbol);
+    }
+
+    @Override
+    public VendorInstrumentPrice getPrice(Long vendorId, String instrumentSymbol) {
+        return delegate.getPrice(vendorId, instrumentSymbol);
+    }
+
+    @Override
+    public List<VendorInstrumentPrice> getHistory(Long vendorId, String instrumentSymbol, int limit) {
+        return delegate.getHistory(vendorId, instrumentSymbol, limit);
+    }
+
+    @Override
+    public VendorInstrumentPrice getPriceAt(Long vendorId, String instrumentSymbol, Instant at) {
+        return delegate.getPriceAt(vendorId, instrumentSymbol, at);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public Page<VendorInstrumentPrice> getPage(String cursor, int limit) {
+        return delegate.getPage(cursor, limit);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getUpdatedSince(Instant since) {
+        return delegate.getUpdatedSince(since);
+    }
+
+    @Override
+    public Stream<VendorInstrumentPrice> streamUpdatedSince(Instant since) {
+        return delegate.streamUpdatedSince(since);
+    }
+
+    @Override
+    public TopOfBook getTopOfBook(String instrumentSymbol) {
+        return delegate.getTopOfBook(instrumentSymbol);
+    }
+
+    @Override
+    public Depth getDepth(String instrumentSymbol) {
+        return delegate.getDepth(instrumentSymbol);
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return delegate.getCacheStats();
+    }
+
+    @Override
+    public void addEvictionListener(Consumer<VendorInstrumentPrice> listener) {
+        delegate.addEvictionListener(listener);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> expireOldPrices() {
+        return delegate.expireOldPrices();
+    }
+}
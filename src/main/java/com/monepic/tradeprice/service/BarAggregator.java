@@ -0,0 +1,298 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.model.Bar;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.utils.FixedPoint;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Aggregates every accepted price into open/high/low/close bars of each Instrument's bid, ask and mid, at each of the configured
+ * intervals (e.g. 1s, 1m and 5m), by the prices' timestamps.
+ * <p>
+ * Each Instrument's bars are held in fixed-size primitive arrays, allocated once: the bar in progress at each interval, and a ring of the
+ * latest finished ones.  A price only updates a few array slots; bars are materialized when they're finished (and passed to the listener)
+ * or read.  The mid is held as the mean of the bid and ask rounded down, plus whether it's half a unit above that, so it stays exact
+ * at the prices' scale without the bid + ask overflowing.
+ * <p>
+ * A bar is finished by the first price of a later bar, or by {@link #flush()} once its interval has passed.  A price belonging
+ * to a bar that's already finished is too late, and is left out of the bars.
+ */
+public class BarAggregator {
+
+    public static final List<Duration> DEFAULT_INTERVALS = List.of(Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ofMinutes(5));
+    public static final int DEFAULT_HISTORY = 60;
+
+    // the fields of a bar, each price's open/high/low/close being at +0..+3; MID_HALF holds a 1 for each mid half a unit above MID
+    private static final int START = 0, TICKS = 1, BID = 2, ASK = 6, MID = 10, MID_HALF = 14, FIELDS = 18;
+    private static final int OPEN = 0, HIGH = 1, LOW = 2, CLOSE = 3;
+
+    private final long[] intervals;
+    private final int history;
+    private final Consumer<Bar> listener;
+    private final ConcurrentHashMap<String, Bars> instruments = new ConcurrentHashMap<>(1 << 10);
+
+    /**
+     * @param intervals the (whole millisecond) intervals to aggregate bars over
+     * @param history   the most finished bars to keep per Instrument and interval
+     * @param listener  is passed each bar as it's finished
+     */
+    public BarAggregator(List<Duration> intervals, int history, Consumer<Bar> listener) {
+        if (history < 0) {
+            throw new IllegalArgumentException("history cannot be negative");
+        }
+        this.intervals = new long[intervals.size()];
+        for (int i = 0; i < this.intervals.length; i++) {
+            Duration interval = intervals.get(i);
+            if (interval.toMillis() <= 0 || !interval.equals(Duration.ofMillis(interval.toMillis()))) {
+                throw new IllegalArgumentException("bar interval must be a positive number of milliseconds: " + interval);
+            }
+            this.intervals[i] = interval.toMillis();
+        }
+        this.history = history;
+        this.listener = listener;
+    }
+
+    public void accept(VendorInstrumentPrice vip) {
+        if (intervals.length == 0) {
+            return;
+        }
+        String symbol = vip.getInstrument().getSymbol();
+        List<Bar> finished = instruments.computeIfAbsent(symbol, Bars::new).accept(vip);
+        if (finished != null) {
+            finished.forEach(listener);
+        }
+    }
+
+    /**
+     * Finishes every bar whose interval has passed
+     */
+    @Scheduled(fixedDelayString = "${price.bars.flush-interval-ms:1000}")
+    public void flush() {
+        flush(System.currentTimeMillis());
+    }
+
+    void flush(long nowMillis) {
+        for (Bars bars : instruments.values()) {
+            List<Bar> finished = bars.flush(nowMillis);
+            if (finished != null) {
+                finished.forEach(listener);
+            }
+        }
+    }
+
+    /**
+     * @param limit the most bars to return
+     * @return the Instrument's latest finished bars at <b>interval</b>, newest first, or null if it has no bars
+     * @throws IllegalArgumentException if bars aren't aggregated at <b>interval</b>
+     */
+    public List<Bar> getBars(String symbol, Duration interval, int limit) {
+        int i = indexOf(interval);
+        Bars bars = symbol == null ? null : instruments.get(symbol);
+        return bars == null ? null : bars.latest(i, limit);
+    }
+
+    public List<Duration> getIntervals() {
+        List<Duration> durations = new ArrayList<>(intervals.length);
+        for (long interval : intervals) {
+            durations.add(Duration.ofMillis(interval));
+        }
+        return durations;
+    }
+
+    /**
+     * @return (bid + ask) / 2 rounded down, without overflowing
+     */
+    static long midFloor(long bid, long ask) {
+        return (bid >> 1) + (ask >> 1) + (bid & ask & 1);
+    }
+
+    private static int compareMid(long floor, long half, long otherFloor, long otherHalf) {
+        int compare = Long.compare(floor, otherFloor);
+        return compare != 0 ? compare : Long.compare(half, otherHalf);
+    }
+
+    private int indexOf(Duration interval) {
+        for (int i = 0; i < intervals.length; i++) {
+            if (interval.toMillis() == intervals[i] && interval.equals(Duration.ofMillis(intervals[i]))) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("bars aren't aggregated at " + interval + ", only at " + getIntervals());
+    }
+
+    /**
+     * One Instrument's bars: <b>current</b> holds the bar in progress at each interval, and <b>finished</b> a ring of
+     * <b>history</b> bars per interval, whose logical index 0 (the oldest) is at <b>heads[interval]</b>
+     */
+    private final class Bars {
+
+        final String symbol;
+        long[] current;
+        long[] finished;
+        final int[] heads, sizes;
+        int scale = -1;
+
+        Bars(String symbol) {
+            this.symbol = symbol;
+            current = new long[intervals.length * FIELDS];
+            finished = new long[intervals.length * history * FIELDS];
+            heads = new int[intervals.length];
+            sizes = new int[intervals.length];
+            for (int i = 0; i < intervals.length; i++) {
+                current[i * FIELDS + START] = Long.MIN_VALUE;
+            }
+        }
+
+        /**
+         * @return the bars finished by <b>vip</b>, or null if none were
+         */
+        synchronized List<Bar> accept(VendorInstrumentPrice vip) {
+            if (vip.getPriceScale() > scale) {
+                rescale(vip.getPriceScale());
+            }
+            long bid = FixedPoint.rescale(vip.getScaledBid(), vip.getPriceScale(), scale);
+            long ask = FixedPoint.rescale(vip.getScaledAsk(), vip.getPriceScale(), scale);
+            long millis = vip.getTimestamp().toEpochMilli();
+
+            List<Bar> done = null;
+            for (int i = 0; i < intervals.length; i++) {
+                int bar = i * FIELDS;
+                long start = Math.floorDiv(millis, intervals[i]) * intervals[i];
+                if (start < current[bar + START] || (start == current[bar + START] && current[bar + TICKS] == 0)) {
+                    continue; // too late, the bar's finished
+                }
+                if (start > current[bar + START]) {
+                    if (current[bar + TICKS] > 0) {
+                        done = finish(i, done);
+                    }
+                    current[bar + START] = start;
+                    current[bar + TICKS] = 0;
+                }
+                boolean first = current[bar + TICKS] == 0;
+                update(bar + BID, bid, first);
+                update(bar + ASK, ask, first);
+                updateMid(bar, midFloor(bid, ask), (bid ^ ask) & 1, first);
+                current[bar + TICKS]++;
+            }
+            return done;
+        }
+
+        private void update(int field, long price, boolean first) {
+            if (first) {
+                current[field + OPEN] = current[field + HIGH] = current[field + LOW] = price;
+            } else {
+                current[field + HIGH] = Math.max(current[field + HIGH], price);
+                current[field + LOW] = Math.min(current[field + LOW], price);
+            }
+            current[field + CLOSE] = price;
+        }
+
+        private void updateMid(int bar, long floor, long half, boolean first) {
+            int field = bar + MID, halves = bar + MID_HALF;
+            for (int at = OPEN; at <= CLOSE; at++) {
+                if (first || at == CLOSE
+                        || at == HIGH && compareMid(floor, half, current[field + at], current[halves + at]) > 0
+                        || at == LOW && compareMid(floor, half, current[field + at], current[halves + at]) < 0) {
+                    current[field + at] = floor;
+                    current[halves + at] = half;
+                }
+            }
+        }
+
+        synchronized List<Bar> flush(long nowMillis) {
+            List<Bar> done = null;
+            for (int i = 0; i < intervals.length; i++) {
+                int bar = i * FIELDS;
+                if (current[bar + TICKS] > 0 && current[bar + START] + intervals[i] <= nowMillis) {
+                    done = finish(i, done);
+                }
+            }
+            return done;
+        }
+
+        /**
+         * Moves the bar in progress at interval <b>i</b> into the ring, leaving its start so later prices for it are known to be late
+         */
+        private List<Bar> finish(int i, List<Bar> done) {
+            int bar = i * FIELDS;
+            if (history > 0) {
+                int slot;
+                if (sizes[i] == history) {
+                    slot = heads[i];
+                    heads[i] = (heads[i] + 1) % history;
+                } else {
+                    slot = (heads[i] + sizes[i]++) % history;
+                }
+                System.arraycopy(current, bar, finished, (i * history + slot) * FIELDS, FIELDS);
+            }
+            if (done == null) {
+                done = new ArrayList<>(intervals.length);
+            }
+            done.add(materialize(current, bar, i));
+            current[bar + TICKS] = 0;
+            return done;
+        }
+
+        /**
+         * Raises the scale every stored price is held at, as a price at a finer scale has arrived.  Every price is rescaled into a
+         * copy first, so if one can't be held at the finer scale, the price is rejected and the bars are left as they were.
+         */
+        private void rescale(int to) {
+            if (scale >= 0) {
+                long[] rescaledCurrent = rescaled(current, to), rescaledFinished = rescaled(finished, to);
+                current = rescaledCurrent;
+                finished = rescaledFinished;
+            }
+            scale = to;
+        }
+
+        private long[] rescaled(long[] bars, int to) {
+            long[] rescaled = bars.clone();
+            for (int bar = 0; bar < bars.length; bar += FIELDS) {
+                for (int field = BID; field < MID; field++) {
+                    rescaled[bar + field] = FixedPoint.rescale(bars[bar + field], scale, to);
+                }
+                // a finer scale holds the half unit exactly; the mid is no larger than the ask, so neither overflows
+                long half = FixedPoint.rescale(5, scale + 1, to);
+                for (int field = MID; field < MID_HALF; field++) {
+                    rescaled[bar + field] = FixedPoint.rescale(bars[bar + field], scale, to) + bars[bar + field + MID_HALF - MID] * half;
+                    rescaled[bar + field + MID_HALF - MID] = 0;
+                }
+            }
+            return rescaled;
+        }
+
+        private Bar materialize(long[] bars, int bar, int i) {
+            Bar.Ohlc mid = new Bar.Ohlc(mid(bars, bar + OPEN), mid(bars, bar + HIGH), mid(bars, bar + LOW), mid(bars, bar + CLOSE));
+            return new Bar(symbol, Instant.ofEpochMilli(bars[bar + START]), Duration.ofMillis(intervals[i]), (int) bars[bar + TICKS],
+                    ohlc(bars, bar + BID), ohlc(bars, bar + ASK), mid);
+        }
+
+        private Bar.Ohlc ohlc(long[] bars, int field) {
+            return Bar.Ohlc.of(bars[field + OPEN], bars[field + HIGH], bars[field + LOW], bars[field + CLOSE], scale);
+        }
+
+        private BigDecimal mid(long[] bars, int at) {
+            BigDecimal floor = FixedPoint.toBigDecimal(bars[at + MID], scale);
+            return bars[at + MID_HALF] == 0 ? floor : floor.add(BigDecimal.valueOf(5, scale + 1));
+        }
+
+        synchronized List<Bar> latest(int i, int limit) {
+            int count = Math.min(Math.max(0, limit), sizes[i]);
+            List<Bar> latest = new ArrayList<>(count);
+            for (int n = sizes[i] - 1; n >= sizes[i] - count; n--) {
+                int slot = (heads[i] + n) % history;
+                latest.add(materialize(finished, (i * history + slot) * FIELDS, i));
+            }
+            return latest;
+        }
+    }
+}
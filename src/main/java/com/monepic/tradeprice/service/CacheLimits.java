@@ -0,0 +1,27 @@
+package com.monepic.tradeprice.service;
+
+/**
+ * Bounds on the number of prices a service caches, and on their estimated heap footprint.  A limit of 0 means no limit
+ */
+public class CacheLimits {
+
+    public static final CacheLimits UNBOUNDED = new CacheLimits(0, 0);
+
+    private final long maxEntries, maxBytes;
+
+    public CacheLimits(long maxEntries, long maxBytes) {
+        if (maxEntries < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("limits cannot be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxEntries() { return maxEntries; }
+
+    public long getMaxBytes() { return maxBytes; }
+
+    public boolean isBounded() {
+        return maxEntries > 0 || maxBytes > 0;
+    }
+}
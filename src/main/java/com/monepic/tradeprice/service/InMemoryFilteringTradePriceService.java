@@ -1,26 +1,84 @@
 package com.monepic.tradeprice.service;
 
+import com.monepic.tradeprice.cache.CacheStats;
+import com.monepic.tradeprice.cache.ExpiryIndex;
+import com.monepic.tradeprice.cache.Page;
+import com.monepic.tradeprice.cache.SegmentedLru;
+import com.monepic.tradeprice.model.Depth;
+import com.monepic.tradeprice.model.TopOfBook;
 import com.monepic.tradeprice.model.VendorInstrumentPrice;
-import org.springframework.scheduling.annotation.Scheduled;
 
 import java.time.Instant;
-import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class InMemoryFilteringTradePriceService implements TradePriceService {
 
+    // a rough estimate of the heap used to hold a price, excluding the price itself
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+
     private final ConcurrentHashMap<VendorInstrumentPrice, VendorInstrumentPrice> allPrices = new ConcurrentHashMap<>(1 << 11);
-    private final int daysToKeep;
+    private final ExpiryIndex<VendorInstrumentPrice> expiryIndex = new ExpiryIndex<>(1000);
+    private final RetentionPolicy retentionPolicy;
+    private final SegmentedLru<VendorInstrumentPrice> evictionPolicy;
+    private final OrderBooks orderBooks = new OrderBooks(allPrices::get);
+    private final List<Consumer<VendorInstrumentPrice>> evictionListeners = new CopyOnWriteArrayList<>();
+    private final TickHistory history;
+    private final boolean weighted;
+
+    public InMemoryFilteringTradePriceService(int daysToKeep) {this(RetentionPolicy.ofDays(daysToKeep));}
+
+    public InMemoryFilteringTradePriceService(RetentionPolicy retentionPolicy) {this(retentionPolicy, CacheLimits.UNBOUNDED);}
 
-    public InMemoryFilteringTradePriceService(int daysToKeep) {this.daysToKeep = daysToKeep;}
+    public InMemoryFilteringTradePriceService(RetentionPolicy retentionPolicy, CacheLimits limits) {
+        this(retentionPolicy, limits, TickHistory.DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param historyDepth the most prices to keep in the history of each Vendor/Instrument
+     */
+    public InMemoryFilteringTradePriceService(RetentionPolicy retentionPolicy, CacheLimits limits, int historyDepth) {
+        this.retentionPolicy = retentionPolicy;
+        this.history = new TickHistory(historyDepth, allPrices::get);
+        this.evictionPolicy = limits.isBounded() ? new SegmentedLru<>(limits.getMaxEntries(), limits.getMaxBytes()) : null;
+        this.weighted = limits.getMaxBytes() > 0;
+    }
 
     @Override
     public void createOrUpdate(VendorInstrumentPrice vip) {
-        allPrices.put(vip, vip);
+        VendorInstrumentPrice previous;
+        List<VendorInstrumentPrice> victims = Collections.emptyList();
+        if (evictionPolicy == null) {
+            previous = allPrices.put(vip, vip);
+        } else {
+            synchronized (evictionPolicy) {
+                previous = allPrices.put(vip, vip);
+                evictionPolicy.admit(vip, weighted ? ENTRY_OVERHEAD_BYTES + PriceSizeEstimator.estimate(vip) : 0, previous);
+                victims = evictionPolicy.evict();
+            }
+        }
+        if (previous != null) {
+            expiryIndex.cancel(previous, retentionPolicy.expiresAt(previous));
+        }
+        expiryIndex.schedule(vip, retentionPolicy.expiresAt(vip));
+        orderBooks.refresh(vip);
+        history.record(vip);
+
+        for (VendorInstrumentPrice victim : victims) {
+            if (removeExactly(victim)) {
+                expiryIndex.cancel(victim, retentionPolicy.expiresAt(victim));
+                orderBooks.refresh(victim);
+                history.remove(victim);
+                evictionListeners.forEach(listener -> listener.accept(victim));
+            }
+        }
     }
 
     @Override
@@ -41,18 +99,101 @@ public class InMemoryFilteringTradePriceService implements TradePriceService {
                         .collect(Collectors.toSet());
     }
 
+    @Override
+    public VendorInstrumentPrice getPrice(Long vendorId, String instrumentSymbol) {
+        return vendorId == null || instrumentSymbol == null ? null :
+                allPrices.values()
+                        .stream()
+                        .filter(vip -> vendorId.equals(vip.getVendor().getId()) && instrumentSymbol.equals(vip.getInstrument().getSymbol()))
+                        .findAny()
+                        .orElse(null);
+    }
+
+    @Override
+    public List<VendorInstrumentPrice> getHistory(Long vendorId, String instrumentSymbol, int limit) {
+        return vendorId == null ? null : history.getHistory(vendorId, instrumentSymbol, limit);
+    }
+
+    @Override
+    public VendorInstrumentPrice getPriceAt(Long vendorId, String instrumentSymbol, Instant at) {
+        return vendorId == null || at == null ? null : history.getPriceAt(vendorId, instrumentSymbol, at);
+    }
+
     @Override
     public Collection<VendorInstrumentPrice> getAll() {
-        return new HashSet<>(allPrices.values());
+        return Collections.unmodifiableCollection(allPrices.values());
+    }
+
+    /**
+     * The cursor is simply the number of prices already returned, so a page may repeat or skip prices if the map is resized meanwhile
+     */
+    @Override
+    public Page<VendorInstrumentPrice> getPage(String cursor, int limit) {
+        Page.checkLimit(limit);
+        long offset = Page.position(cursor);
+        Iterator<VendorInstrumentPrice> it = allPrices.values().iterator();
+        for (long skipped = 0; skipped < offset && it.hasNext(); skipped++) {
+            it.next();
+        }
+        List<VendorInstrumentPrice> prices = new ArrayList<>(Math.min(limit, 1 << 11));
+        while (prices.size() < limit && it.hasNext()) {
+            prices.add(it.next());
+        }
+        return new Page<>(prices, it.hasNext() ? Page.cursor(offset + prices.size()) : null);
     }
 
-    @Scheduled(cron = "${price.evict.cron}")
-    void expireOldPrices() {
-        Instant cutoff = ZonedDateTime.now().minusDays(daysToKeep).toInstant();
-        allPrices.values().stream()
-                .filter(vip -> cutoff.isAfter(vip.getTimestamp()))
-                .forEach(v -> {
-                    allPrices.remove(v, v); // use the long-form remove(k,v) to avoid removing items that have been concurrently updated
-                });
+    @Override
+    public Collection<VendorInstrumentPrice> getUpdatedSince(Instant since) {
+        return since == null ? getAll() :
+                allPrices.values()
+                        .stream()
+                        .filter(vip -> !since.isAfter(vip.getTimestamp()))
+                        .collect(Collectors.toSet());
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> expireOldPrices() {
+        List<VendorInstrumentPrice> expired = new ArrayList<>();
+        expiryIndex.expire(System.currentTimeMillis(), EXPIRY_BATCH_SIZE, v -> {
+            if (removeExactly(v)) {
+                if (evictionPolicy != null) {
+                    evictionPolicy.remove(v);
+                }
+                orderBooks.refresh(v);
+                history.remove(v);
+                expired.add(v);
+            }
+        });
+        return expired;
+    }
+
+    // compare by identity, to avoid removing an (equal) price which has been concurrently updated
+    private boolean removeExactly(VendorInstrumentPrice vip) {
+        boolean[] removed = {false};
+        allPrices.computeIfPresent(vip, (key, current) -> {
+            removed[0] = current == vip;
+            return removed[0] ? null : current;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public TopOfBook getTopOfBook(String instrumentSymbol) {
+        return orderBooks.getTopOfBook(instrumentSymbol);
+    }
+
+    @Override
+    public Depth getDepth(String instrumentSymbol) {
+        return orderBooks.getDepth(instrumentSymbol);
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return evictionPolicy == null ? CacheStats.unbounded(allPrices.size()) : evictionPolicy.stats();
+    }
+
+    @Override
+    public void addEvictionListener(Consumer<VendorInstrumentPrice> listener) {
+        evictionListeners.add(listener);
     }
 }
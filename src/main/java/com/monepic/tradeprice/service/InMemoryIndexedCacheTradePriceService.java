@@ -1,49 +1,193 @@
 package com.monepic.tradeprice.service;
 
 import com.monepic.tradeprice.cache.InMemoryIndexedCache;
+import com.monepic.tradeprice.cache.CacheStats;
 import com.monepic.tradeprice.cache.IndexedCache;
+import com.monepic.tradeprice.cache.IndexedCache.LongKeyExtractor;
+import com.monepic.tradeprice.cache.Page;
+import com.monepic.tradeprice.model.Depth;
+import com.monepic.tradeprice.model.TopOfBook;
 import com.monepic.tradeprice.model.VendorInstrumentPrice;
-import org.springframework.scheduling.annotation.Scheduled;
 
 import java.time.Instant;
-import java.time.ZonedDateTime;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class InMemoryIndexedCacheTradePriceService implements TradePriceService {
 
-    private final IndexedCache<VendorInstrumentPrice> cache = new InMemoryIndexedCache<>(
-            vip -> vip.getVendor().getId(),
-            vip -> vip.getInstrument().getSymbol()
-    );
-    private final int VENDOR = 0, INSTRUMENT = 1;
+    private final IndexedCache<VendorInstrumentPrice> cache;
+    private final OrderBooks orderBooks = new OrderBooks(this::current);
+    private final List<Consumer<VendorInstrumentPrice>> evictionListeners = new CopyOnWriteArrayList<>();
+    private final TickHistory history;
+    private static final String VENDOR = "vendor", INSTRUMENT = "instrument", TIMESTAMP = "timestamp", VENDOR_INSTRUMENT = "vendorInstrument";
+    private final int timestampOrdinal;
+    private final boolean multiVersion;
 
-    private final int daysToKeep;
+    public InMemoryIndexedCacheTradePriceService(int daysToKeep) {this(RetentionPolicy.ofDays(daysToKeep), false);}
 
-    public InMemoryIndexedCacheTradePriceService(int daysToKeep) {this.daysToKeep = daysToKeep;}
+    public InMemoryIndexedCacheTradePriceService(RetentionPolicy retentionPolicy, boolean multiVersion) {
+        this(retentionPolicy, multiVersion, CacheLimits.UNBOUNDED);
+    }
+
+    /**
+     * @param retentionPolicy how long to keep each price for
+     * @param multiVersion    whether to back this service with a multi-version (consistent) cache
+     * @param limits          the bounds beyond which the least valuable prices are evicted
+     */
+    public InMemoryIndexedCacheTradePriceService(RetentionPolicy retentionPolicy, boolean multiVersion, CacheLimits limits) {
+        this(retentionPolicy, multiVersion, limits, TickHistory.DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param retentionPolicy how long to keep each price for
+     * @param multiVersion    whether to back this service with a multi-version (consistent) cache
+     * @param limits          the bounds beyond which the least valuable prices are evicted
+     * @param historyDepth    the most prices to keep in the history of each Vendor/Instrument
+     */
+    public InMemoryIndexedCacheTradePriceService(RetentionPolicy retentionPolicy, boolean multiVersion, CacheLimits limits, int historyDepth) {
+        this.history = new TickHistory(historyDepth, this::current);
+        InMemoryIndexedCache.Builder<VendorInstrumentPrice> builder = InMemoryIndexedCache.<VendorInstrumentPrice>builder()
+                .index(VENDOR, (LongKeyExtractor<VendorInstrumentPrice>) vip -> vip.getVendor().getId())
+                .index(INSTRUMENT, vip -> vip.getInstrument().getSymbol())
+                .orderedIndex(TIMESTAMP, VendorInstrumentPrice::getTimestamp)
+                .compositeIndex(VENDOR_INSTRUMENT, vip -> vip.getVendor().getId(), vip -> vip.getInstrument().getSymbol())
+                .multiVersion(multiVersion)
+                .expiry(retentionPolicy::expiresAt)
+                .maximumEntries(limits.getMaxEntries())
+                .evictionListener(this::evicted);
+        if (limits.getMaxBytes() > 0) {
+            builder.maximumBytes(limits.getMaxBytes(), PriceSizeEstimator::estimate);
+        }
+        this.cache = builder.build();
+        this.timestampOrdinal = cache.indexOrdinal(TIMESTAMP);
+        this.multiVersion = multiVersion;
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> expireOldPrices() {
+        Collection<VendorInstrumentPrice> expired = cache.expire(System.currentTimeMillis(), EXPIRY_BATCH_SIZE);
+        expired.forEach(this::removed);
+        return expired;
+    }
+
+    private void removed(VendorInstrumentPrice vip) {
+        orderBooks.refresh(vip);
+        history.remove(vip);
+    }
+
+    private void evicted(VendorInstrumentPrice vip) {
+        removed(vip);
+        evictionListeners.forEach(listener -> listener.accept(vip));
+    }
 
-    @Scheduled(cron = "${price.evict.cron}")
-    void expireOldPrices() {
-        Instant cutoff = ZonedDateTime.now().minusDays(daysToKeep).toInstant();
-        cache.evict(vip -> cutoff.isAfter(vip.getTimestamp()));
+    private VendorInstrumentPrice current(VendorInstrumentPrice vip) {
+        return getPrice(vip.getVendor().getId(), vip.getInstrument().getSymbol());
     }
 
     @Override
     public void createOrUpdate(VendorInstrumentPrice vip) {
         cache.addItem(vip);
+        orderBooks.refresh(vip);
+        history.record(vip);
+    }
+
+    @Override
+    public void createOrUpdateAll(Collection<VendorInstrumentPrice> prices) {
+        cache.addItems(prices);
+        for (VendorInstrumentPrice vip : prices) {
+            orderBooks.refresh(vip);
+            history.record(vip);
+        }
+    }
+
+    @Override
+    public void load(Collection<VendorInstrumentPrice> prices) {
+        cache.load(prices);
+        for (VendorInstrumentPrice vip : cache.getAll()) {
+            orderBooks.refresh(vip);
+            history.record(vip);
+        }
     }
 
     @Override
     public Collection<VendorInstrumentPrice> getByVendor(Long vendorId) {
-        return cache.getByIndexOrdinal(VENDOR, vendorId);
+        return vendorId == null ? Collections.emptySet() : cache.getByIndex(VENDOR, vendorId.longValue());
     }
 
     @Override
     public Collection<VendorInstrumentPrice> getByInstrument(String instrumentSymbol) {
-        return cache.getByIndexOrdinal(INSTRUMENT, instrumentSymbol);
+        return cache.getByIndex(INSTRUMENT, instrumentSymbol);
+    }
+
+    @Override
+    public VendorInstrumentPrice getPrice(Long vendorId, String instrumentSymbol) {
+        if (vendorId == null || instrumentSymbol == null) {
+            return null;
+        }
+        Iterator<VendorInstrumentPrice> it = cache.getByIndex(VENDOR_INSTRUMENT, IndexedCache.compositeKey(vendorId, instrumentSymbol)).iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    @Override
+    public List<VendorInstrumentPrice> getHistory(Long vendorId, String instrumentSymbol, int limit) {
+        return vendorId == null ? null : history.getHistory(vendorId, instrumentSymbol, limit);
+    }
+
+    @Override
+    public VendorInstrumentPrice getPriceAt(Long vendorId, String instrumentSymbol, Instant at) {
+        return vendorId == null || at == null ? null : history.getPriceAt(vendorId, instrumentSymbol, at);
     }
 
     @Override
     public Collection<VendorInstrumentPrice> getAll() {
         return cache.getAll();
     }
+
+    @Override
+    public Page<VendorInstrumentPrice> getPage(String cursor, int limit) {
+        return cache.getPage(cursor, limit);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getUpdatedSince(Instant since) {
+        return cache.getRange(timestampOrdinal, since, null);
+    }
+
+    /**
+     * A multi-version cache's range is read lazily, at the version it was taken at, so the stream pins that version (with a
+     * {@link IndexedCache#snapshot()}) until it's closed, rather than let it be reclaimed while a slow reader is still reading it
+     */
+    @Override
+    public Stream<VendorInstrumentPrice> streamUpdatedSince(Instant since) {
+        if (!multiVersion) {
+            return getUpdatedSince(since).stream();
+        }
+        IndexedCache.ReadView<VendorInstrumentPrice> view = cache.snapshot();
+        return view.getRange(timestampOrdinal, since, null).stream().onClose(view::close);
+    }
+
+    @Override
+    public TopOfBook getTopOfBook(String instrumentSymbol) {
+        return orderBooks.getTopOfBook(instrumentSymbol);
+    }
+
+    @Override
+    public Depth getDepth(String instrumentSymbol) {
+        return orderBooks.getDepth(instrumentSymbol);
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void addEvictionListener(Consumer<VendorInstrumentPrice> listener) {
+        evictionListeners.add(listener);
+    }
 }
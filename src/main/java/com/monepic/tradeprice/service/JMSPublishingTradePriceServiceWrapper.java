@@ -1,26 +1,133 @@
 package com.monepic.tradeprice.service;
 
+import com.monepic.tradeprice.cache.CacheStats;
+import com.monepic.tradeprice.cache.Page;
+import com.monepic.tradeprice.jms.MessagePublisher;
+import com.monepic.tradeprice.model.Depth;
+import com.monepic.tradeprice.model.TopOfBook;
 import com.monepic.tradeprice.model.VendorInstrumentPrice;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+/**
+ * Publishes every price unexceptionally accepted by its delegate, and (optionally) the batches of prices it expires and each change to
+ * an Instrument's top of book, including a change made by a price being expired or evicted.
+ * <p>
+ * Prices are published with their Vendor/Instrument, and tops of book with their Instrument, as the conflation key, so that a conflating
+ * {@link MessagePublisher} only sends the latest of each
+ */
 public class JMSPublishingTradePriceServiceWrapper implements TradePriceService {
 
     private final TradePriceService delegate;
-    private final JmsTemplate jms;
+    private final MessagePublisher publisher;
     private final String jmsDestination;
+    private final String expiryDestination;
+    private final String topOfBookDestination;
+    // the sequence of the last top of book published per Instrument, so each change is only published once
+    private final ConcurrentHashMap<String, Long> publishedSequences = new ConcurrentHashMap<>();
 
     public JMSPublishingTradePriceServiceWrapper(TradePriceService delegate, JmsTemplate jms, String jmsDestination) {
+        this(delegate, jms, jmsDestination, null);
+    }
+
+    /**
+     * @param expiryDestination where each batch of expired prices is sent, as a single message (or null to not send them)
+     */
+    public JMSPublishingTradePriceServiceWrapper(TradePriceService delegate, JmsTemplate jms, String jmsDestination, String expiryDestination) {
+        this(delegate, jms, jmsDestination, expiryDestination, null);
+    }
+
+    /**
+     * @param expiryDestination    where each batch of expired prices is sent, as a single message (or null to not send them)
+     * @param topOfBookDestination where an Instrument's top of book is sent whenever it changes (or null to not send it)
+     */
+    public JMSPublishingTradePriceServiceWrapper(TradePriceService delegate, JmsTemplate jms, String jmsDestination,
+                                                 String expiryDestination, String topOfBookDestination) {
+        this(delegate, MessagePublisher.of(jms), jmsDestination, expiryDestination, topOfBookDestination);
+    }
+
+    /**
+     * @param expiryDestination    where each batch of expired prices is sent, as a single message (or null to not send them)
+     * @param topOfBookDestination where an Instrument's top of book is sent whenever it changes (or null to not send it)
+     */
+    public JMSPublishingTradePriceServiceWrapper(TradePriceService delegate, MessagePublisher publisher, String jmsDestination,
+                                                 String expiryDestination, String topOfBookDestination) {
         this.delegate = delegate;
-        this.jms = jms;
+        this.publisher = publisher;
         this.jmsDestination = jmsDestination;
+        this.expiryDestination = expiryDestination;
+        this.topOfBookDestination = topOfBookDestination;
+        if (topOfBookDestination != null) {
+            // an eviction, to make room for another price, may leave any Instrument with a new top of book
+            delegate.addEvictionListener(vip -> publishTopOfBook(vip.getInstrument().getSymbol()));
+        }
     }
 
     @Override
     public void createOrUpdate(VendorInstrumentPrice vip) {
         delegate.createOrUpdate(vip);
-        jms.convertAndSend(jmsDestination, vip);
+        publisher.publish(jmsDestination, new PriceKey(vip.getVendor().getId(), vip.getInstrument().getSymbol()), vip);
+        publishTopOfBook(vip.getInstrument().getSymbol());
+    }
+
+    /**
+     * Publishes each of the prices, but the top of book of each of their Instruments only once, after they're all applied (or as
+     * many as the delegate applied, if it fails part way)
+     */
+    @Override
+    public void createOrUpdateAll(Collection<VendorInstrumentPrice> prices) {
+        try {
+            delegate.createOrUpdateAll(prices);
+        } catch (PartialUpdateException e) {
+            publishAll(e.applied(prices));
+            throw e;
+        }
+        publishAll(prices);
+    }
+
+    private void publishAll(Collection<VendorInstrumentPrice> prices) {
+        Set<String> symbols = new LinkedHashSet<>();
+        for (VendorInstrumentPrice vip : prices) {
+            publisher.publish(jmsDestination, new PriceKey(vip.getVendor().getId(), vip.getInstrument().getSymbol()), vip);
+            symbols.add(vip.getInstrument().getSymbol());
+        }
+        symbols.forEach(this::publishTopOfBook);
+    }
+
+    private void publishTopOfBook(String symbol) {
+        if (topOfBookDestination == null) {
+            return;
+        }
+        TopOfBook top = delegate.getTopOfBook(symbol);
+        if (top == null) {
+            return;
+        }
+        boolean[] advanced = {false};
+        publishedSequences.compute(symbol, (s, published) -> {
+            advanced[0] = published == null || top.getSequence() > published;
+            return advanced[0] ? top.getSequence() : published;
+        });
+        if (advanced[0]) {
+            publisher.publish(topOfBookDestination, symbol, top);
+        }
+    }
+
+    @Override
+    public void load(Collection<VendorInstrumentPrice> prices) {
+        // restored prices aren't new, so aren't published
+        delegate.load(prices);
     }
 
     @Override
@@ -33,8 +140,109 @@ public class JMSPublishingTradePriceServiceWrapper implements TradePriceService
         return delegate.getByInstrument(instrumentSymbol);
     }
 
+    @Override
+    public VendorInstrumentPrice getPrice(Long vendorId, String instrumentSymbol) {
+        return delegate.getPrice(vendorId, instrumentSymbol);
+    }
+
+    @Override
+    public List<VendorInstrumentPrice> getHistory(Long vendorId, String instrumentSymbol, int limit) {
+        return delegate.getHistory(vendorId, instrumentSymbol, limit);
+    }
+
+    @Override
+    public VendorInstrumentPrice getPriceAt(Long vendorId, String instrumentSymbol, Instant at) {
+        return delegate.getPriceAt(vendorId, instrumentSymbol, at);
+    }
+
     @Override
     public Collection<VendorInstrumentPrice> getAll() {
         return delegate.getAll();
     }
+
+    @Override
+    public Page<VendorInstrumentPrice> getPage(String cursor, int limit) {
+        return delegate.getPage(cursor, limit);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getUpdatedSince(Instant since) {
+        return delegate.getUpdatedSince(since);
+    }
+
+    @Override
+    public Stream<VendorInstrumentPrice> streamUpdatedSince(Instant since) {
+        return delegate.streamUpdatedSince(since);
+    }
+
+    @Override
+    public TopOfBook getTopOfBook(String instrumentSymbol) {
+        return delegate.getTopOfBook(instrumentSymbol);
+    }
+
+    @Override
+    public Depth getDepth(String instrumentSymbol) {
+        return delegate.getDepth(instrumentSymbol);
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return delegate.getCacheStats();
+    }
+
+    @Override
+    public void addEvictionListener(Consumer<VendorInstrumentPrice> listener) {
+        delegate.addEvictionListener(listener);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${price.expiry.interval-ms:1000}")
+    public Collection<VendorInstrumentPrice> expireOldPrices() {
+        Collection<VendorInstrumentPrice> expired = delegate.expireOldPrices();
+        if (expiryDestination != null && !expired.isEmpty()) {
+            publisher.publish(expiryDestination, null, new ArrayList<>(expired));
+        }
+        if (topOfBookDestination != null && !expired.isEmpty()) {
+            Set<String> symbols = new HashSet<>();
+            for (VendorInstrumentPrice vip : expired) {
+                if (symbols.add(vip.getInstrument().getSymbol())) {
+                    publishTopOfBook(vip.getInstrument().getSymbol());
+                }
+            }
+        }
+        return expired;
+    }
+
+    private static final class PriceKey {
+
+        final long vendorId;
+        final String symbol;
+
+        PriceKey(long vendorId, String symbol) {
+            this.vendorId = vendorId;
+            this.symbol = symbol;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PriceKey)) {
+                return false;
+            }
+            PriceKey that = (PriceKey) obj;
+            return vendorId == that.vendorId && symbol.equals(that.symbol);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(vendorId, symbol);
+        }
+    }
 }
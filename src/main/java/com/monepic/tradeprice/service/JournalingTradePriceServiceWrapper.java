@@ -0,0 +1,212 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.cache.CacheStats;
+import com.monepic.tradeprice.cache.Page;
+import com.monepic.tradeprice.journal.PriceJournal;
+import com.monepic.tradeprice.journal.PriceSnapshot;
+import com.monepic.tradeprice.model.Depth;
+import com.monepic.tradeprice.model.TopOfBook;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Writes every new price its delegate accepts to a {@link PriceJournal}, once the delegate has accepted it (so a price the delegate
+ * rejects is never replayed), and journals the prices its delegate expires or evicts, so that the delegate can be rebuilt by replaying
+ * the journal after a restart.  A price is journaled after its delegate's write rather than within it, so concurrent writers of one
+ * Vendor/Instrument can journal their prices in the opposite order to the one the delegate took them in; so the journal's replay
+ * keeps the price with the newest timestamp of each, rather than the last journaled.
+ * <p>
+ * It can also periodically write a {@link PriceSnapshot} of its delegate, after which the journal before the snapshot is deleted.
+ * As a price is only journaled once its delegate has it, every price journaled before the snapshot's checkpoint (the start of a new
+ * journal segment) is in the snapshot, which is read from the delegate afterwards; so writers needn't be stopped for the checkpoint,
+ * and the previous segment is forced to disk without holding them up
+ */
+public class JournalingTradePriceServiceWrapper implements TradePriceService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JournalingTradePriceServiceWrapper.class);
+
+    /**
+     * The number of snapshots kept, so that the one before can be restored from if the latest can't be read
+     */
+    static final int RETAINED_SNAPSHOTS = 2;
+    private static final long SNAPSHOT_SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final TradePriceService delegate;
+    private final PriceJournal journal;
+    private volatile ScheduledExecutorService snapshotScheduler;
+
+    public JournalingTradePriceServiceWrapper(TradePriceService delegate, PriceJournal journal) {
+        this.delegate = delegate;
+        this.journal = journal;
+        // an evicted price is journaled once it's out of the delegate, as an expired one is
+        delegate.addEvictionListener(journal::remove);
+    }
+
+    @Override
+    public void createOrUpdate(VendorInstrumentPrice vip) {
+        delegate.createOrUpdate(vip);
+        journal.append(vip);
+    }
+
+    @Override
+    public void createOrUpdateAll(Collection<VendorInstrumentPrice> prices) {
+        try {
+            delegate.createOrUpdateAll(prices);
+        } catch (PartialUpdateException e) {
+            e.applied(prices).forEach(journal::append);
+            throw e;
+        }
+        prices.forEach(journal::append);
+    }
+
+    /**
+     * Writes a snapshot of the delegate's prices into the journal directory, and deletes the snapshots and journal segments
+     * which are no longer needed
+     *
+     * @return the snapshot file
+     */
+    public Path snapshot() throws IOException {
+        long checkpoint = journal.checkpoint();
+        Path snapshot = PriceSnapshot.write(journal.getDirectory(), checkpoint, delegate.getAll());
+        journal.truncate(PriceSnapshot.retainLatest(journal.getDirectory(), RETAINED_SNAPSHOTS));
+        return snapshot;
+    }
+
+    /**
+     * Takes a {@link #snapshot()} every <b>interval</b>, on a background thread, until this service or the journal is closed
+     */
+    public synchronized void scheduleSnapshots(Duration interval) {
+        if (snapshotScheduler != null) {
+            throw new IllegalStateException("snapshots are already scheduled");
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "price-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, interval.toMillis());
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IllegalStateException e) {
+                LOG.info("Stopping snapshots as the journal is closed");
+                scheduler.shutdown();
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Failed to snapshot the prices", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        snapshotScheduler = scheduler;
+    }
+
+    /**
+     * Stops taking snapshots, letting one in progress finish (for a while), then closes the delegate.  The journal is left open
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService scheduler = snapshotScheduler;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(SNAPSHOT_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    LOG.warn("Gave up waiting for the snapshot in progress to finish");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        delegate.close();
+    }
+
+    @Override
+    public void load(Collection<VendorInstrumentPrice> prices) {
+        // the prices are restored from the journal, so aren't journaled again
+        delegate.load(prices);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getByVendor(Long vendorId) {
+        return delegate.getByVendor(vendorId);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getByInstrument(String instrumentSymbol) {
+        return delegate.getByInstrument(instrumentSymbol);
+    }
+
+    @Override
+    public VendorInstrumentPrice getPrice(Long vendorId, String instrumentSymbol) {
+        return delegate.getPrice(vendorId, instrumentSymbol);
+    }
+
+    @Override
+    public List<VendorInstrumentPrice> getHistory(Long vendorId, String instrumentSymbol, int limit) {
+        return delegate.getHistory(vendorId, instrumentSymbol, limit);
+    }
+
+    @Override
+    public VendorInstrumentPrice getPriceAt(Long vendorId, String instrumentSymbol, Instant at) {
+        return delegate.getPriceAt(vendorId, instrumentSymbol, at);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public Page<VendorInstrumentPrice> getPage(String cursor, int limit) {
+        return delegate.getPage(cursor, limit);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getUpdatedSince(Instant since) {
+        return delegate.getUpdatedSince(since);
+    }
+
+    @Override
+    public Stream<VendorInstrumentPrice> streamUpdatedSince(Instant since) {
+        return delegate.streamUpdatedSince(since);
+    }
+
+    @Override
+    public TopOfBook getTopOfBook(String instrumentSymbol) {
+        return delegate.getTopOfBook(instrumentSymbol);
+    }
+
+    @Override
+    public Depth getDepth(String instrumentSymbol) {
+        return delegate.getDepth(instrumentSymbol);
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return delegate.getCacheStats();
+    }
+
+    @Override
+    public void addEvictionListener(Consumer<VendorInstrumentPrice> listener) {
+        delegate.addEvictionListener(listener);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> expireOldPrices() {
+        Collection<VendorInstrumentPrice> expired = delegate.expireOldPrices();
+        for (VendorInstrumentPrice vip : expired) {
+            journal.remove(vip);
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,597 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.cache.CacheStats;
+import com.monepic.tradeprice.cache.LongKeyedConcurrentMap;
+import com.monepic.tradeprice.cache.Page;
+import com.monepic.tradeprice.model.Depth;
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.TopOfBook;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Stores the prices off-heap, in columns of direct {@link ByteBuffer}s, so that the cache contributes next to nothing to the
+ * heap the garbage collector has to trace, however many prices it holds.
+ * <p>
+ * Each Vendor/Instrument combination is assigned a <b>slot</b> the first time it's seen, and keeps it until its price expires or is
+ * evicted, when the slot is freed for the next new combination to reuse.
+ * The slots are allocated in chunks, and within a chunk each field (bid, ask, timestamp, ...) is stored in its own column.
+ * Only the key dictionaries live on the heap: the Vendors by id, the Instruments by symbol, the slot of each combination, and the
+ * slots of each Vendor and each Instrument.  Each Vendor and Instrument is held once, as last seen - so unlike the other
+ * implementations, a price with the same Vendor id as an earlier one replaces that Vendor's name and description.
+ * <p>
+ * Writers to a slot are serialized on its sequence number, which also acts as a seqlock for readers: a reader retries if the
+ * sequence number was odd (mid-write) or changed while it read the slot.  Prices are materialized as {@link VendorInstrumentPrice}s
+ * only when queried.
+ * <p>
+ * Rather than index the prices by expiry time, which would take a heap object per price, expiry scans the expiry column - but
+ * only once the earliest expiry time has passed, which (given retention periods of days) is rarely.
+ * <p>
+ * If it's bounded by {@link CacheLimits}, the bytes are those of the slots' columns.  Once over a limit, prices are evicted by the
+ * CLOCK policy, which needs no heap object per price either: a hand sweeps the slots, and evicts the first price which hasn't been
+ * updated since the hand last passed it.  So as with the segmented LRU of the other implementations, combinations which keep being
+ * updated survive a burst of one-off combinations.
+ */
+public class OffHeapColumnarTradePriceService implements TradePriceService {
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int CHUNK_BITS = 16, CHUNK_SLOTS = 1 << CHUNK_BITS, CHUNK_MASK = CHUNK_SLOTS - 1;
+    private static final int MAX_CHUNKS = 1 << 14;
+
+    // long columns first, so that every column is aligned
+    private static final int SEQ = 0, BID = 1, ASK = 2, EPOCH_SECOND = 3, EXPIRES_AT = 4, LONG_COLUMNS = 5;
+    private static final int PRICE_SCALE = 0, NANOS = 1, LIVE = 2, VENDOR = 3, INSTRUMENT = 4, REFERENCED = 5, INT_COLUMNS = 6;
+    private static final int SLOT_BYTES = LONG_COLUMNS * Long.BYTES + INT_COLUMNS * Integer.BYTES, CHUNK_BYTES = CHUNK_SLOTS * SLOT_BYTES;
+    // the vendor column of a free slot, which matches no vendor
+    private static final int FREE = -1;
+
+    private final RetentionPolicy retentionPolicy;
+    private final long maxEntries, maxBytes;
+
+    // the key dictionaries
+    private final LongKeyedConcurrentMap<Key<Vendor>> vendors = new LongKeyedConcurrentMap<>(1 << 8);
+    private final ConcurrentHashMap<String, Key<Instrument>> instruments = new ConcurrentHashMap<>(1 << 8);
+    private final LongKeyedConcurrentMap<Integer> slots = new LongKeyedConcurrentMap<>(1 << 11);
+    private volatile Key<?>[] vendorsByIndex = new Key<?>[16], instrumentsByIndex = new Key<?>[16];
+    private int vendorCount, instrumentCount; // guarded by vendors, instruments respectively
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private volatile int slotCount;
+    private final FreeSlots freeSlots = new FreeSlots();
+    private final AtomicInteger live = new AtomicInteger();
+    // the CLOCK eviction state, guarded by the clock
+    private final Object clock = new Object();
+    private int hand;
+    private long evictions;
+    private final AtomicLong earliestExpiry = new AtomicLong(Long.MAX_VALUE);
+    // the books hold only each Vendor's primitive bid/ask, not the materialized prices
+    private final OrderBooks orderBooks = new OrderBooks(vip -> getPrice(vip.getVendor().getId(), vip.getInstrument().getSymbol()));
+    private final List<Consumer<VendorInstrumentPrice>> evictionListeners = new CopyOnWriteArrayList<>();
+    private final TickHistory history;
+
+    public OffHeapColumnarTradePriceService(RetentionPolicy retentionPolicy) {
+        this(retentionPolicy, CacheLimits.UNBOUNDED);
+    }
+
+    public OffHeapColumnarTradePriceService(RetentionPolicy retentionPolicy, CacheLimits limits) {
+        this(retentionPolicy, limits, TickHistory.DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param limits       bound the number of prices, and the bytes of their slots
+     * @param historyDepth the most prices to keep in the history of each Vendor/Instrument
+     */
+    public OffHeapColumnarTradePriceService(RetentionPolicy retentionPolicy, CacheLimits limits, int historyDepth) {
+        this.retentionPolicy = retentionPolicy;
+        this.maxEntries = limits.getMaxEntries() == 0 ? Long.MAX_VALUE : limits.getMaxEntries();
+        this.maxBytes = limits.getMaxBytes() == 0 ? Long.MAX_VALUE : limits.getMaxBytes();
+        this.history = new TickHistory(historyDepth, vip -> getPrice(vip.getVendor().getId(), vip.getInstrument().getSymbol()));
+    }
+
+    @Override
+    public void createOrUpdate(VendorInstrumentPrice vip) {
+        long expiresAt = retentionPolicy.expiresAt(vip);
+
+        Key<Vendor> vendor = vendor(vip.getVendor());
+        Key<Instrument> instrument = instrument(vip.getInstrument());
+        long pair = (long) vendor.index << 32 | instrument.index;
+        boolean added;
+        while (true) {
+            int slot = slots.computeIfAbsent(pair, p -> allocate(vendor, instrument));
+            ByteBuffer chunk = chunks[slot >>> CHUNK_BITS];
+            int row = slot & CHUNK_MASK;
+            long seq = lock(chunk, row);
+            // the slot may have been freed (and even reused) since it was looked up, in which case look up its replacement
+            if (chunk.getInt(intColumn(VENDOR, row)) != vendor.index || chunk.getInt(intColumn(INSTRUMENT, row)) != instrument.index) {
+                unlock(chunk, row, seq);
+                Thread.onSpinWait();
+                continue;
+            }
+            chunk.putLong(longColumn(BID, row), vip.getScaledBid());
+            chunk.putLong(longColumn(ASK, row), vip.getScaledAsk());
+            chunk.putLong(longColumn(EPOCH_SECOND, row), vip.getTimestamp().getEpochSecond());
+            chunk.putLong(longColumn(EXPIRES_AT, row), expiresAt);
+            chunk.putInt(intColumn(PRICE_SCALE, row), vip.getPriceScale());
+            chunk.putInt(intColumn(NANOS, row), vip.getTimestamp().getNano());
+            added = chunk.getInt(intColumn(LIVE, row)) == 0;
+            if (added) {
+                chunk.putInt(intColumn(LIVE, row), 1);
+                live.incrementAndGet();
+            }
+            // an update gives the price a second chance when the clock hand comes round
+            chunk.putInt(intColumn(REFERENCED, row), added ? 0 : 1);
+            unlock(chunk, row, seq);
+            break;
+        }
+
+        earliestExpiry.accumulateAndGet(expiresAt, Math::min);
+        orderBooks.refresh(vip);
+        history.record(vip);
+
+        if (added && overLimit()) {
+            for (VendorInstrumentPrice victim : evict()) {
+                orderBooks.refresh(victim);
+                history.remove(victim);
+                evictionListeners.forEach(listener -> listener.accept(victim));
+            }
+        }
+    }
+
+    private Key<Vendor> vendor(Vendor vendor) {
+        long id = vendor.getId();
+        Key<Vendor> key = vendors.computeIfAbsent(id, i -> {
+            Key<Vendor> k = new Key<>(vendorCount++, vendor);
+            vendorsByIndex = publish(vendorsByIndex, k);
+            return k;
+        });
+        key.update(vendor);
+        return key;
+    }
+
+    private Key<Instrument> instrument(Instrument instrument) {
+        Key<Instrument> key = instruments.get(instrument.getSymbol());
+        if (key == null) {
+            synchronized (instruments) {
+                key = instruments.computeIfAbsent(instrument.getSymbol(), s -> {
+                    Key<Instrument> k = new Key<>(instrumentCount++, instrument);
+                    instrumentsByIndex = publish(instrumentsByIndex, k);
+                    return k;
+                });
+            }
+        }
+        key.update(instrument);
+        return key;
+    }
+
+    private static Key<?>[] publish(Key<?>[] byIndex, Key<?> key) {
+        Key<?>[] published = key.index < byIndex.length ? byIndex : Arrays.copyOf(byIndex, byIndex.length << 1);
+        published[key.index] = key;
+        return published;
+    }
+
+    /**
+     * Reuses a freed slot if there is one, otherwise takes the next new one
+     */
+    // called holding the slots map's lock, so slots are allocated one at a time
+    private int allocate(Key<Vendor> vendor, Key<Instrument> instrument) {
+        int slot = freeSlots.pop();
+        if (slot == FREE) {
+            slot = slotCount;
+            if (slot >>> CHUNK_BITS == chunks.length) {
+                if (chunks.length == MAX_CHUNKS) {
+                    throw new IllegalStateException("no more price slots available");
+                }
+                ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                grown[chunks.length] = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder());
+                chunks = grown;
+            }
+        }
+        ByteBuffer chunk = chunks[slot >>> CHUNK_BITS];
+        int row = slot & CHUNK_MASK;
+        long seq = lock(chunk, row);
+        chunk.putInt(intColumn(VENDOR, row), vendor.index);
+        chunk.putInt(intColumn(INSTRUMENT, row), instrument.index);
+        unlock(chunk, row, seq);
+        if (slot == slotCount) {
+            slotCount = slot + 1; // publishes the slot's key columns
+        }
+        vendor.addSlot(slot);
+        instrument.addSlot(slot);
+        return slot;
+    }
+
+    /**
+     * Frees the slot of a price which has just been marked as no longer live (with {@link #release}), for reuse
+     */
+    @SuppressWarnings("unchecked")
+    private void free(int slot, int vendorIndex, int instrumentIndex) {
+        slots.remove((long) vendorIndex << 32 | instrumentIndex, slot);
+        ((Key<Vendor>) vendorsByIndex[vendorIndex]).removeSlot(slot);
+        ((Key<Instrument>) instrumentsByIndex[instrumentIndex]).removeSlot(slot);
+        freeSlots.push(slot);
+    }
+
+    /**
+     * Marks the price in the (locked) slot as no longer live, and the slot as free, so that a writer which looked the slot up
+     * before it's freed looks again
+     *
+     * @return the price
+     */
+    private VendorInstrumentPrice release(ByteBuffer chunk, int row) {
+        VendorInstrumentPrice vip = price(chunk.getInt(intColumn(VENDOR, row)), chunk.getInt(intColumn(INSTRUMENT, row)),
+                chunk.getLong(longColumn(BID, row)), chunk.getLong(longColumn(ASK, row)), chunk.getInt(intColumn(PRICE_SCALE, row)),
+                chunk.getLong(longColumn(EPOCH_SECOND, row)), chunk.getInt(intColumn(NANOS, row)));
+        chunk.putInt(intColumn(LIVE, row), 0);
+        chunk.putInt(intColumn(VENDOR, row), FREE);
+        live.decrementAndGet();
+        return vip;
+    }
+
+    private boolean overLimit() {
+        long entries = live.get();
+        return entries > maxEntries || entries * SLOT_BYTES > maxBytes;
+    }
+
+    /**
+     * Sweeps the clock hand round the slots, evicting prices until the cache is within its limits again
+     *
+     * @return the evicted prices
+     */
+    private List<VendorInstrumentPrice> evict() {
+        List<VendorInstrumentPrice> victims = new ArrayList<>();
+        synchronized (clock) {
+            while (overLimit()) {
+                int slot = hand < slotCount ? hand : 0;
+                hand = slot + 1;
+                ByteBuffer chunk = chunks[slot >>> CHUNK_BITS];
+                int row = slot & CHUNK_MASK;
+                long seq = lock(chunk, row);
+                int vendorIndex = chunk.getInt(intColumn(VENDOR, row)), instrumentIndex = chunk.getInt(intColumn(INSTRUMENT, row));
+                VendorInstrumentPrice victim = null;
+                if (chunk.getInt(intColumn(LIVE, row)) != 0) {
+                    if (chunk.getInt(intColumn(REFERENCED, row)) != 0) {
+                        chunk.putInt(intColumn(REFERENCED, row), 0);
+                    } else {
+                        victim = release(chunk, row);
+                    }
+                }
+                unlock(chunk, row, seq);
+                if (victim != null) {
+                    free(slot, vendorIndex, instrumentIndex);
+                    evictions++;
+                    victims.add(victim);
+                }
+            }
+        }
+        return victims;
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getByVendor(Long vendorId) {
+        return vendorId == null ? Collections.emptySet() : read(vendors.get(vendorId), VENDOR);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getByInstrument(String instrumentSymbol) {
+        return instrumentSymbol == null ? Collections.emptySet() : read(instruments.get(instrumentSymbol), INSTRUMENT);
+    }
+
+    @Override
+    public VendorInstrumentPrice getPrice(Long vendorId, String instrumentSymbol) {
+        if (vendorId == null || instrumentSymbol == null) {
+            return null;
+        }
+        Key<Vendor> vendor = vendors.get(vendorId);
+        Key<Instrument> instrument = instruments.get(instrumentSymbol);
+        if (vendor == null || instrument == null) {
+            return null;
+        }
+        Integer slot = slots.get((long) vendor.index << 32 | instrument.index);
+        return slot == null ? null : read(slot, vendor.index, instrument.index);
+    }
+
+    /**
+     * @param column the key's column, {@link #VENDOR} or {@link #INSTRUMENT}
+     */
+    private Collection<VendorInstrumentPrice> read(Key<?> key, int column) {
+        if (key == null) {
+            return Collections.emptySet();
+        }
+        int[] keySlots = key.slots;
+        List<VendorInstrumentPrice> prices = new ArrayList<>(keySlots.length);
+        for (int slot : keySlots) {
+            VendorInstrumentPrice vip = column == VENDOR ? read(slot, key.index, FREE) : read(slot, FREE, key.index);
+            if (vip != null) {
+                prices.add(vip);
+            }
+        }
+        return prices;
+    }
+
+    @Override
+    public List<VendorInstrumentPrice> getHistory(Long vendorId, String instrumentSymbol, int limit) {
+        return vendorId == null ? null : history.getHistory(vendorId, instrumentSymbol, limit);
+    }
+
+    @Override
+    public VendorInstrumentPrice getPriceAt(Long vendorId, String instrumentSymbol, Instant at) {
+        return vendorId == null || at == null ? null : history.getPriceAt(vendorId, instrumentSymbol, at);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getAll() {
+        return getUpdatedSince(null);
+    }
+
+    /**
+     * The cursor is the next slot to read.  As a Vendor/Instrument keeps its slot while it's cached, a paged traversal sees each price
+     * at most once
+     */
+    @Override
+    public Page<VendorInstrumentPrice> getPage(String cursor, int limit) {
+        Page.checkLimit(limit);
+        long from = Page.position(cursor);
+        int count = slotCount;
+        int slot = (int) Math.min(from, count);
+        List<VendorInstrumentPrice> prices = new ArrayList<>(Math.min(limit, 1 << 11));
+        for (; slot < count && prices.size() < limit; slot++) {
+            VendorInstrumentPrice vip = read(slot);
+            if (vip != null) {
+                prices.add(vip);
+            }
+        }
+        return new Page<>(prices, slot < count ? Page.cursor(slot) : null);
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> getUpdatedSince(Instant since) {
+        List<VendorInstrumentPrice> prices = new ArrayList<>();
+        for (int slot = 0, count = slotCount; slot < count; slot++) {
+            VendorInstrumentPrice vip = read(slot);
+            if (vip != null && (since == null || !since.isAfter(vip.getTimestamp()))) {
+                prices.add(vip);
+            }
+        }
+        return prices;
+    }
+
+    /**
+     * @return the price in <b>slot</b>, or null if the slot is empty
+     */
+    private VendorInstrumentPrice read(int slot) {
+        return read(slot, FREE, FREE);
+    }
+
+    /**
+     * As {@link #read(int)}, but only if the slot still holds the price of the key(s) it was looked up by, as it may have been freed
+     * and reused since: its Vendor and Instrument columns have to hold the indexes (of which {@link #FREE} matches any).
+     * <p>
+     * Every column is read into a local before the sequence number is checked again, and nothing read is used until it has been, as
+     * a read which overlaps a write (e.g. a {@link #release}) may see the columns part way through changing
+     */
+    private VendorInstrumentPrice read(int slot, int vendorIndex, int instrumentIndex) {
+        ByteBuffer chunk = chunks[slot >>> CHUNK_BITS];
+        int row = slot & CHUNK_MASK;
+        int seqOffset = longColumn(SEQ, row);
+        while (true) {
+            long seq = (long) LONGS.getAcquire(chunk, seqOffset);
+            if ((seq & 1) == 0) {
+                int live = chunk.getInt(intColumn(LIVE, row));
+                int vendor = chunk.getInt(intColumn(VENDOR, row)), instrument = chunk.getInt(intColumn(INSTRUMENT, row));
+                long bid = chunk.getLong(longColumn(BID, row)), ask = chunk.getLong(longColumn(ASK, row));
+                long epochSecond = chunk.getLong(longColumn(EPOCH_SECOND, row));
+                int priceScale = chunk.getInt(intColumn(PRICE_SCALE, row)), nanos = chunk.getInt(intColumn(NANOS, row));
+                VarHandle.loadLoadFence();
+                if (chunk.getLong(seqOffset) == seq) {
+                    if (live == 0 || (vendorIndex != FREE && vendor != vendorIndex)
+                            || (instrumentIndex != FREE && instrument != instrumentIndex)) {
+                        return null;
+                    }
+                    VendorInstrumentPrice vip = price(vendor, instrument, bid, ask, priceScale, epochSecond, nanos);
+                    if (vip != null) {
+                        return vip;
+                    }
+                }
+            }
+            // mid-write, or torn
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * @return the price of a slot, from its columns, or null if they don't hold a Vendor and Instrument which are in the dictionaries
+     */
+    @SuppressWarnings("unchecked")
+    private VendorInstrumentPrice price(int vendorIndex, int instrumentIndex, long bid, long ask, int priceScale, long epochSecond,
+                                        int nanos) {
+        Key<?>[] vendorKeys = vendorsByIndex, instrumentKeys = instrumentsByIndex;
+        if (vendorIndex < 0 || vendorIndex >= vendorKeys.length || instrumentIndex < 0 || instrumentIndex >= instrumentKeys.length) {
+            return null;
+        }
+        Key<Vendor> vendor = (Key<Vendor>) vendorKeys[vendorIndex];
+        Key<Instrument> instrument = (Key<Instrument>) instrumentKeys[instrumentIndex];
+        if (vendor == null || instrument == null) {
+            return null;
+        }
+        return new VendorInstrumentPrice(vendor.value, instrument.value, bid, ask, priceScale, Instant.ofEpochSecond(epochSecond, nanos));
+    }
+
+    @Override
+    public Collection<VendorInstrumentPrice> expireOldPrices() {
+        long now = System.currentTimeMillis();
+        if (now < earliestExpiry.get()) {
+            return Collections.emptyList();
+        }
+        // writers lower the earliest expiry as they go, so any price written during the scan is accounted for
+        earliestExpiry.set(Long.MAX_VALUE);
+        long earliestRemaining = Long.MAX_VALUE;
+        List<VendorInstrumentPrice> expired = new ArrayList<>();
+        for (int slot = 0, count = slotCount; slot < count; slot++) {
+            ByteBuffer chunk = chunks[slot >>> CHUNK_BITS];
+            int row = slot & CHUNK_MASK;
+            if (chunk.getInt(intColumn(LIVE, row)) == 0) {
+                continue;
+            }
+            if (expired.size() == EXPIRY_BATCH_SIZE) {
+                earliestRemaining = now; // come back for the rest
+                break;
+            }
+            long seq = lock(chunk, row);
+            long expiresAt = chunk.getLong(longColumn(EXPIRES_AT, row));
+            int vendorIndex = chunk.getInt(intColumn(VENDOR, row)), instrumentIndex = chunk.getInt(intColumn(INSTRUMENT, row));
+            boolean freed = false;
+            if (chunk.getInt(intColumn(LIVE, row)) != 0) {
+                if (expiresAt <= now) {
+                    expired.add(release(chunk, row));
+                    freed = true;
+                } else {
+                    earliestRemaining = Math.min(earliestRemaining, expiresAt);
+                }
+            }
+            unlock(chunk, row, seq);
+            if (freed) {
+                free(slot, vendorIndex, instrumentIndex);
+            }
+        }
+        earliestExpiry.accumulateAndGet(earliestRemaining, Math::min);
+        for (VendorInstrumentPrice vip : expired) {
+            orderBooks.refresh(vip);
+            history.remove(vip);
+        }
+        return expired;
+    }
+
+    @Override
+    public TopOfBook getTopOfBook(String instrumentSymbol) {
+        return orderBooks.getTopOfBook(instrumentSymbol);
+    }
+
+    @Override
+    public Depth getDepth(String instrumentSymbol) {
+        return orderBooks.getDepth(instrumentSymbol);
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        if (maxEntries == Long.MAX_VALUE && maxBytes == Long.MAX_VALUE) {
+            return CacheStats.unbounded(live.get());
+        }
+        synchronized (clock) {
+            long entries = live.get();
+            return new CacheStats(entries, entries * SLOT_BYTES, evictions, evictions * SLOT_BYTES);
+        }
+    }
+
+    @Override
+    public void addEvictionListener(Consumer<VendorInstrumentPrice> listener) {
+        evictionListeners.add(listener);
+    }
+
+    /**
+     * Waits for the slot's sequence number to be even, and makes it odd
+     *
+     * @return the (odd) sequence number
+     */
+    private static long lock(ByteBuffer chunk, int row) {
+        int offset = longColumn(SEQ, row);
+        while (true) {
+            long seq = (long) LONGS.getVolatile(chunk, offset);
+            if ((seq & 1) == 0 && LONGS.compareAndSet(chunk, offset, seq, seq + 1)) {
+                return seq + 1;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void unlock(ByteBuffer chunk, int row, long seq) {
+        LONGS.setRelease(chunk, longColumn(SEQ, row), seq + 1);
+    }
+
+    private static int longColumn(int column, int row) {
+        return (column * CHUNK_SLOTS + row) * Long.BYTES;
+    }
+
+    private static int intColumn(int column, int row) {
+        return LONG_COLUMNS * CHUNK_SLOTS * Long.BYTES + (column * CHUNK_SLOTS + row) * Integer.BYTES;
+    }
+
+    /**
+     * A dictionary entry - the Vendor or Instrument last seen with the key, its index, and the slots of its prices
+     */
+    private static final class Key<V> {
+
+        final int index;
+        volatile V value;
+        volatile int[] slots = new int[0];
+
+        Key(int index, V value) {
+            this.index = index;
+            this.value = value;
+        }
+
+        void update(V latest) {
+            if (!latest.equals(value)) {
+                value = latest;
+            }
+        }
+
+        synchronized void addSlot(int slot) {
+            int[] grown = Arrays.copyOf(slots, slots.length + 1);
+            grown[slots.length] = slot;
+            slots = grown;
+        }
+
+        synchronized void removeSlot(int slot) {
+            int[] current = slots;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == slot) {
+                    int[] shrunk = new int[current.length - 1];
+                    System.arraycopy(current, 0, shrunk, 0, i);
+                    System.arraycopy(current, i + 1, shrunk, i, shrunk.length - i);
+                    slots = shrunk;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The freed slots, to be reused before any new ones are taken
+     */
+    private static final class FreeSlots {
+
+        private int[] slots = new int[16];
+        private int size;
+
+        synchronized void push(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size << 1);
+            }
+            slots[size++] = slot;
+        }
+
+        /**
+         * @return a freed slot, or {@link #FREE} if there are none
+         */
+        synchronized int pop() {
+            return size == 0 ? FREE : slots[--size];
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.model.Depth;
+import com.monepic.tradeprice.model.TopOfBook;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.utils.FixedPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Maintains a book per Instrument of each Vendor's current price, updated incrementally as prices are cached and removed,
+ * so the best bid/ask (and the full depth) of an Instrument can be read without looking at every Vendor's price.
+ * <p>
+ * Each book keeps its bids and asks in sorted sets, and publishes an immutable {@link TopOfBook} whenever the top changes,
+ * so reading the top of book is a single volatile read.  The {@link Depth} is built on demand, and kept until the book next changes.
+ * <p>
+ * Within a book prices are compared as fixed-point longs, at the largest price scale the book has seen.
+ * <p>
+ * The books are updated after the cache, so are eventually consistent with it.  Rather than taking the price it's told about, a book
+ * reads the Vendor's current price back from the cache, holding the book's lock; so whichever order concurrent writers (and evictions)
+ * of a Vendor/Instrument reach the book in, the last of them leaves it agreeing with the cache, and a superseded price can't stick.
+ * <p>
+ * A price that can't be held at the book's scale (or that would push another Vendor's quote out of range) is left out of the book
+ * rather than failing the refresh, since by then the price is already cached.
+ */
+public class OrderBooks {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrderBooks.class);
+
+    private final ConcurrentHashMap<String, OrderBook> books = new ConcurrentHashMap<>(1 << 8);
+    private final UnaryOperator<VendorInstrumentPrice> current;
+
+    /**
+     * @param current looks up the cached price of the same Vendor and Instrument as the price it's given, or null if none is cached
+     */
+    public OrderBooks(UnaryOperator<VendorInstrumentPrice> current) {
+        this.current = current;
+    }
+
+    /**
+     * Brings the Vendor's quote in <b>vip</b>'s Instrument's book up to date with the cache, once <b>vip</b> has been cached or removed
+     * from it
+     *
+     * @return whether the top of the book changed
+     */
+    public boolean refresh(VendorInstrumentPrice vip) {
+        return books.computeIfAbsent(vip.getInstrument().getSymbol(), OrderBook::new).refresh(vip, current);
+    }
+
+    /**
+     * @return the top of the Instrument's book, or null if no prices have been seen for it
+     */
+    public TopOfBook getTopOfBook(String symbol) {
+        OrderBook book = symbol == null ? null : books.get(symbol);
+        return book == null ? null : book.top;
+    }
+
+    /**
+     * @return the depth of the Instrument's book, or null if no prices have been seen for it
+     */
+    public Depth getDepth(String symbol) {
+        OrderBook book = symbol == null ? null : books.get(symbol);
+        return book == null ? null : book.depth();
+    }
+
+    private static final class Quote {
+
+        final long vendorId, bid, ask;
+        final Instant timestamp;
+
+        Quote(long vendorId, long bid, long ask, Instant timestamp) {
+            this.vendorId = vendorId;
+            this.bid = bid;
+            this.ask = ask;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static final Comparator<Quote> BEST_BID_FIRST = Comparator.<Quote>comparingLong(q -> -q.bid).thenComparingLong(q -> q.vendorId);
+    private static final Comparator<Quote> BEST_ASK_FIRST = Comparator.<Quote>comparingLong(q -> q.ask).thenComparingLong(q -> q.vendorId);
+
+    private static final class OrderBook {
+
+        final String symbol;
+        Map<Long, Quote> quotes = new HashMap<>();
+        TreeSet<Quote> bids = new TreeSet<>(BEST_BID_FIRST), asks = new TreeSet<>(BEST_ASK_FIRST);
+        int scale;
+        long sequence;
+        volatile TopOfBook top;
+        volatile Depth depth;
+
+        OrderBook(String symbol) {
+            this.symbol = symbol;
+            this.top = TopOfBook.empty(symbol, 0);
+        }
+
+        synchronized boolean refresh(VendorInstrumentPrice vip, UnaryOperator<VendorInstrumentPrice> current) {
+            long vendorId = vip.getVendor().getId();
+            VendorInstrumentPrice latest = current.apply(vip);
+            if (latest == null) {
+                Quote removed = quotes.remove(vendorId);
+                if (removed == null) {
+                    return false;
+                }
+                unlink(removed);
+                return changed();
+            }
+            Quote quote, previous = quotes.get(vendorId);
+            try {
+                if (latest.getPriceScale() > scale) {
+                    rescale(latest.getPriceScale());
+                }
+                quote = quoteOf(latest);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Leaving Vendor {}'s price out of the {} book: {}", vendorId, symbol, e.getMessage());
+                if (previous == null) {
+                    return false;
+                }
+                quotes.remove(vendorId); // rather than leave its superseded quote in the book
+                unlink(previous);
+                return changed();
+            }
+            if (previous != null && sameQuote(previous, quote)) {
+                return false; // already up to date
+            }
+            quotes.put(vendorId, quote);
+            unlink(previous);
+            bids.add(quote);
+            asks.add(quote);
+            return changed();
+        }
+
+        private Quote quoteOf(VendorInstrumentPrice vip) {
+            return new Quote(vip.getVendor().getId(),
+                    FixedPoint.rescale(vip.getScaledBid(), vip.getPriceScale(), scale),
+                    FixedPoint.rescale(vip.getScaledAsk(), vip.getPriceScale(), scale), vip.getTimestamp());
+        }
+
+        private static boolean sameQuote(Quote a, Quote b) {
+            return a.bid == b.bid && a.ask == b.ask && a.timestamp.equals(b.timestamp);
+        }
+
+        private void unlink(Quote quote) {
+            if (quote != null) {
+                bids.remove(quote);
+                asks.remove(quote);
+            }
+        }
+
+        /**
+         * Moves every quote to <b>newScale</b>, leaving the book as it was if any of them can't be held there
+         */
+        private void rescale(int newScale) {
+            Map<Long, Quote> rescaledQuotes = new HashMap<>(quotes.size() * 2);
+            TreeSet<Quote> rescaledBids = new TreeSet<>(BEST_BID_FIRST), rescaledAsks = new TreeSet<>(BEST_ASK_FIRST);
+            for (Quote q : quotes.values()) {
+                Quote rescaled = new Quote(q.vendorId, FixedPoint.rescale(q.bid, scale, newScale), FixedPoint.rescale(q.ask, scale, newScale), q.timestamp);
+                rescaledQuotes.put(q.vendorId, rescaled);
+                rescaledBids.add(rescaled);
+                rescaledAsks.add(rescaled);
+            }
+            quotes = rescaledQuotes;
+            bids = rescaledBids;
+            asks = rescaledAsks;
+            scale = newScale;
+        }
+
+        /**
+         * Publishes the new top of book, if it differs from the last
+         */
+        private boolean changed() {
+            depth = null;
+            TopOfBook latest = bids.isEmpty() ? TopOfBook.empty(symbol, sequence + 1)
+                    : new TopOfBook(symbol, sequence + 1, bids.first().vendorId, bids.first().bid, asks.first().vendorId, asks.first().ask, scale);
+            if (latest.samePricesAs(top)) {
+                return false;
+            }
+            sequence++;
+            top = latest;
+            return true;
+        }
+
+        Depth depth() {
+            Depth d = depth;
+            if (d == null) {
+                synchronized (this) {
+                    d = depth;
+                    if (d == null) {
+                        depth = d = new Depth(symbol, sequence, levels(bids, true), levels(asks, false));
+                    }
+                }
+            }
+            return d;
+        }
+
+        private List<Depth.Level> levels(TreeSet<Quote> side, boolean bid) {
+            List<Depth.Level> levels = new ArrayList<>(side.size());
+            for (Quote q : side) {
+                levels.add(new Depth.Level(q.vendorId, bid ? q.bid : q.ask, scale, q.timestamp));
+            }
+            return levels;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.monepic.tradeprice.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Thrown by {@link TradePriceService#createOrUpdateAll} when it has applied some of the prices, but then failed; it gives how many of
+ * them, from the first, were applied, so the caller can carry on from there rather than apply them again.  Its cause is the failure
+ */
+public class PartialUpdateException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int applied;
+
+    public PartialUpdateException(int applied, RuntimeException cause) {
+        super(applied + " prices applied before: " + cause.getMessage(), cause);
+        this.applied = applied;
+    }
+
+    /**
+     * @return the number of prices, from the first, which were applied
+     */
+    public int getApplied() {
+        return applied;
+    }
+
+    /**
+     * @return those of <b>prices</b> which were applied, for a wrapper to pass on before rethrowing
+     */
+    public <T> List<T> applied(Collection<T> prices) {
+        return prices.stream().limit(applied).collect(Collectors.toList());
+    }
+}
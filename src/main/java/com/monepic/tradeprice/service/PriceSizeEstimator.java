@@ -0,0 +1,87 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+
+/**
+ * Estimates the heap retained by a {@link VendorInstrumentPrice}, assuming a 64-bit JVM with compressed oops.
+ * The estimate is only meant to be good enough to size a cache by, not to be exact.
+ * <p>
+ * It includes the JSON which {@link com.monepic.tradeprice.model.PriceJsonModule} keeps on a price once it's been written, as every
+ * accepted price is published; the JSON's length is predicted from the price's fields rather than measured, so a price is estimated
+ * the same before and after its JSON is written.
+ */
+public final class PriceSizeEstimator {
+
+    private static final long OBJECT_HEADER = 12, REFERENCE = 4, ALIGNMENT = 8;
+    private static final long INSTANT = 24, LONG = 16;
+    // the field names and punctuation of a price's JSON, and the most characters of its timestamp
+    private static final int JSON_SKELETON = ("{'vendor':{'id':,'name':'','description':''},'instrument':{'symbol':'','description':''},"
+            + "'bid':,'ask':,'timestamp':''}").length(), JSON_TIMESTAMP = 30;
+
+    private PriceSizeEstimator() {}
+
+    public static long estimate(VendorInstrumentPrice vip) {
+        // the bid and ask are fixed-point longs, and the scale an int
+        return align(OBJECT_HEADER + 3 * REFERENCE + 2 * Long.BYTES + Integer.BYTES)
+                + estimate(vip.getVendor())
+                + estimate(vip.getInstrument())
+                + (vip.getTimestamp() == null ? 0 : INSTANT)
+                + estimateJson(vip);
+    }
+
+    /**
+     * @return the heap of a price's JSON: a SerializedString, its String, and the UTF-8 bytes it caches once written to a stream
+     */
+    private static long estimateJson(VendorInstrumentPrice vip) {
+        int length = jsonLength(vip);
+        return align(OBJECT_HEADER + 4 * REFERENCE) + 24 + align(16 + length) + align(16 + length);
+    }
+
+    static int jsonLength(VendorInstrumentPrice vip) {
+        int length = JSON_SKELETON + JSON_TIMESTAMP + decimalLength(vip.getScaledBid(), vip.getPriceScale())
+                + decimalLength(vip.getScaledAsk(), vip.getPriceScale());
+        Vendor vendor = vip.getVendor();
+        if (vendor != null) {
+            length += (vendor.getId() == null ? 4 : Long.toString(vendor.getId()).length())
+                    + length(vendor.getName()) + length(vendor.getDescription());
+        }
+        Instrument instrument = vip.getInstrument();
+        if (instrument != null) {
+            length += length(instrument.getSymbol()) + length(instrument.getDescription());
+        }
+        return length;
+    }
+
+    private static int decimalLength(long unscaled, int scale) {
+        // at most, with a point and a leading zero
+        return Long.toString(unscaled).length() + (scale > 0 ? 2 : 0);
+    }
+
+    private static int length(String s) {
+        return s == null ? 4 : s.length();
+    }
+
+    private static long estimate(Vendor vendor) {
+        return vendor == null ? 0 : align(OBJECT_HEADER + 3 * REFERENCE)
+                + (vendor.getId() == null ? 0 : LONG)
+                + estimate(vendor.getName())
+                + estimate(vendor.getDescription());
+    }
+
+    private static long estimate(Instrument instrument) {
+        return instrument == null ? 0 : align(OBJECT_HEADER + 2 * REFERENCE + Integer.BYTES)
+                + estimate(instrument.getSymbol())
+                + estimate(instrument.getDescription());
+    }
+
+    private static long estimate(String s) {
+        // a String and its (latin-1, compact) byte array
+        return s == null ? 0 : 24 + align(16 + s.length());
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
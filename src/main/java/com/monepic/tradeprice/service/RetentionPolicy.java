@@ -0,0 +1,47 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Decides how long a price is kept for.  A default retention period applies to every price, and can be
+ * overridden per Vendor (by id) and per Instrument (by symbol).  Where both overrides apply, the shorter one wins.
+ */
+public class RetentionPolicy {
+
+    private final Duration defaultRetention;
+    private final Map<Long, Duration> vendorRetention;
+    private final Map<String, Duration> instrumentRetention;
+
+    public RetentionPolicy(Duration defaultRetention, Map<Long, Duration> vendorRetention, Map<String, Duration> instrumentRetention) {
+        this.defaultRetention = defaultRetention;
+        this.vendorRetention = Map.copyOf(vendorRetention);
+        this.instrumentRetention = Map.copyOf(instrumentRetention);
+    }
+
+    public static RetentionPolicy ofDays(int days) {
+        return new RetentionPolicy(Duration.ofDays(days), Map.of(), Map.of());
+    }
+
+    public Duration retentionFor(VendorInstrumentPrice vip) {
+        Duration byVendor = vendorRetention.get(vip.getVendor().getId());
+        Duration byInstrument = instrumentRetention.get(vip.getInstrument().getSymbol());
+        if (byVendor == null && byInstrument == null) {
+            return defaultRetention;
+        }
+        if (byVendor == null || byInstrument == null) {
+            return byVendor == null ? byInstrument : byVendor;
+        }
+        return byVendor.compareTo(byInstrument) <= 0 ? byVendor : byInstrument;
+    }
+
+    /**
+     * @param vip
+     * @return the epoch millisecond at which <b>vip</b> expires
+     */
+    public long expiresAt(VendorInstrumentPrice vip) {
+        return vip.getTimestamp().plus(retentionFor(vip)).toEpochMilli();
+    }
+}
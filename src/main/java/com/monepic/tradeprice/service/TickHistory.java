@@ -0,0 +1,264 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps the last few prices (ticks) of each Vendor/Instrument, which the cache overwrites as they're updated.
+ * <p>
+ * The ticks of each Vendor/Instrument are held in a ring buffer of primitive columns (timestamp, bid, ask and price scale), in timestamp
+ * order, so a tick costs a few array slots rather than an object; prices are only materialized when the history is read.
+ * The Vendor and Instrument are held once per ring, as last seen.  A ring starts small and grows up to the configured depth, after which
+ * each new tick overwrites the oldest.  A tick older than every tick in a full ring is dropped.
+ * <p>
+ * A Vendor/Instrument's history is dropped when its price is removed from the cache (e.g. on expiry), unless the cache holds a price
+ * for it again by then.  As {@link OrderBooks} do, the history reads the cache back rather than matching the price removed against the
+ * ticks it has recorded, since concurrent writers of a Vendor/Instrument can record their ticks in the opposite order to the one they
+ * cached them in.  The cache is read holding the ring's lock, and a price is cached before its tick is recorded; so either the ring is
+ * kept for a price cached meanwhile, or that price's tick goes into a new ring.
+ */
+public class TickHistory {
+
+    public static final int DEFAULT_DEPTH = 256;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final int depth;
+    private final UnaryOperator<VendorInstrumentPrice> current;
+    private final ConcurrentHashMap<Key, Ticks> histories = new ConcurrentHashMap<>(1 << 11);
+
+    /**
+     * @param depth   the most ticks to keep per Vendor/Instrument, or 0 to keep none
+     * @param current looks up the cached price of the same Vendor and Instrument as the price it's given, or null if none is cached
+     */
+    public TickHistory(int depth, UnaryOperator<VendorInstrumentPrice> current) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("depth cannot be negative");
+        }
+        this.depth = depth;
+        this.current = current;
+    }
+
+    public void record(VendorInstrumentPrice vip) {
+        if (depth == 0) {
+            return;
+        }
+        Key key = new Key(vip.getVendor().getId(), vip.getInstrument().getSymbol());
+        // a ring removed meanwhile is retired, and the tick goes in its replacement
+        Ticks ticks;
+        do {
+            ticks = histories.computeIfAbsent(key, k -> new Ticks(depth));
+        } while (!ticks.record(vip));
+    }
+
+    /**
+     * Drops the history of <b>vip</b>'s Vendor/Instrument, once <b>vip</b> has been removed from the cache, if the cache holds no price
+     * for the Vendor/Instrument
+     */
+    public void remove(VendorInstrumentPrice vip) {
+        Key key = new Key(vip.getVendor().getId(), vip.getInstrument().getSymbol());
+        histories.computeIfPresent(key, (k, ticks) -> ticks.retireIfUncached(vip, current) ? null : ticks);
+    }
+
+    /**
+     * @param limit the most ticks to return
+     * @return the latest ticks of the Vendor/Instrument, newest first, or null if it has no history
+     */
+    public List<VendorInstrumentPrice> getHistory(long vendorId, String symbol, int limit) {
+        Ticks ticks = symbol == null ? null : histories.get(new Key(vendorId, symbol));
+        return ticks == null ? null : ticks.latest(limit);
+    }
+
+    /**
+     * @return the Vendor's price for the Instrument as it was at <b>at</b>, i.e. the latest tick at or before then,
+     * or null if there isn't one in the history
+     */
+    public VendorInstrumentPrice getPriceAt(long vendorId, String symbol, Instant at) {
+        Ticks ticks = symbol == null ? null : histories.get(new Key(vendorId, symbol));
+        return ticks == null ? null : ticks.asOf(at);
+    }
+
+    private static final class Key {
+
+        final long vendorId;
+        final String symbol;
+
+        Key(long vendorId, String symbol) {
+            this.vendorId = vendorId;
+            this.symbol = symbol;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) obj;
+            return vendorId == that.vendorId && symbol.equals(that.symbol);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(vendorId, symbol);
+        }
+    }
+
+    /**
+     * One Vendor/Instrument's ring of ticks.  Logical index 0 is the oldest tick, at physical index <b>head</b>
+     */
+    private static final class Ticks {
+
+        final int depth;
+        Vendor vendor;
+        Instrument instrument;
+        long[] seconds, bids, asks;
+        int[] nanos, scales;
+        int head, size;
+        boolean retired;
+
+        Ticks(int depth) {
+            this.depth = depth;
+            allocate(Math.min(depth, INITIAL_CAPACITY));
+        }
+
+        private void allocate(int capacity) {
+            seconds = new long[capacity];
+            bids = new long[capacity];
+            asks = new long[capacity];
+            nanos = new int[capacity];
+            scales = new int[capacity];
+        }
+
+        /**
+         * @return false if the ring has been retired
+         */
+        synchronized boolean record(VendorInstrumentPrice vip) {
+            if (retired) {
+                return false;
+            }
+            vendor = vip.getVendor();
+            instrument = vip.getInstrument();
+            long second = vip.getTimestamp().getEpochSecond();
+            int nano = vip.getTimestamp().getNano();
+
+            // ticks almost always arrive in order, so this rarely looks past the newest
+            int position = size;
+            while (position > 0 && compare(position - 1, second, nano) > 0) {
+                position--;
+            }
+            if (position > 0 && compare(position - 1, second, nano) == 0) {
+                // a resend of the same tick replaces it
+                write(position - 1, vip, second, nano);
+                return true;
+            }
+            if (size == depth) {
+                if (position == 0) {
+                    return true; // older than everything kept
+                }
+                head = physical(1);
+                size--;
+                position--;
+            } else if (size == seconds.length) {
+                grow();
+            }
+            for (int i = size; i > position; i--) {
+                move(i - 1, i);
+            }
+            size++;
+            write(position, vip, second, nano);
+            return true;
+        }
+
+        private void grow() {
+            long[] oldSeconds = seconds, oldBids = bids, oldAsks = asks;
+            int[] oldNanos = nanos, oldScales = scales;
+            int oldHead = head;
+            allocate(Math.min(depth, seconds.length * 2));
+            for (int i = 0; i < size; i++) {
+                int from = (oldHead + i) % oldSeconds.length;
+                seconds[i] = oldSeconds[from];
+                bids[i] = oldBids[from];
+                asks[i] = oldAsks[from];
+                nanos[i] = oldNanos[from];
+                scales[i] = oldScales[from];
+            }
+            head = 0;
+        }
+
+        private int physical(int index) {
+            int i = head + index;
+            return i < seconds.length ? i : i - seconds.length;
+        }
+
+        private int compare(int index, long second, int nano) {
+            int i = physical(index);
+            int bySecond = Long.compare(seconds[i], second);
+            return bySecond != 0 ? bySecond : Integer.compare(nanos[i], nano);
+        }
+
+        private void move(int fromIndex, int toIndex) {
+            int from = physical(fromIndex), to = physical(toIndex);
+            seconds[to] = seconds[from];
+            bids[to] = bids[from];
+            asks[to] = asks[from];
+            nanos[to] = nanos[from];
+            scales[to] = scales[from];
+        }
+
+        private void write(int index, VendorInstrumentPrice vip, long second, int nano) {
+            int i = physical(index);
+            seconds[i] = second;
+            nanos[i] = nano;
+            bids[i] = vip.getScaledBid();
+            asks[i] = vip.getScaledAsk();
+            scales[i] = vip.getPriceScale();
+        }
+
+        private VendorInstrumentPrice materialize(int index) {
+            int i = physical(index);
+            return new VendorInstrumentPrice(vendor, instrument, bids[i], asks[i], scales[i], Instant.ofEpochSecond(seconds[i], nanos[i]));
+        }
+
+        synchronized boolean retireIfUncached(VendorInstrumentPrice vip, UnaryOperator<VendorInstrumentPrice> current) {
+            if (current.apply(vip) == null) {
+                retired = true;
+            }
+            return retired;
+        }
+
+        synchronized List<VendorInstrumentPrice> latest(int limit) {
+            int count = Math.min(Math.max(0, limit), size);
+            List<VendorInstrumentPrice> latest = new ArrayList<>(count);
+            for (int i = size - 1; i >= size - count; i--) {
+                latest.add(materialize(i));
+            }
+            return latest;
+        }
+
+        synchronized VendorInstrumentPrice asOf(Instant at) {
+            long second = at.getEpochSecond();
+            int nano = at.getNano();
+            // the first tick after at
+            int low = 0, high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(mid, second, nano) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low == 0 ? null : materialize(low - 1);
+        }
+    }
+}
@@ -1,17 +1,136 @@
 package com.monepic.tradeprice.service;
 
+import com.monepic.tradeprice.cache.CacheStats;
+import com.monepic.tradeprice.cache.Page;
+import com.monepic.tradeprice.model.Depth;
+import com.monepic.tradeprice.model.TopOfBook;
 import com.monepic.tradeprice.model.VendorInstrumentPrice;
 
+import java.time.Instant;
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface TradePriceService {
 
+    /**
+     * The most prices removed by one call to {@link #expireOldPrices()}, so that expiry runs in short slices
+     */
+    int EXPIRY_BATCH_SIZE = 1 << 14;
+
     void createOrUpdate(VendorInstrumentPrice vip);
 
+    /**
+     * Creates or updates many prices at once, as if by {@link #createOrUpdate(VendorInstrumentPrice)} in order, but letting the service
+     * share the work of applying them, e.g. updating each of its indexes once for the batch.
+     * <p>
+     * If it fails, either none of the prices was applied, or it throws a {@link PartialUpdateException} giving how many were (and
+     * passed on by any wrappers), so a caller can retry just the rest of them
+     */
+    default void createOrUpdateAll(Collection<VendorInstrumentPrice> prices) {
+        int applied = 0;
+        for (VendorInstrumentPrice vip : prices) {
+            try {
+                createOrUpdate(vip);
+            } catch (RuntimeException e) {
+                if (applied == 0) {
+                    throw e;
+                }
+                throw new PartialUpdateException(applied, e);
+            }
+            applied++;
+        }
+    }
+
+    /**
+     * Fills an empty service with many prices at once, e.g. when restoring it on startup.
+     * Nothing else may write to the service meanwhile
+     */
+    default void load(Collection<VendorInstrumentPrice> prices) {
+        prices.forEach(this::createOrUpdate);
+    }
+
     Collection<VendorInstrumentPrice> getByVendor(Long vendorId);
 
     Collection<VendorInstrumentPrice> getByInstrument(String instrumentSymbol);
 
+    /**
+     * @return the Vendor's current price for the Instrument, or null if there isn't one
+     */
+    VendorInstrumentPrice getPrice(Long vendorId, String instrumentSymbol);
+
     Collection<VendorInstrumentPrice> getAll();
 
+    /**
+     * @param limit the most prices to return
+     * @return the Vendor's latest prices for the Instrument, newest first, or null if it has no price history
+     */
+    List<VendorInstrumentPrice> getHistory(Long vendorId, String instrumentSymbol, int limit);
+
+    /**
+     * @return the Vendor's price for the Instrument as it was at <b>at</b>, or null if there's none that early in its history
+     */
+    VendorInstrumentPrice getPriceAt(Long vendorId, String instrumentSymbol, Instant at);
+
+    /**
+     * Traverses all the prices a page at a time, without copying them all at once
+     *
+     * @param cursor the {@link Page#getNextCursor()} of the previous page, or null to start from the beginning
+     * @param limit  the most prices to return
+     * @return the next page of prices
+     * @throws IllegalArgumentException if <b>cursor</b> is malformed, or <b>limit</b> isn't positive
+     */
+    Page<VendorInstrumentPrice> getPage(String cursor, int limit);
+
+    /**
+     * @param since
+     * @return the prices timestamped at or after <b>since</b>
+     */
+    Collection<VendorInstrumentPrice> getUpdatedSince(Instant since);
+
+    /**
+     * As {@link #getUpdatedSince(Instant)}, but for reading at the reader's own pace, e.g. into a response; a service which keeps a
+     * consistent view holds it open until the stream is closed, so the stream must be closed once it's read
+     *
+     * @param since
+     * @return the prices timestamped at or after <b>since</b>
+     */
+    default Stream<VendorInstrumentPrice> streamUpdatedSince(Instant since) {
+        return getUpdatedSince(since).stream();
+    }
+
+    /**
+     * @return the best bid and ask of any Vendor for the Instrument, or null if no prices have been seen for it
+     */
+    TopOfBook getTopOfBook(String instrumentSymbol);
+
+    /**
+     * @return every Vendor's current bid and ask for the Instrument, best first, or null if no prices have been seen for it
+     */
+    Depth getDepth(String instrumentSymbol);
+
+    /**
+     * Removes (up to {@link #EXPIRY_BATCH_SIZE}) prices which have outlived their retention period
+     *
+     * @return the removed prices
+     */
+    Collection<VendorInstrumentPrice> expireOldPrices();
+
+    /**
+     * @return the number of prices cached, and how many have been evicted to keep within the cache's bounds
+     */
+    CacheStats getCacheStats();
+
+    /**
+     * Registers <b>listener</b> to be passed each price evicted to keep the service within its bounds (but not those expired by
+     * {@link #expireOldPrices()}, which it returns), once the price has been removed from the books and history
+     */
+    void addEvictionListener(Consumer<VendorInstrumentPrice> listener);
+
+    /**
+     * Stops any background work of the service's own, e.g. on shutdown (as a bean's inferred destroy method)
+     */
+    default void close() {
+    }
 }
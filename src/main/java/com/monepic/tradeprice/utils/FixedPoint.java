@@ -0,0 +1,250 @@
+package com.monepic.tradeprice.utils;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point decimals, held as a <b>long</b> unscaled value and an <b>int</b> scale (the number of decimal places),
+ * so that the value is <code>unscaled / 10<sup>scale</sup></code>.
+ * <p>
+ * Prices are parsed straight from their text into this form, and only converted to {@link BigDecimal} at the JSON boundary.
+ * A value which can't be held exactly at the requested scale is rejected rather than rounded.
+ */
+public final class FixedPoint {
+
+    public static final int MAX_SCALE = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_SCALE; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPoint() {}
+
+    /**
+     * Parses a plain decimal, e.g. <code>-12.340</code>, without creating any intermediate objects
+     *
+     * @param text
+     * @param scale the number of decimal places of the result
+     * @return the unscaled value
+     * @throws NumberFormatException    if <b>text</b> isn't a plain decimal, or is out of range
+     * @throws IllegalArgumentException if <b>text</b> has more (non-zero) decimal places than <b>scale</b>
+     */
+    public static long parse(CharSequence text, int scale) {
+        return parse(text, 0, text.length(), scale);
+    }
+
+    /**
+     * As {@link #parse(CharSequence, int)}, for the characters of <b>text</b> from <b>start</b> (inclusive) to <b>end</b> (exclusive)
+     */
+    public static long parse(CharSequence text, int start, int end, int scale) {
+        checkScale(scale);
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i++) == '-';
+        }
+        long value = 0;
+        int integerDigits = 0, decimalPlaces = -1;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && decimalPlaces < 0) {
+                decimalPlaces = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("not a decimal: " + text.subSequence(start, end));
+            }
+            if (decimalPlaces < 0) {
+                integerDigits++;
+            } else if (decimalPlaces == scale) {
+                if (c != '0') {
+                    throw new IllegalArgumentException(text.subSequence(start, end) + " has more than " + scale + " decimal places");
+                }
+                continue;
+            } else {
+                decimalPlaces++;
+            }
+            value = appendDigit(value, c - '0', text, start, end);
+        }
+        if (integerDigits == 0 && decimalPlaces <= 0) {
+            throw new NumberFormatException("not a decimal: " + text.subSequence(start, end));
+        }
+        for (int places = Math.max(decimalPlaces, 0); places < scale; places++) {
+            value = appendDigit(value, 0, text, start, end);
+        }
+        return negative ? -value : value;
+    }
+
+    private static long appendDigit(long value, int digit, CharSequence text, int start, int end) {
+        if (value > (Long.MAX_VALUE - digit) / 10) {
+            throw new NumberFormatException("out of range: " + text.subSequence(start, end));
+        }
+        return value * 10 + digit;
+    }
+
+    /**
+     * @param value
+     * @param scale the number of decimal places of the result
+     * @return the unscaled value of <b>value</b>
+     * @throws IllegalArgumentException if <b>value</b> can't be held exactly at <b>scale</b>
+     */
+    public static long of(BigDecimal value, int scale) {
+        checkScale(scale);
+        try {
+            return value.setScale(scale).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(value + " can't be held to " + scale + " decimal places");
+        }
+    }
+
+    /**
+     * @return the value as a {@link BigDecimal}, without trailing zeros (but never with a negative scale)
+     */
+    public static BigDecimal toBigDecimal(long unscaled, int scale) {
+        while (scale > 0 && unscaled % 10 == 0) {
+            unscaled /= 10;
+            scale--;
+        }
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    /**
+     * @return the unscaled value, at scale <b>to</b>, of the value with unscaled value <b>unscaled</b> at scale <b>from</b>
+     * @throws IllegalArgumentException if the value can't be held exactly at <b>to</b>
+     */
+    public static long rescale(long unscaled, int from, int to) {
+        checkScale(from);
+        checkScale(to);
+        if (to >= from) {
+            try {
+                return Math.multiplyExact(unscaled, POWERS_OF_TEN[to - from]);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException(toBigDecimal(unscaled, from) + " can't be held to " + to + " decimal places");
+            }
+        }
+        long divisor = POWERS_OF_TEN[from - to];
+        if (unscaled % divisor != 0) {
+            throw new IllegalArgumentException(toBigDecimal(unscaled, from) + " can't be held to " + to + " decimal places");
+        }
+        return unscaled / divisor;
+    }
+
+    /**
+     * Compares two values, which may be at different scales
+     */
+    public static int compare(long a, int aScale, long b, int bScale) {
+        if (aScale == bScale) {
+            return Long.compare(a, b);
+        }
+        return toBigDecimal(a, aScale).compareTo(toBigDecimal(b, bScale));
+    }
+
+    /**
+     * @return whether <b>text</b> is a plain decimal, e.g. <code>-12.340</code>, <code>7.</code> or <code>.5</code>, as accepted by
+     * {@link #parse(CharSequence, int)} (at a large enough scale, and in range)
+     */
+    public static boolean isDecimal(CharSequence text) {
+        int i = 0, length = text.length(), digits = 0;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            i++;
+        }
+        boolean point = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && !point) {
+                point = true;
+            } else if (c >= '0' && c <= '9') {
+                digits++;
+            } else {
+                return false;
+            }
+        }
+        return digits > 0;
+    }
+
+    /**
+     * Compares two plain decimals by their text, at whatever scale and magnitude, without parsing them
+     *
+     * @throws IllegalArgumentException if either isn't a plain decimal (see {@link #isDecimal(CharSequence)})
+     */
+    public static int compare(CharSequence a, CharSequence b) {
+        if (!isDecimal(a) || !isDecimal(b)) {
+            throw new IllegalArgumentException("not decimals: " + a + ", " + b);
+        }
+        boolean aNegative = isNegative(a), bNegative = isNegative(b);
+        if (aNegative != bNegative) {
+            return aNegative ? -1 : 1;
+        }
+        int magnitude = compareMagnitudes(a, b);
+        return aNegative ? -magnitude : magnitude;
+    }
+
+    private static boolean isNegative(CharSequence decimal) {
+        if (decimal.charAt(0) != '-') {
+            return false;
+        }
+        // -0 isn't
+        for (int i = 1; i < decimal.length(); i++) {
+            char c = decimal.charAt(i);
+            if (c > '0' && c <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int compareMagnitudes(CharSequence a, CharSequence b) {
+        int aStart = firstSignificant(a), bStart = firstSignificant(b);
+        int aPoint = point(a), bPoint = point(b);
+        // more whole digits (without leading zeros) is larger
+        if (aPoint - aStart != bPoint - bStart) {
+            return Integer.compare(aPoint - aStart, bPoint - bStart);
+        }
+        for (int i = aStart, j = bStart; i < aPoint; i++, j++) {
+            if (a.charAt(i) != b.charAt(j)) {
+                return Character.compare(a.charAt(i), b.charAt(j));
+            }
+        }
+        // then the decimal places, a missing one being 0
+        for (int i = aPoint + 1, j = bPoint + 1; i < a.length() || j < b.length(); i++, j++) {
+            char aDigit = i < a.length() ? a.charAt(i) : '0', bDigit = j < b.length() ? b.charAt(j) : '0';
+            if (aDigit != bDigit) {
+                return Character.compare(aDigit, bDigit);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the index of the first whole digit which isn't a leading zero
+     */
+    private static int firstSignificant(CharSequence decimal) {
+        int i = decimal.charAt(0) == '-' || decimal.charAt(0) == '+' ? 1 : 0;
+        while (i < decimal.length() && decimal.charAt(i) == '0') {
+            i++;
+        }
+        return Math.min(i, point(decimal));
+    }
+
+    /**
+     * @return the index of the decimal point, or the length if there isn't one
+     */
+    private static int point(CharSequence decimal) {
+        for (int i = 0; i < decimal.length(); i++) {
+            if (decimal.charAt(i) == '.') {
+                return i;
+            }
+        }
+        return decimal.length();
+    }
+
+    private static void checkScale(int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("scale must be between 0 and " + MAX_SCALE);
+        }
+    }
+}
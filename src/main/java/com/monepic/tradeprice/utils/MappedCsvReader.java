@@ -0,0 +1,467 @@
+package com.monepic.tradeprice.utils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a CSV file (RFC 4180) record by record, straight from the memory-mapped bytes of the file, without creating any objects per
+ * record unless asked for a field as a String.  It supersedes the {@link CsvTokenizer}, which needs each line as a String, and makes a
+ * Map of it.
+ * <p>
+ * Fields are separated by commas, and records by LF or CRLF.  A field may be quoted, in which case it may contain commas, line breaks
+ * and quotes (escaped by doubling them).  Blank lines are skipped, as is a leading UTF-8 byte order mark.
+ * <p>
+ * {@link #next()} copies the (unquoted) bytes of the next record's fields into a buffer which is reused for every record; the fields are
+ * then read by index, as text, numbers or fixed-point decimals.  Large files are mapped a window at a time, and can be {@link #split}
+ * into ranges of records to be read in parallel, each by its own reader.
+ * <p>
+ * Not thread safe.
+ */
+public class MappedCsvReader implements AutoCloseable {
+
+    static final long DEFAULT_WINDOW_BYTES = 1L << 30;
+    private static final byte QUOTE = '"', COMMA = ',', CR = '\r', LF = '\n';
+    // where split is, as next() would see it: before a record, or its first field; at the start of a field; in an unquoted or quoted
+    // field; just after a quote in a quoted field; just after a CR which ended a record; or skipping the rest of a malformed line
+    private static final int RECORD = 0, FIELD = 1, UNQUOTED = 2, QUOTED = 3, QUOTE_IN_QUOTED = 4, AFTER_CR = 5, MALFORMED = 6;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long end, windowBytes;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    private byte[] bytes = new byte[256];
+    private int[] ends = new int[16];
+    private int fields;
+    private long line, nextLine;
+    private final Chars chars = new Chars();
+
+    public MappedCsvReader(Path file) throws IOException {
+        this(file, 0, Long.MAX_VALUE, 1, DEFAULT_WINDOW_BYTES);
+    }
+
+    /**
+     * Reads just the records in <b>range</b>, e.g. one of those the file was {@link #split} into
+     */
+    public MappedCsvReader(Path file, Range range) throws IOException {
+        this(file, range.getStart(), range.getEnd(), range.getLine(), DEFAULT_WINDOW_BYTES);
+    }
+
+    MappedCsvReader(Path file, long windowBytes) throws IOException {
+        this(file, 0, Long.MAX_VALUE, 1, windowBytes);
+    }
+
+    MappedCsvReader(Path file, long start, long end, long line, long windowBytes) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.end = Math.min(end, channel.size());
+        this.windowBytes = windowBytes;
+        this.nextLine = line;
+        map(Math.min(start, this.end));
+        if (start == 0 && window.remaining() >= 3
+                && window.get(0) == (byte) 0xEF && window.get(1) == (byte) 0xBB && window.get(2) == (byte) 0xBF) {
+            window.position(3);
+        }
+    }
+
+    /**
+     * Splits the records after the current one (or all of them, before the first call to {@link #next()}) into ranges of about
+     * <b>targetBytes</b> each, which can then be read independently, e.g. in parallel, without moving this reader.
+     * <p>
+     * This has to scan the bytes in between, to tell the line breaks between records from those inside quoted fields, but doesn't parse
+     * them, so is much quicker than reading the records.  It follows the same rules as {@link #next()}: a quote only starts a quoted field
+     * at the start of a field, and is just a character anywhere else, so a stray quote in an unquoted field doesn't throw the scan out.
+     */
+    public List<Range> split(long targetBytes) throws IOException {
+        List<Range> ranges = new ArrayList<>();
+        long line = nextLine;
+        try (MappedCsvReader reader = new MappedCsvReader(file, getPosition(), end, line, windowBytes)) {
+            long rangeStart = reader.getPosition(), rangeLine = line;
+            int state = RECORD;
+            for (int b = reader.read(); b != -1; b = reader.read()) {
+                if (state == AFTER_CR) {
+                    state = RECORD;
+                    if (b == LF) {
+                        // the CR's line break
+                        b = -1;
+                    }
+                }
+                boolean lineBreak = b == LF;
+                switch (state) {
+                    case RECORD:
+                        if (b == LF) {
+                            line++;
+                        } else if (b != CR && b != -1) {
+                            state = b == QUOTE ? QUOTED : b == COMMA ? FIELD : UNQUOTED;
+                        }
+                        break;
+                    case FIELD:
+                    case UNQUOTED:
+                        if (state == FIELD && b == QUOTE) {
+                            state = QUOTED;
+                        } else if (b == COMMA) {
+                            state = FIELD;
+                        } else if (b == LF || b == CR) {
+                            line++;
+                            state = b == CR ? AFTER_CR : RECORD;
+                        } else {
+                            state = UNQUOTED;
+                        }
+                        break;
+                    case QUOTED:
+                        if (b == QUOTE) {
+                            state = QUOTE_IN_QUOTED;
+                        } else if (b == LF) {
+                            line++;
+                        }
+                        break;
+                    case QUOTE_IN_QUOTED:
+                        if (b == QUOTE) {
+                            state = QUOTED; // an escaped (doubled) quote
+                        } else if (b == COMMA) {
+                            state = FIELD;
+                        } else if (b == LF || b == CR) {
+                            line++;
+                            state = b == CR ? AFTER_CR : RECORD;
+                        } else {
+                            state = MALFORMED;
+                        }
+                        break;
+                    default: // MALFORMED
+                        if (b == LF) {
+                            line++;
+                            state = RECORD;
+                        }
+                }
+                if (lineBreak && state == RECORD && reader.getPosition() - rangeStart >= targetBytes) {
+                    ranges.add(new Range(rangeStart, reader.getPosition(), rangeLine));
+                    rangeStart = reader.getPosition();
+                    rangeLine = line;
+                }
+            }
+            if (reader.getPosition() > rangeStart) {
+                ranges.add(new Range(rangeStart, reader.getPosition(), rangeLine));
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Moves to the next record
+     *
+     * @return false at the end of the file
+     * @throws IllegalArgumentException if the record is malformed, e.g. has an unterminated quoted field; the next call moves on
+     *                                  to the following line
+     */
+    public boolean next() throws IOException {
+        fields = 0;
+        int length = 0;
+        while (true) {
+            if (!hasRemaining()) {
+                return false;
+            }
+            byte b = window.get();
+            if (b == LF) {
+                nextLine++;
+            } else if (b != CR) {
+                window.position(window.position() - 1);
+                break;
+            }
+        }
+        line = nextLine;
+        while (true) {
+            int b = read();
+            if (b == QUOTE) {
+                length = readQuoted(length);
+                b = read();
+                if (b != COMMA && b != CR && b != LF && b != -1) {
+                    skipLine();
+                    throw new IllegalArgumentException("line " + line + ": unexpected character after a quoted field");
+                }
+            } else {
+                while (b != COMMA && b != CR && b != LF && b != -1) {
+                    length = append(length, (byte) b);
+                    b = read();
+                }
+            }
+            endField(length);
+            if (b == COMMA) {
+                continue;
+            }
+            if (b == CR && hasRemaining() && peek() == LF) {
+                window.get();
+            }
+            if (b != -1) {
+                nextLine++;
+            }
+            return true;
+        }
+    }
+
+    private void skipLine() throws IOException {
+        for (int b = read(); b != -1; b = read()) {
+            if (b == LF) {
+                nextLine++;
+                return;
+            }
+        }
+    }
+
+    private int readQuoted(int length) throws IOException {
+        while (true) {
+            if (!hasRemaining()) {
+                throw new IllegalArgumentException("line " + line + ": unterminated quoted field");
+            }
+            byte b = window.get();
+            if (b == QUOTE) {
+                if (!hasRemaining() || peek() != QUOTE) {
+                    return length;
+                }
+                window.get();
+            } else if (b == LF) {
+                nextLine++;
+            }
+            length = append(length, b);
+        }
+    }
+
+    private int append(int length, byte b) {
+        if (length == bytes.length) {
+            bytes = Arrays.copyOf(bytes, length * 2);
+        }
+        bytes[length] = b;
+        return length + 1;
+    }
+
+    private void endField(int length) {
+        if (fields == ends.length) {
+            ends = Arrays.copyOf(ends, fields * 2);
+        }
+        ends[fields++] = length;
+    }
+
+    /**
+     * @return the number of fields in the current record
+     */
+    public int size() {
+        return fields;
+    }
+
+    /**
+     * @return the line of the file the current record starts on, from 1
+     */
+    public long getLine() {
+        return line;
+    }
+
+    /**
+     * @return the offset in the file just after the current record
+     */
+    public long getPosition() {
+        return windowStart + window.position();
+    }
+
+    public boolean isEmpty(int field) {
+        return start(field) == end(field);
+    }
+
+    public boolean isBlank(int field) {
+        for (int i = start(field), end = end(field); i < end; i++) {
+            if (!Character.isWhitespace(bytes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getString(int field) {
+        int start = start(field);
+        return new String(bytes, start, end(field) - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return whether the field is the same text as <b>value</b>, which is null only if the field is empty
+     */
+    public boolean matches(int field, String value) {
+        int start = start(field), end = end(field);
+        if (value == null) {
+            return start == end;
+        }
+        if (value.length() != end - start) {
+            return getString(field).equals(value);
+        }
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < 0) {
+                return getString(field).equals(value);
+            }
+            if (bytes[i] != value.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a hash of the field's bytes
+     */
+    public int hash(int field) {
+        int hash = 1;
+        for (int i = start(field), end = end(field); i < end; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash;
+    }
+
+    /**
+     * @throws NumberFormatException if the field isn't a whole number in range
+     */
+    public long getLong(int field) {
+        int start = start(field), end = end(field), i = start;
+        boolean negative = i < end && bytes[i] == '-';
+        if (negative || i < end && bytes[i] == '+') {
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("not a number: " + getString(field));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("not a number in range: " + getString(field));
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw new NumberFormatException("not a number in range: " + getString(field));
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    /**
+     * As {@link FixedPoint#parse(CharSequence, int)}
+     */
+    public long getFixedPoint(int field, int scale) {
+        return FixedPoint.parse(chars, start(field), end(field), scale);
+    }
+
+    private int start(int field) {
+        return field == 0 ? 0 : ends(field - 1);
+    }
+
+    private int end(int field) {
+        return ends(field);
+    }
+
+    private int ends(int field) {
+        if (field < 0 || field >= fields) {
+            throw new IndexOutOfBoundsException("field " + field + " of a record of " + fields);
+        }
+        return ends[field];
+    }
+
+    private boolean hasRemaining() throws IOException {
+        if (window.hasRemaining()) {
+            return true;
+        }
+        long next = windowStart + window.limit();
+        if (next >= end) {
+            return false;
+        }
+        map(next);
+        return true;
+    }
+
+    /**
+     * @return the next byte, as an unsigned value, or -1 at the end of the file
+     */
+    private int read() throws IOException {
+        return hasRemaining() ? window.get() & 0xFF : -1;
+    }
+
+    private byte peek() {
+        return window.get(window.position());
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowBytes, end - start));
+    }
+
+    /**
+     * Closes the file; the mapping itself is released when it's garbage collected
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * A range of a file's bytes, from the start of a record to the end of one
+     */
+    public static final class Range {
+
+        private final long start, end, line;
+
+        public Range(long start, long end, long line) {
+            this.start = start;
+            this.end = end;
+            this.line = line;
+        }
+
+        public long getStart() { return start; }
+
+        public long getEnd() { return end; }
+
+        /**
+         * @return the line of the file the range starts on, from 1
+         */
+        public long getLine() { return line; }
+
+        @Override
+        public String toString() {
+            return "Range{" +
+                    "start=" + start +
+                    ", end=" + end +
+                    ", line=" + line +
+                    '}';
+        }
+    }
+
+    /**
+     * The current record's bytes as (single-byte) characters, for parsing numbers
+     */
+    private final class Chars implements CharSequence {
+
+        @Override
+        public int length() {
+            return fields == 0 ? 0 : ends[fields - 1];
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
@@ -7,7 +7,10 @@ import java.util.Map;
  * This doesn't take account of things that might be found in a real-life CSV file,
  * such as quotes, escapes, wrong number of fields etc
  * and so is only suitable for this demo purpose
+ *
+ * @deprecated the CSV input flow now reads files with {@link MappedCsvReader}
  */
+@Deprecated
 public class TotallyNaiveCsvTokenizer implements CsvTokenizer {
 
     private final String[] headers;
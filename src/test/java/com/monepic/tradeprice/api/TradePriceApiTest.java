@@ -1,24 +1,59 @@
 package com.monepic.tradeprice.api;
 
+import com.monepic.tradeprice.cache.CacheStats;
+import com.monepic.tradeprice.cache.Page;
+import com.monepic.tradeprice.jms.MonitoredMessagePublisher;
+import com.monepic.tradeprice.jms.PublisherStats;
+import com.monepic.tradeprice.model.Bar;
+import com.monepic.tradeprice.model.PriceJsonModule;
+import com.monepic.tradeprice.model.ReferenceDataRegistry;
+import com.monepic.tradeprice.model.TopOfBook;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.model.requests.NewPriceRequestValidator;
+import com.monepic.tradeprice.service.BarAggregator;
+import com.monepic.tradeprice.service.PartialUpdateException;
 import com.monepic.tradeprice.service.TradePriceService;
 import com.monepic.tradeprice.testutils.TestData;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(TradePriceApi.class)
+@Import({ReferenceDataRegistry.class, PriceJsonModule.class, NewPriceRequestValidator.class})
 public class TradePriceApiTest {
 
 
@@ -26,6 +61,10 @@ public class TradePriceApiTest {
     private MockMvc mockMvc;
     @MockBean
     private TradePriceService service;
+    @MockBean
+    private BarAggregator bars;
+    @MockBean
+    private MonitoredMessagePublisher publisher;
 
     @Test
     public void getByInstrumentShouldReturnCollection() throws Exception {
@@ -49,6 +88,126 @@ public class TradePriceApiTest {
                 .andExpect(content().string("[" + TestData.VIP_1_JSON + "]"));
     }
 
+    @Test
+    public void getPriceShouldReturnPrice() throws Exception {
+        when(service.getPrice(1L, "VOD")).thenReturn(TestData.VIP_1.get());
+
+        mockMvc.perform(get("/vendor/1/instrument/VOD/price"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(TestData.VIP_1_JSON));
+        mockMvc.perform(get("/vendor/2/instrument/VOD/price"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getHistoryShouldReturnLatestPrices() throws Exception {
+        when(service.getHistory(1L, "VOD", 100)).thenReturn(List.of(TestData.VIP_1.get()));
+        when(service.getHistory(1L, "VOD", 5)).thenReturn(List.of());
+        when(service.getHistory(2L, "VOD", 100)).thenReturn(null);
+
+        mockMvc.perform(get("/vendor/1/instrument/VOD/history"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("[" + TestData.VIP_1_JSON + "]"));
+        mockMvc.perform(get("/vendor/1/instrument/VOD/history").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("[]"));
+        mockMvc.perform(get("/vendor/2/instrument/VOD/history"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/vendor/1/instrument/VOD/history").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getHistoryAtShouldReturnPrice() throws Exception {
+        when(service.getPriceAt(1L, "VOD", TestData.TIMESTAMP_1.plusSeconds(1))).thenReturn(TestData.VIP_1.get());
+
+        mockMvc.perform(get("/vendor/1/instrument/VOD/history").param("at", "2015-11-27T00:00:01Z"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(TestData.VIP_1_JSON));
+        mockMvc.perform(get("/vendor/1/instrument/VOD/history").param("at", "2015-11-26T00:00:00Z"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getBarsShouldReturnLatestBars() throws Exception {
+        Bar.Ohlc ohlc = new Bar.Ohlc(BigDecimal.ONE, BigDecimal.TEN, BigDecimal.ONE, new BigDecimal("1.5"));
+        when(bars.getBars("VOD", Duration.ofMinutes(1), 60))
+                .thenReturn(List.of(new Bar("VOD", TestData.TIMESTAMP_1, Duration.ofMinutes(1), 3, ohlc, ohlc, ohlc)));
+        when(bars.getBars("BAY", Duration.ofMinutes(1), 60)).thenReturn(null);
+        when(bars.getIntervals()).thenReturn(List.of(Duration.ofMinutes(1)));
+
+        String ohlcJson = "{\"open\":1,\"high\":10,\"low\":1,\"close\":1.5}";
+        mockMvc.perform(get("/instrument/VOD/bars").param("interval", "1m"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("[{\"symbol\":\"VOD\",\"start\":\"2015-11-27T00:00:00Z\",\"ticks\":3,"
+                        + "\"bid\":" + ohlcJson + ",\"ask\":" + ohlcJson + ",\"mid\":" + ohlcJson + ",\"end\":\"2015-11-27T00:01:00Z\"}]"));
+        mockMvc.perform(get("/instrument/BAY/bars").param("interval", "PT1M"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/instrument/VOD/bars").param("interval", "1h"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/instrument/VOD/bars").param("interval", "soon"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getUpdatedSinceShouldReturnCollection() throws Exception {
+        when(service.getUpdatedSince(TestData.TIMESTAMP_1))
+                .thenReturn(Collections.singletonList(TestData.VIP_1.get()));
+
+        mockMvc.perform(get("/price").param("since", "2015-11-27T00:00:00Z"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().string("[" + TestData.VIP_1_JSON + "]"));
+    }
+
+    @Test
+    public void getBestShouldReturnTopOfBook() throws Exception {
+        when(service.getTopOfBook("BAY")).thenReturn(new TopOfBook("BAY", 3, 1L, 1100, 2L, 1150, 2));
+
+        mockMvc.perform(get("/instrument/BAY/best"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"symbol\":\"BAY\",\"sequence\":3,\"bidVendorId\":1,\"askVendorId\":2,\"bid\":11,\"ask\":11.5}"));
+    }
+
+    @Test
+    public void getBestShouldReturnNotFoundForUnknownInstrument() throws Exception {
+        mockMvc.perform(get("/instrument/XXX/best"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/instrument/XXX/depth"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getPageShouldReturnPageAndCursor() throws Exception {
+        when(service.getPage("a1", 1))
+                .thenReturn(new Page<>(List.of(TestData.VIP_1.get()), "a2"));
+
+        mockMvc.perform(get("/price").param("limit", "1").param("cursor", "a1"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"items\":[" + TestData.VIP_1_JSON + "],\"nextCursor\":\"a2\"}"));
+        mockMvc.perform(get("/price").param("limit", "1").param("since", "2015-11-27T00:00:00Z"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getCacheStats() throws Exception {
+        when(service.getCacheStats()).thenReturn(new CacheStats(3, 1024, 2, 512));
+
+        mockMvc.perform(get("/cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"entries\":3,\"estimatedBytes\":1024,\"evictions\":2,\"evictedBytes\":512}"));
+    }
+
+    @Test
+    public void getPublisherStats() throws Exception {
+        when(publisher.getStats()).thenReturn(new PublisherStats(5, 100, 40, 10, 25, 3, 0));
+
+        mockMvc.perform(get("/publisher/stats"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"queued\":5,\"capacity\":100,\"published\":40,\"conflated\":10,\"sent\":25,"
+                        + "\"batches\":3,\"failed\":0,\"conflationRatio\":0.25}"));
+    }
+
     @Test
     public void createNewTradePrice() throws Exception {
         mockMvc.perform(post("/price")
@@ -59,4 +218,164 @@ public class TradePriceApiTest {
                 .andExpect(status().is2xxSuccessful());
     }
 
+    @Test
+    public void rejectsBadPrices() throws Exception {
+        mockMvc.perform(post("/price")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(TestData.NPR_1_JSON.replace("10.21", "\"ten\""))
+        )
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/price")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(TestData.NPR_1_JSON.replace("10.21", "10.123456789"))
+        )
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/price")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(TestData.NPR_1_JSON.replace("10.21", "11.22"))
+        )
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.fieldErrors[0].field").value("bid"))
+                .andExpect(jsonPath("$.fieldErrors[0].message").value("must not be above the ask"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void createsPricesInBulkReportingEachRejected() throws Exception {
+        String ndjson = String.join("\n",
+                TestData.NPR_1_JSON,
+                TestData.NPR_1_JSON.replace("10.21", "1e-19"),
+                TestData.NPR_1_JSON.replace("10.21", "10.123456789"),
+                TestData.NPR_1_JSON.replace("\"vendorId\":1", "\"vendorId\":\"one\""),
+                TestData.NPR_1_JSON.replace("11.21", "11.22"));
+        mockMvc.perform(post("/prices")
+                .contentType("application/x-ndjson")
+                .content(ndjson)
+        )
+                .andDo(print())
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejectedCount").value(3))
+                .andExpect(jsonPath("$.rejected[*].index").value(contains(1, 2, 3)))
+                .andExpect(jsonPath("$.rejected[*].line").value(contains(2, 3, 4)))
+                .andExpect(jsonPath("$.rejected[0].fieldErrors[0].field").value("bid"));
+
+        ArgumentCaptor<Collection<VendorInstrumentPrice>> applied = ArgumentCaptor.forClass(Collection.class);
+        verify(service).createOrUpdateAll(applied.capture());
+        assertEquals(List.of(new BigDecimal("11.21"), new BigDecimal("11.22")),
+                applied.getValue().stream().map(VendorInstrumentPrice::getAsk).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void createsPricesInBulkDescribingOnlyTheFirstRejected() throws Exception {
+        int bad = BulkPriceReader.MAX_REPORTED_REJECTIONS + 50;
+        String ndjson = String.join("\n", Collections.nCopies(bad, TestData.NPR_1_JSON.replace("11.21", "1.21")))
+                + "\n" + TestData.NPR_1_JSON;
+        mockMvc.perform(post("/prices")
+                .contentType("application/x-ndjson")
+                .content(ndjson)
+        )
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.accepted").value(1))
+                .andExpect(jsonPath("$.rejectedCount").value(bad))
+                .andExpect(jsonPath("$.rejected.length()").value(BulkPriceReader.MAX_REPORTED_REJECTIONS));
+    }
+
+    @Test
+    public void createsPricesInBulkRetryingOnlyThoseNotApplied() throws Exception {
+        doThrow(new PartialUpdateException(1, new IllegalStateException("rejected"))).when(service).createOrUpdateAll(any());
+        doThrow(new IllegalStateException("rejected")).doNothing().when(service).createOrUpdate(any());
+        String ndjson = String.join("\n", TestData.NPR_1_JSON, TestData.NPR_1_JSON.replace("10.21", "10.22"),
+                TestData.NPR_1_JSON.replace("10.21", "10.23"));
+        mockMvc.perform(post("/prices")
+                .contentType("application/x-ndjson")
+                .content(ndjson)
+        )
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected[*].index").value(contains(1)));
+
+        // the first price was applied by the batch, so only the others are applied again
+        ArgumentCaptor<VendorInstrumentPrice> retried = ArgumentCaptor.forClass(VendorInstrumentPrice.class);
+        verify(service, times(2)).createOrUpdate(retried.capture());
+        assertEquals(List.of(new BigDecimal("10.22"), new BigDecimal("10.23")),
+                retried.getAllValues().stream().map(VendorInstrumentPrice::getBid).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void createsPricesInBulkFromAnArray() throws Exception {
+        mockMvc.perform(post("/prices")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[" + TestData.NPR_1_JSON + ",\n" + TestData.NPR_1_JSON + "]")
+        )
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").doesNotExist());
+
+        mockMvc.perform(post("/prices")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[" + TestData.NPR_1_JSON.replace("10.21", "\"ten\"") + ", {\"vendorId\":")
+        )
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.accepted").value(0))
+                .andExpect(jsonPath("$.rejected[*].index").value(contains(0, 1)));
+    }
+
+    @Test
+    public void streamsAllPricesAsNdjsonAPageAtATime() throws Exception {
+        when(service.getPage(null, PriceStreams.PAGE_SIZE))
+                .thenReturn(new Page<>(List.of(TestData.VIP_1.get()), "a1"));
+        when(service.getPage("a1", PriceStreams.PAGE_SIZE))
+                .thenReturn(new Page<>(List.of(), "a2"));
+        when(service.getPage("a2", PriceStreams.PAGE_SIZE))
+                .thenReturn(new Page<>(List.of(TestData.VIP_1.get()), null));
+
+        MvcResult result = mockMvc.perform(get("/price").accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string(TestData.VIP_1_JSON + "\n" + TestData.VIP_1_JSON + "\n"));
+    }
+
+    @Test
+    public void streamsPricesAsCsv() throws Exception {
+        VendorInstrumentPrice quoted = new VendorInstrumentPrice(new Vendor(2L, "Vendor 2", "Second, \"quoted\""),
+                TestData.INSTRUMENT_VOD, new BigDecimal("1.5"), new BigDecimal("1.75"), TestData.TIMESTAMP_1);
+        when(service.getByInstrument("VOD")).thenReturn(List.of(TestData.VIP_1.get(), quoted));
+
+        MvcResult result = mockMvc.perform(get("/instrument/VOD/prices").accept("text/csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andExpect(content().string(
+                        "vendorId,vendorName,vendorDescription,instrumentSymbol,instrumentDescription,bid,ask,timestamp\r\n"
+                                + "1,Vendor 1,First Vendor,VOD,Vodafone,10.21,11.21,2015-11-27T00:00:00Z\r\n"
+                                + "2,Vendor 2,\"Second, \"\"quoted\"\"\",VOD,Vodafone,1.5,1.75,2015-11-27T00:00:00Z\r\n"));
+
+        // JSON is still the default
+        mockMvc.perform(get("/instrument/VOD/prices"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/json"));
+    }
+
+    @Test
+    public void streamsPricesSinceAndClosesTheStream() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        when(service.streamUpdatedSince(TestData.TIMESTAMP_1))
+                .thenReturn(Stream.of(TestData.VIP_1.get()).onClose(() -> closed.set(true)));
+
+        MvcResult result = mockMvc.perform(get("/price").param("since", TestData.TIMESTAMP_1.toString()).accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(TestData.VIP_1_JSON + "\n"));
+        assertTrue(closed.get());
+    }
 }
@@ -0,0 +1,54 @@
+package com.monepic.tradeprice.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ExpiryIndexTest {
+
+    @Test
+    public void testExpiresOnlyElapsedTicks() {
+        ExpiryIndex<String> index = new ExpiryIndex<>(100);
+        index.schedule("a", 50);
+        index.schedule("b", 150);
+        index.schedule("c", 250);
+
+        List<String> expired = new ArrayList<>();
+        assertEquals(1, index.expire(199, 10, expired::add)); // "b"'s tick hasn't finished yet
+        assertEquals(List.of("a"), expired);
+
+        assertEquals(1, index.expire(200, 10, expired::add));
+        assertEquals(List.of("a", "b"), expired);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testExpiresInSlices() {
+        ExpiryIndex<Integer> index = new ExpiryIndex<>(10);
+        for (int i = 0; i < 25; i++) {
+            index.schedule(i, i);
+        }
+        List<Integer> expired = new ArrayList<>();
+        assertEquals(10, index.expire(1000, 10, expired::add));
+        assertEquals(10, index.expire(1000, 10, expired::add));
+        assertEquals(5, index.expire(1000, 10, expired::add));
+        assertEquals(0, index.expire(1000, 10, expired::add));
+        assertEquals(25, expired.size());
+    }
+
+    @Test
+    public void testCancelledEntriesDontExpire() {
+        ExpiryIndex<String> index = new ExpiryIndex<>(100);
+        String entry = new String("a");
+        index.schedule(entry, 50);
+        index.cancel(new String("a"), 50); // entries are held by identity
+        index.cancel(entry, 50);
+
+        assertEquals(0, index.expire(1000, 10, e -> {}));
+        index.schedule("late", 50); // scheduling into an already drained tick still works
+        assertEquals(1, index.expire(1000, 10, e -> {}));
+    }
+}
@@ -3,27 +3,33 @@ package com.monepic.tradeprice.cache;
 
 import org.junit.jupiter.api.Test;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.springframework.test.util.AssertionErrors.assertTrue;
 
 public class InMemoryIndexedCacheTest {
 
     private static class TestItem {
-        private static boolean LOGICAL_EQUALITY = true;
         private final String id, name, food;
 
         @Override
         public boolean equals(Object obj) {
-            if (!LOGICAL_EQUALITY) {
-                return super.equals(obj);
-            }
-
             if (this == obj) {
                 return true;
             }
@@ -36,9 +42,6 @@ public class InMemoryIndexedCacheTest {
 
         @Override
         public int hashCode() {
-            if (!LOGICAL_EQUALITY) {
-                return super.hashCode();
-            }
             return Objects.hash(id);
         }
 
@@ -138,6 +141,18 @@ public class InMemoryIndexedCacheTest {
         assertEquals(Set.of(ITEMS[0], ITEMS[1]), Set.copyOf(evicted));
     }
 
+    @Test
+    public void testByLongKey() {
+        IndexedCache<TestItem> cache = new InMemoryIndexedCache<TestItem>(
+                (IndexedCache.LongKeyExtractor<TestItem>) item -> item.getName().length()
+        );
+        populate(cache);
+        Set<TestItem> expected = Set.of(ITEMS[0], ITEMS[2], ITEMS[3]);
+        assertEquals(expected, cache.getByIndexOrdinal(0, 5L));
+        assertEquals(expected, cache.getByIndexOrdinal(0, (Object) 5L));
+        assertEquals(0, cache.getByIndexOrdinal(0, 6L).size());
+    }
+
     @Test
     public void testReplaceItem() {
         IndexedCache<TestItem> cache = new InMemoryIndexedCache<>(keyExtractors);
@@ -152,22 +167,434 @@ public class InMemoryIndexedCacheTest {
     public void testUpdateInPlaceNoDupes() {
         IndexedCache<TestItem> cache = new InMemoryIndexedCache<>(keyExtractors);
         populate(cache);
+        Collection<TestItem> before = cache.getByIndexOrdinal(2, "Pizza");
         TestItem newItem = new TestItem("two", "Fred_new", "Pizza");
 
-        TestItem.LOGICAL_EQUALITY = false; // trick the cache into accepting a duplicate item
-        cache.addItem(newItem);
-        assertEquals(3, cache.getByIndexOrdinal(2, "Pizza").size(), "Expected duplicate in the cache"); // sanity check - ensure duplicate was added
-
-        TestItem.LOGICAL_EQUALITY = true; // we've simulated an in-place update, resulting in old and new values both present in the index
+        cache.addItem(newItem); // same bucket, so the new value replaces the old one in place
 
         Collection<TestItem> result = cache.getByIndexOrdinal(2, "Pizza");
-        assertEquals(2, result.size()); // duplicate filtered out ok
+        assertEquals(2, result.size());
         Optional<TestItem> item = result.stream()
                 .filter(i -> newItem.equals(i))
                 .findFirst();
         assertTrue("Didn't find newItem", item.isPresent());
         assertEquals("Fred_new", item.get().getName());
+
+        // a previously returned result is an unchanged snapshot
+        assertEquals(Set.of(ITEMS[0], ITEMS[1]), before);
+        assertTrue("Snapshot changed", before.stream().anyMatch(i -> i == ITEMS[1]));
+    }
+
+    @Test
+    public void testResultsAreReadOnly() {
+        IndexedCache<TestItem> cache = new InMemoryIndexedCache<>(keyExtractors);
+        populate(cache);
+        assertThrows(UnsupportedOperationException.class, () -> cache.getByIndexOrdinal(0, "Barry").add(ITEMS[1]));
+        assertThrows(UnsupportedOperationException.class, () -> cache.getAll().clear());
+    }
+
+    @Test
+    public void testMultiVersionQueries() {
+        IndexedCache<TestItem> cache = InMemoryIndexedCache.multiVersion(keyExtractors);
+        populate(cache);
+        assertEquals(Set.of(ITEMS[0], ITEMS[3]), cache.getByIndexOrdinal(0, "Barry"));
+        assertEquals(Set.of(ITEMS), Set.copyOf(cache.getAll()));
+        assertEquals(ITEMS.length, cache.getAll().size());
+
+        TestItem newItem = new TestItem("three", "Perry", "Pizza");
+        cache.addItem(newItem);
+        assertEquals(Set.of(ITEMS[0], ITEMS[1], newItem), cache.getByIndexOrdinal(2, "Pizza"));
+        assertEquals(0, cache.getByIndexOrdinal(2, "Bacon").size());
+
+        cache.evict(el -> "Pizza".equals(el.getFood()));
+        assertEquals(0, cache.getByIndexOrdinal(2, "Pizza").size());
+        assertEquals(Set.of(ITEMS[3], ITEMS[4]), Set.copyOf(cache.getAll()));
+        assertEquals(2, cache.getAll().size());
+    }
+
+    @Test
+    public void testSnapshotIsPointInTime() {
+        IndexedCache<TestItem> cache = InMemoryIndexedCache.multiVersion(keyExtractors);
+        populate(cache);
+
+        try (IndexedCache.ReadView<TestItem> view = cache.snapshot()) {
+            TestItem newItem = new TestItem("one", "Barry", "Bacon");
+            cache.addItem(newItem);
+            cache.evict(el -> "Fred".equals(el.getName()));
+
+            // the view still sees the state it was opened at, across every index
+            assertEquals(Set.of(ITEMS), Set.copyOf(view.getAll()));
+            assertEquals(Set.of(ITEMS[0], ITEMS[1]), view.getByIndexOrdinal(2, "Pizza"));
+            assertEquals(Set.of(ITEMS[2]), view.getByIndexOrdinal(2, "Bacon"));
+            assertEquals(Set.of(ITEMS[1], ITEMS[4]), view.getByIndexOrdinal(0, "Fred"));
+            assertTrue("old version not seen", view.getByIndexOrdinal(1, "one").stream().anyMatch(i -> i == ITEMS[0]));
+
+            // while new reads see the latest version
+            assertEquals(Set.of(ITEMS[2], newItem), cache.getByIndexOrdinal(2, "Bacon"));
+            assertEquals(0, cache.getByIndexOrdinal(0, "Fred").size());
+            assertEquals(3, cache.getAll().size());
+        }
+
+        try (IndexedCache.ReadView<TestItem> view = cache.snapshot()) {
+            assertEquals(Set.copyOf(cache.getAll()), Set.copyOf(view.getAll()));
+            assertEquals(0, view.getByIndexOrdinal(2, "Pizza").size());
+        }
+    }
+
+    @Test
+    public void testSnapshotNeedsMultiVersion() {
+        IndexedCache<TestItem> cache = new InMemoryIndexedCache<>(keyExtractors);
+        assertThrows(UnsupportedOperationException.class, cache::snapshot);
+    }
+
+    @Test
+    public void testExpire() {
+        testExpire(InMemoryIndexedCache.<TestItem>builder());
+        testExpire(InMemoryIndexedCache.<TestItem>builder().multiVersion(true));
+    }
+
+    private void testExpire(InMemoryIndexedCache.Builder<TestItem> builder) {
+        // items expire at (1000 * the length of their name)
+        IndexedCache<TestItem> cache = builder
+                .index(TestItem::getFood)
+                .expiry(item -> 1000L * item.getName().length())
+                .build();
+        populate(cache);
+        cache.addItem(new TestItem("five", "Frederick", "Crisps")); // replaced items expire as per their new value
+
+        assertEquals(0, cache.expire(4000, 10).size());
+        assertEquals(Set.of(ITEMS[1]), Set.copyOf(cache.expire(5000, 10)));
+        assertEquals(Set.of(ITEMS[0], ITEMS[2], ITEMS[3]), Set.copyOf(cache.expire(6000, 10)));
+        assertEquals(0, cache.expire(9000, 10).size());
+        assertEquals(1, cache.getAll().size());
+        assertEquals(1, cache.getByIndexOrdinal(0, "Crisps").size());
+        assertEquals(0, cache.getByIndexOrdinal(0, "Pizza").size());
+
+        assertEquals(1, cache.expire(10000, 10).size());
+        assertEquals(0, cache.getAll().size());
+    }
+
+    @Test
+    public void testRange() {
+        testRange(InMemoryIndexedCache.<TestItem>builder());
+        testRange(InMemoryIndexedCache.<TestItem>builder().multiVersion(true));
+    }
+
+    private void testRange(InMemoryIndexedCache.Builder<TestItem> builder) {
+        IndexedCache<TestItem> cache = builder
+                .index(TestItem::getId)
+                .orderedIndex(TestItem::getName)
+                .build();
+        populate(cache);
+
+        assertEquals(List.of(ITEMS[0], ITEMS[3]), List.copyOf(cache.getRange(1, "Barry", "Fred")));
+        assertEquals(Set.of(ITEMS[1], ITEMS[4], ITEMS[2]), Set.copyOf(cache.getRange(1, "Fred", null)));
+        assertEquals(ITEMS.length, cache.getRange(1, null, null).size());
+        assertEquals(Set.of(ITEMS[1], ITEMS[4]), cache.getByIndexOrdinal(1, "Fred"));
+        assertThrows(IllegalArgumentException.class, () -> cache.getRange(0, "one", null));
+
+        // moving the only item out of a key leaves no trace of it
+        TestItem newItem = new TestItem("three", "Zed", "Bacon");
+        cache.addItem(newItem);
+        assertEquals(Set.of(ITEMS[1], ITEMS[4], newItem), Set.copyOf(cache.getRange(1, "Fred", null)));
+        assertEquals(0, cache.getRange(1, "Perry", "Zed").size());
+        assertEquals(List.of(newItem), List.copyOf(cache.getRange(1, "Perry", null)));
+    }
+
+    @Test
+    public void testBounded() {
+        testBounded(InMemoryIndexedCache.<TestItem>builder());
+        testBounded(InMemoryIndexedCache.<TestItem>builder().multiVersion(true));
+    }
+
+    private void testBounded(InMemoryIndexedCache.Builder<TestItem> builder) {
+        IndexedCache<TestItem> cache = builder
+                .index(TestItem::getId)
+                .index(TestItem::getName)
+                .maximumEntries(3)
+                .build();
+        populate(cache);
+
+        // the oldest items are evicted, and removed from every index
+        assertEquals(Set.of(ITEMS[2], ITEMS[3], ITEMS[4]), Set.copyOf(cache.getAll()));
+        assertEquals(Set.of(ITEMS[3]), cache.getByIndexOrdinal(1, "Barry"));
+        assertEquals(Set.of(ITEMS[4]), cache.getByIndexOrdinal(1, "Fred"));
+        assertEquals(2, cache.stats().getEvictions());
+
+        // an updated item is kept in preference to one which has only been added once
+        cache.addItem(new TestItem("three", "Perry", "Pizza"));
+        cache.addItem(ITEMS[0]);
+        assertEquals(Set.of(ITEMS[0], ITEMS[2], ITEMS[4]), Set.copyOf(cache.getAll()));
+        assertEquals(0, cache.getByIndexOrdinal(0, "four").size());
+        assertEquals(3, cache.stats().getEntries());
+        assertEquals(3, cache.stats().getEvictions());
+    }
+
+    @Test
+    public void testPaging() {
+        testPaging(InMemoryIndexedCache.<TestItem>builder());
+        testPaging(InMemoryIndexedCache.<TestItem>builder().multiVersion(true));
+    }
+
+    private void testPaging(InMemoryIndexedCache.Builder<TestItem> builder) {
+        IndexedCache<TestItem> cache = builder.index(TestItem::getId).build();
+        populate(cache);
+
+        Page<TestItem> first = cache.getPage(null, 2);
+        assertEquals(List.of(ITEMS[0], ITEMS[1]), first.getItems());
+
+        // an update keeps its place, and a removed and re-added item moves to the end
+        cache.addItem(new TestItem("one", "Barry", "Chips"));
+        cache.evict(item -> item.getId().equals("three"));
+        cache.addItem(ITEMS[2]);
+
+        Page<TestItem> second = cache.getPage(first.getNextCursor(), 2);
+        assertEquals(List.of(ITEMS[3], ITEMS[4]), second.getItems());
+        Page<TestItem> third = cache.getPage(second.getNextCursor(), 2);
+        assertEquals(List.of(ITEMS[2]), third.getItems());
+        assertNull(third.getNextCursor());
+
+        assertEquals(ITEMS.length, cache.getPage(null, 10).getItems().size());
+        assertThrows(IllegalArgumentException.class, () -> cache.getPage("not a cursor!", 2));
+        assertThrows(IllegalArgumentException.class, () -> cache.getPage(null, 0));
+    }
+
+    @Test
+    public void testLoad() {
+        testLoad(InMemoryIndexedCache.<TestItem>builder());
+        testLoad(InMemoryIndexedCache.<TestItem>builder().multiVersion(true));
+        testLoad(InMemoryIndexedCache.<TestItem>builder().maximumEntries(10));
+    }
+
+    private void testLoad(InMemoryIndexedCache.Builder<TestItem> builder) {
+        IndexedCache<TestItem> cache = builder
+                .index("name", TestItem::getName)
+                .index("length", (IndexedCache.LongKeyExtractor<TestItem>) item -> item.getName().length())
+                .orderedIndex("food", TestItem::getFood)
+                .build();
+        TestItem replaced = new TestItem("one", "Barry", "Chips");
+        cache.load(List.of(replaced, ITEMS[0], ITEMS[1], ITEMS[2], ITEMS[3], ITEMS[4]));
+
+        assertEquals(Set.of(ITEMS), Set.copyOf(cache.getAll()));
+        assertEquals(ITEMS.length, cache.getAll().size());
+        assertEquals(Set.of(ITEMS[0], ITEMS[3]), cache.getByIndex("name", "Barry"));
+        assertEquals(Set.of(ITEMS[0], ITEMS[2], ITEMS[3]), cache.getByIndex("length", 5L));
+        assertEquals(0, cache.getByIndex("food", "Chips").size());
+        assertEquals(List.of(ITEMS[2], ITEMS[4]), List.copyOf(cache.getRange(cache.indexOrdinal("food"), "Bacon", "Pizza")));
+        assertEquals(List.of(ITEMS[0], ITEMS[1], ITEMS[2], ITEMS[3], ITEMS[4]), cache.getPage(null, 10).getItems());
+
+        // the loaded items are indexed as if they had been added one at a time
+        cache.addItem(new TestItem("two", "Fred", "Chips"));
+        cache.evict(item -> item.getId().equals("one"));
+        assertEquals(Set.of(ITEMS[3]), cache.getByIndex("name", "Barry"));
+        assertEquals(0, cache.getByIndex("food", "Pizza").size());
+        assertEquals(Set.of(ITEMS[1]), cache.getByIndex("food", "Chips"));
+
+        assertThrows(IllegalStateException.class, () -> cache.load(List.of(ITEMS[0])));
+    }
+
+    @Test
+    public void testAddItems() {
+        testAddItems(InMemoryIndexedCache.<TestItem>builder());
+        testAddItems(InMemoryIndexedCache.<TestItem>builder().multiVersion(true));
+        testAddItems(InMemoryIndexedCache.<TestItem>builder().maximumEntries(10));
+    }
+
+    private void testAddItems(InMemoryIndexedCache.Builder<TestItem> builder) {
+        IndexedCache<TestItem> cache = builder
+                .index("name", TestItem::getName)
+                .orderedIndex("food", TestItem::getFood)
+                .build();
+        cache.addItems(List.of(ITEMS[0], ITEMS[1], ITEMS[2]));
+        Collection<TestItem> before = cache.getByIndex("food", "Pizza");
+
+        // replaces items in place, moves them between buckets, adds new ones, and keeps the last of equal items
+        TestItem renamed = new TestItem("two", "Fred_new", "Pizza"), moved = new TestItem("one", "Barry", "Chips");
+        cache.addItems(List.of(ITEMS[0], renamed, ITEMS[3], ITEMS[4], moved));
+
+        assertEquals(Set.of(ITEMS), Set.copyOf(cache.getAll()));
+        assertEquals(ITEMS.length, cache.getAll().size());
+        assertEquals(Set.of(renamed), cache.getByIndex("food", "Pizza"));
+        assertEquals("Fred_new", cache.getByIndex("food", "Pizza").iterator().next().getName());
+        assertEquals(Set.of(moved), cache.getByIndex("food", "Chips"));
+        assertEquals(Set.of(ITEMS[0], ITEMS[3]), cache.getByIndex("name", "Barry"));
+        assertEquals(Set.of(ITEMS[4]), cache.getByIndex("name", "Fred"));
+        assertEquals(List.of(ITEMS[2], ITEMS[0], ITEMS[4]), List.copyOf(cache.getRange(cache.indexOrdinal("food"), "Bacon", "Pizza")));
+        assertEquals(List.of(ITEMS[0], ITEMS[1], ITEMS[2], ITEMS[3], ITEMS[4]), cache.getPage(null, 10).getItems());
+        // a previously returned result is an unchanged snapshot
+        assertEquals(Set.of(ITEMS[0], ITEMS[1]), before);
+    }
+
+    @Test
+    public void testAddItemsAddsNoneIfOneCantBeIndexed() {
+        testAddItemsAddsNoneIfOneCantBeIndexed(InMemoryIndexedCache.<TestItem>builder());
+        testAddItemsAddsNoneIfOneCantBeIndexed(InMemoryIndexedCache.<TestItem>builder().multiVersion(true));
+        testAddItemsAddsNoneIfOneCantBeIndexed(InMemoryIndexedCache.<TestItem>builder().maximumEntries(10));
+    }
+
+    private void testAddItemsAddsNoneIfOneCantBeIndexed(InMemoryIndexedCache.Builder<TestItem> builder) {
+        IndexedCache<TestItem> cache = builder
+                .index("name", item -> item.getName().toUpperCase())
+                .build();
+        cache.addItem(ITEMS[0]);
+        TestItem nameless = new TestItem("nameless", null, "Pizza");
+        assertThrows(NullPointerException.class, () -> cache.addItems(List.of(ITEMS[1], nameless, ITEMS[2])));
+        assertEquals(List.of(ITEMS[0]), List.copyOf(cache.getAll()));
+        assertEquals(Set.of(ITEMS[0]), cache.getByIndex("name", ITEMS[0].getName().toUpperCase()));
+    }
+
+    @Test
+    public void testConcurrentWritersOfTheSameItem() throws Exception {
+        testConcurrentWritersOfTheSameItem(false);
+        testConcurrentWritersOfTheSameItem(true);
+    }
+
+    private void testConcurrentWritersOfTheSameItem(boolean batched) throws Exception {
+        InMemoryIndexedCache<TestItem> cache = InMemoryIndexedCache.<TestItem>builder()
+                .index("name", TestItem::getName)
+                .index("food", TestItem::getFood)
+                .build();
+        int rounds = 20_000;
+        List<String> broken = new ArrayList<>();
+        // after each round of racing writes, every item is in each index exactly once
+        CyclicBarrier roundEnd = new CyclicBarrier(2, () -> {
+            int all = cache.getAll().size(), pizza = cache.getByIndex("food", "Pizza").size(),
+                    named = cache.getByIndex("name", "Barry").size() + cache.getByIndex("name", "Fred").size();
+            if (broken.isEmpty() && (pizza != all || named != all)) {
+                broken.add("cached " + all + ", indexed by food " + pizza + ", by name " + named);
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<?>> writers = new ArrayList<>();
+        for (String name : List.of("Barry", "Fred")) {
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < rounds; i++) {
+                    TestItem item = new TestItem("one", name, "Pizza");
+                    if (batched) {
+                        cache.addItems(List.of(item));
+                    } else {
+                        cache.addItem(item);
+                    }
+                    roundEnd.await();
+                }
+                return null;
+            }));
+        }
+        executor.shutdown();
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        assertEquals(List.of(), broken);
     }
 
+    @Test
+    public void testPagingWhileItemsAreUpdated() throws Exception {
+        InMemoryIndexedCache<TestItem> cache = InMemoryIndexedCache.<TestItem>builder()
+                .index(TestItem::getId)
+                .multiVersion(true)
+                .build();
+        populate(cache);
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // every update supersedes a version a page being read may need
+        Future<?> writer = executor.submit(() -> {
+            for (int i = 0; !done.get(); i++) {
+                TestItem item = ITEMS[i % ITEMS.length];
+                cache.addItem(new TestItem(item.getId(), item.getName(), "Food " + i));
+            }
+        });
+        try {
+            for (int i = 0; i < 20_000; i++) {
+                assertEquals(ITEMS.length, cache.getPage(null, ITEMS.length).getItems().size());
+            }
+        } finally {
+            done.set(true);
+            executor.shutdown();
+        }
+        writer.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testNamedAndCompositeIndexes() {
+        testNamedAndCompositeIndexes(InMemoryIndexedCache.<TestItem>builder());
+        testNamedAndCompositeIndexes(InMemoryIndexedCache.<TestItem>builder().multiVersion(true));
+    }
+
+    private void testNamedAndCompositeIndexes(InMemoryIndexedCache.Builder<TestItem> builder) {
+        IndexedCache<TestItem> cache = builder
+                .index("name", TestItem::getName)
+                .index("food", TestItem::getFood)
+                .compositeIndex("nameAndFood", TestItem::getName, TestItem::getFood)
+                .build();
+        populate(cache);
+
+        assertEquals(1, cache.indexOrdinal("food"));
+        assertEquals(Set.of(ITEMS[0], ITEMS[3]), cache.getByIndex("name", "Barry"));
+        assertEquals(Set.of(ITEMS[3]), cache.getByIndex("nameAndFood", IndexedCache.compositeKey("Barry", "Potato")));
+        assertEquals(0, cache.getByIndex("nameAndFood", IndexedCache.compositeKey("Perry", "Potato")).size());
+        assertThrows(IllegalArgumentException.class, () -> cache.getByIndex("colour", "Red"));
 
+        // moving an item re-keys it in the composite index too
+        TestItem newItem = new TestItem("four", "Barry", "Pizza");
+        cache.addItem(newItem);
+        assertEquals(Set.of(ITEMS[0], newItem), cache.getByIndex("nameAndFood", IndexedCache.compositeKey("Barry", "Pizza")));
+        assertEquals(0, cache.getByIndex("nameAndFood", IndexedCache.compositeKey("Barry", "Potato")).size());
+    }
+
+    @Test
+    public void testDuplicateIndexName() {
+        assertThrows(IllegalArgumentException.class, () -> InMemoryIndexedCache.<TestItem>builder()
+                .index("name", TestItem::getName)
+                .orderedIndex("name", TestItem::getId));
+    }
+
+    @Test
+    public void testQuery() {
+        testQuery(InMemoryIndexedCache.<TestItem>builder());
+        testQuery(InMemoryIndexedCache.<TestItem>builder().multiVersion(true));
+    }
+
+    private void testQuery(InMemoryIndexedCache.Builder<TestItem> builder) {
+        IndexedCache<TestItem> cache = builder
+                .index("name", TestItem::getName)
+                .index("food", TestItem::getFood)
+                .index("nameLength", (IndexedCache.LongKeyExtractor<TestItem>) item -> item.getName().length())
+                .orderedIndex("id", TestItem::getId)
+                .build();
+        populate(cache);
+
+        assertEquals(List.of(ITEMS[1]), List.copyOf(cache.query().where("name", "Fred").where("food", "Pizza").execute()));
+        assertEquals(List.of(ITEMS[0]), List.copyOf(cache.query().where("food", "Pizza").where("nameLength", 5L).execute()));
+        assertEquals(List.of(ITEMS[3]), List.copyOf(cache.query().where("nameLength", 5L).where("id", "four").execute()));
+        assertEquals(0, cache.query().where("name", "Perry").where("food", "Pizza").execute().size());
+        assertEquals(0, cache.query().where("name", "Nobody").where("food", "Pizza").execute().size());
+        assertEquals(ITEMS.length, cache.query().execute().size());
+        // a long index matches any whole number, not only a Long
+        assertEquals(List.of(ITEMS[0]), List.copyOf(cache.query().where("food", "Pizza").where("nameLength", 5).execute()));
+        assertEquals(List.of(ITEMS[0]), List.copyOf(cache.query().where("nameLength", new BigDecimal("5.00")).where("food", "Pizza").execute()));
+        assertEquals(0, cache.query().where("food", "Pizza").where("nameLength", 5.5).execute().size());
+        // a null key matches nothing, whichever index is read first
+        assertEquals(0, cache.query().where("nameLength", 5L).where("food", null).execute().size());
+        assertEquals(0, cache.query().where("food", null).where("nameLength", 5L).execute().size());
+
+        cache.evict(item -> item.getId().equals("two"));
+        assertEquals(0, cache.query().where("name", "Fred").where("food", "Pizza").execute().size());
+    }
+
+    @Test
+    public void testQuerySnapshot() {
+        IndexedCache<TestItem> cache = InMemoryIndexedCache.<TestItem>builder()
+                .index("name", TestItem::getName)
+                .index("food", TestItem::getFood)
+                .multiVersion(true)
+                .build();
+        populate(cache);
+
+        try (IndexedCache.ReadView<TestItem> view = cache.snapshot()) {
+            cache.addItem(new TestItem("two", "Fred", "Bacon"));
+
+            assertEquals(0, cache.query().where("name", "Fred").where("food", "Pizza").execute().size());
+            assertEquals(List.of(ITEMS[1]), List.copyOf(view.query().where("name", "Fred").where("food", "Pizza").execute()));
+        }
+    }
 }
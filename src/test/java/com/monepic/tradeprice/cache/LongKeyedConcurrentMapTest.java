@@ -0,0 +1,85 @@
+package com.monepic.tradeprice.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LongKeyedConcurrentMapTest {
+
+    @Test
+    public void testGetAndCompute() {
+        LongKeyedConcurrentMap<String> map = new LongKeyedConcurrentMap<>(4);
+        assertNull(map.get(1L));
+        String one = map.computeIfAbsent(1L, Long::toString);
+        assertEquals("1", one);
+        assertSame(one, map.computeIfAbsent(1L, k -> "not called"));
+        assertSame(one, map.get(1L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testGrowsAndKeepsMappings() {
+        LongKeyedConcurrentMap<Long> map = new LongKeyedConcurrentMap<>(2);
+        for (long i = -500; i < 500; i++) {
+            map.computeIfAbsent(i * 31, k -> k);
+        }
+        assertEquals(1000, map.size());
+        for (long i = -500; i < 500; i++) {
+            assertEquals(i * 31, map.get(i * 31));
+        }
+        assertNull(map.get(1L));
+    }
+
+    @Test
+    public void testRemove() {
+        LongKeyedConcurrentMap<String> map = new LongKeyedConcurrentMap<>(2);
+        map.computeIfAbsent(1L, Long::toString);
+        map.computeIfAbsent(2L, Long::toString);
+        assertFalse(map.remove(1L, "2"));
+        assertTrue(map.remove(1L, "1"));
+        assertFalse(map.remove(1L, "1"));
+        assertNull(map.get(1L));
+        assertEquals("2", map.get(2L));
+        assertEquals(1, map.size());
+
+        // the tombstones are reused or rehashed away, rather than filling the table
+        for (long i = 3; i < 10_000; i++) {
+            map.computeIfAbsent(i, Long::toString);
+            assertTrue(map.remove(i, Long.toString(i)));
+        }
+        assertEquals("1", map.computeIfAbsent(1L, Long::toString));
+        assertEquals("2", map.get(2L));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        LongKeyedConcurrentMap<Long> map = new LongKeyedConcurrentMap<>(2);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            writers.add(executor.submit(() -> {
+                for (long i = 0; i < 10_000; i++) {
+                    assertEquals(i, map.computeIfAbsent(i, k -> k));
+                }
+            }));
+        }
+        executor.shutdown();
+        // rethrows any writer's assertion failure
+        for (Future<?> writer : writers) {
+            writer.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(10_000, map.size());
+    }
+}
@@ -0,0 +1,57 @@
+package com.monepic.tradeprice.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SegmentedLruTest {
+
+    @Test
+    public void testEvictsOldestProbationaryEntriesFirst() {
+        SegmentedLru<String> lru = new SegmentedLru<>(3, 0);
+        lru.admit("a", 0, null);
+        lru.admit("b", 0, null);
+        assertEquals(List.of(), lru.evict());
+
+        lru.admit("c", 0, null);
+        lru.admit("d", 0, null);
+        assertEquals(List.of("a"), lru.evict());
+        assertEquals(3, lru.size());
+    }
+
+    @Test
+    public void testUpdatedEntriesSurviveAScan() {
+        SegmentedLru<String> lru = new SegmentedLru<>(5, 0);
+        String hot = new String("hot");
+        lru.admit(hot, 0, null);
+        String hotter = new String("hot");
+        lru.admit(hotter, 0, hot); // an update promotes the new version
+
+        for (int i = 0; i < 100; i++) {
+            lru.admit("one-off-" + i, 0, null);
+            assertFalse(lru.evict().contains(hotter));
+        }
+        assertTrue(lru.remove(hotter));
+        assertFalse(lru.remove(hot)); // superseded versions aren't tracked
+        assertEquals(100 - 4, lru.stats().getEvictions());
+    }
+
+    @Test
+    public void testBoundsByWeight() {
+        SegmentedLru<String> lru = new SegmentedLru<>(0, 100);
+        lru.admit("a", 40, null);
+        lru.admit("b", 40, null);
+        lru.admit("c", 40, null);
+        assertEquals(List.of("a"), lru.evict());
+
+        CacheStats stats = lru.stats();
+        assertEquals(2, stats.getEntries());
+        assertEquals(80, stats.getEstimatedBytes());
+        assertEquals(1, stats.getEvictions());
+        assertEquals(40, stats.getEvictedBytes());
+    }
+}
@@ -0,0 +1,297 @@
+package com.monepic.tradeprice.integration;
+
+import com.monepic.tradeprice.model.ReferenceDataRegistry;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.model.requests.NewPriceRequest;
+import com.monepic.tradeprice.model.requests.NewPriceRequestValidator;
+import com.monepic.tradeprice.service.TradePriceService;
+import com.monepic.tradeprice.testutils.TestData;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.MessageRejectedException;
+import org.springframework.integration.channel.PublishSubscribeChannel;
+import org.springframework.integration.transformer.MessageTransformationException;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+
+public class BatchingJmsConsumerTest {
+
+    private CachingConnectionFactory connectionFactory;
+    private JmsTemplate jms;
+
+    @BeforeEach
+    public void setUp() {
+        connectionFactory = new CachingConnectionFactory(
+                new ActiveMQConnectionFactory("vm://batching-test?broker.persistent=false&broker.useJmx=false"));
+        jms = new JmsTemplate(connectionFactory);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    public void testTransactedBatchIsRedeliveredOnFailure() throws Exception {
+        testRedeliveredOnFailure(BatchingJmsConsumer.Acknowledge.TRANSACTED);
+    }
+
+    @Test
+    public void testClientAcknowledgedBatchIsRedeliveredOnFailure() throws Exception {
+        testRedeliveredOnFailure(BatchingJmsConsumer.Acknowledge.CLIENT);
+    }
+
+    private void testRedeliveredOnFailure(BatchingJmsConsumer.Acknowledge acknowledge) throws Exception {
+        String queue = "batches-" + acknowledge;
+        for (int i = 0; i < 10; i++) {
+            jms.convertAndSend(queue, "message " + i);
+        }
+        AtomicBoolean failed = new AtomicBoolean();
+        List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(10);
+        BatchingJmsConsumer consumer = new BatchingJmsConsumer(connectionFactory, queue, 1, 4, Duration.ofMillis(200), acknowledge,
+                batch -> {
+                    if (failed.compareAndSet(false, true)) {
+                        throw new IllegalStateException("first batch fails");
+                    }
+                    List<String> texts = new ArrayList<>();
+                    for (Message message : batch) {
+                        texts.add(text(message));
+                        latch.countDown();
+                    }
+                    batches.add(texts);
+                });
+        consumer.start();
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            consumer.stop();
+        }
+
+        // the failed first batch comes round again, and no batch is bigger than the batch size
+        assertEquals(List.of("message 0", "message 1", "message 2", "message 3"), batches.get(0));
+        List<String> all = new ArrayList<>();
+        batches.forEach(batch -> {
+            assertTrue(batch.size() <= 4);
+            all.addAll(batch);
+        });
+        assertEquals(10, all.size());
+        assertEquals("message 9", all.get(9));
+
+        // and everything was acknowledged
+        jms.setReceiveTimeout(100);
+        assertEquals(null, jms.receive(queue));
+    }
+
+    @Test
+    public void testProcessorKeepsOrderPerVendorAndInstrument() throws JMSException {
+        Map<String, Object> payloads = new HashMap<>();
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            VendorInstrumentPrice vip = i % 3 == 0 ? TestData.VIP_1.get() : i % 3 == 1 ? TestData.VIP_2.get() : TestData.VIP_3.get();
+            batch.add(message(payloads, new VendorInstrumentPrice(vip.getVendor(), vip.getInstrument(), BigDecimal.valueOf(i),
+                    BigDecimal.valueOf(i + 1), TestData.TIMESTAMP_1)));
+        }
+        NewPriceRequest invalid = new NewPriceRequest(1L, "Vendor 1", null, "VOD", null, BigDecimal.ONE, BigDecimal.TEN);
+        invalid.setBid(null);
+        batch.add(message(payloads, invalid));
+        batch.add(message(payloads, null));
+
+        TradePriceService tps = mock(TradePriceService.class);
+        Map<String, List<BigDecimal>> applied = new HashMap<>();
+        doAnswer(invocation -> {
+            VendorInstrumentPrice vip = invocation.getArgument(0);
+            synchronized (applied) {
+                applied.computeIfAbsent(vip.getVendor().getId() + "/" + vip.getInstrument().getSymbol(), k -> new ArrayList<>())
+                        .add(vip.getBid());
+            }
+            return null;
+        }).when(tps).createOrUpdate(any());
+        doCallRealMethod().when(tps).createOrUpdateAll(any());
+        PublishSubscribeChannel errorChannel = new PublishSubscribeChannel();
+        List<Object> errors = Collections.synchronizedList(new ArrayList<>());
+        errorChannel.subscribe(msg -> errors.add(msg.getPayload()));
+
+        try (ShardedPriceApplier applier = new ShardedPriceApplier(tps, errorChannel, 4)) {
+            new PriceBatchProcessor(applier, new NewPriceRequestValidator(), new ReferenceDataRegistry(),
+                    converter(payloads), errorChannel).accept(batch);
+        }
+
+        assertEquals(3, applied.size());
+        applied.forEach((key, bids) -> {
+            assertEquals(100, bids.size());
+            for (int i = 1; i < bids.size(); i++) {
+                assertTrue(bids.get(i - 1).compareTo(bids.get(i)) < 0, key + " applied out of order");
+            }
+        });
+        assertEquals(2, errors.size());
+        assertTrue(errors.stream().anyMatch(e -> e instanceof MessageRejectedException));
+        assertTrue(errors.stream().anyMatch(e -> e instanceof MessageTransformationException));
+    }
+
+    @Test
+    public void testProcessorRejectsInvalidPricesInBatches() throws JMSException {
+        VendorInstrumentPrice vip = TestData.VIP_1.get();
+        VendorInstrumentPrice crossed = new VendorInstrumentPrice(vip.getVendor(), vip.getInstrument(), BigDecimal.TEN, BigDecimal.ONE,
+                TestData.TIMESTAMP_1);
+        Map<String, Object> payloads = new HashMap<>();
+        List<Message> batch = List.of(message(payloads, List.of(crossed, "not a price", vip)), message(payloads, crossed));
+
+        TradePriceService tps = mock(TradePriceService.class);
+        List<VendorInstrumentPrice> applied = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> applied.add(invocation.getArgument(0))).when(tps).createOrUpdate(any());
+        doCallRealMethod().when(tps).createOrUpdateAll(any());
+        PublishSubscribeChannel errorChannel = new PublishSubscribeChannel();
+        List<Object> errors = Collections.synchronizedList(new ArrayList<>());
+        errorChannel.subscribe(msg -> errors.add(msg.getPayload()));
+
+        try (ShardedPriceApplier applier = new ShardedPriceApplier(tps, errorChannel, 2)) {
+            new PriceBatchProcessor(applier, new NewPriceRequestValidator(), new ReferenceDataRegistry(),
+                    converter(payloads), errorChannel).accept(batch);
+        }
+
+        assertEquals(List.of(vip), applied);
+        assertEquals(3, errors.size());
+        assertTrue(errors.stream().allMatch(e -> e instanceof MessageRejectedException));
+    }
+
+    @Test
+    public void testApplierRetriesOnlyThePricesAShardDidNotApply() {
+        VendorInstrumentPrice vip = TestData.VIP_1.get();
+        List<VendorInstrumentPrice> prices = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            prices.add(vip.withTimestamp(TestData.TIMESTAMP_1.plusSeconds(i)));
+        }
+        TradePriceService tps = mock(TradePriceService.class);
+        List<VendorInstrumentPrice> applied = new ArrayList<>();
+        doAnswer(invocation -> {
+            VendorInstrumentPrice price = invocation.getArgument(0);
+            if (price == prices.get(1)) {
+                throw new IllegalStateException("rejected");
+            }
+            return applied.add(price);
+        }).when(tps).createOrUpdate(any());
+        doCallRealMethod().when(tps).createOrUpdateAll(any());
+        PublishSubscribeChannel errorChannel = new PublishSubscribeChannel();
+        List<Object> errors = new ArrayList<>();
+        errorChannel.subscribe(msg -> errors.add(msg.getPayload()));
+
+        try (ShardedPriceApplier applier = new ShardedPriceApplier(tps, errorChannel, 1)) {
+            applier.apply(prices);
+        }
+
+        // the price applied before the one rejected isn't applied again
+        assertEquals(List.of(prices.get(0), prices.get(2), prices.get(3)), applied);
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void testProcessorStampsOnArrivalAndSkipsRedeliveriesAlreadyApplied() throws JMSException {
+        Map<String, Object> payloads = new HashMap<>();
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Message message = message(payloads, new NewPriceRequest(1L, "Vendor 1", "First Vendor", "VOD", "Vodafone",
+                    BigDecimal.valueOf(i), BigDecimal.TEN));
+            message.setJMSMessageID("ID:" + i);
+            // a producer's clock can't be trusted
+            message.setJMSTimestamp(TestData.TIMESTAMP_1.toEpochMilli());
+            batch.add(message);
+        }
+
+        TradePriceService tps = mock(TradePriceService.class);
+        List<VendorInstrumentPrice> applied = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> applied.add(invocation.getArgument(0))).when(tps).createOrUpdate(any());
+        doCallRealMethod().when(tps).createOrUpdateAll(any());
+        PublishSubscribeChannel errorChannel = new PublishSubscribeChannel();
+
+        Instant before = Instant.now();
+        try (ShardedPriceApplier applier = new ShardedPriceApplier(tps, errorChannel, 2)) {
+            PriceBatchProcessor processor = new PriceBatchProcessor(applier, new NewPriceRequestValidator(), new ReferenceDataRegistry(),
+                    converter(payloads), errorChannel);
+            processor.accept(batch);
+            assertEquals(3, applied.size());
+            for (int i = 0; i < 3; i++) {
+                assertFalse(applied.get(i).getTimestamp().isBefore(before));
+                assertTrue(i == 0 || applied.get(i).getTimestamp().isAfter(applied.get(i - 1).getTimestamp()));
+            }
+
+            // the batch is redelivered, e.g. as its commit failed, along with a message not seen before
+            for (Message message : batch) {
+                message.setJMSRedelivered(true);
+            }
+            Message another = message(payloads, TestData.NPR_1);
+            another.setJMSMessageID("ID:3");
+            another.setJMSRedelivered(true);
+            List<Message> redelivered = new ArrayList<>(batch);
+            redelivered.add(another);
+            processor.accept(redelivered);
+        }
+        assertEquals(4, applied.size());
+        assertEquals(TestData.NPR_1.getBid(), applied.get(3).getBid());
+    }
+
+    private static String text(Message message) {
+        try {
+            return ((TextMessage) message).getText();
+        } catch (JMSException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return a message standing for <b>payload</b>, which {@link #converter} converts back; null stands for an unreadable message
+     */
+    private static Message message(Map<String, Object> payloads, Object payload) throws JMSException {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        String key = String.valueOf(payloads.size());
+        message.setText(key);
+        payloads.put(key, payload);
+        return message;
+    }
+
+    private static MessageConverter converter(Map<String, Object> payloads) {
+        return new MessageConverter() {
+            @Override
+            public Message toMessage(Object object, Session session) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Object fromMessage(Message message) throws JMSException {
+                Object payload = payloads.get(((TextMessage) message).getText());
+                if (payload == null) {
+                    throw new JMSException("unreadable");
+                }
+                return payload;
+            }
+        };
+    }
+}
@@ -0,0 +1,106 @@
+package com.monepic.tradeprice.integration;
+
+import com.monepic.tradeprice.model.ReferenceDataRegistry;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CsvPriceReaderTest {
+
+    @TempDir
+    Path dir;
+
+    private Path write(String csv) throws IOException {
+        return Files.write(dir.resolve("prices.csv"), csv.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReadsBatchesAndSkipsBadRows() throws IOException {
+        Path file = write("ask,bid,instrumentSymbol,instrumentDescription,vendorId,vendorName,vendorDescription\n"
+                + "11.5,10.5,VOD,Vodafone,1,Vendor 1,\"First, Vendor\"\n"
+                + "9.9,9.8,BAY,British Airways,1,Vendor 1,\"First, Vendor\"\n"
+                + "9.9,x,BAY,British Airways,1,Vendor 1,\"First, Vendor\"\n"
+                + "9.9,9.8,BAY\n"
+                + "11.6,10.6,VOD,Vodafone,2,Vendor 2,Second\n"
+                + "10.6,10.7,VOD,Vodafone,1,Vendor 1,\"First, Vendor\"\n"
+                + "11.7,10.7,VOD,Vodafone Group,1,Vendor 1,\"First, Vendor\"\n"
+                + "11.7,10.7,BT,\" \",3,Vendor 3,Third\n");
+        ReferenceDataRegistry registry = new ReferenceDataRegistry();
+        List<List<VendorInstrumentPrice>> batches = new ArrayList<>();
+        List<Long> errors = new ArrayList<>();
+        new CsvPriceReader(registry, 2).read(file, batches::add, (line, e) -> errors.add(line));
+
+        assertEquals(List.of(4L, 5L, 7L, 9L), errors); // crossed on line 7, a blank description on line 9
+        assertEquals(List.of(2, 2), List.of(batches.get(0).size(), batches.get(1).size()));
+        VendorInstrumentPrice first = batches.get(0).get(0), last = batches.get(1).get(1);
+        assertEquals("First, Vendor", first.getVendor().getDescription());
+        assertEquals(0, new BigDecimal("10.5").compareTo(first.getBid()));
+        assertEquals(0, new BigDecimal("11.5").compareTo(first.getAsk()));
+        assertSame(first.getVendor(), batches.get(0).get(1).getVendor());
+        assertSame(registry.vendor(2L, "Vendor 2", "Second"), batches.get(1).get(0).getVendor());
+        // a changed description registers the Instrument afresh
+        assertEquals("Vodafone Group", last.getInstrument().getDescription());
+        assertSame(registry.instrument("VOD", "Vodafone Group"), last.getInstrument());
+        // the invalid row's reference data wasn't registered
+        assertEquals(2, registry.vendorCount());
+        assertEquals(2, registry.instrumentCount());
+
+        // each row is stamped in the order of the file
+        assertTrue(first.getTimestamp().isBefore(batches.get(0).get(1).getTimestamp()));
+        assertTrue(batches.get(0).get(1).getTimestamp().isBefore(batches.get(1).get(0).getTimestamp()));
+    }
+
+    @Test
+    public void testMissingColumn() throws IOException {
+        Path file = write("vendorId,vendorName,vendorDescription,instrumentSymbol,instrumentDescription,bid\n");
+        assertThrows(IllegalArgumentException.class,
+                () -> new CsvPriceReader(new ReferenceDataRegistry(), 10).read(file, batch -> {}, (line, e) -> {}));
+    }
+
+    @Test
+    public void testReadsChunksInParallelInOrder() throws IOException {
+        StringBuilder csv = new StringBuilder("vendorId,vendorName,vendorDescription,instrumentSymbol,instrumentDescription,bid,ask\n");
+        for (int i = 0; i < 5000; i++) {
+            csv.append(i % 7).append(",Vendor,\"A \"\"vendor\"\"\",SYM").append(i % 13).append(",Symbol,")
+                    .append(i == 2500 ? "x" : String.valueOf(i)).append(',').append(i + 1).append('\n');
+        }
+        Path file = write(csv.toString());
+        CsvPriceReader reader = new CsvPriceReader(new ReferenceDataRegistry(), 100);
+        List<VendorInstrumentPrice> sequential = new ArrayList<>(), parallel = new ArrayList<>();
+        List<Long> sequentialErrors = new ArrayList<>(), parallelErrors = new ArrayList<>();
+        reader.read(file, sequential::addAll, (line, e) -> sequentialErrors.add(line));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            reader.read(file, pool, 1024, parallel::addAll, (line, e) -> parallelErrors.add(line));
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(List.of(2502L), parallelErrors);
+        assertEquals(sequentialErrors, parallelErrors);
+        assertEquals(4999, parallel.size());
+        for (int i = 0; i < parallel.size(); i++) {
+            assertEquals(0, sequential.get(i).getBid().compareTo(parallel.get(i).getBid()));
+            assertEquals(sequential.get(i).getInstrument(), parallel.get(i).getInstrument());
+        }
+        assertEquals("A \"vendor\"", parallel.get(0).getVendor().getDescription());
+        // rows are stamped in the order of the file, across the chunks, however the chunks are scheduled
+        for (int i = 1; i < parallel.size(); i++) {
+            assertTrue(parallel.get(i - 1).getTimestamp().isBefore(parallel.get(i).getTimestamp()), "row " + i);
+        }
+    }
+}
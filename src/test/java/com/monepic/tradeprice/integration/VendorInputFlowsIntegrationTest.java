@@ -1,11 +1,13 @@
 package com.monepic.tradeprice.integration;
 
 import com.monepic.tradeprice.config.JmsConfig;
+import com.monepic.tradeprice.jms.BinaryPriceMessageConverter;
 import com.monepic.tradeprice.model.VendorInstrumentPrice;
 import com.monepic.tradeprice.service.TradePriceService;
 import com.monepic.tradeprice.testutils.TestData;
 import com.monepic.tradeprice.testutils.TestUtils;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +27,7 @@ import org.springframework.test.context.ContextConfiguration;
 
 import javax.jms.JMSException;
 import java.io.File;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -34,6 +37,7 @@ import static com.monepic.tradeprice.testutils.TestUtils.copyFile;
 import static com.monepic.tradeprice.testutils.TestUtils.countDown;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -58,6 +62,12 @@ public class VendorInputFlowsIntegrationTest {
     @Autowired
     JmsTemplate jms;
 
+    @BeforeEach
+    public void applyBatchesOneByOne() {
+        // batches are applied price by price, as by the real service's default
+        doCallRealMethod().when(mockTradePriceService).createOrUpdateAll(any());
+    }
+
     @AfterEach
     public void cleanup() {
         for (File file : new File(inboundDirectory).listFiles()) {
@@ -119,4 +129,21 @@ public class VendorInputFlowsIntegrationTest {
         boolean timedOut = latch.await(10, TimeUnit.SECONDS);
         assertEquals(1, captor.getAllValues().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBinaryJmsInput() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(2);
+        ArgumentCaptor<VendorInstrumentPrice> captor = ArgumentCaptor.forClass(VendorInstrumentPrice.class);
+        countDown(latch)
+                .when(mockTradePriceService).createOrUpdate(captor.capture());
+
+        JmsTemplate binary = new JmsTemplate(jms.getConnectionFactory());
+        binary.setMessageConverter(new BinaryPriceMessageConverter(true));
+        binary.convertAndSend("new-price-in", TestData.VIP_1.get());
+        binary.convertAndSend("new-price-in", List.of(TestData.VIP_2.get()));
+
+        latch.await(10, TimeUnit.SECONDS);
+        assertEquals(List.of(TestData.VIP_1.get(), TestData.VIP_2.get()), captor.getAllValues());
+        assertEquals(0, new BigDecimal("10.21").compareTo(captor.getAllValues().get(0).getBid()));
+    }
+}
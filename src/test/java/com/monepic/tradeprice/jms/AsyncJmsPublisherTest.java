@@ -0,0 +1,159 @@
+package com.monepic.tradeprice.jms;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.UncategorizedJmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.SessionCallback;
+
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AsyncJmsPublisherTest {
+
+    private CachingConnectionFactory connectionFactory;
+    private JmsTemplate jms;
+
+    @BeforeEach
+    public void setUp() {
+        connectionFactory = new CachingConnectionFactory(
+                new ActiveMQConnectionFactory("vm://publisher-test?broker.persistent=false&broker.useJmx=false"));
+        jms = new JmsTemplate(connectionFactory);
+        jms.setReceiveTimeout(5_000);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    private List<Object> receive(String destination, int count) {
+        List<Object> received = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            received.add(jms.receiveAndConvert(destination));
+        }
+        return received;
+    }
+
+    @Test
+    public void testSendsInOrderInBatches() throws InterruptedException {
+        AsyncJmsPublisher publisher = new AsyncJmsPublisher(jms, Map.of(), 100, 4, false, false, false);
+        for (int i = 0; i < 10; i++) {
+            publisher.publish(i % 2 == 0 ? "even" : "odd", "key", "message " + i);
+        }
+        assertEquals(10, publisher.getStats().getQueued());
+        publisher.start();
+        publisher.close();
+        assertThrows(IllegalStateException.class, () -> publisher.publish("even", null, "too late"));
+
+        assertEquals(List.of("message 0", "message 2", "message 4", "message 6", "message 8"), receive("even", 5));
+        assertEquals(List.of("message 1", "message 3", "message 5", "message 7", "message 9"), receive("odd", 5));
+        PublisherStats stats = publisher.getStats();
+        assertEquals(0, stats.getQueued());
+        assertEquals(10, stats.getSent());
+        assertEquals(3, stats.getBatches());
+        assertEquals(0, stats.getConflated());
+    }
+
+    @Test
+    public void testConflatesQueuedMessages() throws InterruptedException {
+        AsyncJmsPublisher publisher = new AsyncJmsPublisher(jms, Map.of(), 100, 10, true, false, false);
+        publisher.publish("prices", "A", "A1");
+        publisher.publish("prices", "B", "B1");
+        publisher.publish("prices", "A", "A2");
+        publisher.publish("other", "A", "other A1");
+        publisher.publish("prices", null, "unkeyed");
+        publisher.publish("prices", "A", "A3");
+        publisher.start();
+        publisher.close();
+
+        // the latest A takes the first A's place
+        assertEquals(List.of("A3", "B1", "unkeyed"), receive("prices", 3));
+        assertEquals(List.of("other A1"), receive("other", 1));
+        jms.setReceiveTimeout(100);
+        assertNull(jms.receiveAndConvert("prices"));
+
+        PublisherStats stats = publisher.getStats();
+        assertEquals(6, stats.getPublished());
+        assertEquals(2, stats.getConflated());
+        assertEquals(4, stats.getSent());
+        assertEquals(2.0 / 6, stats.getConflationRatio());
+    }
+
+    @Test
+    public void testRetriesWhatABatchDidntSend() {
+        int[] failures = {1};
+        JmsTemplate flaky = new JmsTemplate(connectionFactory) {
+            @Override
+            public <T> T execute(SessionCallback<T> action, boolean startConnection) {
+                return super.execute(session -> {
+                    // sends the first message, then fails
+                    Session failing = failures[0]-- > 0 ? failAfterOneSend(session) : session;
+                    return action.doInJms(failing);
+                }, startConnection);
+            }
+        };
+        AsyncJmsPublisher publisher = new AsyncJmsPublisher(flaky, Map.of(), 100, 10, false, false, false);
+        for (int i = 0; i < 3; i++) {
+            publisher.publish("retried", null, "message " + i);
+        }
+        publisher.start();
+        publisher.close();
+
+        assertEquals(List.of("message 0", "message 1", "message 2"), receive("retried", 3));
+        jms.setReceiveTimeout(100);
+        assertNull(jms.receiveAndConvert("retried"));
+        assertEquals(3, publisher.getStats().getSent());
+        assertEquals(0, publisher.getStats().getFailed());
+    }
+
+    @Test
+    public void testDropsWhatStillFailsAfterTheLastAttempt() {
+        JmsTemplate down = new JmsTemplate(connectionFactory) {
+            @Override
+            public <T> T execute(SessionCallback<T> action, boolean startConnection) {
+                throw new UncategorizedJmsException("down");
+            }
+        };
+        AsyncJmsPublisher publisher = new AsyncJmsPublisher(down, Map.of(), 100, 10, false, false, false);
+        publisher.publish("dropped", null, "message 0");
+        publisher.publish("dropped", null, "message 1");
+        publisher.start();
+        publisher.close();
+
+        PublisherStats stats = publisher.getStats();
+        assertEquals(0, stats.getQueued());
+        assertEquals(0, stats.getSent());
+        assertEquals(2, stats.getFailed());
+    }
+
+    private static Session failAfterOneSend(Session session) {
+        int[] sends = {0};
+        return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class}, (proxy, method, args) -> {
+            Object result = method.invoke(session, args);
+            if (!method.getName().equals("createProducer")) {
+                return result;
+            }
+            MessageProducer producer = (MessageProducer) result;
+            return Proxy.newProxyInstance(MessageProducer.class.getClassLoader(), new Class<?>[]{MessageProducer.class},
+                    (p, m, a) -> {
+                        if (m.getName().equals("send") && sends[0]++ > 0) {
+                            throw new JMSException("broker went away");
+                        }
+                        return m.invoke(producer, a);
+                    });
+        });
+    }
+}
@@ -0,0 +1,142 @@
+package com.monepic.tradeprice.jms;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.PriceJsonModule;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.model.requests.NewPriceRequest;
+import com.monepic.tradeprice.testutils.TestData;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+
+import javax.jms.BytesMessage;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryPriceMessageConverterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .registerModule(new PriceJsonModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private CachingConnectionFactory connectionFactory;
+    private JmsTemplate binary, json;
+
+    @BeforeEach
+    public void setUp() {
+        connectionFactory = new CachingConnectionFactory(
+                new ActiveMQConnectionFactory("vm://converter-test?broker.persistent=false&broker.useJmx=false"));
+        binary = template(new BinaryPriceMessageConverter(true));
+        json = template(new PriceMessageConverter());
+    }
+
+    private JmsTemplate template(PriceMessageConverter converter) {
+        converter.setObjectMapper(mapper);
+        converter.setTypeIdPropertyName("_type");
+        JmsTemplate template = new JmsTemplate(connectionFactory);
+        template.setMessageConverter(converter);
+        template.setReceiveTimeout(5_000);
+        return template;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    private static List<VendorInstrumentPrice> batch(int size) {
+        List<VendorInstrumentPrice> batch = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Vendor vendor = new Vendor((long) i % 3, "Vendor " + i % 3, i % 2 == 0 ? null : "Vendor number " + i % 3);
+            Instrument instrument = new Instrument("I" + i % 7, "Instrument " + i % 7, i % 5);
+            batch.add(new VendorInstrumentPrice(vendor, instrument, -i, i * 1_000L, i % 5, TestData.TIMESTAMP_1.plusNanos(i)));
+        }
+        return batch;
+    }
+
+    @Test
+    public void testRoundTripsPricesAndBatches() throws Exception {
+        VendorInstrumentPrice vip = TestData.VIP_1.get();
+        binary.convertAndSend("prices", vip);
+        Message message = json.receive("prices");
+        assertTrue(message instanceof BytesMessage);
+        VendorInstrumentPrice received = (VendorInstrumentPrice) json.getMessageConverter().fromMessage(message);
+        assertEquals(vip, received);
+        assertEquals(vip.getBid(), received.getBid());
+        assertEquals(vip.getInstrument().getDescription(), received.getInstrument().getDescription());
+
+        List<VendorInstrumentPrice> batch = batch(500);
+        binary.convertAndSend("prices", batch);
+        List<?> receivedBatch = (List<?>) json.receiveAndConvert("prices");
+        assertEquals(batch, receivedBatch);
+        for (int i = 0; i < batch.size(); i++) {
+            VendorInstrumentPrice sent = batch.get(i), got = (VendorInstrumentPrice) receivedBatch.get(i);
+            assertEquals(sent.getAsk(), got.getAsk());
+            assertEquals(sent.getTimestamp(), got.getTimestamp());
+            assertEquals(sent.getVendor().getDescription(), got.getVendor().getDescription());
+        }
+    }
+
+    @Test
+    public void testSendsEverythingElseAsJson() throws Exception {
+        binary.convertAndSend("requests", TestData.NPR_1);
+        Message message = binary.receive("requests");
+        assertTrue(message instanceof TextMessage);
+        assertEquals(TestData.NPR_1.toString(), binary.getMessageConverter().fromMessage(message).toString());
+
+        json.convertAndSend("prices", TestData.VIP_1.get());
+        assertEquals(TestData.VIP_1_JSON, ((TextMessage) binary.receive("prices")).getText());
+        json.convertAndSend("prices", TestData.VIP_1.get());
+        assertEquals(TestData.VIP_1.get(), binary.receiveAndConvert("prices"));
+    }
+
+    @Test
+    public void testDeflatesBigBatches() {
+        List<VendorInstrumentPrice> batch = batch(1_000);
+        byte[] deflated = BinaryPriceCodec.encode(batch, true), plain = BinaryPriceCodec.encode(batch, false);
+        assertTrue(deflated.length < plain.length / 3, deflated.length + " vs " + plain.length);
+        assertEquals(batch, BinaryPriceCodec.decode(deflated));
+        assertEquals(batch, BinaryPriceCodec.decode(plain));
+        // too small to be worth it
+        assertEquals(BinaryPriceCodec.encode(batch(2), false).length, BinaryPriceCodec.encode(batch(2), true).length);
+    }
+
+    @Test
+    public void testRejectsCorruptMessages() {
+        byte[] bytes = BinaryPriceCodec.encode(TestData.VIP_1.get());
+        assertThrows(IllegalArgumentException.class, () -> BinaryPriceCodec.decode(Arrays.copyOf(bytes, bytes.length - 1)));
+        byte[] deflated = BinaryPriceCodec.encode(batch(1_000), true);
+        deflated[deflated.length / 2] ^= 0x55;
+        assertThrows(IllegalArgumentException.class, () -> BinaryPriceCodec.decode(deflated));
+        bytes[0] = 0;
+        assertThrows(IllegalArgumentException.class, () -> BinaryPriceCodec.decode(bytes));
+    }
+
+    @Test
+    public void testRejectsOversizedBatches() {
+        byte[] deflated = BinaryPriceCodec.encode(batch(1_000), true);
+        int length = ByteBuffer.wrap(deflated, 7, 4).getInt();
+        assertEquals(batch(1_000), BinaryPriceCodec.decode(deflated, length));
+        assertThrows(IllegalArgumentException.class, () -> BinaryPriceCodec.decode(deflated, length - 1));
+
+        // a length which understates what the body inflates to
+        ByteBuffer.wrap(deflated, 7, 4).putInt(length - 100);
+        assertThrows(IllegalArgumentException.class, () -> BinaryPriceCodec.decode(deflated));
+    }
+}
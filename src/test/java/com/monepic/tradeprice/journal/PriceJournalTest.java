@@ -0,0 +1,194 @@
+package com.monepic.tradeprice.journal;
+
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PriceJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private PriceJournal open(FsyncPolicy fsyncPolicy) throws IOException {
+        return new PriceJournal(directory, 1 << 12, fsyncPolicy, Duration.ofMillis(10));
+    }
+
+    private Set<VendorInstrumentPrice> replay(int threads) throws IOException {
+        Set<VendorInstrumentPrice> replayed = ConcurrentHashMap.newKeySet();
+        try (PriceJournal journal = open(FsyncPolicy.NEVER)) {
+            assertEquals(journal.replay(replayed::add, threads), replayed.size());
+        }
+        return replayed;
+    }
+
+    @Test
+    public void testReplaysLatestPrices() throws IOException {
+        VendorInstrumentPrice updated = TestData.VIP_1.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(1));
+        try (PriceJournal journal = open(FsyncPolicy.ALWAYS)) {
+            journal.append(TestData.VIP_1.get());
+            journal.append(TestData.VIP_2.get());
+            journal.append(TestData.VIP_3.get());
+            journal.append(updated);
+            journal.remove(TestData.VIP_2.get());
+        }
+
+        Set<VendorInstrumentPrice> replayed = replay(4);
+        assertEquals(Set.of(updated, TestData.VIP_3.get()), replayed);
+        VendorInstrumentPrice vip = replayed.stream().filter(updated::equals).findAny().orElseThrow();
+        assertEquals(updated.getTimestamp(), vip.getTimestamp());
+        assertEquals(updated.getBid(), vip.getBid());
+        assertEquals(updated.getAsk(), vip.getAsk());
+        assertEquals(updated.getVendor(), vip.getVendor());
+        assertEquals(TestData.INSTRUMENT_VOD.getDescription(), vip.getInstrument().getDescription());
+    }
+
+    @Test
+    public void testRemovalOfSupersededPriceIsIgnored() throws IOException {
+        VendorInstrumentPrice updated = TestData.VIP_1.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(1));
+        try (PriceJournal journal = open(FsyncPolicy.INTERVAL)) {
+            journal.append(TestData.VIP_1.get());
+            journal.append(updated);
+            journal.remove(TestData.VIP_1.get());
+        }
+
+        assertEquals(Set.of(updated), replay(1));
+    }
+
+    @Test
+    public void testReplaysNewestPriceWhateverOrderItWasJournaledIn() throws IOException {
+        VendorInstrumentPrice newer = TestData.VIP_1.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(1));
+        try (PriceJournal journal = open(FsyncPolicy.NEVER)) {
+            // two writers cached the older price then the newer, but reached the journal the other way round
+            journal.append(newer);
+            journal.append(TestData.VIP_1.get());
+        }
+
+        Set<VendorInstrumentPrice> replayed = replay(2);
+        assertEquals(1, replayed.size());
+        assertEquals(newer.getTimestamp(), replayed.iterator().next().getTimestamp());
+    }
+
+    @Test
+    public void testOlderPriceJournaledAfterRemovalIsIgnored() throws IOException {
+        VendorInstrumentPrice newer = TestData.VIP_1.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(1));
+        try (PriceJournal journal = open(FsyncPolicy.NEVER)) {
+            journal.append(newer);
+            journal.remove(newer);
+            journal.append(TestData.VIP_1.get());
+            journal.append(TestData.VIP_2.get());
+        }
+
+        assertEquals(Set.of(TestData.VIP_2.get()), replay(2));
+    }
+
+    @Test
+    public void testRollsSegments() throws IOException {
+        Set<VendorInstrumentPrice> expected = new HashSet<>();
+        try (PriceJournal journal = open(FsyncPolicy.NEVER)) {
+            for (long v = 0; v < 50; v++) {
+                Vendor vendor = new Vendor(v, "Vendor " + v, "Vendor number " + v);
+                for (int i = 0; i < 10; i++) {
+                    Instrument instrument = new Instrument("I" + i, "Instrument " + i, 4);
+                    VendorInstrumentPrice vip = new VendorInstrumentPrice(vendor, instrument,
+                            BigDecimal.valueOf(v * 10 + i, 2), BigDecimal.valueOf(v * 10 + i + 1, 2), TestData.TIMESTAMP_1);
+                    journal.append(vip);
+                    expected.add(vip);
+                }
+            }
+        }
+        assertTrue(PriceJournal.segments(directory).size() > 1);
+
+        Set<VendorInstrumentPrice> replayed = replay(3);
+        assertEquals(expected, replayed);
+        for (VendorInstrumentPrice vip : replayed) {
+            assertEquals(4, vip.getPriceScale());
+            assertEquals(0, vip.getBid().add(new BigDecimal("0.01")).compareTo(vip.getAsk()));
+        }
+    }
+
+    @Test
+    public void testAppendsToNewSegmentAfterReplay() throws IOException {
+        try (PriceJournal journal = open(FsyncPolicy.NEVER)) {
+            journal.append(TestData.VIP_1.get());
+        }
+        try (PriceJournal journal = open(FsyncPolicy.NEVER)) {
+            journal.replay(vip -> {}, 1);
+            journal.append(TestData.VIP_2.get());
+        }
+        assertEquals(2, PriceJournal.segments(directory).size());
+        assertEquals(Set.of(TestData.VIP_1.get(), TestData.VIP_2.get()), replay(2));
+    }
+
+    @Test
+    public void testStopsAtCorruptRecord() throws IOException {
+        try (PriceJournal journal = open(FsyncPolicy.NEVER)) {
+            journal.append(TestData.VIP_1.get());
+            journal.append(TestData.VIP_2.get());
+        }
+        Path segment = PriceJournal.segments(directory).get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // the last byte of the last record - the nanos of VIP_2's timestamp
+            long offset = file.length() - 1;
+            while (offset > 0) {
+                file.seek(offset);
+                if (file.read() != 0) {
+                    break;
+                }
+                offset--;
+            }
+            file.seek(offset - 3);
+            file.write(1);
+        }
+
+        assertEquals(Set.of(TestData.VIP_1.get()), replay(1));
+    }
+
+    @Test
+    public void testReplaysFromCheckpointOverBase() throws IOException {
+        VendorInstrumentPrice updated = TestData.VIP_1.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(1));
+        long checkpoint;
+        try (PriceJournal journal = open(FsyncPolicy.NEVER)) {
+            journal.append(TestData.VIP_1.get());
+            journal.append(TestData.VIP_2.get());
+            checkpoint = journal.checkpoint();
+            assertEquals(checkpoint, journal.checkpoint()); // nothing appended since
+            journal.append(updated);
+            journal.remove(TestData.VIP_2.get());
+
+            assertEquals(1, journal.truncate(checkpoint));
+            assertEquals(List.of(directory.resolve(PriceJournal.segmentName(checkpoint))), PriceJournal.segments(directory));
+        }
+
+        Set<VendorInstrumentPrice> replayed = ConcurrentHashMap.newKeySet();
+        try (PriceJournal journal = open(FsyncPolicy.NEVER)) {
+            journal.replay(List.of(TestData.VIP_1.get(), TestData.VIP_2.get(), TestData.VIP_3.get()), checkpoint, replayed::add, 2);
+        }
+        assertEquals(Set.of(updated, TestData.VIP_3.get()), replayed);
+        assertEquals(updated.getTimestamp(), replayed.stream().filter(updated::equals).findAny().orElseThrow().getTimestamp());
+    }
+
+    @Test
+    public void testClosedJournalRejectsAppends() throws IOException {
+        PriceJournal journal = open(FsyncPolicy.NEVER);
+        journal.close();
+        assertThrows(IllegalStateException.class, () -> journal.append(TestData.VIP_1.get()));
+        assertEquals(List.of(), PriceJournal.segments(directory));
+    }
+}
@@ -0,0 +1,91 @@
+package com.monepic.tradeprice.journal;
+
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PriceSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRoundTripsPrices() throws IOException {
+        // more than one chunk, the last of them partly filled
+        List<VendorInstrumentPrice> prices = new ArrayList<>();
+        for (long v = 0; v < PriceSnapshot.CHUNK_PRICES / 100 + 10; v++) {
+            Vendor vendor = new Vendor(v, "Vendor " + v, v % 2 == 0 ? null : "Vendor number " + v);
+            for (int i = 0; i < 100; i++) {
+                Instrument instrument = new Instrument("I" + i, "Instrument " + i, i % 6);
+                prices.add(new VendorInstrumentPrice(vendor, instrument, v * 100 + i, v * 100 + i + 1, i % 6,
+                        TestData.TIMESTAMP_1.plusNanos(v * 100 + i)));
+            }
+        }
+        PriceSnapshot.write(directory, 7, prices);
+
+        PriceSnapshot snapshot = PriceSnapshot.readLatest(directory, 3);
+        assertEquals(7, snapshot.getCheckpoint());
+        assertEquals(prices, snapshot.getPrices());
+        for (int i = 0; i < prices.size(); i++) {
+            VendorInstrumentPrice expected = prices.get(i), actual = snapshot.getPrices().get(i);
+            assertEquals(expected.getBid(), actual.getBid());
+            assertEquals(expected.getAsk(), actual.getAsk());
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+            assertEquals(expected.getVendor().getDescription(), actual.getVendor().getDescription());
+            assertEquals(expected.getInstrument().getPriceScale(), actual.getInstrument().getPriceScale());
+        }
+    }
+
+    @Test
+    public void testNoSnapshot() throws IOException {
+        assertNull(PriceSnapshot.readLatest(directory, 1));
+        assertNull(PriceSnapshot.readLatest(directory.resolve("missing"), 1));
+        PriceSnapshot.write(directory, 0, List.of());
+        assertEquals(List.of(), PriceSnapshot.readLatest(directory, 1).getPrices());
+    }
+
+    @Test
+    public void testFallsBackFromCorruptSnapshot() throws IOException {
+        PriceSnapshot.write(directory, 1, List.of(TestData.VIP_1.get()));
+        Path latest = PriceSnapshot.write(directory, 2, List.of(TestData.VIP_1.get(), TestData.VIP_2.get()));
+        try (RandomAccessFile file = new RandomAccessFile(latest.toFile(), "rw")) {
+            file.seek(file.length() - 10);
+            file.write(file.read() ^ 1);
+        }
+        assertThrows(IOException.class, () -> PriceSnapshot.read(latest, 1));
+
+        PriceSnapshot snapshot = PriceSnapshot.readLatest(directory, 1);
+        assertEquals(1, snapshot.getCheckpoint());
+        assertEquals(List.of(TestData.VIP_1.get()), snapshot.getPrices());
+    }
+
+    @Test
+    public void testRetainsLatestSnapshots() throws IOException {
+        for (long checkpoint : new long[]{3, 5, 8}) {
+            PriceSnapshot.write(directory, checkpoint, Set.of(TestData.VIP_3.get()));
+        }
+        assertEquals(5, PriceSnapshot.retainLatest(directory, 2));
+        assertEquals(List.of(directory.resolve(PriceSnapshot.snapshotName(5)), directory.resolve(PriceSnapshot.snapshotName(8))),
+                PriceSnapshot.snapshots(directory));
+        assertEquals(8, PriceSnapshot.retainLatest(directory, 1));
+        assertEquals(1, PriceSnapshot.snapshots(directory).size());
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.monepic.tradeprice.model;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.json.JsonWriteFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PriceJsonModuleTest {
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .registerModule(new PriceJsonModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    public void testWritesPriceOnce() throws IOException {
+        VendorInstrumentPrice vip = TestData.VIP_1.get();
+        assertEquals(TestData.VIP_1_JSON, mapper.writeValueAsString(vip));
+
+        String json = PriceJsonModule.toJson(vip, mapper.writer());
+        assertEquals(TestData.VIP_1_JSON, json);
+        assertSame(json, PriceJsonModule.toJson(vip, mapper.writer()));
+        assertEquals("[" + json + "," + json + "]", mapper.writeValueAsString(List.of(vip, vip)));
+        assertEquals("{\"price\":" + json + "}", mapper.writeValueAsString(Map.of("price", vip)));
+
+        // an updated price is a new instance, so is written afresh
+        VendorInstrumentPrice updated = vip.withTimestamp(TestData.TIMESTAMP_1.plusSeconds(1));
+        assertEquals(TestData.VIP_1_JSON.replace("00:00:00Z", "00:00:01Z"), mapper.writeValueAsString(updated));
+    }
+
+    @Test
+    public void testWritesCompactlyWhenIndenting() throws IOException {
+        VendorInstrumentPrice vip = TestData.VIP_1.get();
+        String indented = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(List.of(vip));
+        assertEquals(List.of(vip), List.of(mapper.readValue(indented, VendorInstrumentPrice[].class)));
+        assertEquals(TestData.VIP_1_JSON, PriceJsonModule.toJson(vip, mapper.writer()));
+    }
+
+    @Test
+    public void testWritesWithTheMappersGeneratorFeatures() throws IOException {
+        ObjectMapper escaping = new ObjectMapper(JsonFactory.builder().enable(JsonWriteFeature.ESCAPE_NON_ASCII).build())
+                .registerModule(new JavaTimeModule())
+                .registerModule(new PriceJsonModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        VendorInstrumentPrice vip = new VendorInstrumentPrice(new Vendor(1L, "Caf\u00e9", "First Vendor"), TestData.INSTRUMENT_VOD,
+                BigDecimal.ONE, BigDecimal.TEN, TestData.TIMESTAMP_1);
+        assertTrue(escaping.writeValueAsString(vip).contains("\"Caf\\u00E9\""));
+    }
+}
@@ -0,0 +1,58 @@
+package com.monepic.tradeprice.model;
+
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ReferenceDataRegistryTest {
+
+    private final ReferenceDataRegistry registry = new ReferenceDataRegistry();
+
+    @Test
+    public void testInternsVendors() {
+        Vendor vendor = registry.vendor(1L, "Vendor 1", "First Vendor");
+        assertSame(vendor, registry.vendor(1L, new String("Vendor 1"), new String("First Vendor")));
+        assertEquals(TestData.VENDOR_1, vendor);
+
+        Vendor renamed = registry.vendor(1L, "Vendor One", "First Vendor");
+        assertNotSame(vendor, renamed);
+        assertSame(renamed, registry.vendor(1L, "Vendor One", "First Vendor"));
+        assertEquals(1, registry.vendorCount());
+    }
+
+    @Test
+    public void testInternsInstruments() {
+        Instrument instrument = registry.instrument("VOD", "Vodafone");
+        assertSame(instrument, registry.instrument("VOD", new String("Vodafone")));
+        assertNotSame(instrument, registry.instrument("BAY", "Vodafone"));
+        assertEquals(2, registry.instrumentCount());
+    }
+
+    @Test
+    public void testCanonicalizesPrices() {
+        VendorInstrumentPrice vip1 = registry.canonicalize(TestData.VIP_1.get());
+        VendorInstrumentPrice vip2 = registry.canonicalize(TestData.VIP_2.get());
+
+        assertSame(vip1.getVendor(), vip2.getVendor());
+        assertSame(vip1.getInstrument(), registry.instrument("VOD", "Vodafone"));
+        assertEquals(vip1, TestData.VIP_1.get());
+        assertEquals(vip1.hashCode(), TestData.VIP_1.get().hashCode());
+    }
+
+    @Test
+    public void testAssignsPriceScales() {
+        ReferenceDataRegistry scaled = new ReferenceDataRegistry(6, Map.of("VOD", 2));
+        assertEquals(2, scaled.instrument("VOD", "Vodafone").getPriceScale());
+        assertEquals(6, scaled.instrument("BAY", "British Airways").getPriceScale());
+
+        VendorInstrumentPrice vip = scaled.canonicalize(TestData.VIP_1.get());
+        assertEquals(1021, vip.getScaledBid());
+        assertEquals(2, vip.getPriceScale());
+        assertEquals(TestData.VIP_1.get().getBid(), vip.getBid());
+    }
+}
@@ -0,0 +1,116 @@
+package com.monepic.tradeprice.model.requests;
+
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.Test;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.FieldError;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NewPriceRequestValidatorTest {
+
+    private final NewPriceRequestValidator validator = new NewPriceRequestValidator();
+    private final Validator beanValidator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private static NewPriceRequest request(Consumer<NewPriceRequest> change) {
+        NewPriceRequest request = new NewPriceRequest(1L, "Vendor 1", "First Vendor", "VOD", "Vodafone",
+                new BigDecimal("10.21"), new BigDecimal("11.21"));
+        change.accept(request);
+        return request;
+    }
+
+    private Set<String> errors(NewPriceRequest request) {
+        BeanPropertyBindingResult errors = new BeanPropertyBindingResult(request, "newPriceRequest");
+        validator.validate(request, errors);
+        return errors.getFieldErrors().stream().map(e -> e.getField() + " " + e.getDefaultMessage()).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void testAgreesWithTheAnnotations() {
+        List<NewPriceRequest> requests = List.of(
+                request(r -> {}),
+                request(r -> r.setVendorId(null)),
+                request(r -> r.setVendorName(" \t")),
+                request(r -> r.setVendorDescription(null)),
+                request(r -> r.setInstrumentSymbol("")),
+                request(r -> r.setInstrumentDescription(" x ")),
+                request(r -> r.setBid(null)),
+                request(r -> r.setBid(new BigDecimal("1e-19"))),
+                request(r -> r.setBid(new BigDecimal("1e-18"))),
+                request(r -> r.setAsk(new BigDecimal("1e18"))),
+                request(r -> r.setAsk(new BigDecimal("1e17"))),
+                request(r -> r.setAsk(new BigDecimal("12.100000000000000000000"))),
+                request(r -> r.setBid(new BigDecimal("-123456789012345678901"))),
+                request(r -> {
+                    r.setVendorId(null);
+                    r.setInstrumentSymbol(null);
+                    r.setAsk(null);
+                }));
+        for (NewPriceRequest request : requests) {
+            Set<String> expected = beanValidator.validate(request).stream()
+                    .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                    .collect(Collectors.toSet());
+            assertEquals(expected, errors(request), request.toString());
+            assertEquals(expected.isEmpty(), validator.isValid(request), request.toString());
+        }
+    }
+
+    @Test
+    public void testBidMustNotBeAboveAsk() {
+        assertTrue(validator.isValid(TestData.NPR_1));
+        assertTrue(validator.isValid(request(r -> r.setAsk(new BigDecimal("10.2100")))));
+        assertTrue(validator.isValid(request(r -> {
+            r.setBid(new BigDecimal("-1"));
+            r.setAsk(new BigDecimal("-0.5"));
+        })));
+        NewPriceRequest crossed = request(r -> r.setBid(new BigDecimal("11.22")));
+        assertFalse(validator.isValid(crossed));
+        assertEquals(Set.of("bid " + NewPriceRequestValidator.CROSSED), errors(crossed));
+        assertEquals("bid must not be above the ask (was 11.22)", validator.describe(crossed));
+        assertNull(validator.describe(TestData.NPR_1));
+    }
+
+    @Test
+    public void testReportsEveryProblem() {
+        NewPriceRequest request = request(r -> {
+            r.setVendorId(null);
+            r.setBid(null);
+            r.setAsk(new BigDecimal("1e-20"));
+        });
+        BeanPropertyBindingResult errors = new BeanPropertyBindingResult(request, "newPriceRequest");
+        validator.validate(request, errors);
+        assertEquals(List.of("vendorId", "bid", "ask"),
+                errors.getFieldErrors().stream().map(FieldError::getField).collect(Collectors.toList()));
+        assertEquals(new BigDecimal("1e-20"), errors.getFieldError("ask").getRejectedValue());
+    }
+
+    @Test
+    public void testPricesByTheSameRules() {
+        VendorInstrumentPrice vip = TestData.VIP_1.get();
+        assertNull(validator.describe(vip));
+        assertNull(validator.describe(new VendorInstrumentPrice(vip.getVendor(), vip.getInstrument(), -2, -1, 0, vip.getTimestamp())));
+
+        assertEquals("bid must not be above the ask (was 12)", validator.describe(
+                new VendorInstrumentPrice(vip.getVendor(), vip.getInstrument(), 12, 11, 0, vip.getTimestamp())));
+        assertEquals("vendor.id must not be null, vendor.name must not be blank (was  ), instrument.description must not be blank (was null), "
+                        + "ask must have at most 18 digits before and after the decimal point (was 1000000000000000000), timestamp must not be null",
+                validator.describe(new VendorInstrumentPrice(new Vendor(null, " ", "First Vendor"), new Instrument("VOD", null, 0),
+                        1, 1_000_000_000_000_000_000L, 0, null)));
+        assertEquals("vendor must not be null, instrument must not be null",
+                validator.describe(new VendorInstrumentPrice(null, null, 1, 1, 0, vip.getTimestamp())));
+    }
+}
@@ -0,0 +1,44 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.model.Bar;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class BarAggregatingTradePriceServiceWrapperTest {
+
+    private static VendorInstrumentPrice tick(long millis, long bid, long ask, int scale) {
+        return new VendorInstrumentPrice(TestData.VENDOR_1, TestData.INSTRUMENT_VOD, bid, ask, scale, TestData.TIMESTAMP_1.plusMillis(millis));
+    }
+
+    @Test
+    public void testAPriceTheBarsCantTakeIsStillAccepted() {
+        TradePriceService delegate = mock(TradePriceService.class);
+        List<Bar> finished = new ArrayList<>();
+        BarAggregator bars = new BarAggregator(List.of(Duration.ofSeconds(1)), 10, finished::add);
+        BarAggregatingTradePriceServiceWrapper wrapper = new BarAggregatingTradePriceServiceWrapper(delegate, bars);
+        wrapper.createOrUpdate(tick(0, 1, 1_000_000_000_000_000_000L, 0));
+
+        // the bar in progress can't be rescaled to hold these prices, but the delegate has them, so they're still accepted
+        VendorInstrumentPrice finer = tick(1, 15, 20, 1), later = tick(2, 16, 20, 1);
+        wrapper.createOrUpdate(finer);
+        verify(delegate, times(2)).createOrUpdate(any());
+        wrapper.createOrUpdateAll(List.of(finer, later));
+        verify(delegate).createOrUpdateAll(List.of(finer, later));
+
+        // and the bars carry on
+        wrapper.createOrUpdate(tick(1_000, 2, 3, 0));
+        assertEquals(1, finished.size());
+        assertEquals(1, finished.get(0).getTicks());
+    }
+}
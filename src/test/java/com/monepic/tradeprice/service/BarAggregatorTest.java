@@ -0,0 +1,139 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.model.Bar;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BarAggregatorTest {
+
+    private static final Duration SECOND = Duration.ofSeconds(1), MINUTE = Duration.ofMinutes(1);
+
+    private final List<Bar> published = new ArrayList<>();
+
+    private static VendorInstrumentPrice tick(long millis, String bid, String ask) {
+        BigDecimal b = new BigDecimal(bid), a = new BigDecimal(ask);
+        int scale = Math.max(b.scale(), a.scale());
+        return new VendorInstrumentPrice(TestData.VENDOR_1, TestData.INSTRUMENT_VOD, b.setScale(scale).unscaledValue().longValueExact(),
+                a.setScale(scale).unscaledValue().longValueExact(), scale, TestData.TIMESTAMP_1.plusMillis(millis));
+    }
+
+    private static List<String> described(List<Bar> bars) {
+        return bars.stream().map(Bar::toString).collect(Collectors.toList());
+    }
+
+    private static void assertOhlc(String expected, Bar.Ohlc ohlc) {
+        List<BigDecimal> values = List.of(ohlc.getOpen(), ohlc.getHigh(), ohlc.getLow(), ohlc.getClose());
+        List<BigDecimal> expectedValues = List.of(expected.split(",")).stream().map(BigDecimal::new).collect(Collectors.toList());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, expectedValues.get(i).compareTo(values.get(i)), expected + " vs " + values);
+        }
+    }
+
+    @Test
+    public void testAggregatesBars() {
+        BarAggregator bars = new BarAggregator(List.of(SECOND, MINUTE), 10, published::add);
+        bars.accept(tick(0, "10", "11"));
+        bars.accept(tick(200, "12", "13"));
+        bars.accept(tick(400, "9", "12"));
+        bars.accept(tick(900, "11", "12"));
+        assertEquals(List.of(), published);
+
+        // the next second finishes the first second's bar, but not the minute's
+        bars.accept(tick(1_000, "11.5", "12"));
+        assertEquals(1, published.size());
+        Bar bar = published.get(0);
+        assertEquals("VOD", bar.getSymbol());
+        assertEquals(TestData.TIMESTAMP_1, bar.getStart());
+        assertEquals(TestData.TIMESTAMP_1.plusSeconds(1), bar.getEnd());
+        assertEquals(4, bar.getTicks());
+        assertOhlc("10,12,9,11", bar.getBid());
+        assertOhlc("11,13,11,12", bar.getAsk());
+        assertOhlc("10.5,12.5,10.5,11.5", bar.getMid());
+
+        // the finer price is rescaled into the minute's bar
+        bars.accept(tick(61_000, "10", "10.25"));
+        assertEquals(3, published.size());
+        assertEquals(SECOND, published.get(1).getInterval());
+        assertEquals(MINUTE, published.get(2).getInterval());
+        assertEquals(5, published.get(2).getTicks());
+        assertOhlc("10,12,9,11.5", published.get(2).getBid());
+        assertOhlc("10.5,12.5,10.5,11.75", published.get(2).getMid());
+
+        assertEquals(described(List.of(published.get(1), published.get(0))), described(bars.getBars("VOD", SECOND, 10)));
+        assertEquals(described(List.of(published.get(1))), described(bars.getBars("VOD", SECOND, 1)));
+        assertEquals(described(List.of(published.get(2))), described(bars.getBars("VOD", MINUTE, 10)));
+        assertNull(bars.getBars("BAY", SECOND, 10));
+        assertThrows(IllegalArgumentException.class, () -> bars.getBars("VOD", Duration.ofMinutes(5), 10));
+    }
+
+    @Test
+    public void testFlushesAndDropsLatePrices() {
+        BarAggregator bars = new BarAggregator(List.of(SECOND), 2, published::add);
+        long start = TestData.TIMESTAMP_1.toEpochMilli();
+        bars.accept(tick(1_500, "10", "11"));
+        bars.flush(start + 1_999);
+        assertEquals(0, published.size());
+        bars.flush(start + 2_000);
+        assertEquals(1, published.size());
+
+        // the bar's finished, and so is the one before it
+        bars.accept(tick(1_600, "1", "2"));
+        bars.accept(tick(500, "1", "2"));
+        bars.flush(start + 10_000);
+        assertEquals(1, published.size());
+
+        for (int second = 2; second < 6; second++) {
+            bars.accept(tick(second * 1_000L, String.valueOf(second), "20"));
+        }
+        List<Bar> latest = bars.getBars("VOD", SECOND, 10);
+        assertEquals(2, latest.size());
+        assertEquals(TestData.TIMESTAMP_1.plusSeconds(4), latest.get(0).getStart());
+        assertEquals(TestData.TIMESTAMP_1.plusSeconds(3), latest.get(1).getStart());
+    }
+
+    @Test
+    public void testMidOfLargePrices() {
+        BarAggregator bars = new BarAggregator(List.of(SECOND), 10, published::add);
+        String max = Long.toString(Long.MAX_VALUE), min = Long.toString(Long.MIN_VALUE);
+        bars.accept(tick(0, max, max));
+        bars.accept(tick(1, Long.toString(Long.MAX_VALUE - 1), max));
+        bars.accept(tick(2, min, Long.toString(Long.MIN_VALUE + 1)));
+        bars.flush(TestData.TIMESTAMP_1.toEpochMilli() + 1_000);
+        assertOhlc(max + "," + max + ",-9223372036854775807.5,-9223372036854775807.5", published.get(0).getMid());
+
+        assertEquals(-1, BarAggregator.midFloor(-1, 0));
+        assertEquals(-2, BarAggregator.midFloor(-3, 0));
+        assertEquals(Long.MAX_VALUE - 1, BarAggregator.midFloor(Long.MAX_VALUE - 1, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testRejectedRescaleLeavesBarsAsTheyWere() {
+        BarAggregator bars = new BarAggregator(List.of(SECOND, MINUTE), 10, published::add);
+        bars.accept(tick(0, "1", "2"));
+        bars.accept(tick(1_000, "3", "1000000000000000000"));
+        // the second's first bar rescales, but the ask of the one in progress can't be held to 1 decimal place
+        assertThrows(IllegalArgumentException.class, () -> bars.accept(tick(1_001, "1.5", "2")));
+        bars.accept(tick(2_000, "4", "5"));
+        assertEquals(2, bars.getBars("VOD", SECOND, 10).size());
+        assertOhlc("3,3,3,3", bars.getBars("VOD", SECOND, 10).get(0).getBid());
+        assertOhlc("1,1,1,1", bars.getBars("VOD", SECOND, 10).get(1).getBid());
+        assertOhlc("1.5,1.5,1.5,1.5", bars.getBars("VOD", SECOND, 10).get(1).getMid());
+    }
+
+    @Test
+    public void testRejectsSubMillisecondIntervals() {
+        assertThrows(IllegalArgumentException.class, () -> new BarAggregator(List.of(Duration.ofNanos(1500)), 1, published::add));
+        assertThrows(IllegalArgumentException.class, () -> new BarAggregator(List.of(Duration.ZERO), 1, published::add));
+    }
+}
@@ -1,13 +1,17 @@
 package com.monepic.tradeprice.service;
 
+import com.monepic.tradeprice.cache.Page;
 import com.monepic.tradeprice.model.VendorInstrumentPrice;
 import com.monepic.tradeprice.testutils.TestData;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 public class InMemoryFilteringTradePriceServiceTest {
 
@@ -26,6 +30,25 @@ public class InMemoryFilteringTradePriceServiceTest {
         assertEquals(3, service.getAll().size());
     }
 
+    @Test
+    public void testGetPrice() {
+        assertEquals(TestData.VIP_3.get(), service.getPrice(2L, "BAY"));
+        assertNull(service.getPrice(2L, "VOD"));
+    }
+
+    @Test
+    public void testGetPage() {
+        Page<VendorInstrumentPrice> first = service.getPage(null, 2);
+        Page<VendorInstrumentPrice> second = service.getPage(first.getNextCursor(), 2);
+
+        assertEquals(2, first.getItems().size());
+        assertEquals(1, second.getItems().size());
+        assertNull(second.getNextCursor());
+        Set<VendorInstrumentPrice> all = new HashSet<>(first.getItems());
+        all.addAll(second.getItems());
+        assertEquals(Set.of(TestData.VIP_1.get(), TestData.VIP_2.get(), TestData.VIP_3.get()), all);
+    }
+
     @Test
     public void testGetByInstrument() {
         assertEquals(2, service.getByInstrument("BAY").size());
@@ -36,10 +59,19 @@ public class InMemoryFilteringTradePriceServiceTest {
         assertEquals(1, service.getByVendor(2L).size());
     }
 
+    @Test
+    public void testGetUpdatedSince() {
+        VendorInstrumentPrice vip = TestData.VIP_2.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(10));
+        service.createOrUpdate(vip);
+
+        assertEquals(3, service.getUpdatedSince(TestData.TIMESTAMP_1).size());
+        assertEquals(1, service.getUpdatedSince(TestData.TIMESTAMP_1.plusSeconds(10)).size());
+        assertEquals(0, service.getUpdatedSince(TestData.TIMESTAMP_1.plusSeconds(11)).size());
+    }
+
     @Test
     public void testUpdateAndEvict() {
-        VendorInstrumentPrice vip = TestData.VIP_2.get();
-        vip.setTimestamp(Instant.now());
+        VendorInstrumentPrice vip = TestData.VIP_2.get().withTimestamp(Instant.now());
         service.createOrUpdate(vip);
 
         service.expireOldPrices();
@@ -49,4 +81,16 @@ public class InMemoryFilteringTradePriceServiceTest {
         assertEquals(1, service.getAll().size());
     }
 
+    @Test
+    public void testBoundedByBytes() {
+        long priceSize = 64 + PriceSizeEstimator.estimate(TestData.VIP_1.get());
+        service = new InMemoryFilteringTradePriceService(RetentionPolicy.ofDays(30), new CacheLimits(0, 2 * priceSize + priceSize / 2));
+        service.createOrUpdate(TestData.VIP_1.get());
+        service.createOrUpdate(TestData.VIP_2.get());
+        service.createOrUpdate(TestData.VIP_3.get());
+
+        assertEquals(2, service.getAll().size());
+        assertEquals(1, service.getCacheStats().getEvictions());
+        assertEquals(0, service.getByInstrument("VOD").size()); // the oldest price is evicted
+    }
 }
@@ -1,13 +1,22 @@
 package com.monepic.tradeprice.service;
 
+import com.monepic.tradeprice.cache.Page;
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.Vendor;
 import com.monepic.tradeprice.model.VendorInstrumentPrice;
 import com.monepic.tradeprice.testutils.TestData;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 public class InMemoryIndexedCacheTradePriceServiceTest {
 
@@ -26,6 +35,19 @@ public class InMemoryIndexedCacheTradePriceServiceTest {
         assertEquals(3, service.getAll().size());
     }
 
+    @Test
+    public void testGetPage() {
+        Page<VendorInstrumentPrice> first = service.getPage(null, 2);
+        Page<VendorInstrumentPrice> second = service.getPage(first.getNextCursor(), 2);
+
+        assertEquals(2, first.getItems().size());
+        assertEquals(1, second.getItems().size());
+        assertNull(second.getNextCursor());
+        Set<VendorInstrumentPrice> all = new HashSet<>(first.getItems());
+        all.addAll(second.getItems());
+        assertEquals(Set.of(TestData.VIP_1.get(), TestData.VIP_2.get(), TestData.VIP_3.get()), all);
+    }
+
     @Test
     public void testGetByInstrument() {
         assertEquals(2, service.getByInstrument("BAY").size());
@@ -36,10 +58,45 @@ public class InMemoryIndexedCacheTradePriceServiceTest {
         assertEquals(1, service.getByVendor(2L).size());
     }
 
+    @Test
+    public void testGetPrice() {
+        assertEquals(TestData.VIP_3.get(), service.getPrice(2L, "BAY"));
+        assertNull(service.getPrice(2L, "VOD"));
+        assertNull(service.getPrice(null, "VOD"));
+    }
+
+    @Test
+    public void testGetUpdatedSince() {
+        VendorInstrumentPrice vip = TestData.VIP_2.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(10));
+        service.createOrUpdate(vip);
+
+        assertEquals(3, service.getUpdatedSince(TestData.TIMESTAMP_1).size());
+        assertEquals(1, service.getUpdatedSince(TestData.TIMESTAMP_1.plusSeconds(10)).size());
+        assertEquals(0, service.getUpdatedSince(TestData.TIMESTAMP_1.plusSeconds(11)).size());
+    }
+
+    @Test
+    public void testStreamUpdatedSinceReadsOneVersion() {
+        InMemoryIndexedCacheTradePriceService versioned = new InMemoryIndexedCacheTradePriceService(RetentionPolicy.ofDays(30), true);
+        versioned.createOrUpdate(TestData.VIP_1.get());
+        versioned.createOrUpdate(TestData.VIP_2.get());
+        VendorInstrumentPrice updated = TestData.VIP_2.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(10));
+        List<VendorInstrumentPrice> read;
+        try (Stream<VendorInstrumentPrice> stream = versioned.streamUpdatedSince(TestData.TIMESTAMP_1)) {
+            // the version the stream reads isn't reclaimed when it's superseded
+            versioned.createOrUpdate(updated);
+            read = stream.collect(Collectors.toList());
+        }
+        assertEquals(List.of(TestData.TIMESTAMP_1, TestData.TIMESTAMP_1),
+                read.stream().map(VendorInstrumentPrice::getTimestamp).collect(Collectors.toList()));
+        try (Stream<VendorInstrumentPrice> stream = versioned.streamUpdatedSince(TestData.TIMESTAMP_1.plusSeconds(1))) {
+            assertEquals(List.of(updated), stream.collect(Collectors.toList()));
+        }
+    }
+
     @Test
     public void testUpdateAndEvict() {
-        VendorInstrumentPrice vip = TestData.VIP_2.get();
-        vip.setTimestamp(Instant.now());
+        VendorInstrumentPrice vip = TestData.VIP_2.get().withTimestamp(Instant.now());
         service.createOrUpdate(vip);
 
         service.expireOldPrices();
@@ -48,4 +105,43 @@ public class InMemoryIndexedCacheTradePriceServiceTest {
         assertEquals(1, service.getByVendor(1L).size());
         assertEquals(1, service.getAll().size());
     }
+
+    @Test
+    public void testNewDescriptionsReplaceThePrice() {
+        VendorInstrumentPrice vip = TestData.VIP_3.get();
+        VendorInstrumentPrice renamed = new VendorInstrumentPrice(new Vendor(2L, "Vendor 2", "Second Vendor, renamed"),
+                new Instrument("BAY", "British Airways Group", vip.getInstrument().getPriceScale()),
+                vip.getScaledBid(), vip.getScaledAsk(), vip.getPriceScale(), vip.getTimestamp().plusSeconds(1));
+        assertEquals(vip, renamed);
+        service.createOrUpdate(renamed);
+
+        assertEquals(3, service.getAll().size());
+        assertEquals(1, service.getByVendor(2L).size());
+        assertEquals("Second Vendor, renamed", service.getPrice(2L, "BAY").getVendor().getDescription());
+        assertEquals("British Airways Group", service.getPrice(2L, "BAY").getInstrument().getDescription());
+    }
+
+    @Test
+    public void testCreateOrUpdateAll() {
+        VendorInstrumentPrice newer = TestData.VIP_2.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(10));
+        VendorInstrumentPrice newest = TestData.VIP_2.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(20));
+        service.createOrUpdateAll(List.of(newer, TestData.VIP_1.get(), newest));
+
+        assertEquals(3, service.getAll().size());
+        assertEquals(newest.getTimestamp(), service.getPrice(1L, "BAY").getTimestamp());
+        assertEquals(2, service.getByInstrument("BAY").size());
+        assertEquals(List.of(newest.getTimestamp(), newer.getTimestamp(), TestData.TIMESTAMP_1),
+                service.getHistory(1L, "BAY", 10).stream().map(VendorInstrumentPrice::getTimestamp).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testPriceTheBookCantHoldIsStillCached() {
+        Instrument whole = new Instrument("XYZ", "Whole Pence", 0);
+        service.createOrUpdate(new VendorInstrumentPrice(TestData.VENDOR_1, whole, 9, Long.MAX_VALUE / 2, 0, TestData.TIMESTAMP_1));
+        VendorInstrumentPrice finer = new VendorInstrumentPrice(TestData.VENDOR_2, whole, 105, 115, 1, TestData.TIMESTAMP_1);
+
+        service.createOrUpdate(finer);
+        assertEquals(finer, service.getPrice(2L, "XYZ"));
+        assertEquals(1L, service.getTopOfBook("XYZ").getBidVendorId());
+    }
 }
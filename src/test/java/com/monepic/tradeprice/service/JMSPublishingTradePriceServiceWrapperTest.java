@@ -1,5 +1,7 @@
 package com.monepic.tradeprice.service;
 
+import com.monepic.tradeprice.jms.MessagePublisher;
+import com.monepic.tradeprice.model.TopOfBook;
 import com.monepic.tradeprice.model.VendorInstrumentPrice;
 import com.monepic.tradeprice.testutils.TestData;
 import org.junit.jupiter.api.Test;
@@ -9,9 +11,18 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.jms.core.JmsTemplate;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class JMSPublishingTradePriceServiceWrapperTest {
@@ -38,4 +49,96 @@ public class JMSPublishingTradePriceServiceWrapperTest {
         assertEquals(TestData.VIP_1.get(), vipCaptor.getValue());
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testPublishesExpiredBatch() {
+        JMSPublishingTradePriceServiceWrapper wrapper = new JMSPublishingTradePriceServiceWrapper(
+                delegate, jms, destination, "expired");
+        when(delegate.expireOldPrices())
+                .thenReturn(List.of(TestData.VIP_1.get(), TestData.VIP_2.get()))
+                .thenReturn(List.of());
+
+        wrapper.expireOldPrices();
+        wrapper.expireOldPrices();
+
+        verify(jms, times(1)).convertAndSend(eq("expired"), eq(List.of(TestData.VIP_1.get(), TestData.VIP_2.get())));
+    }
+
+    @Test
+    public void testPublishesTopOfBookOnlyWhenChanged() {
+        JMSPublishingTradePriceServiceWrapper wrapper = new JMSPublishingTradePriceServiceWrapper(
+                delegate, jms, destination, null, "best");
+        TopOfBook first = new TopOfBook("VOD", 1, 1L, 1021, 1L, 1121, 2);
+        TopOfBook second = new TopOfBook("VOD", 2, 2L, 1022, 1L, 1121, 2);
+        when(delegate.getTopOfBook("VOD"))
+                .thenReturn(first)
+                .thenReturn(first)
+                .thenReturn(second);
+
+        wrapper.createOrUpdate(TestData.VIP_1.get());
+        wrapper.createOrUpdate(TestData.VIP_1.get());
+        wrapper.createOrUpdate(TestData.VIP_1.get());
+
+        verify(jms, times(1)).convertAndSend(eq("best"), eq(first));
+        verify(jms, times(1)).convertAndSend(eq("best"), eq(second));
+        verify(jms, times(2)).convertAndSend(eq("best"), any(Object.class));
+    }
+
+    @Test
+    public void testPublishesWithConflationKeys() {
+        MessagePublisher publisher = mock(MessagePublisher.class);
+        JMSPublishingTradePriceServiceWrapper wrapper = new JMSPublishingTradePriceServiceWrapper(
+                delegate, publisher, destination, "expired", "best");
+        TopOfBook top = new TopOfBook("VOD", 1, 1L, 1021, 1L, 1121, 2);
+        when(delegate.getTopOfBook("VOD")).thenReturn(top);
+        when(delegate.expireOldPrices()).thenReturn(List.of(TestData.VIP_1.get()));
+
+        wrapper.createOrUpdate(TestData.VIP_1.get());
+        wrapper.createOrUpdate(TestData.VIP_1.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(1)));
+        wrapper.createOrUpdate(TestData.VIP_2.get());
+        wrapper.expireOldPrices();
+
+        ArgumentCaptor<Object> keys = ArgumentCaptor.forClass(Object.class);
+        verify(publisher, times(3)).publish(eq(destination), keys.capture(), any(VendorInstrumentPrice.class));
+        assertEquals(keys.getAllValues().get(0), keys.getAllValues().get(1));
+        assertNotEquals(keys.getAllValues().get(0), keys.getAllValues().get(2));
+        verify(publisher).publish("best", "VOD", top);
+        verify(publisher).publish(eq("expired"), isNull(), eq(List.of(TestData.VIP_1.get())));
+    }
+
+    @Test
+    public void testCreateOrUpdateAllPublishesEachPriceAndEachTopOfBookOnce() {
+        MessagePublisher publisher = mock(MessagePublisher.class);
+        JMSPublishingTradePriceServiceWrapper wrapper = new JMSPublishingTradePriceServiceWrapper(
+                delegate, publisher, destination, null, "best");
+        TopOfBook vod = new TopOfBook("VOD", 1, 1L, 1021, 1L, 1121, 2);
+        TopOfBook bay = new TopOfBook("BAY", 1, 1L, 1021, 1L, 1121, 2);
+        when(delegate.getTopOfBook("VOD")).thenReturn(vod);
+        when(delegate.getTopOfBook("BAY")).thenReturn(bay);
+        List<VendorInstrumentPrice> prices = List.of(TestData.VIP_1.get(), TestData.VIP_2.get(), TestData.VIP_3.get());
+
+        wrapper.createOrUpdateAll(prices);
+
+        verify(delegate).createOrUpdateAll(prices);
+        verify(publisher, times(3)).publish(eq(destination), any(), any(VendorInstrumentPrice.class));
+        verify(publisher, times(1)).publish("best", "VOD", vod);
+        verify(publisher, times(1)).publish("best", "BAY", bay);
+    }
+
+    @Test
+    public void testPublishesTopOfBookWhenAPriceIsEvicted() {
+        MessagePublisher publisher = mock(MessagePublisher.class);
+        TradePriceService bounded = new InMemoryFilteringTradePriceService(RetentionPolicy.ofDays(30), new CacheLimits(1, 0));
+        JMSPublishingTradePriceServiceWrapper wrapper = new JMSPublishingTradePriceServiceWrapper(
+                bounded, publisher, destination, null, "best");
+
+        wrapper.createOrUpdate(TestData.VIP_1.get());
+        // evicts the VOD price, to make room
+        wrapper.createOrUpdate(TestData.VIP_2.get());
+
+        ArgumentCaptor<TopOfBook> tops = ArgumentCaptor.forClass(TopOfBook.class);
+        verify(publisher, times(2)).publish(eq("best"), eq("VOD"), tops.capture());
+        assertTrue(tops.getAllValues().get(1).isEmpty());
+        verify(publisher, times(1)).publish(eq("best"), eq("BAY"), any(TopOfBook.class));
+    }
+}
@@ -0,0 +1,169 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.journal.FsyncPolicy;
+import com.monepic.tradeprice.journal.PriceJournal;
+import com.monepic.tradeprice.journal.PriceSnapshot;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class JournalingTradePriceServiceWrapperTest {
+
+    @TempDir
+    Path directory;
+
+    private PriceJournal open() throws IOException {
+        return new PriceJournal(directory, 1 << 12, FsyncPolicy.NEVER, Duration.ZERO);
+    }
+
+    @Test
+    public void testRestoresFromSnapshotAndJournal() throws IOException {
+        VendorInstrumentPrice updated = TestData.VIP_2.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(1));
+        try (PriceJournal journal = open()) {
+            JournalingTradePriceServiceWrapper wrapper = new JournalingTradePriceServiceWrapper(new InMemoryIndexedCacheTradePriceService(30), journal);
+            wrapper.createOrUpdate(TestData.VIP_1.get());
+            wrapper.createOrUpdate(TestData.VIP_2.get());
+            wrapper.snapshot();
+            wrapper.createOrUpdate(updated);
+            wrapper.snapshot();
+            wrapper.createOrUpdate(TestData.VIP_3.get());
+            wrapper.snapshot();
+        }
+        // only the latest snapshots, and the journal since the earlier of them, are kept
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(4, files.count());
+        }
+
+        Set<VendorInstrumentPrice> restored = ConcurrentHashMap.newKeySet();
+        try (PriceJournal journal = open()) {
+            PriceSnapshot snapshot = PriceSnapshot.readLatest(directory, 2);
+            assertEquals(3, snapshot.getPrices().size());
+            journal.replay(snapshot.getPrices(), snapshot.getCheckpoint(), restored::add, 2);
+        }
+        InMemoryIndexedCacheTradePriceService service = new InMemoryIndexedCacheTradePriceService(30);
+        service.load(restored);
+
+        assertEquals(Set.of(TestData.VIP_1.get(), TestData.VIP_2.get(), TestData.VIP_3.get()), Set.copyOf(service.getAll()));
+        assertEquals(updated.getTimestamp(), service.getPrice(TestData.VENDOR_1.getId(), "BAY").getTimestamp());
+        assertEquals(2, service.getByInstrument("BAY").size());
+        assertNotNull(service.getTopOfBook("BAY"));
+    }
+
+    @Test
+    public void testOnlyJournalsAcceptedPrices() throws IOException {
+        TradePriceService rejecting = mock(TradePriceService.class);
+        doThrow(new IllegalStateException("rejected")).when(rejecting).createOrUpdate(any());
+        try (PriceJournal journal = open()) {
+            JournalingTradePriceServiceWrapper wrapper = new JournalingTradePriceServiceWrapper(rejecting, journal);
+            assertThrows(IllegalStateException.class, () -> wrapper.createOrUpdate(TestData.VIP_1.get()));
+        }
+        assertEquals(List.of(), replay());
+    }
+
+    @Test
+    public void testJournalsThePricesOfABatchAppliedBeforeItFailed() throws IOException {
+        // applies a batch one price at a time, as the interface does by default
+        TradePriceService rejecting = new InMemoryFilteringTradePriceService(30) {
+            @Override
+            public void createOrUpdate(VendorInstrumentPrice vip) {
+                if (vip.equals(TestData.VIP_2.get())) {
+                    throw new IllegalStateException("rejected");
+                }
+                super.createOrUpdate(vip);
+            }
+        };
+        try (PriceJournal journal = open()) {
+            JournalingTradePriceServiceWrapper wrapper = new JournalingTradePriceServiceWrapper(rejecting, journal);
+            PartialUpdateException e = assertThrows(PartialUpdateException.class,
+                    () -> wrapper.createOrUpdateAll(List.of(TestData.VIP_1.get(), TestData.VIP_2.get(), TestData.VIP_3.get())));
+            assertEquals(1, e.getApplied());
+        }
+        assertEquals(List.of(TestData.VIP_1.get()), replay());
+    }
+
+    @Test
+    public void testJournalsEvictions() throws IOException {
+        TradePriceService bounded = new InMemoryIndexedCacheTradePriceService(RetentionPolicy.ofDays(30), false, new CacheLimits(2, 0));
+        try (PriceJournal journal = open()) {
+            JournalingTradePriceServiceWrapper wrapper = new JournalingTradePriceServiceWrapper(bounded, journal);
+            wrapper.createOrUpdate(TestData.VIP_1.get());
+            wrapper.createOrUpdate(TestData.VIP_2.get());
+            wrapper.createOrUpdate(TestData.VIP_3.get());
+        }
+        assertEquals(Set.copyOf(bounded.getAll()), Set.copyOf(replay()));
+        assertEquals(2, replay().size());
+    }
+
+    @Test
+    public void testCloseStopsSnapshots() throws Exception {
+        try (PriceJournal journal = open()) {
+            JournalingTradePriceServiceWrapper wrapper = new JournalingTradePriceServiceWrapper(new InMemoryIndexedCacheTradePriceService(30), journal);
+            wrapper.createOrUpdate(TestData.VIP_1.get());
+            wrapper.scheduleSnapshots(Duration.ofMillis(1));
+            while (PriceSnapshot.readLatest(directory, 1) == null) {
+                Thread.sleep(1);
+            }
+            wrapper.close();
+            long checkpoint = PriceSnapshot.readLatest(directory, 1).getCheckpoint();
+            wrapper.createOrUpdate(TestData.VIP_2.get());
+            Thread.sleep(50);
+            assertEquals(checkpoint, PriceSnapshot.readLatest(directory, 1).getCheckpoint());
+        }
+    }
+
+    @Test
+    public void testReplaysTheCachedPriceWhenConcurrentWritesAreJournaledOutOfOrder() throws IOException {
+        VendorInstrumentPrice older = TestData.VIP_1.get();
+        VendorInstrumentPrice newer = older.withTimestamp(TestData.TIMESTAMP_1.plusSeconds(1));
+        JournalingTradePriceServiceWrapper[] wrapper = new JournalingTradePriceServiceWrapper[1];
+        // a second writer caches and journals the newer price between the first caching the older one and journaling it
+        TradePriceService interleaving = new InMemoryFilteringTradePriceService(30) {
+            @Override
+            public void createOrUpdate(VendorInstrumentPrice vip) {
+                super.createOrUpdate(vip);
+                if (vip == older) {
+                    wrapper[0].createOrUpdate(newer);
+                }
+            }
+        };
+        try (PriceJournal journal = open()) {
+            wrapper[0] = new JournalingTradePriceServiceWrapper(interleaving, journal);
+            wrapper[0].createOrUpdate(older);
+            assertEquals(newer.getTimestamp(), interleaving.getPrice(1L, "VOD").getTimestamp());
+        }
+
+        List<VendorInstrumentPrice> replayed = replay();
+        assertEquals(1, replayed.size());
+        assertEquals(newer.getTimestamp(), replayed.get(0).getTimestamp());
+    }
+
+    private List<VendorInstrumentPrice> replay() throws IOException {
+        List<VendorInstrumentPrice> replayed = new ArrayList<>();
+        try (PriceJournal journal = open()) {
+            journal.replay(vip -> {
+                synchronized (replayed) {
+                    replayed.add(vip);
+                }
+            }, 1);
+        }
+        return replayed;
+    }
+}
@@ -0,0 +1,206 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.cache.CacheStats;
+import com.monepic.tradeprice.cache.Page;
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffHeapColumnarTradePriceServiceTest {
+
+    private OffHeapColumnarTradePriceService service;
+
+    @BeforeEach
+    void init() {
+        service = new OffHeapColumnarTradePriceService(RetentionPolicy.ofDays(30));
+        service.createOrUpdate(TestData.VIP_1.get());
+        service.createOrUpdate(TestData.VIP_2.get());
+        service.createOrUpdate(TestData.VIP_3.get());
+    }
+
+    @Test
+    public void testGetAll() {
+        assertEquals(3, service.getAll().size());
+    }
+
+    @Test
+    public void testGetPrice() {
+        assertEquals(TestData.VIP_3.get(), service.getPrice(2L, "BAY"));
+        assertNull(service.getPrice(2L, "VOD"));
+    }
+
+    @Test
+    public void testGetPage() {
+        Page<VendorInstrumentPrice> first = service.getPage(null, 2);
+        Page<VendorInstrumentPrice> second = service.getPage(first.getNextCursor(), 2);
+
+        assertEquals(2, first.getItems().size());
+        assertEquals(1, second.getItems().size());
+        assertNull(second.getNextCursor());
+        Set<VendorInstrumentPrice> all = new HashSet<>(first.getItems());
+        all.addAll(second.getItems());
+        assertEquals(Set.of(TestData.VIP_1.get(), TestData.VIP_2.get(), TestData.VIP_3.get()), all);
+    }
+
+    @Test
+    public void testGetByInstrument() {
+        assertEquals(2, service.getByInstrument("BAY").size());
+    }
+
+    @Test
+    public void testGetByVendor() {
+        assertEquals(List.of(TestData.VIP_3.get()), service.getByVendor(2L));
+        assertEquals(0, service.getByVendor(3L).size());
+    }
+
+    @Test
+    public void testRoundTripsPrices() {
+        VendorInstrumentPrice vip = TestData.VIP_1.get();
+        VendorInstrumentPrice stored = service.getByInstrument("VOD").iterator().next();
+
+        assertEquals(vip.getVendor(), stored.getVendor());
+        assertEquals(vip.getInstrument(), stored.getInstrument());
+        assertEquals(vip.getBid(), stored.getBid());
+        assertEquals(vip.getAsk(), stored.getAsk());
+        assertEquals(vip.getTimestamp(), stored.getTimestamp());
+    }
+
+    @Test
+    public void testUpdateReplacesInPlace() {
+        VendorInstrumentPrice vip = new VendorInstrumentPrice(TestData.VENDOR_1, TestData.INSTRUMENT_VOD,
+                new BigDecimal("10.5000"), new BigDecimal("11.21"), Instant.parse("2020-01-01T00:00:00.123456789Z"));
+        service.createOrUpdate(vip);
+
+        VendorInstrumentPrice stored = service.getByInstrument("VOD").iterator().next();
+        assertEquals(new BigDecimal("10.5"), stored.getBid());
+        assertEquals(vip.getTimestamp(), stored.getTimestamp());
+        assertEquals(3, service.getAll().size());
+        assertEquals(3, service.getCacheStats().getEntries());
+    }
+
+    /**
+     * The columns hold any fixed-point price, so one which can't be held as one is rejected before it reaches the service
+     */
+    @Test
+    public void testRejectsUnrepresentablePrices() {
+        VendorInstrumentPrice vip = TestData.VIP_1.get();
+        assertThrows(IllegalArgumentException.class, () -> service.createOrUpdate(new VendorInstrumentPrice(vip.getVendor(),
+                vip.getInstrument(), new BigDecimal("12345678901234567890.5"), vip.getAsk(), vip.getTimestamp())));
+        assertEquals(vip, service.getPrice(vip.getVendor().getId(), vip.getInstrument().getSymbol()));
+    }
+
+    @Test
+    public void testGetUpdatedSince() {
+        VendorInstrumentPrice vip = TestData.VIP_2.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(10));
+        service.createOrUpdate(vip);
+
+        assertEquals(3, service.getUpdatedSince(TestData.TIMESTAMP_1).size());
+        assertEquals(1, service.getUpdatedSince(TestData.TIMESTAMP_1.plusSeconds(10)).size());
+        assertEquals(0, service.getUpdatedSince(TestData.TIMESTAMP_1.plusSeconds(11)).size());
+    }
+
+    @Test
+    public void testUpdateAndEvict() {
+        VendorInstrumentPrice vip = TestData.VIP_2.get().withTimestamp(Instant.now());
+        service.createOrUpdate(vip);
+
+        assertEquals(2, service.expireOldPrices().size());
+        assertEquals(0, service.expireOldPrices().size());
+
+        assertEquals(0, service.getByVendor(2L).size());
+        assertEquals(1, service.getByVendor(1L).size());
+        assertEquals(1, service.getAll().size());
+
+        service.createOrUpdate(TestData.VIP_3.get().withTimestamp(Instant.now()));
+        assertEquals(1, service.getByVendor(2L).size());
+    }
+
+    @Test
+    public void testReusesFreedSlots() {
+        service.createOrUpdate(TestData.VIP_1.get().withTimestamp(Instant.now()));
+        assertEquals(2, service.expireOldPrices().size());
+
+        Vendor vendor3 = new Vendor(3L, "Vendor 3", "Third Vendor");
+        VendorInstrumentPrice vip4 = new VendorInstrumentPrice(vendor3, TestData.INSTRUMENT_VOD, BigDecimal.ONE, BigDecimal.TEN, Instant.now()),
+                vip5 = new VendorInstrumentPrice(vendor3, new Instrument("BP", "BP"), BigDecimal.ONE, BigDecimal.TEN, Instant.now());
+        service.createOrUpdate(vip4);
+        service.createOrUpdate(vip5);
+
+        // the two new prices took the two freed slots, rather than new ones
+        assertEquals(Page.cursor(2), service.getPage(null, 2).getNextCursor());
+        assertEquals(Set.of(vip4, vip5), Set.copyOf(service.getByVendor(3L)));
+        assertEquals(0, service.getByVendor(2L).size());
+        assertEquals(0, service.getByInstrument("BAY").size());
+        assertEquals(2, service.getByInstrument("VOD").size());
+        assertNull(service.getPrice(1L, "BAY"));
+        assertEquals(3, service.getAll().size());
+    }
+
+    @Test
+    public void testBoundedEvictsPricesNotUpdatedSinceTheClockPassed() {
+        service = new OffHeapColumnarTradePriceService(RetentionPolicy.ofDays(30), new CacheLimits(3, 0));
+        service.createOrUpdate(TestData.VIP_1.get());
+        service.createOrUpdate(TestData.VIP_2.get());
+        service.createOrUpdate(TestData.VIP_3.get());
+        service.createOrUpdate(TestData.VIP_1.get().withTimestamp(TestData.TIMESTAMP_1.plusSeconds(1)));
+
+        VendorInstrumentPrice vip4 = new VendorInstrumentPrice(new Vendor(3L, "Vendor 3", "Third Vendor"), TestData.INSTRUMENT_BAY,
+                BigDecimal.ONE, BigDecimal.TEN, TestData.TIMESTAMP_1);
+        service.createOrUpdate(vip4);
+
+        assertEquals(Set.of(TestData.VIP_1.get(), TestData.VIP_3.get(), vip4), Set.copyOf(service.getAll()));
+        assertNull(service.getPrice(1L, "BAY"));
+        assertEquals(Set.of(TestData.VIP_3.get(), vip4), Set.copyOf(service.getByInstrument("BAY")));
+        assertEquals(2, service.getDepth("BAY").getBids().size());
+        CacheStats stats = service.getCacheStats();
+        assertEquals(3, stats.getEntries());
+        assertEquals(1, stats.getEvictions());
+    }
+
+    @Test
+    public void testReadsWhileExpiring() throws Exception {
+        // every price is long expired, so each round's are released again at once
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicBoolean done = new AtomicBoolean();
+        Future<?> writer = executor.submit(() -> {
+            while (!done.get()) {
+                service.createOrUpdate(TestData.VIP_1.get());
+                service.createOrUpdate(TestData.VIP_2.get());
+                service.createOrUpdate(TestData.VIP_3.get());
+                service.expireOldPrices();
+            }
+        });
+        try {
+            for (int i = 0; i < 200_000; i++) {
+                assertTrue(service.getAll().size() <= 3);
+                service.getPage(null, 2);
+                service.getByInstrument("BAY").forEach(vip -> assertEquals("BAY", vip.getInstrument().getSymbol()));
+                VendorInstrumentPrice vip = service.getPrice(2L, "BAY");
+                assertTrue(vip == null || vip.equals(TestData.VIP_3.get()));
+            }
+        } finally {
+            done.set(true);
+            executor.shutdown();
+        }
+        writer.get(10, TimeUnit.SECONDS);
+    }
+}
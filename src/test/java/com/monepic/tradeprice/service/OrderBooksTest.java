@@ -0,0 +1,168 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.model.Depth;
+import com.monepic.tradeprice.model.Instrument;
+import com.monepic.tradeprice.model.TopOfBook;
+import com.monepic.tradeprice.model.Vendor;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OrderBooksTest {
+
+    // stands in for the cache the books follow
+    private final Map<VendorInstrumentPrice, VendorInstrumentPrice> cache = new HashMap<>();
+    private final OrderBooks books = new OrderBooks(cache::get);
+
+    private boolean update(VendorInstrumentPrice vip) {
+        cache.put(vip, vip);
+        return books.refresh(vip);
+    }
+
+    private boolean remove(VendorInstrumentPrice vip) {
+        cache.remove(vip);
+        return books.refresh(vip);
+    }
+
+    @Test
+    public void testTopOfBook() {
+        assertNull(books.getTopOfBook("BAY"));
+
+        // VIP_2 is 11/12 from Vendor 1, VIP_3 is 10.5/11.5 from Vendor 2
+        assertTrue(update(TestData.VIP_2.get()));
+        assertTrue(update(TestData.VIP_3.get()));
+
+        TopOfBook top = books.getTopOfBook("BAY");
+        assertEquals(1L, top.getBidVendorId());
+        assertEquals(new BigDecimal("11"), top.getBid());
+        assertEquals(2L, top.getAskVendorId());
+        assertEquals(new BigDecimal("11.5"), top.getAsk());
+        assertEquals(2, top.getSequence());
+        assertNull(books.getTopOfBook("VOD"));
+    }
+
+    @Test
+    public void testOnlyChangesOnNewTop() {
+        update(TestData.VIP_2.get());
+        update(TestData.VIP_3.get());
+
+        // a worse bid from Vendor 2 doesn't change the top
+        VendorInstrumentPrice worse = new VendorInstrumentPrice(TestData.VENDOR_2, TestData.INSTRUMENT_BAY,
+                new BigDecimal("10"), new BigDecimal("11.5"), TestData.TIMESTAMP_1);
+        assertFalse(update(worse));
+        assertEquals(2, books.getTopOfBook("BAY").getSequence());
+
+        // Vendor 1 replacing its own best bid does
+        VendorInstrumentPrice lower = new VendorInstrumentPrice(TestData.VENDOR_1, TestData.INSTRUMENT_BAY,
+                new BigDecimal("9"), new BigDecimal("12"), TestData.TIMESTAMP_1);
+        assertTrue(update(lower));
+        TopOfBook top = books.getTopOfBook("BAY");
+        assertEquals(3, top.getSequence());
+        assertEquals(2L, top.getBidVendorId());
+        assertEquals(new BigDecimal("10"), top.getBid());
+        assertEquals(2L, top.getAskVendorId());
+        assertEquals(new BigDecimal("11.5"), top.getAsk());
+    }
+
+    @Test
+    public void testRemove() {
+        VendorInstrumentPrice vip2 = TestData.VIP_2.get();
+        update(vip2);
+        update(TestData.VIP_3.get());
+
+        // a refresh for a price the cache has since replaced leaves its replacement
+        assertFalse(books.refresh(vip2.withTimestamp(TestData.TIMESTAMP_1.minusSeconds(1))));
+        assertEquals(1L, books.getTopOfBook("BAY").getBidVendorId());
+        assertTrue(remove(TestData.VIP_2.get()));
+        assertEquals(2L, books.getTopOfBook("BAY").getBidVendorId());
+
+        assertTrue(remove(TestData.VIP_3.get()));
+        assertTrue(books.getTopOfBook("BAY").isEmpty());
+    }
+
+    @Test
+    public void testDepth() {
+        update(TestData.VIP_2.get());
+        update(TestData.VIP_3.get());
+
+        Depth depth = books.getDepth("BAY");
+        assertEquals(2, depth.getBids().size());
+        assertEquals(1L, depth.getBids().get(0).getVendorId());
+        assertEquals(2L, depth.getBids().get(1).getVendorId());
+        assertEquals(2L, depth.getAsks().get(0).getVendorId());
+        assertEquals(new BigDecimal("11.5"), depth.getAsks().get(0).getPrice());
+        assertEquals(depth, books.getDepth("BAY"));
+
+        remove(TestData.VIP_3.get());
+        assertEquals(1, books.getDepth("BAY").getAsks().size());
+    }
+
+    @Test
+    public void testMixedScales() {
+        Instrument coarse = new Instrument("BAY", "British Airways", 2);
+        update(new VendorInstrumentPrice(TestData.VENDOR_1, coarse, new BigDecimal("10.25"), new BigDecimal("11"), TestData.TIMESTAMP_1));
+        update(new VendorInstrumentPrice(TestData.VENDOR_2, TestData.INSTRUMENT_BAY, new BigDecimal("10.2501"), new BigDecimal("10.9999"), TestData.TIMESTAMP_1));
+
+        TopOfBook top = books.getTopOfBook("BAY");
+        assertEquals(2L, top.getBidVendorId());
+        assertEquals(new BigDecimal("10.2501"), top.getBid());
+        assertEquals(new BigDecimal("10.9999"), top.getAsk());
+    }
+
+    @Test
+    public void testFollowsTheCacheWhateverOrderItsToldIn() {
+        VendorInstrumentPrice older = TestData.VIP_2.get();
+        VendorInstrumentPrice newer = new VendorInstrumentPrice(TestData.VENDOR_1, TestData.INSTRUMENT_BAY,
+                new BigDecimal("10"), new BigDecimal("10.5"), TestData.TIMESTAMP_1.plusSeconds(1));
+        // two writers cache their prices in one order, then reach the book in the other
+        cache.put(older, older);
+        cache.put(newer, newer);
+        assertTrue(books.refresh(newer));
+        assertFalse(books.refresh(older));
+
+        TopOfBook top = books.getTopOfBook("BAY");
+        assertEquals(new BigDecimal("10"), top.getBid());
+        assertEquals(new BigDecimal("10.5"), top.getAsk());
+        assertEquals(TestData.TIMESTAMP_1.plusSeconds(1), books.getDepth("BAY").getBids().get(0).getTimestamp());
+    }
+
+    @Test
+    public void testPriceTheBookCantHoldLeavesItConsistent() {
+        Instrument whole = new Instrument("BAY", "British Airways", 0);
+        Vendor vendor3 = new Vendor(3L, "Vendor 3", "Third Vendor");
+        update(new VendorInstrumentPrice(TestData.VENDOR_1, whole, 10, 11, 0, TestData.TIMESTAMP_1));
+        update(new VendorInstrumentPrice(TestData.VENDOR_2, whole, 9, Long.MAX_VALUE / 2, 0, TestData.TIMESTAMP_1));
+
+        // Vendor 2's ask can't be held to a decimal place, so Vendor 3's price is left out rather than half-rescaling the book
+        assertFalse(update(new VendorInstrumentPrice(vendor3, whole, 105, 115, 1, TestData.TIMESTAMP_1)));
+        Depth depth = books.getDepth("BAY");
+        assertEquals(2, depth.getBids().size());
+        assertEquals(new BigDecimal("10"), depth.getBids().get(0).getPrice());
+
+        // so Vendor 1's next price replaces its quote, rather than leaving a stale one behind
+        assertTrue(update(new VendorInstrumentPrice(TestData.VENDOR_1, whole, 8, 12, 0, TestData.TIMESTAMP_1.plusSeconds(1))));
+        depth = books.getDepth("BAY");
+        assertEquals(2, depth.getBids().size());
+        assertEquals(2L, depth.getBids().get(0).getVendorId());
+        assertEquals(new BigDecimal("8"), depth.getBids().get(1).getPrice());
+
+        // and a price of Vendor 1's the book can't hold takes its superseded quote out of the book
+        assertTrue(update(new VendorInstrumentPrice(TestData.VENDOR_1, whole, 75, 125, 1, TestData.TIMESTAMP_1.plusSeconds(2))));
+        depth = books.getDepth("BAY");
+        assertEquals(1, depth.getBids().size());
+        assertEquals(2L, depth.getBids().get(0).getVendorId());
+        assertEquals(1, depth.getAsks().size());
+
+        assertTrue(remove(new VendorInstrumentPrice(TestData.VENDOR_2, whole, 9, Long.MAX_VALUE / 2, 0, TestData.TIMESTAMP_1)));
+        assertTrue(books.getTopOfBook("BAY").isEmpty());
+    }
+}
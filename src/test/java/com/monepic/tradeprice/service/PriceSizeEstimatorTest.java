@@ -0,0 +1,35 @@
+package com.monepic.tradeprice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monepic.tradeprice.model.PriceJsonModule;
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PriceSizeEstimatorTest {
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .registerModule(new PriceJsonModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    public void testCountsTheJsonKeptOnAPrice() throws IOException {
+        VendorInstrumentPrice vip = TestData.VIP_1.get();
+        long estimate = PriceSizeEstimator.estimate(vip);
+        int length = mapper.writeValueAsString(vip).length();
+        int predicted = PriceSizeEstimator.jsonLength(vip);
+        // allowing for the longest timestamp, and the price scale's trailing zeros
+        assertTrue(predicted >= length && predicted <= length + 32, predicted + " vs " + length);
+        assertTrue(estimate > 2L * length, Long.toString(estimate));
+        // the same, now the price has its JSON
+        assertEquals(estimate, PriceSizeEstimator.estimate(vip));
+    }
+}
@@ -0,0 +1,30 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RetentionPolicyTest {
+
+    private final RetentionPolicy policy = new RetentionPolicy(Duration.ofDays(30),
+            Map.of(1L, Duration.ofDays(7)),
+            Map.of("BAY", Duration.ofDays(1), "VOD", Duration.ofDays(10)));
+
+    @Test
+    public void testDefault() {
+        RetentionPolicy defaults = RetentionPolicy.ofDays(30);
+        assertEquals(Duration.ofDays(30), defaults.retentionFor(TestData.VIP_1.get()));
+        assertEquals(TestData.TIMESTAMP_1.plus(Duration.ofDays(30)).toEpochMilli(), defaults.expiresAt(TestData.VIP_1.get()));
+    }
+
+    @Test
+    public void testShortestOverrideWins() {
+        assertEquals(Duration.ofDays(7), policy.retentionFor(TestData.VIP_1.get())); // vendor 1, VOD
+        assertEquals(Duration.ofDays(1), policy.retentionFor(TestData.VIP_2.get())); // vendor 1, BAY
+        assertEquals(Duration.ofDays(1), policy.retentionFor(TestData.VIP_3.get())); // vendor 2, BAY
+    }
+}
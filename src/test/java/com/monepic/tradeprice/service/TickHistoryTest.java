@@ -0,0 +1,123 @@
+package com.monepic.tradeprice.service;
+
+import com.monepic.tradeprice.model.VendorInstrumentPrice;
+import com.monepic.tradeprice.testutils.TestData;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TickHistoryTest {
+
+    // stands in for the cache the histories follow
+    private final Map<VendorInstrumentPrice, VendorInstrumentPrice> cache = new HashMap<>();
+
+    private static VendorInstrumentPrice tick(int second) {
+        return new VendorInstrumentPrice(TestData.VENDOR_1, TestData.INSTRUMENT_VOD,
+                BigDecimal.valueOf(second), BigDecimal.valueOf(second + 1), TestData.TIMESTAMP_1.plusSeconds(second));
+    }
+
+    private static List<Long> seconds(List<VendorInstrumentPrice> ticks) {
+        return ticks.stream().map(vip -> vip.getTimestamp().getEpochSecond() - TestData.TIMESTAMP_1.getEpochSecond())
+                .collect(Collectors.toList());
+    }
+
+    private static List<Long> history(TickHistory history, int limit) {
+        return seconds(history.getHistory(TestData.VENDOR_1.getId(), "VOD", limit));
+    }
+
+    @Test
+    public void testKeepsLatestTicksNewestFirst() {
+        TickHistory history = new TickHistory(20, cache::get);
+        for (int i = 0; i < 30; i++) {
+            history.record(tick(i));
+        }
+        assertEquals(List.of(29L, 28L, 27L), history(history, 3));
+        assertEquals(20, history(history, 100).size());
+        assertEquals(10L, history(history, 100).get(19));
+
+        VendorInstrumentPrice latest = history.getHistory(TestData.VENDOR_1.getId(), "VOD", 1).get(0);
+        assertEquals(0, new BigDecimal("29").compareTo(latest.getBid()));
+        assertEquals(0, new BigDecimal("30").compareTo(latest.getAsk()));
+        assertEquals(TestData.VENDOR_1, latest.getVendor());
+
+        assertNull(history.getHistory(TestData.VENDOR_2.getId(), "VOD", 1));
+        assertNull(history.getHistory(TestData.VENDOR_1.getId(), "BAY", 1));
+    }
+
+    @Test
+    public void testOrdersLateTicks() {
+        TickHistory history = new TickHistory(4, cache::get);
+        for (int second : new int[]{1, 3, 2, 5, 3, 0, 4}) {
+            history.record(tick(second));
+        }
+        // 3 was resent, and 0 was too old to keep by the time it arrived
+        assertEquals(List.of(5L, 4L, 3L, 2L), history(history, 10));
+    }
+
+    @Test
+    public void testPriceAt() {
+        TickHistory history = new TickHistory(10, cache::get);
+        for (int i = 0; i < 15; i += 2) {
+            history.record(tick(i));
+        }
+        Instant base = TestData.TIMESTAMP_1;
+        long vendorId = TestData.VENDOR_1.getId();
+        assertEquals(base.plusSeconds(6), history.getPriceAt(vendorId, "VOD", base.plusSeconds(7)).getTimestamp());
+        assertEquals(base.plusSeconds(6), history.getPriceAt(vendorId, "VOD", base.plusSeconds(6)).getTimestamp());
+        assertEquals(base.plusSeconds(14), history.getPriceAt(vendorId, "VOD", base.plusSeconds(100)).getTimestamp());
+        assertEquals(base, history.getPriceAt(vendorId, "VOD", base.plusMillis(1)).getTimestamp());
+        assertNull(history.getPriceAt(vendorId, "VOD", base.minusNanos(1)));
+    }
+
+    @Test
+    public void testRemovesOnlyIfUncached() {
+        TickHistory history = new TickHistory(10, cache::get);
+        history.record(tick(1));
+        cache.put(tick(2), tick(2));
+        history.record(tick(2));
+        // tick 1 expiring after tick 2 replaced it in the cache leaves the history
+        history.remove(tick(1));
+        assertEquals(List.of(2L, 1L), history(history, 10));
+
+        cache.remove(tick(2));
+        history.remove(tick(2));
+        assertNull(history.getHistory(TestData.VENDOR_1.getId(), "VOD", 10));
+        history.record(tick(3));
+        assertEquals(List.of(3L), history(history, 10));
+    }
+
+    @Test
+    public void testRemovesWhateverOrderTicksWereRecordedIn() {
+        TickHistory history = new TickHistory(10, cache::get);
+        // two writers cache ticks 1 then 2, but record them the other way round
+        cache.put(tick(2), tick(2));
+        history.record(tick(2));
+        history.record(tick(1));
+        cache.remove(tick(2));
+        history.remove(tick(2));
+        assertNull(history.getHistory(TestData.VENDOR_1.getId(), "VOD", 10));
+
+        // as is one whose latest tick was too old to keep in a full history
+        history = new TickHistory(2, cache::get);
+        for (int second : new int[]{3, 4, 0}) {
+            history.record(tick(second));
+        }
+        history.remove(tick(0));
+        assertNull(history.getHistory(TestData.VENDOR_1.getId(), "VOD", 10));
+    }
+
+    @Test
+    public void testDisabled() {
+        TickHistory history = new TickHistory(0, cache::get);
+        history.record(tick(1));
+        assertNull(history.getHistory(TestData.VENDOR_1.getId(), "VOD", 10));
+    }
+}
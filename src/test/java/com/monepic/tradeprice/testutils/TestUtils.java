@@ -1,5 +1,7 @@
 package com.monepic.tradeprice.testutils;
 
+import com.monepic.tradeprice.model.ReferenceDataRegistry;
+import com.monepic.tradeprice.model.requests.NewPriceRequestValidator;
 import org.apache.commons.io.FileUtils;
 import org.mockito.stubbing.Stubber;
 import org.springframework.boot.test.util.TestPropertyValues;
@@ -8,8 +10,6 @@ import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.ClassPathResource;
 
-import javax.validation.Validation;
-import javax.validation.Validator;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -45,7 +45,10 @@ public class TestUtils {
 
     public static class TestContext {
         @Bean
-        public Validator validator() { return Validation.buildDefaultValidatorFactory().getValidator(); }
+        public NewPriceRequestValidator validator() { return new NewPriceRequestValidator(); }
+
+        @Bean
+        public ReferenceDataRegistry referenceDataRegistry() { return new ReferenceDataRegistry(); }
     }
 
     public static void copyFile(String resourceName, String targetFolder) {
@@ -0,0 +1,75 @@
+package com.monepic.tradeprice.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FixedPointTest {
+
+    @Test
+    public void testParse() {
+        assertEquals(1234, FixedPoint.parse("12.34", 2));
+        assertEquals(123400, FixedPoint.parse("12.34", 4));
+        assertEquals(-1200, FixedPoint.parse("-12", 2));
+        assertEquals(50, FixedPoint.parse(".5", 2));
+        assertEquals(1200, FixedPoint.parse("+12.", 2));
+        assertEquals(1234, FixedPoint.parse("12.3400", 2)); // trailing zeros beyond the scale are fine
+        assertEquals(1234, FixedPoint.parse("x12.34y", 1, 6, 2));
+    }
+
+    @Test
+    public void testParseRejects() {
+        assertThrows(IllegalArgumentException.class, () -> FixedPoint.parse("12.345", 2));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("12.3.4", 2));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("1e5", 2));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("-", 2));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("", 2));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("92233720368547758.08", 2));
+        assertThrows(IllegalArgumentException.class, () -> FixedPoint.parse("1", 19));
+    }
+
+    @Test
+    public void testBigDecimalConversions() {
+        assertEquals(1021000000L, FixedPoint.of(new BigDecimal("10.21"), 8));
+        assertEquals(new BigDecimal("10.21"), FixedPoint.toBigDecimal(1021000000L, 8));
+        assertEquals(new BigDecimal("1100"), FixedPoint.toBigDecimal(110000000000L, 8)); // no negative scale
+        assertEquals(new BigDecimal("0"), FixedPoint.toBigDecimal(0, 8));
+        assertThrows(IllegalArgumentException.class, () -> FixedPoint.of(new BigDecimal("10.215"), 2));
+        assertThrows(IllegalArgumentException.class, () -> FixedPoint.of(new BigDecimal("12345678901234567890.5"), 2));
+    }
+
+    @Test
+    public void testRescaleAndCompare() {
+        assertEquals(123400, FixedPoint.rescale(1234, 2, 4));
+        assertEquals(1234, FixedPoint.rescale(123400, 4, 2));
+        assertThrows(IllegalArgumentException.class, () -> FixedPoint.rescale(123456, 4, 2));
+        assertEquals(0, FixedPoint.compare(1234, 2, 123400, 4));
+        assertEquals(-1, Integer.signum(FixedPoint.compare(1233, 2, 123400, 4)));
+    }
+
+    @Test
+    public void testCompareText() {
+        String[] ascending = {"-100", "-12.5", "-12.49", "-.5", "0", "0.000001", ".5", "00.50001", "+1", "1.0001", "9.99", "10",
+                "12345678901234567890.5"};
+        for (int i = 0; i < ascending.length; i++) {
+            for (int j = 0; j < ascending.length; j++) {
+                assertEquals(Integer.signum(Integer.compare(i, j)), Integer.signum(FixedPoint.compare(ascending[i], ascending[j])),
+                        ascending[i] + " vs " + ascending[j]);
+                assertEquals(Integer.signum(new BigDecimal(ascending[i]).compareTo(new BigDecimal(ascending[j]))),
+                        Integer.signum(FixedPoint.compare(ascending[i], ascending[j])));
+            }
+        }
+        assertEquals(0, FixedPoint.compare("-0.0", "0"));
+        assertEquals(0, FixedPoint.compare("12.", "012.000"));
+        assertFalse(FixedPoint.isDecimal("1e5"));
+        assertFalse(FixedPoint.isDecimal("."));
+        assertFalse(FixedPoint.isDecimal(" 1"));
+        assertTrue(FixedPoint.isDecimal("-.5"));
+        assertThrows(IllegalArgumentException.class, () -> FixedPoint.compare("1.2.3", "1"));
+    }
+}
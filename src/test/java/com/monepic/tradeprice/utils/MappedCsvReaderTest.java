@@ -0,0 +1,170 @@
+package com.monepic.tradeprice.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedCsvReaderTest {
+
+    @TempDir
+    Path dir;
+
+    private Path write(String csv) throws IOException {
+        return Files.write(dir.resolve("test.csv"), csv.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<List<String>> readAll(MappedCsvReader reader) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        while (reader.next()) {
+            List<String> record = new ArrayList<>();
+            for (int i = 0; i < reader.size(); i++) {
+                record.add(reader.getString(i));
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Test
+    public void testQuotesAndLineEndings() throws IOException {
+        Path file = write("﻿a,b,c\r\n"
+                + "1,\"two, \"\"quoted\"\"\",3\r\n"
+                + "\r\n"
+                + "\"multi\nline\",,\n"
+                + "x,\"\",z");
+        try (MappedCsvReader reader = new MappedCsvReader(file)) {
+            assertTrue(reader.next());
+            assertEquals(List.of("a", "b", "c"), List.of(reader.getString(0), reader.getString(1), reader.getString(2)));
+            assertTrue(reader.next());
+            assertEquals(2, reader.getLine());
+            assertEquals("two, \"quoted\"", reader.getString(1));
+            assertTrue(reader.next());
+            assertEquals(4, reader.getLine());
+            assertEquals(List.of("multi\nline", "", ""), List.of(reader.getString(0), reader.getString(1), reader.getString(2)));
+            assertTrue(reader.next());
+            assertEquals(6, reader.getLine());
+            assertEquals(3, reader.size());
+            assertTrue(reader.isEmpty(1));
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void testSmallWindows() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        List<List<String>> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            csv.append(i).append(",\"quoted ").append(i).append("\",").append(i * 1.5).append('\n');
+            expected.add(List.of(String.valueOf(i), "quoted " + i, String.valueOf(i * 1.5)));
+        }
+        // records and quoted fields straddle the windows
+        try (MappedCsvReader reader = new MappedCsvReader(write(csv.toString()), 7)) {
+            assertEquals(expected, readAll(reader));
+        }
+    }
+
+    @Test
+    public void testNumbers() throws IOException {
+        try (MappedCsvReader reader = new MappedCsvReader(write("-42,+7,10.25,x,9223372036854775808,café"))) {
+            assertTrue(reader.next());
+            assertEquals(-42, reader.getLong(0));
+            assertEquals(7, reader.getLong(1));
+            assertEquals(10250, reader.getFixedPoint(2, 3));
+            assertThrows(NumberFormatException.class, () -> reader.getLong(3));
+            assertThrows(NumberFormatException.class, () -> reader.getFixedPoint(3, 2));
+            assertThrows(IllegalArgumentException.class, () -> reader.getFixedPoint(2, 1));
+            assertThrows(NumberFormatException.class, () -> reader.getLong(4));
+            assertTrue(reader.matches(5, "café"));
+            assertFalse(reader.matches(5, "cafe"));
+            assertEquals("café".getBytes(StandardCharsets.UTF_8).length, reader.getString(5).getBytes(StandardCharsets.UTF_8).length);
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.getString(6));
+        }
+    }
+
+    @Test
+    public void testMalformedRecords() throws IOException {
+        try (MappedCsvReader reader = new MappedCsvReader(write("\"a\"b,c\nd,e\n\"unterminated"))) {
+            assertThrows(IllegalArgumentException.class, reader::next);
+            // carries on from the next line
+            assertTrue(reader.next());
+            assertEquals("d", reader.getString(0));
+            assertThrows(IllegalArgumentException.class, reader::next);
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void testSplitAtRecordBoundaries() throws IOException {
+        StringBuilder csv = new StringBuilder("header\n");
+        List<List<String>> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            csv.append(i).append(",\"line\nbreak, \"\"").append(i).append("\"\"\"\n");
+            expected.add(List.of(String.valueOf(i), "line\nbreak, \"" + i + "\""));
+        }
+        Path file = write(csv.toString());
+        List<MappedCsvReader.Range> ranges;
+        try (MappedCsvReader reader = new MappedCsvReader(file)) {
+            assertTrue(reader.next());
+            ranges = reader.split(40);
+            assertEquals("header", reader.getString(0));
+        }
+        assertTrue(ranges.size() > 10);
+
+        List<List<String>> read = new ArrayList<>();
+        long line = 2;
+        for (MappedCsvReader.Range range : ranges) {
+            assertEquals(line, range.getLine());
+            try (MappedCsvReader reader = new MappedCsvReader(file, range)) {
+                List<List<String>> records = readAll(reader);
+                read.addAll(records);
+                line += records.size() * 2L;
+            }
+        }
+        assertEquals(expected, read);
+    }
+
+    @Test
+    public void testSplitWithQuotesInUnquotedFields() throws IOException {
+        // a quote in the middle of a field is just a character, so shouldn't be taken to open a quoted field, in which the
+        // following line breaks would be missed as record boundaries, or to close one, at which a quoted line break would be taken
+        // for one
+        StringBuilder csv = new StringBuilder("header\n");
+        for (int i = 0; i < 50; i++) {
+            csv.append(i % 3 == 0 ? "6\" tall," : "short,").append(i).append(",\"a\nb\"\n");
+        }
+        Path file = write(csv.toString());
+        List<List<String>> expected;
+        List<MappedCsvReader.Range> ranges;
+        try (MappedCsvReader reader = new MappedCsvReader(file)) {
+            assertTrue(reader.next());
+            ranges = reader.split(20);
+            expected = readAll(reader);
+        }
+        assertEquals(50, expected.size());
+        assertEquals(List.of("6\" tall", "0", "a\nb"), expected.get(0));
+        assertTrue(ranges.size() > 10);
+
+        List<List<String>> read = new ArrayList<>();
+        long line = 2;
+        for (MappedCsvReader.Range range : ranges) {
+            assertEquals(line, range.getLine());
+            try (MappedCsvReader reader = new MappedCsvReader(file, range)) {
+                List<List<String>> records = readAll(reader);
+                read.addAll(records);
+                line += records.size() * 2L;
+            }
+        }
+        assertEquals(expected, read);
+    }
+}